@@ -0,0 +1,231 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Options of benchmarks and suites passed to their <tt>main</tt> as <code>%key%=%value%[,%value%...]</code>
+ * arguments. Every key is {@link #define(String, String...) defined} with its default values before
+ * {@link #parse(String[]) parsing}; key defined without values is optional. On unknown key, argument without
+ * <tt>=</tt> or value which is not a number where number is expected usage of program is printed to standard error
+ * and process exits with status <tt>2</tt>, so status <tt>1</tt> stays reserved for failed checks.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ */
+final class BenchOptions {
+    /**
+     * Program which options are parsed, named in usage.
+     *
+     * @since 0.2.0
+     */
+    private final Class<?> program;
+    /**
+     * Values of defined keys in order of definition, empty array for absent optional keys.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, String[]> values = new LinkedHashMap<>();
+    /**
+     * Default values of defined keys in order of definition, shown in usage.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, String[]> defaults = new LinkedHashMap<>();
+
+    /**
+     * Creates options of <tt>%program%</tt> without defined keys.
+     *
+     * @param program class which <tt>main</tt> options are parsed
+     * @since 0.2.0
+     */
+    BenchOptions(Class<?> program) {
+        this.program = program;
+    }
+
+    /**
+     * Defines <tt>%key%</tt> with <tt>%defaults%</tt> values, used when it is not passed.
+     *
+     * @param key name of option
+     * @param defaults default values of option, none for optional one
+     * @return this options
+     * @since 0.2.0
+     */
+    BenchOptions define(String key, String... defaults) {
+        values.put(key, defaults);
+        this.defaults.put(key, defaults);
+        return this;
+    }
+
+    /**
+     * Replaces default values of options passed in <tt>%args%</tt>. Exits with usage on malformed argument.
+     *
+     * @param args arguments of <tt>main</tt>
+     * @return this options
+     * @since 0.2.0
+     */
+    BenchOptions parse(String[] args) {
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                usage("argument " + arg + " is not %key%=%value%");
+            }
+            String key = arg.substring(0, separator);
+            if (!values.containsKey(key)) {
+                usage("unknown option " + key);
+            }
+            values.put(key, arg.substring(separator + 1).split(","));
+        }
+        return this;
+    }
+
+    /**
+     * Checks whether optional <tt>%key%</tt> has value.
+     *
+     * @param key name of option
+     * @return <tt>true</tt> if option has at least one value
+     * @since 0.2.0
+     */
+    boolean has(String key) {
+        return getAll(key).length > 0;
+    }
+
+    /**
+     * Returns all values of <tt>%key%</tt>.
+     *
+     * @param key name of defined option
+     * @return values of option
+     * @throws IllegalArgumentException if option is not defined
+     * @since 0.2.0
+     */
+    String[] getAll(String key) {
+        String[] result = values.get(key);
+        if (result == null) {
+            throw new IllegalArgumentException("Option " + key + " is not defined");
+        }
+        return result;
+    }
+
+    /**
+     * Returns first value of <tt>%key%</tt>. Exits with usage if option has no values.
+     *
+     * @param key name of defined option
+     * @return first value of option
+     * @since 0.2.0
+     */
+    String get(String key) {
+        String[] result = getAll(key);
+        if (result.length == 0) {
+            usage("option " + key + " is required");
+        }
+        return result[0];
+    }
+
+    /**
+     * Returns all values of <tt>%key%</tt> as integers. Exits with usage if any of them is not an integer.
+     *
+     * @param key name of defined option
+     * @return values of option
+     * @since 0.2.0
+     */
+    int[] getInts(String key) {
+        String[] strings = getAll(key);
+        int[] result = new int[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            result[i] = (int) parse(key, strings[i], Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+        return result;
+    }
+
+    /**
+     * Returns first value of <tt>%key%</tt> as integer. Exits with usage if it is not an integer.
+     *
+     * @param key name of defined option
+     * @return first value of option
+     * @since 0.2.0
+     */
+    int getInt(String key) {
+        return (int) parse(key, get(key), Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns first value of <tt>%key%</tt> as long integer. Exits with usage if it is not an integer.
+     *
+     * @param key name of defined option
+     * @return first value of option
+     * @since 0.2.0
+     */
+    long getLong(String key) {
+        return parse(key, get(key), Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns first value of <tt>%key%</tt> as real number. Exits with usage if it is not a number.
+     *
+     * @param key name of defined option
+     * @return first value of option
+     * @since 0.2.0
+     */
+    double getDouble(String key) {
+        String value = get(key);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            usage("value " + value + " of option " + key + " is not a number");
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns first value of <tt>%key%</tt> as boolean.
+     *
+     * @param key name of defined option
+     * @return <tt>true</tt> if first value of option is <tt>true</tt> ignoring case
+     * @since 0.2.0
+     */
+    boolean getBoolean(String key) {
+        return Boolean.parseBoolean(get(key));
+    }
+
+    /**
+     * Parses <tt>%value%</tt> of <tt>%key%</tt> as integer in range from <tt>%min%</tt> to <tt>%max%</tt>. Exits
+     * with usage if it is not such integer.
+     *
+     * @param key name of option
+     * @param value value of option
+     * @param min least allowed value
+     * @param max greatest allowed value
+     * @return parsed value
+     * @since 0.2.0
+     */
+    private long parse(String key, String value, long min, long max) {
+        try {
+            long result = Long.parseLong(value);
+            if (min <= result && result <= max) {
+                return result;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below together with values out of range
+        }
+        usage("value " + value + " of option " + key + " is not an integer");
+        throw new AssertionError();
+    }
+
+    /**
+     * Prints <tt>%message%</tt> and usage of program with defined options and their defaults to standard error,
+     * then exits with status <tt>2</tt>.
+     *
+     * @param message description of error
+     * @since 0.2.0
+     */
+    private void usage(String message) {
+        System.err.println("Error: " + message);
+        System.err.println("Usage: java " + program.getName() + " [%key%=%value%[,%value%...]]...");
+        System.err.println("Options:");
+        for (Map.Entry<String, String[]> entry : defaults.entrySet()) {
+            System.err.println("  " + entry.getKey() + (entry.getValue().length == 0
+                    ? " (optional)" : "=" + String.join(",", entry.getValue())));
+        }
+        System.exit(2);
+    }
+}
@@ -0,0 +1,218 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark of overhead of counting calls in implementations generated in
+ * {@link Implementor.GenerationMode#COUNTING COUNTING} mode. Calls of {@link PrimitiveService} are made by several
+ * threads at once through implementation generated in {@link Implementor.GenerationMode#STUB STUB} mode, through
+ * counting one and through counting one with latency sampling enabled. Time of call is measured as processor time of
+ * calling thread, so threads waiting for processor do not distort it.
+ * <p>
+ * All implementations are called from the same call site, which sees all of them before measurement, so the call is
+ * never inlined: otherwise compiler would remove calls of stub, which returns constant, and overhead of counting
+ * would be compared with empty loop. Results of calls feed arguments of next calls, so they are never dropped either.
+ * <p>
+ * Counting a call costs at least one atomic increment, whose cost depends on processor, so overhead is compared with
+ * cost of uncontended {@link AtomicLong#getAndIncrement()} measured first. Besides increment counting reads sampling
+ * interval and computes index of stripe, which costs a small fraction of increment, so overhead of more than
+ * <tt>limit</tt> increments, two by default, means that call does more work than it has to.
+ * <p>
+ * Arguments are {@link BenchOptions options} of form <code>/ %key%=%value%[,%value%...] /</code>. Key <tt>threads</tt>
+ * lists counts of calling threads, <tt>sampling</tt> sets sampling interval of the last implementation. Keys
+ * <tt>warmup</tt>, <tt>iterations</tt> and <tt>time</tt> mean the same as for {@link ImplementorBenchmark}, key
+ * <tt>batch</tt> sets count of calls measured together. Benchmark fails when counter misses any call or when counting
+ * without sampling adds more than <tt>limit</tt> atomic increments to call, process exits with status <tt>1</tt> then.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see InvocationCounter
+ */
+public class CountingBenchmark {
+    /**
+     * Results of measured calls, stored so they cannot be eliminated by compiler.
+     *
+     * @since 0.2.0
+     */
+    private static volatile long consumed;
+
+    /**
+     * Utility class, not instantiable.
+     *
+     * @since 0.2.0
+     */
+    private CountingBenchmark() {
+    }
+
+    /**
+     * Runs benchmark with parameters described in {@link CountingBenchmark class documentation}.
+     *
+     * @param args parameters of benchmark
+     * @throws Exception when implementations cannot be generated
+     * @since 0.2.0
+     */
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(CountingBenchmark.class)
+                .define("threads", "1", "2", "4", "8")
+                .define("sampling", "1024")
+                .define("warmup", "3")
+                .define("iterations", "5")
+                .define("time", "200")
+                .define("batch", "10000")
+                .define("limit", "2")
+                .parse(args);
+        int warmup = options.getInt("warmup");
+        int iterations = options.getInt("iterations");
+        long time = options.getLong("time") * 1_000_000L;
+        int batch = options.getInt("batch");
+        double limit = options.getDouble("limit");
+        int[] threadCounts = options.getInts("threads");
+
+        Map<String, Class<?>> implementations = new LinkedHashMap<>();
+        implementations.put("stub", new Implementor().implementClass(PrimitiveService.class));
+        implementations.put("counting", new Implementor(Implementor.GenerationMode.COUNTING)
+                .implementClass(PrimitiveService.class));
+        implementations.put("sampled", new Implementor(Implementor.GenerationMode.COUNTING)
+                .implementClass(PrimitiveService.class));
+        InvocationCounter.of(implementations.get("sampled"))
+                .setSamplingInterval(options.getInt("sampling"));
+
+        Map<String, PrimitiveService> services = new LinkedHashMap<>();
+        for (Map.Entry<String, Class<?>> implementation : implementations.entrySet()) {
+            services.put(implementation.getKey(),
+                    (PrimitiveService) implementation.getValue().getConstructor().newInstance());
+        }
+        // every implementation passes the call site before measurement, so it stays megamorphic
+        for (int i = 0; i < warmup; i++) {
+            for (PrimitiveService service : services.values()) {
+                measure(service, 1, batch, time / services.size(), new AtomicLong());
+            }
+        }
+        System.out.println("implementation\tthreads\tns/op\terror");
+        double increment = measureIncrement(batch, warmup, iterations, time);
+        System.out.println(String.format(Locale.ROOT, "atomic increment\t1\t%.2f\t-", increment));
+
+        List<String> failures = new ArrayList<>();
+        for (int threads : threadCounts) {
+            double baseline = 0;
+            for (Map.Entry<String, Class<?>> implementation : implementations.entrySet()) {
+                PrimitiveService service = services.get(implementation.getKey());
+                InvocationCounter counter = implementation.getKey().equals("stub")
+                        ? null : InvocationCounter.of(implementation.getValue());
+                double[] results = new double[iterations];
+                for (int i = -warmup; i < iterations; i++) {
+                    long counted = counter == null ? 0 : counter.snapshot().getTotalCount();
+                    AtomicLong calls = new AtomicLong();
+                    double result = measure(service, threads, batch, time, calls);
+                    if (i >= 0) results[i] = result;
+                    if (counter != null && counter.snapshot().getTotalCount() - counted != calls.get()) {
+                        failures.add(implementation.getKey() + " with " + threads + " threads counted "
+                                + (counter.snapshot().getTotalCount() - counted) + " of " + calls.get() + " calls");
+                    }
+                }
+                double mean = Arrays.stream(results).average().orElse(0);
+                double variance = Arrays.stream(results).map(x -> (x - mean) * (x - mean)).sum()
+                        / Math.max(1, iterations - 1);
+                System.out.println(String.format(Locale.ROOT, "%s\t%d\t%.2f\t%.2f", implementation.getKey(), threads,
+                        mean, Math.sqrt(variance / Math.max(1, iterations))));
+                if (counter == null) {
+                    baseline = mean;
+                } else if (implementation.getKey().equals("counting") && mean - baseline > limit * increment) {
+                    failures.add(String.format(Locale.ROOT,
+                            "%s with %d threads adds %.2f ns/op, more than %.2f increments of %.2f ns",
+                            implementation.getKey(), threads, mean - baseline, limit, increment));
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                System.out.println("FAILED " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    /**
+     * Measures processor time of uncontended {@link AtomicLong#getAndIncrement()} like {@link #measure} measures
+     * calls, by single thread.
+     *
+     * @param batch count of increments made between checks of time
+     * @param warmup count of iterations which results are ignored
+     * @param iterations count of measured iterations
+     * @param time duration of iteration in nanoseconds
+     * @return mean processor time of increment in nanoseconds
+     * @since 0.2.0
+     */
+    private static double measureIncrement(int batch, int warmup, int iterations, long time) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        AtomicLong counter = new AtomicLong();
+        double total = 0;
+        for (int i = -warmup; i < iterations; i++) {
+            long count = 0;
+            long deadline = System.nanoTime() + time;
+            long start = bean.getCurrentThreadCpuTime();
+            while (System.nanoTime() < deadline) {
+                for (int j = 0; j < batch; j++) {
+                    counter.getAndIncrement();
+                }
+                count += batch;
+            }
+            if (i >= 0) total += (double) (bean.getCurrentThreadCpuTime() - start) / Math.max(1, count);
+        }
+        consumed = counter.get();
+        return total / Math.max(1, iterations);
+    }
+
+    /**
+     * Calls <tt>%service%</tt> from <tt>%threads%</tt> threads at once. Every thread repeats batches of
+     * <tt>%batch%</tt> calls until <tt>%time%</tt> nanoseconds pass.
+     *
+     * @param service implementation to call
+     * @param threads count of calling threads
+     * @param batch count of calls made between checks of time
+     * @param time duration of measurement in nanoseconds
+     * @param calls total count of calls made by all threads, updated when threads finish
+     * @return mean processor time of call in nanoseconds
+     * @throws InterruptedException when interrupted while waiting for threads
+     * @since 0.2.0
+     */
+    private static double measure(PrimitiveService service, int threads, int batch, long time, AtomicLong calls)
+            throws InterruptedException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        double[] results = new double[threads];
+        List<Thread> workers = new ArrayList<>();
+        long deadline = System.nanoTime() + time;
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread worker = new Thread(() -> {
+                long sink = 0;
+                long count = 0;
+                long start = bean.getCurrentThreadCpuTime();
+                while (System.nanoTime() < deadline) {
+                    for (int j = 0; j < batch; j++) {
+                        sink += service.add(j, sink & 0xffff);
+                    }
+                    count += batch;
+                }
+                results[index] = (double) (bean.getCurrentThreadCpuTime() - start) / Math.max(1, count);
+                calls.addAndGet(count);
+                consumed = sink;
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return Arrays.stream(results).average().orElse(0);
+    }
+}
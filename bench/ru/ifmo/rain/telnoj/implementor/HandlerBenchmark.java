@@ -0,0 +1,282 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Benchmark of calls of {@link PrimitiveService} through implementation generated in
+ * {@link Implementor.GenerationMode#HANDLER HANDLER} mode and through {@link Proxy} doing the same work, with
+ * implementation generated in {@link Implementor.GenerationMode#STUB STUB} mode as baseline. Proxy boxes every
+ * argument and result and allocates array of arguments, while handler receives primitives, so it should allocate
+ * nothing per call.
+ * <p>
+ * Arguments are pushed to handler one by one, so handler shared between threads, like {@link Proxy} handler is,
+ * keeps them in {@link ThreadLocal}, and the <tt>handler</tt> row measures such handler. Row <tt>confined
+ * handler</tt> measures handler keeping them in its fields, which is correct for single thread only, so the
+ * difference of rows is the cost of thread safety.
+ * <p>
+ * Arguments are {@link BenchOptions options} of form <code>/ %key%=%value% /</code>. Keys <tt>warmup</tt>,
+ * <tt>iterations</tt> and <tt>time</tt> mean the same as for {@link ImplementorBenchmark}, key <tt>batch</tt> sets
+ * count of calls measured together. Results are printed as tab separated table of time and allocated bytes per call.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see ImplementationHandler
+ */
+public class HandlerBenchmark {
+    /**
+     * Arguments of pending call of {@link PrimitiveService}.
+     *
+     * @since 0.2.0
+     */
+    private static final class PendingCall {
+        /**
+         * Sum of <code>long</code> arguments of pending call.
+         *
+         * @since 0.2.0
+         */
+        private long sum;
+
+        /**
+         * <code>double</code> argument of pending call.
+         *
+         * @since 0.2.0
+         */
+        private double value;
+
+        /**
+         * <code>int</code> argument of pending call.
+         *
+         * @since 0.2.0
+         */
+        private int factor;
+    }
+
+    /**
+     * Handler computing results of {@link PrimitiveService} from pushed arguments, which are kept in
+     * {@link #getCall() pending call} of calling thread.
+     *
+     * @since 0.2.0
+     */
+    private abstract static class ServiceHandler implements ImplementationHandler {
+        /**
+         * Returns arguments of pending call of current thread.
+         *
+         * @return pending call
+         * @since 0.2.0
+         */
+        abstract PendingCall getCall();
+
+        /**
+         * Adds argument of {@link PrimitiveService#add(long, long) add} to sum.
+         *
+         * @param method index of called method
+         * @param index index of parameter
+         * @param value argument
+         * @since 0.2.0
+         */
+        @Override
+        public void argument(int method, int index, long value) {
+            getCall().sum += value;
+        }
+
+        /**
+         * Stores value argument of {@link PrimitiveService#scale(double, int) scale}.
+         *
+         * @param method index of called method
+         * @param index index of parameter
+         * @param value argument
+         * @since 0.2.0
+         */
+        @Override
+        public void argument(int method, int index, double value) {
+            getCall().value = value;
+        }
+
+        /**
+         * Stores factor argument of {@link PrimitiveService#scale(double, int) scale}.
+         *
+         * @param method index of called method
+         * @param index index of parameter
+         * @param value argument
+         * @since 0.2.0
+         */
+        @Override
+        public void argument(int method, int index, int value) {
+            getCall().factor = value;
+        }
+
+        /**
+         * Completes call of {@link PrimitiveService#add(long, long) add}.
+         *
+         * @param method index of called method
+         * @return sum of arguments
+         * @since 0.2.0
+         */
+        @Override
+        public long invokeLong(int method) {
+            PendingCall call = getCall();
+            long result = call.sum;
+            call.sum = 0;
+            return result;
+        }
+
+        /**
+         * Completes call of {@link PrimitiveService#scale(double, int) scale}.
+         *
+         * @param method index of called method
+         * @return product of arguments
+         * @since 0.2.0
+         */
+        @Override
+        public double invokeDouble(int method) {
+            PendingCall call = getCall();
+            return call.value * call.factor;
+        }
+    }
+
+    /**
+     * Handler which may be shared between threads: every thread has pending call of its own.
+     *
+     * @since 0.2.0
+     */
+    private static final class SharedHandler extends ServiceHandler {
+        /**
+         * Pending calls of threads.
+         *
+         * @since 0.2.0
+         */
+        private final ThreadLocal<PendingCall> calls = ThreadLocal.withInitial(PendingCall::new);
+
+        @Override
+        PendingCall getCall() {
+            return calls.get();
+        }
+    }
+
+    /**
+     * Handler which must be used by single thread, with one pending call.
+     *
+     * @since 0.2.0
+     */
+    private static final class ConfinedHandler extends ServiceHandler {
+        /**
+         * Pending call of the only thread.
+         *
+         * @since 0.2.0
+         */
+        private final PendingCall call = new PendingCall();
+
+        @Override
+        PendingCall getCall() {
+            return call;
+        }
+    }
+
+    /**
+     * Results of measured calls, stored so they cannot be eliminated by compiler.
+     *
+     * @since 0.2.0
+     */
+    private static volatile long consumed;
+
+    /**
+     * Utility class, not instantiable.
+     *
+     * @since 0.2.0
+     */
+    private HandlerBenchmark() {
+    }
+
+    /**
+     * Runs benchmark with parameters described in {@link HandlerBenchmark class documentation}.
+     *
+     * @param args parameters of benchmark
+     * @throws Exception when implementations cannot be generated
+     * @since 0.2.0
+     */
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(HandlerBenchmark.class)
+                .define("warmup", "5")
+                .define("iterations", "10")
+                .define("time", "200")
+                .define("batch", "10000")
+                .parse(args);
+        int warmup = options.getInt("warmup");
+        int iterations = options.getInt("iterations");
+        long time = options.getLong("time") * 1_000_000L;
+        int batch = options.getInt("batch");
+
+        Map<String, PrimitiveService> services = new LinkedHashMap<>();
+        services.put("stub", (PrimitiveService) new Implementor().implementClass(PrimitiveService.class)
+                .getConstructor().newInstance());
+        Class<?> handled = new Implementor(Implementor.GenerationMode.HANDLER).implementClass(PrimitiveService.class);
+        services.put("handler", (PrimitiveService) handled.getConstructor(ImplementationHandler.class)
+                .newInstance(new SharedHandler()));
+        services.put("confined handler", (PrimitiveService) handled.getConstructor(ImplementationHandler.class)
+                .newInstance(new ConfinedHandler()));
+        InvocationHandler invocationHandler = (proxy, method, arguments) -> {
+            if (method.getName().equals("add")) return (Long) arguments[0] + (Long) arguments[1];
+            return (Double) arguments[0] * (Integer) arguments[1];
+        };
+        services.put("proxy", (PrimitiveService) Proxy.newProxyInstance(PrimitiveService.class.getClassLoader(),
+                new Class<?>[]{PrimitiveService.class}, invocationHandler));
+
+        System.out.println("implementation\tns/op\terror\tbytes/op");
+        for (Map.Entry<String, PrimitiveService> service : services.entrySet()) {
+            System.out.println(service.getKey() + "\t"
+                    + measure(service.getValue(), batch, warmup, iterations, time));
+        }
+    }
+
+    /**
+     * Measures calls of <tt>%service%</tt>. Every iteration repeats batches of <tt>%batch%</tt> calls until
+     * <tt>%time%</tt> nanoseconds of measured time are spent.
+     *
+     * @param service implementation to call
+     * @param batch count of calls measured together
+     * @param warmup count of iterations which results are ignored
+     * @param iterations count of measured iterations
+     * @param time duration of iteration in nanoseconds
+     * @return mean time of call, its standard error and mean count of bytes allocated by call
+     * @since 0.2.0
+     */
+    private static ImplementorBenchmark.Measurement measure(PrimitiveService service, int batch, int warmup,
+                                                            int iterations, long time) {
+        double[] results = new double[iterations];
+        long totalBytes = 0;
+        long totalCalls = 0;
+        long sink = 0;
+        for (int i = -warmup; i < iterations; i++) {
+            long elapsed = 0;
+            long bytes = 0;
+            long calls = 0;
+            while (elapsed < time) {
+                long allocated = ImplementorBenchmark.getAllocatedBytes();
+                long start = System.nanoTime();
+                for (int j = 0; j < batch; j += 2) {
+                    // values outside of cache of boxed values, so proxy allocates them
+                    sink += service.add(j + 1000, sink & 0xffff);
+                    sink += (long) service.scale(j + 1000.5, j);
+                }
+                elapsed += System.nanoTime() - start;
+                bytes += ImplementorBenchmark.getAllocatedBytes() - allocated;
+                calls += batch;
+            }
+            if (i >= 0) {
+                results[i] = (double) elapsed / calls;
+                totalBytes += bytes;
+                totalCalls += calls;
+            }
+        }
+        consumed = sink;
+        double mean = Arrays.stream(results).average().orElse(0);
+        double variance = Arrays.stream(results).map(x -> (x - mean) * (x - mean)).sum()
+                / Math.max(1, iterations - 1);
+        double error = Math.sqrt(variance / Math.max(1, iterations));
+        return new ImplementorBenchmark.Measurement(mean, error, totalBytes / Math.max(1, totalCalls));
+    }
+}
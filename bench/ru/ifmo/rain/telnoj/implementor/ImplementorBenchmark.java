@@ -0,0 +1,421 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks of every phase of {@link Implementor} on {@link SyntheticTypes synthetic interfaces}. Measures
+ * <tt>implement</tt> and <tt>implementJar</tt> end to end and separately reflection with method resolution, source
+ * emission, escaping of identifiers, compilation and writing of <tt>.jar</tt> files.
+ * <p>
+ * Arguments are {@link BenchOptions options} of form <code>/ %key%=%value%[,%value%...] /</code>. Keys
+ * <tt>methods</tt>, <tt>overloads</tt>, <tt>depth</tt>, <tt>width</tt>, <tt>parameters</tt>, <tt>nested</tt> and
+ * <tt>unicode</tt> list shapes of interfaces, all combinations of them are measured. Key <tt>phases</tt> selects phases
+ * by name, keys <tt>warmup</tt>, <tt>iterations</tt> and <tt>time</tt> set count of warmup and measured iterations and
+ * duration of single iteration in milliseconds. Results are printed as tab separated table, so runs can be stored and
+ * compared with each other.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see ScalingSuite
+ */
+public class ImplementorBenchmark {
+    /**
+     * Single measured operation.
+     *
+     * @since 0.2.0
+     */
+    private interface Operation {
+        /**
+         * Runs operation once.
+         *
+         * @throws Exception when operation fails
+         * @since 0.2.0
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Phase of implementor which is measured. Setup is not measured.
+     *
+     * @since 0.2.0
+     */
+    private interface Phase {
+        /**
+         * Prepares operation repeated during one iteration, or single invocation for
+         * {@link #perInvocation per invocation} phases.
+         *
+         * @param types interfaces to run phase on
+         * @return operation to measure
+         * @throws Exception when preparation fails
+         * @since 0.2.0
+         */
+        Operation prepare(SyntheticTypes types) throws Exception;
+    }
+
+    /**
+     * Result of measuring of single phase.
+     *
+     * @since 0.2.0
+     */
+    static final class Measurement {
+        /**
+         * Mean time of operation in nanoseconds.
+         *
+         * @since 0.2.0
+         */
+        final double time;
+
+        /**
+         * Standard error of {@link #time time}.
+         *
+         * @since 0.2.0
+         */
+        final double error;
+
+        /**
+         * Mean count of bytes allocated by operation.
+         *
+         * @since 0.2.0
+         */
+        final long bytes;
+
+        /**
+         * Creates result of measuring.
+         *
+         * @param time mean time of operation in nanoseconds
+         * @param error standard error of time
+         * @param bytes mean count of allocated bytes
+         * @since 0.2.0
+         */
+        Measurement(double time, double error, long bytes) {
+            this.time = time;
+            this.error = error;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns columns of result table.
+         *
+         * @return mean time, its standard error and allocated bytes, separated by tabs
+         * @since 0.2.0
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.0f\t%.0f\t%d", time, error, bytes);
+        }
+    }
+
+    /**
+     * Writer ignoring everything written to it.
+     *
+     * @since 0.2.0
+     */
+    private static final Writer nullWriter = new Writer() {
+        @Override
+        public void write(int c) {
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void write(String str, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Thread bean used to measure allocations, <tt>null</tt> if JVM does not support it.
+     *
+     * @since 0.2.0
+     */
+    private static final com.sun.management.ThreadMXBean threads = getThreadBean();
+
+    /**
+     * Implementor being measured.
+     *
+     * @since 0.2.0
+     */
+    private final Implementor implementor = new Implementor();
+
+    /**
+     * Directory for files created by benchmarks.
+     *
+     * @since 0.2.0
+     */
+    private final Path directory;
+
+    /**
+     * Measured phases mapped by their names.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+
+    /**
+     * Names of phases which have to be prepared before every invocation, because they must not see caches warmed
+     * by previous invocations.
+     *
+     * @since 0.2.0
+     */
+    private final Set<String> perInvocation = Collections.singleton("resolve");
+
+    /**
+     * Class files of implementations mapped by shape of interfaces, compiled once for <tt>jar-write</tt> phase.
+     *
+     * @since 0.2.0
+     */
+    private final Map<SyntheticTypes, Map<String, byte[]>> compiled = new HashMap<>();
+
+    /**
+     * Creates benchmarks writing files to <tt>%directory%</tt>.
+     *
+     * @param directory directory for files created by benchmarks
+     * @since 0.2.0
+     */
+    ImplementorBenchmark(Path directory) {
+        this.directory = directory;
+        phases.put("implement", types -> {
+            Class<?> token = types.load();
+            return () -> implementor.implement(token, directory.resolve("src"));
+        });
+        phases.put("jar-javac", types -> {
+            Class<?> token = types.load();
+            return () -> implementor.implementJar(token, directory.resolve("javac.jar"), Implementor.Backend.JAVAC);
+        });
+        phases.put("jar-bytecode", types -> {
+            Class<?> token = types.load();
+            return () -> implementor.implementJar(token, directory.resolve("bytecode.jar"),
+                    Implementor.Backend.BYTECODE);
+        });
+        phases.put("resolve", types -> {
+            Class<?> token = types.load();
+            return () -> MethodTables.get(token);
+        });
+        phases.put("emit", types -> {
+            Class<?> token = types.load();
+            MethodTables.get(token);
+            return () -> implementor.printSource(nullWriter, token);
+        });
+        phases.put("escape", types -> {
+            List<String> names = new ArrayList<>();
+            for (Method method : MethodTables.get(types.load())) {
+                names.add(method.getName());
+            }
+            SourceEmitter emitter = new SourceEmitter(nullWriter);
+            return () -> {
+                for (String name : names) {
+                    emitter.appendEscaped(name);
+                }
+            };
+        });
+        phases.put("compile", types -> {
+            Class<?> token = types.load();
+            StringWriter source = new StringWriter();
+            implementor.printSource(source, token);
+            Map<String, String> sources = Collections.singletonMap(token.getName() + "Impl", source.toString());
+            return () -> implementor.compile(sources, Collections.singletonList(token));
+        });
+        phases.put("jar-write", types -> {
+            Map<String, byte[]> classes = compiled.get(types);
+            if (classes == null) {
+                classes = implementor.compile(Collections.singletonList(types.load()), Implementor.Backend.JAVAC);
+                compiled.put(types, classes);
+            }
+            Map<String, byte[]> result = classes;
+            return () -> implementor.writeJar(result, directory.resolve("write.jar"));
+        });
+    }
+
+    /**
+     * Runs benchmarks with parameters described in {@link ImplementorBenchmark class documentation}.
+     *
+     * @param args parameters of benchmarks
+     * @throws Exception when any benchmark fails
+     * @since 0.2.0
+     */
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(ImplementorBenchmark.class)
+                .define("methods", "10", "100", "1000")
+                .define("overloads", "1", "8")
+                .define("depth", "1", "8")
+                .define("width", "1")
+                .define("parameters", "1")
+                .define("nested", "0")
+                .define("unicode", "false", "true")
+                .define("phases")
+                .define("warmup", "3")
+                .define("iterations", "5")
+                .define("time", "500")
+                .parse(args);
+        int warmup = options.getInt("warmup");
+        int iterations = options.getInt("iterations");
+        long time = options.getLong("time") * 1_000_000L;
+        Path directory = Files.createTempDirectory("implementor-bench");
+        ImplementorBenchmark benchmark = new ImplementorBenchmark(directory);
+        String[] phaseNames = options.has("phases") ? options.getAll("phases")
+                : benchmark.phases.keySet().toArray(new String[0]);
+        System.out.println("phase\tmethods\toverloads\tdepth\twidth\tparameters\tnested\tunicode\tns/op\terror"
+                + "\tbytes/op");
+        int index = 0;
+        List<int[]> shapes = new ArrayList<>();
+        shapes.add(new int[0]);
+        for (String key : new String[]{"methods", "overloads", "depth", "width", "parameters", "nested"}) {
+            List<int[]> extended = new ArrayList<>();
+            for (int[] shape : shapes) {
+                for (int value : options.getInts(key)) {
+                    int[] next = Arrays.copyOf(shape, shape.length + 1);
+                    next[shape.length] = value;
+                    extended.add(next);
+                }
+            }
+            shapes = extended;
+        }
+        for (int[] shape : shapes) {
+            for (String unicode : options.getAll("unicode")) {
+                SyntheticTypes types = new SyntheticTypes(shape[0], shape[1], shape[2], shape[3], shape[4],
+                        shape[5], Boolean.parseBoolean(unicode),
+                        Files.createDirectories(directory.resolve("types" + index++)));
+                for (String name : phaseNames) {
+                    System.out.println(name + "\t" + types + "\t"
+                            + benchmark.measure(name, types, warmup, iterations, time));
+                }
+            }
+        }
+        delete(directory);
+    }
+
+    /**
+     * Measures phase named <tt>%name%</tt> on <tt>%types%</tt>.
+     *
+     * @param name name of phase
+     * @param types interfaces to run phase on
+     * @param warmup count of iterations which results are ignored
+     * @param iterations count of measured iterations
+     * @param time duration of iteration in nanoseconds
+     * @return result of measuring
+     * @throws Exception when phase fails
+     * @since 0.2.0
+     */
+    Measurement measure(String name, SyntheticTypes types, int warmup, int iterations, long time)
+            throws Exception {
+        Phase phase = phases.get(name);
+        if (phase == null) throw new IllegalArgumentException("Unknown phase " + name);
+        return measure(phase, perInvocation.contains(name), types, warmup, iterations, time);
+    }
+
+    /**
+     * Measures <tt>%phase%</tt> on <tt>%types%</tt>. Every iteration repeats phase until <tt>%time%</tt> nanoseconds
+     * of measured time are spent.
+     *
+     * @param phase phase to measure
+     * @param fresh whether phase is prepared before every invocation instead of every iteration
+     * @param types interfaces to run phase on
+     * @param warmup count of iterations which results are ignored
+     * @param iterations count of measured iterations
+     * @param time duration of iteration in nanoseconds
+     * @return mean time of operation, its standard error and mean count of allocated bytes
+     * @throws Exception when phase fails
+     * @since 0.2.0
+     */
+    private Measurement measure(Phase phase, boolean fresh, SyntheticTypes types, int warmup, int iterations, long time)
+            throws Exception {
+        double[] results = new double[iterations];
+        long totalBytes = 0;
+        long totalOperations = 0;
+        for (int i = -warmup; i < iterations; i++) {
+            long elapsed = 0;
+            long bytes = 0;
+            long operations = 0;
+            Operation operation = phase.prepare(types);
+            while (elapsed < time) {
+                if (fresh && operations > 0) operation = phase.prepare(types);
+                long allocated = getAllocatedBytes();
+                long start = System.nanoTime();
+                operation.run();
+                elapsed += System.nanoTime() - start;
+                bytes += getAllocatedBytes() - allocated;
+                operations++;
+            }
+            if (i >= 0) {
+                results[i] = (double) elapsed / operations;
+                totalBytes += bytes;
+                totalOperations += operations;
+            }
+        }
+        double mean = Arrays.stream(results).average().orElse(0);
+        double variance = Arrays.stream(results).map(x -> (x - mean) * (x - mean)).sum()
+                / Math.max(1, iterations - 1);
+        double error = Math.sqrt(variance / Math.max(1, iterations));
+        return new Measurement(mean, error, totalBytes / Math.max(1, totalOperations));
+    }
+
+    /**
+     * Returns count of bytes allocated by current thread.
+     *
+     * @return allocated bytes, zero if JVM cannot measure allocations
+     * @since 0.2.0
+     */
+    static long getAllocatedBytes() {
+        return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns thread bean supporting measuring of allocations.
+     *
+     * @return thread bean, <tt>null</tt> if allocations cannot be measured
+     * @since 0.2.0
+     */
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        try {
+            com.sun.management.ThreadMXBean bean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (!bean.isThreadAllocatedMemorySupported()) return null;
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        } catch (ClassCastException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Removes <tt>%directory%</tt> with all its content.
+     *
+     * @param directory directory to remove
+     * @throws IOException when unable to remove files
+     * @since 0.2.0
+     */
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+}
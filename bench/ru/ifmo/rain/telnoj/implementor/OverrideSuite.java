@@ -0,0 +1,341 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import info.kgeorgiy.java.advanced.implementor.ImplerException;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Regression suite of override resolution of {@link Implementor}. Suite checks that implementations of types
+ * overriding generic methods of their supertypes compile, whether types are loaded, read from class files by
+ * {@link ClassPathIndex} or read from sources by {@link ImplementProcessor}, and that building
+ * {@link MethodTables method table} of interface with up to ten thousands overloads of the same arity, each
+ * overriding generic method of superinterface, grows linearly in count of methods.
+ * <p>
+ * Growth is estimated by {@link ScalingSuite#getExponent(double[], double[])}. Arguments are
+ * {@link BenchOptions options} of form <code>/ %key%=%value%[,%value%...] /</code>. Key <tt>methods</tt> replaces
+ * steps of count of methods, key <tt>iterations</tt> sets count of measurements of every step, the fastest one is
+ * used, and key <tt>limit</tt> sets maximum exponent. Process exits with status <tt>1</tt> on failure, so the suite
+ * can fail a build.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see MethodIdentity
+ */
+public class OverrideSuite {
+    /**
+     * Package all types of suite are declared in.
+     *
+     * @since 0.2.0
+     */
+    private static final String packageName = "overrides";
+
+    /**
+     * Types declaring methods which override generic methods of their supertypes, mapped to their source code.
+     *
+     * @since 0.2.0
+     */
+    private static final Map<String, String> genericTypes = new LinkedHashMap<>();
+
+    /**
+     * Types of {@link #genericTypes} which are implemented, mapped to name of method overriding generic one.
+     *
+     * @since 0.2.0
+     */
+    private static final Map<String, String> genericTokens = new LinkedHashMap<>();
+
+    /**
+     * Types of non-generic parameters of methods of scaling interfaces. Overloads differ in these types.
+     *
+     * @since 0.2.0
+     */
+    private static final String[] parameterTypes = {
+            "int", "long", "double", "boolean", "char", "String", "Object", "Integer", "int[]", "String[]"
+    };
+
+    static {
+        genericTypes.put("Sink", "public interface Sink<T> { void put(T t); }");
+        genericTypes.put("StrSink", "public interface StrSink extends Sink<String> { void put(String s); }");
+        genericTypes.put("StrComparator", "public interface StrComparator extends java.util.Comparator<String> {"
+                + " int compare(String a, String b); }");
+        genericTypes.put("SelfComparable", "public abstract class SelfComparable implements"
+                + " Comparable<SelfComparable> { public abstract int compareTo(SelfComparable o); }");
+        genericTypes.put("GenericBase", "public abstract class GenericBase<T> { public abstract void put(T t); }");
+        genericTypes.put("PlainSink", "public interface PlainSink { void put(String s); }");
+        genericTypes.put("MixedSink", "public abstract class MixedSink extends GenericBase<String>"
+                + " implements PlainSink { }");
+        genericTypes.put("ArrayBase", "public interface ArrayBase<E extends Number> extends Sink<E[]> { }");
+        genericTypes.put("ArraySink", "public interface ArraySink extends ArrayBase<Integer> {"
+                + " void put(Integer[] s); }");
+        genericTokens.put("StrSink", "put");
+        genericTokens.put("StrComparator", "compare");
+        genericTokens.put("SelfComparable", "compareTo");
+        genericTokens.put("MixedSink", "put");
+        genericTokens.put("ArraySink", "put");
+    }
+
+    /**
+     * Utility class, not instantiable.
+     *
+     * @since 0.2.0
+     */
+    private OverrideSuite() {
+    }
+
+    /**
+     * Runs suite with parameters described in {@link OverrideSuite class documentation}.
+     *
+     * @param args parameters of suite
+     * @throws Exception when types of suite cannot be compiled or loaded
+     * @since 0.2.0
+     */
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(OverrideSuite.class)
+                .define("methods", "1250", "2500", "5000", "10000")
+                .define("iterations", "5")
+                .define("limit", "1.25")
+                .parse(args);
+        int iterations = options.getInt("iterations");
+        double limit = options.getDouble("limit");
+        int[] methods = options.getInts("methods");
+
+        List<String> failures = new ArrayList<>();
+        Path directory = Files.createTempDirectory("implementor-overrides");
+        try {
+            Path classes = compile(packageName, genericTypes, directory.resolve("generic"));
+            checkGeneric(classes, directory, failures);
+            checkClassFiles(classes, directory, failures);
+            checkProcessor(directory, failures);
+            checkScaling(directory, methods, iterations, limit, failures);
+        } finally {
+            ImplementorBenchmark.delete(directory);
+        }
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                System.out.println("FAILED " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    /**
+     * Implements every type of {@link #genericTokens} into jar and checks that its method table contains only one
+     * method overriding generic one.
+     *
+     * @param classes directory containing compiled {@link #genericTypes}
+     * @param directory directory to write jars to
+     * @param failures failures to add to
+     * @throws IOException when types cannot be loaded
+     * @throws ClassNotFoundException when types cannot be loaded
+     * @since 0.2.0
+     */
+    private static void checkGeneric(Path classes, Path directory, List<String> failures)
+            throws IOException, ClassNotFoundException {
+        ClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()},
+                OverrideSuite.class.getClassLoader());
+        Implementor implementor = new Implementor();
+        for (Map.Entry<String, String> entry : genericTokens.entrySet()) {
+            String name = entry.getKey();
+            Class<?> token = Class.forName(packageName + "." + name, false, loader);
+            long count = MethodTables.get(token).stream()
+                    .filter(method -> method.getName().equals(entry.getValue())).count();
+            if (count != 1) failures.add(name + ": " + count + " methods " + entry.getValue() + " are implemented");
+            try {
+                implementor.implementJar(token, directory.resolve(name + ".jar"));
+                System.out.println(name + "\tcompiled");
+            } catch (ImplerException e) {
+                failures.add(name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Implements every type of {@link #genericTypes} from its class file by
+     * {@link Implementor#implementScan(Path, Path) implementScan}, which compiles implementations, and checks that none
+     * of them is skipped.
+     *
+     * @param classes directory containing compiled {@link #genericTypes}
+     * @param directory directory to write jar to
+     * @param failures failures to add to
+     * @since 0.2.0
+     */
+    private static void checkClassFiles(Path classes, Path directory, List<String> failures) {
+        try {
+            Map<String, ImplerException> skipped = new Implementor().implementScan(classes,
+                    directory.resolve("classfiles.jar"));
+            for (Map.Entry<String, ImplerException> entry : skipped.entrySet()) {
+                failures.add("class file of " + entry.getKey() + ": " + entry.getValue().getMessage());
+            }
+            System.out.println("class files\tcompiled " + (genericTypes.size() - skipped.size()));
+        } catch (ImplerException e) {
+            failures.add("class files: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compiles {@link #genericTypes} with types of {@link #genericTokens} annotated by {@link Implement}, running
+     * {@link ImplementProcessor}, and checks that implementations it generates compile in the same run.
+     *
+     * @param directory directory to write sources and class files to
+     * @param failures failures to add to
+     * @throws IOException when compiler is not available or unable to write files
+     * @since 0.2.0
+     */
+    private static void checkProcessor(Path directory, List<String> failures) throws IOException {
+        Path output = Files.createDirectories(directory.resolve("processed"));
+        List<JavaFileObject> files = new ArrayList<>();
+        for (Map.Entry<String, String> entry : genericTypes.entrySet()) {
+            String annotation = genericTokens.containsKey(entry.getKey())
+                    ? "@" + Implement.class.getName() + "\n" : "";
+            files.add(MemoryFileManager.source(packageName + "." + entry.getKey(),
+                    "package " + packageName + ";\n\n" + annotation + entry.getValue()));
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) throw new IOException("Java compiler is not available");
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null,
+                StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList("-nowarn", "-d", output.toString(), "-s", output.toString(),
+                    "-classpath", System.getProperty("java.class.path"));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, files);
+            task.setProcessors(Collections.singletonList(new ImplementProcessor()));
+            if (task.call()) {
+                System.out.println("processor\tcompiled " + genericTokens.size());
+                return;
+            }
+        }
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                failures.add("processor: " + diagnostic.getMessage(null));
+            }
+        }
+    }
+
+    /**
+     * Measures building of method table of interface whose methods all override generic methods of its
+     * superinterface, for every count of methods in <tt>%steps%</tt>, and checks that it grows linearly.
+     *
+     * @param directory directory to write types to
+     * @param steps counts of methods
+     * @param iterations count of measurements of every step
+     * @param limit maximum allowed exponent
+     * @param failures failures to add to
+     * @throws IOException when types cannot be compiled
+     * @throws ClassNotFoundException when types cannot be loaded
+     * @since 0.2.0
+     */
+    private static void checkScaling(Path directory, int[] steps, int iterations, double limit,
+                                     List<String> failures) throws IOException, ClassNotFoundException {
+        System.out.println("methods\tns/op");
+        double[] values = new double[steps.length];
+        double[] times = new double[steps.length];
+        for (int step = 0; step < steps.length; step++) {
+            int methods = steps[step];
+            Path classes = compile(packageName, overloads(methods), directory.resolve("overloads" + methods));
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < iterations; i++) {
+                // every iteration loads fresh class, so method table is built rather than taken from cache
+                ClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()},
+                        OverrideSuite.class.getClassLoader());
+                Class<?> token = Class.forName(packageName + ".OverloadsLeaf", true, loader);
+                long start = System.nanoTime();
+                Collection<Method> table = MethodTables.get(token);
+                best = Math.min(best, System.nanoTime() - start);
+                if (table.size() != methods) {
+                    failures.add(methods + " methods: method table contains " + table.size() + " methods");
+                }
+            }
+            values[step] = methods;
+            times[step] = best;
+            System.out.println(methods + "\t" + best);
+        }
+        double exponent = ScalingSuite.getExponent(values, times);
+        System.out.println(String.format(Locale.ROOT, "method table time grows as n^%.2f", exponent));
+        if (exponent > limit) {
+            failures.add(String.format(Locale.ROOT, "method table time grows superlinearly: n^%.2f exceeds n^%.2f",
+                    exponent, limit));
+        }
+    }
+
+    /**
+     * Returns sources of generic interface with <tt>%methods%</tt> methods and its subinterface overriding all of them
+     * with type argument <tt>String</tt>. Methods are overloads of the same arity, square root of <tt>%methods%</tt> of
+     * them share every name, so cost of resolution which compares overloads pairwise grows as power <tt>1.5</tt>, while
+     * Java compiler, which does the same, still compiles interfaces in reasonable time.
+     *
+     * @param methods count of methods
+     * @return simple names of interfaces mapped to their source code
+     * @since 0.2.0
+     */
+    private static Map<String, String> overloads(int methods) {
+        int overloads = (int) Math.ceil(Math.sqrt(methods));
+        StringBuilder root = new StringBuilder("public interface Overloads<T> {\n");
+        StringBuilder leaf = new StringBuilder("public interface OverloadsLeaf extends Overloads<String> {\n");
+        for (int i = 0; i < methods; i++) {
+            StringBuilder parameters = new StringBuilder();
+            for (int j = 1, digits = i % overloads; j <= 4; j++, digits /= parameterTypes.length) {
+                parameters.append(", ").append(parameterTypes[digits % parameterTypes.length]).append(" p").append(j);
+            }
+            String name = "method" + i / overloads;
+            root.append("    void ").append(name).append("(T p0").append(parameters).append(");\n");
+            leaf.append("    void ").append(name).append("(String p0").append(parameters).append(");\n");
+        }
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("Overloads", root.append("}\n").toString());
+        sources.put("OverloadsLeaf", leaf.append("}\n").toString());
+        return sources;
+    }
+
+    /**
+     * Compiles types of package <tt>%typesPackage%</tt> into <tt>%directory%</tt>.
+     *
+     * @param typesPackage package types are declared in
+     * @param sources simple names of types mapped to their source code without package declaration
+     * @param directory directory to write class files to
+     * @return <tt>%directory%</tt>
+     * @throws IOException when unable to compile or write types
+     * @since 0.2.0
+     */
+    static Path compile(String typesPackage, Map<String, String> sources, Path directory) throws IOException {
+        List<JavaFileObject> files = new ArrayList<>();
+        for (Map.Entry<String, String> entry : sources.entrySet()) {
+            files.add(MemoryFileManager.source(typesPackage + "." + entry.getKey(),
+                    "package " + typesPackage + ";\n\n" + entry.getValue()));
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) throw new IOException("Java compiler is not available");
+        try (MemoryFileManager fileManager = new MemoryFileManager(
+                compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8))) {
+            if (!compiler.getTask(null, fileManager, null, Collections.singletonList("-nowarn"), null, files)
+                    .call()) {
+                throw new IOException("Unable to compile types of suite");
+            }
+            for (Map.Entry<String, byte[]> entry : fileManager.getClasses().entrySet()) {
+                Path file = directory.resolve(entry.getKey().replace('.', '/') + ".class");
+                Files.createDirectories(file.getParent());
+                Files.write(file, entry.getValue());
+            }
+        }
+        return directory;
+    }
+}
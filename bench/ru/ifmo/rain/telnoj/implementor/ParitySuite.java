@@ -0,0 +1,485 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import info.kgeorgiy.java.advanced.implementor.ImplerException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Parity suite of {@link Implementor.Backend backends} of {@link Implementor}. Every type is implemented into one
+ * <tt>.jar</tt> file by {@link Implementor.Backend#JAVAC JAVAC} and into another one by
+ * {@link Implementor.Backend#BYTECODE BYTECODE}, and suite checks that both backends either fail or succeed, that
+ * jars contain the same classes and that every class has the same modifiers, supertypes, fields, constructors and
+ * methods with the same modifiers, descriptors and thrown exceptions, as read by {@link ClassFileModel}.
+ * <p>
+ * Implementations are also loaded from both jars and compared by behaviour: every declared constructor is invoked
+ * with default values of its parameters, and every declared method is invoked on instance created by the first
+ * constructor which succeeded. Results, that is returned values or types of thrown exceptions, must be equal.
+ * <p>
+ * Types are the examples and standard types bundled in tests of implementor and a set of types of JDK. Compiler
+ * refuses to compile classes into packages of JDK, so every type of JDK is implemented through its direct subtype
+ * declared in package {@link #wrapperPackage}, which extends raw type of JDK and declares the same constructors.
+ * Implementations of subtypes implement and override exactly the methods implementations of JDK types would.
+ * <p>
+ * Arguments are {@link BenchOptions options} of form <code>/ %key%=%value%[,%value%...] /</code>. Key <tt>jar</tt>
+ * names <tt>.jar</tt> file with bundled types, all top level types of it are implemented, and key <tt>types</tt>
+ * replaces names of types of JDK. Process exits with status <tt>1</tt> on failure, so the suite can fail a build.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see BytecodeGenerator
+ */
+public class ParitySuite {
+    /**
+     * Packages of bundled types which are implemented, as prefixes of <tt>.jar</tt> entry names.
+     *
+     * @since 0.2.0
+     */
+    private static final String[] bundledPackages = {
+            "info/kgeorgiy/java/advanced/implementor/examples/", "info/kgeorgiy/java/advanced/implementor/standard/"
+    };
+
+    /**
+     * Package subtypes of types of JDK are declared in.
+     *
+     * @since 0.2.0
+     */
+    private static final String wrapperPackage = "parity";
+
+    /**
+     * Default types of JDK which are implemented.
+     *
+     * @since 0.2.0
+     */
+    private static final String[] jdkTypes = {
+            "java.util.Collection", "java.util.Comparator", "java.util.AbstractList", "java.util.TimerTask",
+            "java.util.concurrent.BlockingQueue", "java.io.InputStream", "java.io.Reader", "java.lang.Number",
+            "java.sql.ResultSet", "javax.swing.AbstractAction", "javax.sql.RowSet", "javax.naming.Context",
+            "javax.management.relation.RelationSupportMBean", "javax.imageio.ImageReader"
+    };
+
+    /**
+     * Utility class, not instantiable.
+     *
+     * @since 0.2.0
+     */
+    private ParitySuite() {
+    }
+
+    /**
+     * Runs suite with parameters described in {@link ParitySuite class documentation}.
+     *
+     * @param args parameters of suite
+     * @throws Exception when bundled types cannot be read or jars cannot be written
+     * @since 0.2.0
+     */
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(ParitySuite.class)
+                .define("jar", "lib/JarImplementorTest.jar")
+                .define("types", jdkTypes)
+                .parse(args);
+        ClassLoader parent = ParitySuite.class.getClassLoader();
+        List<String> failures = new ArrayList<>();
+        Path directory = Files.createTempDirectory("implementor-parity");
+        try {
+            List<Class<?>> tokens = new ArrayList<>();
+            for (String name : getBundledTypes(Paths.get(options.get("jar")))) {
+                tokens.add(Class.forName(name, false, parent));
+            }
+            Map<String, String> wrappers = new LinkedHashMap<>();
+            for (String name : options.getAll("types")) {
+                try {
+                    String wrapper = getWrapperName(name, wrappers.size());
+                    wrappers.put(wrapper, wrap(Class.forName(name, false, parent), wrapper));
+                } catch (ClassNotFoundException e) {
+                    failures.add(name + ": not found");
+                }
+            }
+            Path classes = OverrideSuite.compile(wrapperPackage, wrappers, directory.resolve("wrappers"));
+            ClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, parent);
+            for (String name : wrappers.keySet()) {
+                tokens.add(Class.forName(wrapperPackage + "." + name, false, loader));
+            }
+            Implementor implementor = new Implementor();
+            for (int i = 0; i < tokens.size(); i++) {
+                check(implementor, tokens.get(i), directory.resolve(Integer.toString(i)), failures);
+            }
+        } finally {
+            ImplementorBenchmark.delete(directory);
+        }
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                System.out.println("FAILED " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    /**
+     * Returns names of top level types of {@link #bundledPackages} found in <tt>%jar%</tt>.
+     *
+     * @param jar <tt>.jar</tt> file with bundled types
+     * @return binary names of types, ordered by name
+     * @throws IOException when unable to read <tt>%jar%</tt>
+     * @since 0.2.0
+     */
+    private static List<String> getBundledTypes(Path jar) throws IOException {
+        Set<String> names = new TreeSet<>();
+        try (JarFile file = new JarFile(jar.toFile())) {
+            for (Enumeration<JarEntry> entries = file.entries(); entries.hasMoreElements(); ) {
+                String name = entries.nextElement().getName();
+                if (!name.endsWith(".class") || name.indexOf('$') >= 0) continue;
+                for (String prefix : bundledPackages) {
+                    if (name.startsWith(prefix)) {
+                        names.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Returns simple name of subtype of type of JDK named <tt>%name%</tt>.
+     *
+     * @param name binary name of type of JDK
+     * @param index index of type among types of JDK, which makes name unique
+     * @return simple name of subtype
+     * @since 0.2.0
+     */
+    private static String getWrapperName(String name, int index) {
+        return name.substring(name.lastIndexOf('.') + 1).replace('$', '_') + index;
+    }
+
+    /**
+     * Returns source, without package declaration, of public direct subtype of raw <tt>%type%</tt> whose simple name
+     * is <tt>%name%</tt>. Subtype of class is abstract and declares
+     * constructor passing its arguments to every public or protected constructor of <tt>%type%</tt>.
+     *
+     * @param type interface or class of JDK
+     * @param name simple name of subtype
+     * @return source code of subtype
+     * @since 0.2.0
+     */
+    private static String wrap(Class<?> type, String name) {
+        StringBuilder source = new StringBuilder("public ");
+        source.append(type.isInterface() ? "interface " : "abstract class ").append(name).append(" extends ")
+                .append(type.getCanonicalName()).append(" {\n");
+        for (Constructor<?> constructor : type.isInterface() ? new Constructor<?>[0] : type.getDeclaredConstructors()) {
+            int modifiers = constructor.getModifiers();
+            if (!Modifier.isPublic(modifiers) && !Modifier.isProtected(modifiers)) continue;
+            StringJoiner parameters = new StringJoiner(", ", "(", ")");
+            StringJoiner arguments = new StringJoiner(", ", "(", ")");
+            Class<?>[] parameterTypes = constructor.getParameterTypes();
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameters.add(parameterTypes[i].getCanonicalName() + " a" + i);
+                arguments.add("a" + i);
+            }
+            StringJoiner exceptions = new StringJoiner(", ", " throws ", "").setEmptyValue("");
+            for (Class<?> exception : constructor.getExceptionTypes()) {
+                exceptions.add(exception.getCanonicalName());
+            }
+            source.append("    ").append(Modifier.isPublic(modifiers) ? "public " : "protected ").append(name)
+                    .append(parameters).append(exceptions).append(" { super").append(arguments).append("; }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    /**
+     * Implements <tt>%token%</tt> by both backends and compares results.
+     *
+     * @param implementor implementor to use
+     * @param token type to implement
+     * @param directory directory to write jars to
+     * @param failures failures to add to
+     * @throws IOException when unable to read jars
+     * @since 0.2.0
+     */
+    private static void check(Implementor implementor, Class<?> token, Path directory, List<String> failures)
+            throws IOException {
+        Files.createDirectories(directory);
+        Path javacJar = directory.resolve("javac.jar");
+        Path bytecodeJar = directory.resolve("bytecode.jar");
+        String javacFailure = implement(implementor, token, javacJar, Implementor.Backend.JAVAC);
+        String bytecodeFailure = implement(implementor, token, bytecodeJar, Implementor.Backend.BYTECODE);
+        if (javacFailure != null || bytecodeFailure != null) {
+            if (javacFailure == null || bytecodeFailure == null) {
+                failures.add(token.getName() + ": only " + (javacFailure == null ? "BYTECODE" : "JAVAC")
+                        + " failed: " + (javacFailure == null ? bytecodeFailure : javacFailure));
+            } else {
+                System.out.println(token.getName() + "\tboth failed");
+            }
+            return;
+        }
+        int before = failures.size();
+        Map<String, ClassFileModel> javacClasses = readClasses(javacJar);
+        Map<String, ClassFileModel> bytecodeClasses = readClasses(bytecodeJar);
+        compare(token.getName() + ": classes", javacClasses.keySet(), bytecodeClasses.keySet(), failures);
+        for (Map.Entry<String, ClassFileModel> entry : javacClasses.entrySet()) {
+            ClassFileModel bytecodeClass = bytecodeClasses.get(entry.getKey());
+            if (bytecodeClass != null) compare(entry.getValue(), bytecodeClass, failures);
+        }
+        compare(token.getName() + ": behaviour", run(javacJar, token), run(bytecodeJar, token), failures);
+        System.out.println(token.getName() + "\t" + (failures.size() == before ? "same" : "differ"));
+    }
+
+    /**
+     * Implements <tt>%token%</tt> into <tt>%jar%</tt> by <tt>%backend%</tt>.
+     *
+     * @param implementor implementor to use
+     * @param token type to implement
+     * @param jar target <tt>.jar</tt> file
+     * @param backend backend producing class files
+     * @return <tt>null</tt> on success, message of failure otherwise
+     * @since 0.2.0
+     */
+    private static String implement(Implementor implementor, Class<?> token, Path jar, Implementor.Backend backend) {
+        try {
+            implementor.implementJar(token, jar, backend);
+            return null;
+        } catch (ImplerException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Reads models of all class files of <tt>%jar%</tt>.
+     *
+     * @param jar <tt>.jar</tt> file to read
+     * @return models mapped by entry names
+     * @throws IOException when unable to read <tt>%jar%</tt>
+     * @since 0.2.0
+     */
+    private static Map<String, ClassFileModel> readClasses(Path jar) throws IOException {
+        Map<String, ClassFileModel> classes = new TreeMap<>();
+        try (JarFile file = new JarFile(jar.toFile())) {
+            for (Enumeration<JarEntry> entries = file.entries(); entries.hasMoreElements(); ) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class")) continue;
+                byte[] bytes = readAll(file.getInputStream(entry));
+                classes.put(entry.getName(), new ClassFileModel(ByteBuffer.wrap(bytes)));
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Compares declarations of class produced by {@link Implementor.Backend#JAVAC JAVAC} and by
+     * {@link Implementor.Backend#BYTECODE BYTECODE}.
+     *
+     * @param javac class produced by compiler
+     * @param bytecode class produced by {@link BytecodeGenerator}
+     * @param failures failures to add to
+     * @since 0.2.0
+     */
+    private static void compare(ClassFileModel javac, ClassFileModel bytecode, List<String> failures) {
+        String name = javac.name;
+        compare(name + ": access", Integer.toHexString(javac.access), Integer.toHexString(bytecode.access), failures);
+        compare(name + ": superclass", javac.superName, bytecode.superName, failures);
+        compare(name + ": interfaces", javac.interfaces, bytecode.interfaces, failures);
+        compare(name + ": fields", describe(javac.fields), describe(bytecode.fields), failures);
+        compare(name + ": methods", describe(javac.methods), describe(bytecode.methods), failures);
+    }
+
+    /**
+     * Describes every member of <tt>%members%</tt> by its access flags, name, descriptor and thrown exceptions.
+     * Exceptions of bridge methods are omitted: compiler takes them from one of overridden methods depending on
+     * whether supertypes are read from sources or class files, and they are never checked.
+     *
+     * @param members fields or methods of class
+     * @return descriptions, ordered
+     * @since 0.2.0
+     */
+    private static Set<String> describe(List<ClassFileModel.Member> members) {
+        Set<String> result = new TreeSet<>();
+        for (ClassFileModel.Member member : members) {
+            boolean bridge = member.descriptor.startsWith("(") && (member.access & ClassFileModel.ACC_BRIDGE) != 0;
+            result.add(Integer.toHexString(member.access) + " " + member.name + member.descriptor
+                    + (member.exceptions.isEmpty() || bridge ? "" : " throws " + member.exceptions));
+        }
+        return result;
+    }
+
+    /**
+     * Loads implementation of <tt>%token%</tt> from <tt>%jar%</tt> and invokes its declared constructors and
+     * methods with default values of parameters. Implementation is loaded together with its own unsigned copy of
+     * <tt>%token%</tt> and types it refers to, so it shares runtime package with them.
+     *
+     * @param jar <tt>.jar</tt> file containing implementation
+     * @param token implemented type
+     * @return results of invocations mapped by constructors and methods
+     * @throws IOException when unable to close loader
+     * @since 0.2.0
+     */
+    private static Map<String, String> run(Path jar, Class<?> token) throws IOException {
+        Map<String, String> results = new TreeMap<>();
+        String name = token.getName() + "Impl";
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toUri().toURL()},
+                ClassLoader.getSystemClassLoader().getParent()) {
+            @Override
+            protected Class<?> findClass(String className) throws ClassNotFoundException {
+                try {
+                    return super.findClass(className);
+                } catch (ClassNotFoundException e) {
+                    InputStream in = token.getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class");
+                    if (in == null) throw e;
+                    try {
+                        byte[] bytes = readAll(in);
+                        return defineClass(className, bytes, 0, bytes.length);
+                    } catch (IOException ioException) {
+                        throw new ClassNotFoundException(className, ioException);
+                    }
+                }
+            }
+        }) {
+            Class<?> implementation;
+            try {
+                implementation = Class.forName(name, true, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                results.put(name, "not loaded: " + e);
+                return results;
+            }
+            Object instance = null;
+            Constructor<?>[] constructors = implementation.getDeclaredConstructors();
+            Arrays.sort(constructors, (a, b) -> a.toString().compareTo(b.toString()));
+            for (Constructor<?> constructor : constructors) {
+                constructor.setAccessible(true);
+                Object created = invoke(constructor, null, results);
+                if (instance == null) instance = created;
+            }
+            for (Method method : implementation.getDeclaredMethods()) {
+                if (method.isSynthetic()) continue;
+                method.setAccessible(true);
+                if (instance != null || Modifier.isStatic(method.getModifiers())) {
+                    invoke(method, instance, results);
+                } else {
+                    results.put(method.toString(), "no instance");
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Reads all bytes of <tt>%in%</tt> and closes it.
+     *
+     * @param in stream to read
+     * @return bytes read
+     * @throws IOException when unable to read
+     * @since 0.2.0
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = input.read(buffer)) >= 0; ) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Invokes <tt>%executable%</tt> with default values of its parameters and records result in <tt>%results%</tt>
+     * under its description, which contains modifiers, return type and parameter types.
+     *
+     * @param executable constructor or method to invoke
+     * @param instance receiver of method, ignored for constructors
+     * @param results results to add to
+     * @return created instance or returned value, <tt>null</tt> if invocation failed
+     * @since 0.2.0
+     */
+    private static Object invoke(Executable executable, Object instance, Map<String, String> results) {
+        Class<?>[] parameterTypes = executable.getParameterTypes();
+        Object[] arguments = new Object[parameterTypes.length];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = getDefaultValue(parameterTypes[i]);
+        }
+        try {
+            Object result = executable instanceof Constructor
+                    ? ((Constructor<?>) executable).newInstance(arguments)
+                    : ((Method) executable).invoke(instance, arguments);
+            results.put(executable.toString(), executable instanceof Constructor ? "created"
+                    : "returned " + Arrays.deepToString(new Object[]{result}));
+            return result;
+        } catch (InvocationTargetException e) {
+            results.put(executable.toString(), "threw " + e.getCause().getClass().getName());
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            results.put(executable.toString(), "failed " + e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns default value of <tt>%type%</tt>: zero of primitive type, <tt>false</tt> or <tt>null</tt>.
+     *
+     * @param type type of value
+     * @return default value, boxed
+     * @since 0.2.0
+     */
+    private static Object getDefaultValue(Class<?> type) {
+        return type.isPrimitive() && type != void.class ? java.lang.reflect.Array.get(
+                java.lang.reflect.Array.newInstance(type, 1), 0) : null;
+    }
+
+    /**
+     * Adds failure to <tt>%failures%</tt> when <tt>%javac%</tt> and <tt>%bytecode%</tt> differ.
+     *
+     * @param what name of compared property
+     * @param javac property of result of {@link Implementor.Backend#JAVAC JAVAC}
+     * @param bytecode property of result of {@link Implementor.Backend#BYTECODE BYTECODE}
+     * @param failures failures to add to
+     * @since 0.2.0
+     */
+    private static void compare(String what, Object javac, Object bytecode, List<String> failures) {
+        if (Objects.equals(javac, bytecode)) return;
+        if (javac instanceof Map && bytecode instanceof Map) {
+            Map<?, ?> javacMap = (Map<?, ?>) javac;
+            Map<?, ?> bytecodeMap = (Map<?, ?>) bytecode;
+            Set<Object> keys = new TreeSet<>(javacMap.keySet());
+            keys.addAll(bytecodeMap.keySet());
+            for (Object key : keys) {
+                if (!Objects.equals(javacMap.get(key), bytecodeMap.get(key))) {
+                    failures.add(what + ": " + key + ": JAVAC " + javacMap.get(key)
+                            + ", BYTECODE " + bytecodeMap.get(key));
+                }
+            }
+            return;
+        }
+        if (javac instanceof Set && bytecode instanceof Set) {
+            Set<Object> missing = new TreeSet<>((Set<?>) javac);
+            missing.removeAll((Set<?>) bytecode);
+            Set<Object> extra = new TreeSet<>((Set<?>) bytecode);
+            extra.removeAll((Set<?>) javac);
+            failures.add(what + ": missing in BYTECODE " + missing + ", missing in JAVAC " + extra);
+            return;
+        }
+        failures.add(what + ": JAVAC " + javac + ", BYTECODE " + bytecode);
+    }
+}
@@ -0,0 +1,29 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+/**
+ * Interface with primitive parameters and results whose calls are measured by {@link HandlerBenchmark}.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ */
+public interface PrimitiveService {
+    /**
+     * Adds two numbers.
+     *
+     * @param left first number
+     * @param right second number
+     * @return sum
+     * @since 0.2.0
+     */
+    long add(long left, long right);
+
+    /**
+     * Multiplies <tt>%value%</tt> by <tt>%factor%</tt>.
+     *
+     * @param value number to scale
+     * @param factor multiplier
+     * @return product
+     * @since 0.2.0
+     */
+    double scale(double value, int factor);
+}
@@ -0,0 +1,232 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Scaling regression suite of {@link Implementor}. Every dimension of {@link SyntheticTypes} shape is grown
+ * geometrically while others keep base values, and time and allocations of <tt>implement</tt> and
+ * <tt>implementJar</tt> are measured by {@link ImplementorBenchmark} at every step. Suite fails when either of them
+ * grows superlinearly in the dimension or exceeds stored baseline.
+ * <p>
+ * Growth is estimated as exponent of power law fitted by least squares to all steps of dimension: <tt>1</tt> means
+ * linear growth, values close to <tt>0</tt> mean that dimension barely affects cost. Suite fails when exponent
+ * exceeds <tt>limit</tt>. Baseline is tab separated table of <tt>phase</tt>, <tt>dimension</tt>, <tt>value</tt>,
+ * <tt>ns/op</tt> and <tt>bytes/op</tt> columns, written by the suite itself with <tt>record</tt> option. Time is
+ * machine dependent, so baseline should be recorded on the machine which runs the suite.
+ * <p>
+ * Arguments are {@link BenchOptions options} of form <code>/ %key%=%value%[,%value%...] /</code>. Keys
+ * <tt>methods</tt>, <tt>overloads</tt>, <tt>depth</tt>, <tt>width</tt>, <tt>parameters</tt> and <tt>nested</tt> replace
+ * steps of dimension, key <tt>unicode</tt> makes all identifiers non-ASCII. Keys <tt>phases</tt>, <tt>warmup</tt>,
+ * <tt>iterations</tt> and <tt>time</tt> mean the same as for {@link ImplementorBenchmark}. Key <tt>limit</tt> sets
+ * maximum exponent, <tt>baseline</tt> names baseline to compare with, <tt>tolerance</tt> sets allowed ratio of result
+ * to baseline and <tt>record</tt> names file to store results as new baseline. Process exits with status <tt>1</tt> on
+ * failure, so the suite can fail a build.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see SyntheticTypes
+ */
+public class ScalingSuite {
+    /**
+     * Names of dimensions of shape, in order of arguments of
+     * {@link SyntheticTypes#SyntheticTypes(int, int, int, int, int, int, boolean, Path) SyntheticTypes}.
+     *
+     * @since 0.2.0
+     */
+    private static final String[] dimensions = {"methods", "overloads", "depth", "width", "parameters", "nested"};
+
+    /**
+     * Values dimensions have while other dimension grows, in order of {@link #dimensions}.
+     *
+     * @since 0.2.0
+     */
+    private static final int[] baseShape = {100, 1, 2, 1, 1, 1};
+
+    /**
+     * Utility class, not instantiable.
+     *
+     * @since 0.2.0
+     */
+    private ScalingSuite() {
+    }
+
+    /**
+     * Runs suite with parameters described in {@link ScalingSuite class documentation}.
+     *
+     * @param args parameters of suite
+     * @throws Exception when any benchmark fails to run
+     * @since 0.2.0
+     */
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(ScalingSuite.class)
+                .define("methods", "100", "200", "400", "800")
+                .define("overloads", "1", "4", "16", "64")
+                .define("depth", "2", "8", "32", "128")
+                .define("width", "1", "2", "4", "8")
+                .define("parameters", "1", "4", "16", "64")
+                .define("nested", "1", "8", "32", "128")
+                .define("unicode", "false")
+                .define("phases", "implement", "jar-javac")
+                .define("warmup", "2")
+                .define("iterations", "3")
+                .define("time", "200")
+                .define("limit", "1.25")
+                .define("tolerance", "1.5")
+                .define("baseline")
+                .define("record")
+                .parse(args);
+        int warmup = options.getInt("warmup");
+        int iterations = options.getInt("iterations");
+        long time = options.getLong("time") * 1_000_000L;
+        double limit = options.getDouble("limit");
+        double tolerance = options.getDouble("tolerance");
+        boolean unicode = options.getBoolean("unicode");
+        int[][] dimensionSteps = new int[dimensions.length][];
+        for (int dimension = 0; dimension < dimensions.length; dimension++) {
+            dimensionSteps[dimension] = options.getInts(dimensions[dimension]);
+        }
+        Map<String, double[]> baseline = options.has("baseline")
+                ? readBaseline(Paths.get(options.get("baseline"))) : new HashMap<>();
+
+        Path directory = Files.createTempDirectory("implementor-scaling");
+        ImplementorBenchmark benchmark = new ImplementorBenchmark(directory);
+        List<String> results = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        System.out.println("phase\tdimension\tvalue\tns/op\terror\tbytes/op");
+        int index = 0;
+        try {
+            for (int dimension = 0; dimension < dimensions.length; dimension++) {
+                int[] steps = dimensionSteps[dimension];
+                Map<String, List<ImplementorBenchmark.Measurement>> measurements = new LinkedHashMap<>();
+                for (int step : steps) {
+                    int[] shape = baseShape.clone();
+                    shape[dimension] = step;
+                    SyntheticTypes types = new SyntheticTypes(shape[0], shape[1], shape[2], shape[3], shape[4],
+                            shape[5], unicode, Files.createDirectories(directory.resolve("types" + index++)));
+                    for (String phase : options.getAll("phases")) {
+                        ImplementorBenchmark.Measurement measurement =
+                                benchmark.measure(phase, types, warmup, iterations, time);
+                        measurements.computeIfAbsent(phase, name -> new ArrayList<>()).add(measurement);
+                        String key = phase + "\t" + dimensions[dimension] + "\t" + step;
+                        System.out.println(key + "\t" + measurement);
+                        results.add(key + "\t" + Math.round(measurement.time) + "\t" + measurement.bytes);
+                        double[] expected = baseline.get(key);
+                        if (expected != null && measurement.time > expected[0] * tolerance) {
+                            failures.add(key.replace('\t', ' ') + ": " + Math.round(measurement.time)
+                                    + " ns/op exceeds baseline " + Math.round(expected[0]));
+                        }
+                        if (expected != null && measurement.bytes > expected[1] * tolerance) {
+                            failures.add(key.replace('\t', ' ') + ": " + measurement.bytes
+                                    + " bytes/op exceeds baseline " + Math.round(expected[1]));
+                        }
+                    }
+                }
+                for (Map.Entry<String, List<ImplementorBenchmark.Measurement>> entry : measurements.entrySet()) {
+                    double[] values = new double[steps.length];
+                    double[] times = new double[steps.length];
+                    double[] bytes = new double[steps.length];
+                    for (int i = 0; i < steps.length; i++) {
+                        values[i] = steps[i];
+                        times[i] = entry.getValue().get(i).time;
+                        bytes[i] = entry.getValue().get(i).bytes;
+                    }
+                    String name = entry.getKey() + " " + dimensions[dimension];
+                    check(name + " time", getExponent(values, times), limit, failures);
+                    check(name + " allocation", getExponent(values, bytes), limit, failures);
+                }
+            }
+        } finally {
+            ImplementorBenchmark.delete(directory);
+        }
+        if (options.has("record")) {
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(options.get("record")),
+                    StandardCharsets.UTF_8)) {
+                writer.write("phase\tdimension\tvalue\tns/op\tbytes/op\n");
+                for (String result : results) {
+                    writer.write(result + "\n");
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                System.out.println("FAILED " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    /**
+     * Prints growth exponent of <tt>%name%</tt> and adds failure if it exceeds <tt>%limit%</tt>.
+     *
+     * @param name measured value and dimension
+     * @param exponent fitted exponent
+     * @param limit maximum allowed exponent
+     * @param failures failures to add to
+     * @since 0.2.0
+     */
+    private static void check(String name, double exponent, double limit, List<String> failures) {
+        System.out.println(String.format(Locale.ROOT, "%s grows as n^%.2f", name, exponent));
+        if (exponent > limit) {
+            failures.add(String.format(Locale.ROOT, "%s grows superlinearly: n^%.2f exceeds n^%.2f", name, exponent,
+                    limit));
+        }
+    }
+
+    /**
+     * Fits power law <tt>y = c * x^k</tt> to points by least squares in logarithmic scale.
+     *
+     * @param x values of dimension, positive
+     * @param y measured values
+     * @return exponent <tt>k</tt>, zero if there are less than two distinct values of dimension
+     * @since 0.2.0
+     */
+    static double getExponent(double[] x, double[] y) {
+        int n = x.length;
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < n; i++) {
+            meanX += Math.log(x[i]) / n;
+            meanY += Math.log(Math.max(y[i], 1)) / n;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = Math.log(x[i]) - meanX;
+            covariance += dx * (Math.log(Math.max(y[i], 1)) - meanY);
+            variance += dx * dx;
+        }
+        return variance == 0 ? 0 : covariance / variance;
+    }
+
+    /**
+     * Reads baseline recorded by previous run.
+     *
+     * @param file baseline file
+     * @return time and allocated bytes mapped by phase, dimension and value separated by tabs
+     * @throws IOException when unable to read baseline
+     * @since 0.2.0
+     */
+    private static Map<String, double[]> readBaseline(Path file) throws IOException {
+        Map<String, double[]> baseline = new HashMap<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            String[] columns = line.split("\t");
+            if (columns.length != 5) continue;
+            baseline.put(columns[0] + "\t" + columns[1] + "\t" + columns[2],
+                    new double[]{Double.parseDouble(columns[3]), Double.parseDouble(columns[4])});
+        }
+        return baseline;
+    }
+}
@@ -0,0 +1,151 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Benchmark of startup of command line {@link Implementor}. Every command is run as separate short-lived process,
+ * the way build pipelines run it, with and without application class data sharing archive created the same way
+ * <tt>bin/implementor.sh</tt> creates it: for copy of jar without manifest, whose <tt>Class-Path</tt> contains
+ * directory AppCDS refuses, with libraries listed explicitly. Wall time of whole process is measured.
+ * <p>
+ * Arguments are {@link BenchOptions options} of form <code>/ %key%=%value% /</code>. Key <tt>jar</tt> names
+ * <tt>Implementor.jar</tt> to run, key <tt>class</tt> names type to implement, keys <tt>warmup</tt> and <tt>runs</tt>
+ * set count of ignored and measured launches of every command. Results are printed as tab separated table of mean time
+ * and its standard error in milliseconds.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ */
+public class StartupBenchmark {
+    /**
+     * Utility class, not instantiable.
+     *
+     * @since 0.2.0
+     */
+    private StartupBenchmark() {
+    }
+
+    /**
+     * Runs benchmark with parameters described in {@link StartupBenchmark class documentation}.
+     *
+     * @param args parameters of benchmark
+     * @throws Exception when launched process fails
+     * @since 0.2.0
+     */
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(StartupBenchmark.class)
+                .define("jar", "out/artifacts/Implementor/Implementor.jar")
+                .define("class", "info.kgeorgiy.java.advanced.implementor.Impler")
+                .define("warmup", "2")
+                .define("runs", "10")
+                .parse(args);
+        String jar = Paths.get(options.get("jar")).toAbsolutePath().toString();
+        String token = options.get("class");
+        int warmup = options.getInt("warmup");
+        int runs = options.getInt("runs");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        Path directory = Files.createTempDirectory("implementor-startup");
+        try {
+            Path archive = directory.resolve("implementor.jsa");
+            Path classes = copyWithoutManifest(Paths.get(jar), directory.resolve("implementor.classes.jar"));
+            Path home = Paths.get(jar).getParent();
+            String classPath = classes + File.pathSeparator + home.resolve("lib") + File.separator + "*";
+            String main = Implementor.class.getName();
+            run(directory, java, "-XX:ArchiveClassesAtExit=" + archive, "-cp", classPath, main,
+                    "-jar", "info.kgeorgiy.java.advanced.implementor.JarImpler",
+                    directory.resolve("training.jar").toString());
+            Map<String, List<String>> launchers = new LinkedHashMap<>();
+            launchers.put("default", Arrays.asList(java, "-jar", jar));
+            if (Files.exists(archive)) {
+                launchers.put("cds", Arrays.asList(java, "-XX:SharedArchiveFile=" + archive, "-Xshare:auto",
+                        "-cp", classPath + File.pathSeparator + home, main));
+            } else {
+                System.err.println("Unable to create class data sharing archive, only default launcher is measured");
+            }
+            Map<String, List<String>> commands = new LinkedHashMap<>();
+            commands.put("source", Arrays.asList(token));
+            commands.put("jar", Arrays.asList("-jar", token, directory.resolve("output.jar").toString()));
+
+            System.out.println("command\tlauncher\tms\terror");
+            for (Map.Entry<String, List<String>> command : commands.entrySet()) {
+                for (Map.Entry<String, List<String>> launcher : launchers.entrySet()) {
+                    List<String> line = new ArrayList<>(launcher.getValue());
+                    line.addAll(command.getValue());
+                    double[] times = new double[runs];
+                    for (int i = -warmup; i < runs; i++) {
+                        long start = System.nanoTime();
+                        run(directory, line.toArray(new String[0]));
+                        if (i >= 0) times[i] = (System.nanoTime() - start) / 1e6;
+                    }
+                    double mean = Arrays.stream(times).average().orElse(0);
+                    double variance = Arrays.stream(times).map(x -> (x - mean) * (x - mean)).sum()
+                            / Math.max(1, runs - 1);
+                    System.out.println(String.format(Locale.ROOT, "%s\t%s\t%.1f\t%.1f", command.getKey(),
+                            launcher.getKey(), mean, Math.sqrt(variance / Math.max(1, runs))));
+                }
+            }
+        } finally {
+            ImplementorBenchmark.delete(directory);
+        }
+    }
+
+    /**
+     * Copies all entries of <tt>%jar%</tt> but its manifest to <tt>%target%</tt>.
+     *
+     * @param jar <tt>.jar</tt> file to copy
+     * @param target file to write copy to
+     * @return <tt>%target%</tt>
+     * @throws IOException when unable to read or write files
+     * @since 0.2.0
+     */
+    private static Path copyWithoutManifest(Path jar, Path target) throws IOException {
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(jar));
+             ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(target))) {
+            byte[] buffer = new byte[8192];
+            for (ZipEntry entry; (entry = in.getNextEntry()) != null; ) {
+                if (entry.getName().equalsIgnoreCase("META-INF/MANIFEST.MF")) continue;
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                for (int read; (read = in.read(buffer)) >= 0; ) {
+                    out.write(buffer, 0, read);
+                }
+                out.closeEntry();
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Runs process with command line <tt>%command%</tt> in <tt>%directory%</tt> and waits for it, discarding its
+     * output.
+     *
+     * @param directory working directory of process
+     * @param command command line
+     * @throws IOException when process cannot be started or exits with non-zero status
+     * @throws InterruptedException when interrupted while waiting for process
+     * @since 0.2.0
+     */
+    private static void run(Path directory, String... command) throws IOException, InterruptedException {
+        File output = directory.resolve("output.txt").toFile();
+        Process process = new ProcessBuilder(command).directory(directory.toFile())
+                .redirectErrorStream(true).redirectOutput(output).start();
+        int status = process.waitFor();
+        if (status != 0) {
+            throw new IOException("Process exited with status " + status + ": "
+                    + new String(Files.readAllBytes(output.toPath())));
+        }
+    }
+}
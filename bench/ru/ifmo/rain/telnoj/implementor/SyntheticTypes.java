@@ -0,0 +1,292 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generator of synthetic interfaces used by benchmarks. Shape of interfaces is defined by seven parameters: total
+ * count of abstract methods, count of overloads sharing every method name, depth of interface hierarchy, its width,
+ * length of parameter lists, count of nested member interfaces and usage of non-ASCII identifiers. Interfaces are
+ * compiled once into a directory, so implementations of them can be compiled against it, and can be
+ * {@link #load() loaded} by fresh class loader as many times as required, giving classes which were never seen by
+ * caches of {@link Implementor}.
+ * <p>
+ * Every level of hierarchy except the last one consists of <tt>width</tt> interfaces, each extending all interfaces
+ * of previous level and declaring the same methods, so wide hierarchies are chains of diamonds in which every method
+ * is inherited through several paths. The last level is single interface, which is implemented.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see ImplementorBenchmark
+ */
+final class SyntheticTypes {
+    /**
+     * Package all synthetic interfaces are declared in.
+     *
+     * @since 0.2.0
+     */
+    private static final String packageName = "synthetic";
+
+    /**
+     * Types used as parameters of generated methods. Overloads of one method differ in these types and their count.
+     *
+     * @since 0.2.0
+     */
+    private static final String[] parameterTypes = {
+            "int", "long", "double", "boolean", "char", "String", "Object", "java.util.List<String>", "int[]",
+            "String[]"
+    };
+
+    /**
+     * Types returned by generated methods.
+     *
+     * @since 0.2.0
+     */
+    private static final String[] returnTypes = {"void", "int", "String", "java.util.List<String>", "double[]"};
+
+    /**
+     * Russian words for "interface", "method" and "nested" used as prefixes of names when non-ASCII identifiers are
+     * requested. Written as escapes, so sources compile whatever default encoding is.
+     *
+     * @since 0.2.0
+     */
+    private static final String unicodeInterface = "\u0418\u043d\u0442\u0435\u0440\u0444\u0435\u0439\u0441",
+            unicodeMethod = "\u043c\u0435\u0442\u043e\u0434",
+            unicodeNested = "\u0412\u043b\u043e\u0436\u0435\u043d\u043d\u044b\u0439";
+
+    /**
+     * Total count of abstract methods.
+     *
+     * @since 0.2.0
+     */
+    final int methods;
+
+    /**
+     * Count of overloads of every method name.
+     *
+     * @since 0.2.0
+     */
+    final int overloads;
+
+    /**
+     * Count of levels of hierarchy, the last one extends all others.
+     *
+     * @since 0.2.0
+     */
+    final int depth;
+
+    /**
+     * Count of interfaces on every level of hierarchy except the last one.
+     *
+     * @since 0.2.0
+     */
+    final int width;
+
+    /**
+     * Count of parameters of the first overload of every method name, further overloads have more of them.
+     *
+     * @since 0.2.0
+     */
+    final int parameters;
+
+    /**
+     * Count of member interfaces of the most derived interface.
+     *
+     * @since 0.2.0
+     */
+    final int nested;
+
+    /**
+     * Whether names of interfaces and methods contain non-ASCII characters.
+     *
+     * @since 0.2.0
+     */
+    final boolean unicode;
+
+    /**
+     * Directory containing compiled interfaces.
+     *
+     * @since 0.2.0
+     */
+    private final Path classes;
+
+    /**
+     * Binary name of the most derived interface.
+     *
+     * @since 0.2.0
+     */
+    private final String leafName;
+
+    /**
+     * Generates and compiles chain of interfaces of given shape into <tt>%directory%</tt>.
+     *
+     * @param methods total count of abstract methods, spread evenly over hierarchy
+     * @param overloads count of overloads of every method name
+     * @param depth count of interfaces in hierarchy
+     * @param unicode whether identifiers contain non-ASCII characters
+     * @param directory directory to write class files to
+     * @throws IOException when unable to compile or write interfaces
+     * @since 0.2.0
+     */
+    SyntheticTypes(int methods, int overloads, int depth, boolean unicode, Path directory) throws IOException {
+        this(methods, overloads, depth, 1, 1, 0, unicode, directory);
+    }
+
+    /**
+     * Generates and compiles interfaces of given shape into <tt>%directory%</tt>.
+     *
+     * @param methods count of distinct abstract methods, spread evenly over levels of hierarchy
+     * @param overloads count of overloads of every method name
+     * @param depth count of levels of hierarchy
+     * @param width count of interfaces on every level but the last one
+     * @param parameters count of parameters of the first overload of every method name
+     * @param nested count of member interfaces of the most derived interface
+     * @param unicode whether identifiers contain non-ASCII characters
+     * @param directory directory to write class files to
+     * @throws IOException when unable to compile or write interfaces
+     * @since 0.2.0
+     */
+    SyntheticTypes(int methods, int overloads, int depth, int width, int parameters, int nested, boolean unicode,
+                   Path directory) throws IOException {
+        if (methods < 0 || overloads < 1 || depth < 1 || width < 1 || parameters < 0 || nested < 0) {
+            throw new IllegalArgumentException("Invalid shape");
+        }
+        this.methods = methods;
+        this.overloads = overloads;
+        this.depth = depth;
+        this.width = width;
+        this.parameters = parameters;
+        this.nested = nested;
+        this.unicode = unicode;
+        this.classes = directory;
+        String prefix = (unicode ? unicodeInterface : "Api") + methods + "x" + overloads + "d" + depth + "w" + width
+                + "p" + parameters + "n" + nested + "L";
+        List<JavaFileObject> files = new ArrayList<>();
+        for (int level = 0; level < depth; level++) {
+            for (int branch = 0; branch < getWidth(level); branch++) {
+                String name = getName(prefix, level, branch);
+                files.add(MemoryFileManager.source(packageName + "." + name, source(prefix, level, branch)));
+            }
+        }
+        leafName = packageName + "." + getName(prefix, depth - 1, 0);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) throw new IOException("Java compiler is not available");
+        try (MemoryFileManager fileManager = new MemoryFileManager(
+                compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8))) {
+            List<String> options = Collections.singletonList("-nowarn");
+            if (!compiler.getTask(null, fileManager, null, options, null, files).call()) {
+                throw new IOException("Unable to compile synthetic interfaces");
+            }
+            for (Map.Entry<String, byte[]> entry : fileManager.getClasses().entrySet()) {
+                Path file = directory.resolve(entry.getKey().replace('.', '/') + ".class");
+                Files.createDirectories(file.getParent());
+                Files.write(file, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns count of interfaces at <tt>%level%</tt> of hierarchy.
+     *
+     * @param level index of level, zero for root
+     * @return {@link #width width} for all levels but the last one, one for the last
+     * @since 0.2.0
+     */
+    private int getWidth(int level) {
+        return level == depth - 1 ? 1 : width;
+    }
+
+    /**
+     * Returns simple name of interface at <tt>%branch%</tt> of <tt>%level%</tt> of hierarchy.
+     *
+     * @param prefix name of interface without level number
+     * @param level index of level, zero for root
+     * @param branch index of interface inside level
+     * @return simple name of interface
+     * @since 0.2.0
+     */
+    private String getName(String prefix, int level, int branch) {
+        return getWidth(level) == 1 ? prefix + level : prefix + level + "B" + branch;
+    }
+
+    /**
+     * Returns source code of interface at <tt>%branch%</tt> of <tt>%level%</tt> of hierarchy.
+     *
+     * @param prefix name of interface without level number
+     * @param level index of level, zero for root
+     * @param branch index of interface inside level
+     * @return source code of interface
+     * @since 0.2.0
+     */
+    private String source(String prefix, int level, int branch) {
+        StringBuilder code = new StringBuilder("package ").append(packageName).append(";\n\n");
+        code.append("public interface ").append(getName(prefix, level, branch));
+        if (level > 0) {
+            for (int parent = 0; parent < getWidth(level - 1); parent++) {
+                code.append(parent == 0 ? " extends " : ", ").append(getName(prefix, level - 1, parent));
+            }
+        }
+        code.append(" {\n");
+        int from = methods * level / depth;
+        int to = methods * (level + 1) / depth;
+        for (int i = from; i < to; i++) {
+            int overload = i % overloads;
+            code.append("    ").append(returnTypes[i % returnTypes.length]).append(' ')
+                    .append(unicode ? unicodeMethod : "method").append(i / overloads).append('(');
+            int count = overload / parameterTypes.length + parameters;
+            for (int j = 0; j < count; j++) {
+                if (j > 0) code.append(", ");
+                code.append(parameterTypes[overload % parameterTypes.length]).append(" p").append(j);
+            }
+            code.append(") throws Exception;\n");
+        }
+        if (level == depth - 1) {
+            for (int i = 0; i < nested; i++) {
+                String name = (unicode ? unicodeNested : "Nested") + i;
+                code.append("\n    interface ").append(name).append(" {\n        int ")
+                        .append(unicode ? unicodeMethod : "method").append("(int p0) throws Exception;\n    }\n");
+            }
+        }
+        return code.append("}\n").toString();
+    }
+
+    /**
+     * Loads the most derived interface by new class loader. Every call returns distinct class.
+     *
+     * @return loaded interface
+     * @throws ClassNotFoundException when class files were removed
+     * @since 0.2.0
+     */
+    Class<?> load() throws ClassNotFoundException {
+        try {
+            URLClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()},
+                    SyntheticTypes.class.getClassLoader());
+            return Class.forName(leafName, false, loader);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(leafName, e);
+        }
+    }
+
+    /**
+     * Returns short description of shape of interfaces.
+     *
+     * @return parameters separated by tabs
+     * @since 0.2.0
+     */
+    @Override
+    public String toString() {
+        return methods + "\t" + overloads + "\t" + depth + "\t" + width + "\t" + parameters + "\t" + nested + "\t"
+                + unicode;
+    }
+}
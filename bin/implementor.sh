@@ -0,0 +1,57 @@
+#!/bin/sh
+# Runs Implementor.jar with application class data sharing archive of classes loaded by implementor, Java compiler
+# and JarImpler interfaces, so short runs skip most of class loading and verification.
+#
+# Archive is created next to the jar by training run implementing JarImpler with -jar mode, on first launch and
+# whenever the jar is newer than archive. JVMs without dynamic archives (before JDK 13) run without it.
+#
+# AppCDS refuses class paths containing non-empty directories, and "." of Class-Path attribute of the jar manifest is
+# one of them even when the jar is given by -cp. So archived runs use copy of the jar without manifest, created next
+# to the archive, and list libraries themselves. Directory of the jar is appended after archived entries, where
+# AppCDS allows it, so types next to the jar are found as with java -jar.
+#
+# Usage: implementor.sh %arguments% - arguments are passed to Implementor unchanged.
+# Environment: IMPLEMENTOR_JAR - path to Implementor.jar, default is IntelliJ artifact of the project;
+#              IMPLEMENTOR_CDS - path to archive, default is jar path with .jsa extension;
+#              JAVA_HOME - JDK to run, default is java and jar found on PATH.
+
+dir=$(cd "$(dirname "$0")/.." && pwd)
+jar=${IMPLEMENTOR_JAR:-$dir/out/artifacts/Implementor/Implementor.jar}
+archive=${IMPLEMENTOR_CDS:-${jar%.jar}.jsa}
+java=${JAVA_HOME:+$JAVA_HOME/bin/}java
+jartool=${JAVA_HOME:+$JAVA_HOME/bin/}jar
+main=ru.ifmo.rain.telnoj.implementor.Implementor
+
+if [ ! -f "$jar" ]; then
+    echo "Implementor jar not found: $jar" >&2
+    exit 2
+fi
+home=$(cd "$(dirname "$jar")" && pwd)
+jar=$home/$(basename "$jar")
+classes=${archive%.jsa}.classes.jar
+classpath="$classes:$home/lib/*"
+
+# marker left by failed training, so JVMs without dynamic archives do not retry on every launch
+unsupported="$archive.unsupported"
+if { [ ! -f "$archive" ] || [ "$jar" -nt "$archive" ]; } && { [ ! -f "$unsupported" ] || [ "$jar" -nt "$unsupported" ]; }; then
+    training=$(mktemp -d)
+    # archive and copy of jar are written to temporary files first, so concurrent launches never see partial ones
+    if mkdir "$training/classes" && (cd "$training/classes" && "$jartool" xf "$jar") \
+            && rm -f "$training/classes/META-INF/MANIFEST.MF" \
+            && "$jartool" cfM "$training/classes.jar" -C "$training/classes" . \
+            && mv -f "$training/classes.jar" "$classes" \
+            && "$java" -XX:ArchiveClassesAtExit="$training/implementor.jsa" -cp "$classpath" "$main" \
+            -jar info.kgeorgiy.java.advanced.implementor.JarImpler "$training/training.jar" >/dev/null 2>&1 \
+            && [ -f "$training/implementor.jsa" ]; then
+        mv -f "$training/implementor.jsa" "$archive"
+        rm -f "$unsupported"
+    else
+        touch "$unsupported"
+    fi
+    rm -rf "$training"
+fi
+
+if [ -f "$archive" ] && [ -f "$classes" ]; then
+    exec "$java" -XX:SharedArchiveFile="$archive" -Xshare:auto -cp "$classpath:$home" "$main" "$@"
+fi
+exec "$java" -jar "$jar" "$@"
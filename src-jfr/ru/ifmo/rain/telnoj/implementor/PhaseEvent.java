@@ -0,0 +1,102 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.Collection;
+
+/**
+ * Flight recorder event emitted for every phase of {@link Implementor} measured by {@link ImplementorMetrics}. Flight
+ * recorder API appeared in JDK 11, so this class is in separate source root compiled for it, and
+ * {@link ImplementorMetrics} finds its {@link Recorder} reflectively. Sources of {@link Implementor} stay compatible
+ * with Java 8, and run without events where this class or flight recorder is missing.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ */
+@Name("ru.ifmo.rain.telnoj.implementor.Phase")
+@Label("Implementor Phase")
+@Category("Implementor")
+@Description("Phase of generation of implementations")
+@StackTrace(false)
+final class PhaseEvent extends Event {
+    /**
+     * Name of phase.
+     *
+     * @since 0.2.0
+     */
+    @Label("Phase")
+    String phase;
+
+    /**
+     * Names of tokens phase was run for.
+     *
+     * @since 0.2.0
+     */
+    @Label("Tokens")
+    String tokens;
+
+    /**
+     * Whether phase completed without failure.
+     *
+     * @since 0.2.0
+     */
+    @Label("Succeeded")
+    boolean succeeded;
+
+    /**
+     * Recorder creating events of this class, loaded by {@link ImplementorMetrics} by name.
+     *
+     * @since 0.2.0
+     */
+    static final class Recorder implements ImplementorMetrics.PhaseRecorder {
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public boolean isRunning() {
+            return FlightRecorder.isInitialized();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public Object start() {
+            PhaseEvent event = new PhaseEvent();
+            event.begin();
+            return event;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public void finish(Object event, String phase, Collection<?> tokens, boolean succeeded) {
+            PhaseEvent phaseEvent = (PhaseEvent) event;
+            phaseEvent.end();
+            if (phaseEvent.shouldCommit()) {
+                StringBuilder names = new StringBuilder();
+                for (Object token : tokens) {
+                    if (names.length() > 0) names.append(", ");
+                    names.append(token instanceof Class ? ((Class<?>) token).getName() : token);
+                }
+                phaseEvent.phase = phase;
+                phaseEvent.tokens = names.toString();
+                phaseEvent.succeeded = succeeded;
+                phaseEvent.commit();
+            }
+        }
+    }
+}
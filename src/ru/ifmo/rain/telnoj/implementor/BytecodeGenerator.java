@@ -0,0 +1,322 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import info.kgeorgiy.java.advanced.implementor.ImplerException;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static ru.ifmo.rain.telnoj.implementor.ClassFileWriter.*;
+
+/**
+ * Generates <tt>.class</tt> files of implementations directly, without producing source code and running compiler.
+ * Uses the same reflection model as {@link Implementor}: the same fields, constructors, {@link MethodTables methods}
+ * and nested classes are implemented, methods return default values of their types and constructors pass all their
+ * arguments to <code>super</code>. Bridge methods are generated where compiler would generate them: for every
+ * overridden method whose erased signature differs from the one of implementing method.
+ * <p>
+ * Unlike compiled source, fields are not initialised explicitly, because default values assigned by JVM are exactly
+ * the values generated source would assign, and nested implementations are emitted as separate classes without
+ * <tt>InnerClasses</tt> attribute.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor.Backend#BYTECODE
+ */
+final class BytecodeGenerator {
+    /**
+     * Utility class, not instantiable.
+     *
+     * @since 0.2.0
+     */
+    private BytecodeGenerator() {
+    }
+
+    /**
+     * Generates class files of implementation of <tt>%token%</tt> and implementations of its nested classes.
+     *
+     * @param token class to generate implementation for
+     * @param binaryName binary name of implementation
+     * @return map from binary class name to class file bytes
+     * @throws ImplerException when implementation cannot be generated
+     * @since 0.2.0
+     */
+    static Map<String, byte[]> generate(Class<?> token, String binaryName) throws ImplerException {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        generate(token, binaryName, classes);
+        return classes;
+    }
+
+    /**
+     * Generates class file of implementation of <tt>%token%</tt> and puts it into <tt>%classes%</tt> followed by
+     * implementations of nested classes.
+     *
+     * @param token class to generate implementation for
+     * @param binaryName binary name of implementation
+     * @param classes map to put generated classes to
+     * @throws ImplerException when implementation cannot be generated
+     * @since 0.2.0
+     */
+    private static void generate(Class<?> token, String binaryName, Map<String, byte[]> classes)
+            throws ImplerException {
+        String name = binaryName.replace('.', '/');
+        ClassFileWriter writer;
+        if (token.isInterface()) {
+            writer = new ClassFileWriter(token.getModifiers() & Modifier.PUBLIC, name, "java/lang/Object",
+                    internalName(token));
+        } else {
+            writer = new ClassFileWriter(token.getModifiers() & Modifier.PUBLIC, name, internalName(token));
+        }
+
+        Field[] fields = token.getFields();
+        for (int i = 0; i < fields.length; i++) {
+            writer.addField(fields[i].getModifiers() & Modifier.fieldModifiers(), "a" + i,
+                    descriptor(fields[i].getType()));
+        }
+
+        if (token.isInterface()) {
+            addConstructor(writer, token.getModifiers() & Modifier.PUBLIC, "java/lang/Object", new Class<?>[0],
+                    new Class<?>[0]);
+        } else {
+            boolean f = false;
+            for (Constructor<?> constructor : token.getConstructors()) {
+                addConstructor(writer, token, constructor);
+                f = true;
+            }
+            if (!f) {
+                for (Constructor<?> constructor : token.getDeclaredConstructors()) {
+                    if (!Modifier.isPrivate(constructor.getModifiers())) {
+                        addConstructor(writer, token, constructor);
+                        f = true;
+                    }
+                }
+            }
+            if (!f) throw new ImplerException("Cannot extend class with private constructors");
+        }
+
+        Set<String> signatures = new HashSet<>();
+        List<Method> methods = new ArrayList<>();
+        for (Method method : MethodTables.get(token)) {
+            int modifiers = method.getModifiers();
+            if (Modifier.isFinal(modifiers) || Modifier.isNative(modifiers)) continue;
+            String descriptor = descriptor(method.getParameterTypes(), method.getReturnType());
+            if (!signatures.add(method.getName() + descriptor)) continue;
+            addMethod(writer, method, descriptor);
+            methods.add(method);
+        }
+        Map<Method, List<Method>> bridged = MethodTables.getBridged(token);
+        for (Method method : methods) {
+            for (Method overridden : bridged.getOrDefault(method, Collections.emptyList())) {
+                String descriptor = descriptor(overridden.getParameterTypes(), overridden.getReturnType());
+                if (signatures.add(method.getName() + descriptor)) {
+                    addBridge(writer, name, method, overridden, descriptor);
+                }
+            }
+        }
+
+        classes.put(binaryName, writer.toByteArray());
+
+        for (Class<?> innerClass : token.getClasses()) {
+            if (!Modifier.isFinal(innerClass.getModifiers()) && !Modifier.isPrivate(innerClass.getModifiers())) {
+                generate(innerClass, binaryName + "$" + innerClass.getSimpleName() + "Impl", classes);
+            }
+        }
+    }
+
+    /**
+     * Adds constructor with the same signature as <tt>%constructor%</tt>, which calls it.
+     *
+     * @param writer writer of implementation class
+     * @param token class to generate implementation for
+     * @param constructor constructor of <tt>%token%</tt>
+     * @since 0.2.0
+     */
+    private static void addConstructor(ClassFileWriter writer, Class<?> token, Constructor<?> constructor) {
+        addConstructor(writer, constructor.getModifiers() & Modifier.constructorModifiers(), internalName(token),
+                constructor.getParameterTypes(), constructor.getExceptionTypes());
+    }
+
+    /**
+     * Adds constructor passing all its arguments to constructor of <tt>%superName%</tt>.
+     *
+     * @param writer writer of implementation class
+     * @param access access flags of constructor
+     * @param superName internal name of superclass
+     * @param parameterTypes parameter types of constructor
+     * @param exceptionTypes exception types thrown by constructor
+     * @since 0.2.0
+     */
+    private static void addConstructor(ClassFileWriter writer, int access, String superName,
+                                       Class<?>[] parameterTypes, Class<?>[] exceptionTypes) {
+        String descriptor = descriptor(parameterTypes, void.class);
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        code.write(ALOAD);
+        code.write(0);
+        int slots = 1;
+        for (Class<?> type : parameterTypes) {
+            load(code, type, slots);
+            slots += size(type);
+        }
+        int method = writer.methodRef(superName, false, "<init>", descriptor);
+        code.write(INVOKESPECIAL);
+        code.write(method >> 8);
+        code.write(method);
+        code.write(RETURN);
+        writer.addMethod(access, "<init>", descriptor, internalNames(exceptionTypes), code.toByteArray(),
+                slots, slots);
+    }
+
+    /**
+     * Adds method returning default value of its return type.
+     *
+     * @param writer writer of implementation class
+     * @param method method to implement
+     * @param descriptor descriptor of <tt>%method%</tt>
+     * @since 0.2.0
+     */
+    private static void addMethod(ClassFileWriter writer, Method method, String descriptor) {
+        int access = method.getModifiers() & Modifier.methodModifiers() & ~Modifier.ABSTRACT;
+        int slots = Modifier.isStatic(access) ? 0 : 1;
+        for (Class<?> type : method.getParameterTypes()) {
+            slots += size(type);
+        }
+        Class<?> returnType = method.getReturnType();
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        if (returnType == void.class) {
+            code.write(RETURN);
+        } else if (returnType == long.class) {
+            code.write(LCONST_0);
+            code.write(LRETURN);
+        } else if (returnType == float.class) {
+            code.write(FCONST_0);
+            code.write(FRETURN);
+        } else if (returnType == double.class) {
+            code.write(DCONST_0);
+            code.write(DRETURN);
+        } else if (returnType.isPrimitive()) {
+            code.write(ICONST_0);
+            code.write(IRETURN);
+        } else {
+            code.write(ACONST_NULL);
+            code.write(ARETURN);
+        }
+        writer.addMethod(access, method.getName(), descriptor, internalNames(method.getExceptionTypes()),
+                code.toByteArray(), size(returnType), slots);
+    }
+
+    /**
+     * Adds bridge method with erased signature and thrown exceptions of <tt>%overridden%</tt>, which casts its
+     * arguments to parameter types of <tt>%method%</tt> and calls it.
+     *
+     * @param writer writer of implementation class
+     * @param owner internal name of implementation class
+     * @param method implemented method
+     * @param overridden method overridden by <tt>%method%</tt> with different erased signature
+     * @param descriptor descriptor of <tt>%overridden%</tt>
+     * @since 0.2.0
+     */
+    private static void addBridge(ClassFileWriter writer, String owner, Method method, Method overridden,
+                                  String descriptor) {
+        int access = method.getModifiers() & (Modifier.PUBLIC | Modifier.PROTECTED) | ACC_BRIDGE | ACC_SYNTHETIC;
+        Class<?>[] parameterTypes = overridden.getParameterTypes();
+        Class<?>[] targetTypes = method.getParameterTypes();
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        code.write(ALOAD);
+        code.write(0);
+        int slots = 1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            load(code, parameterTypes[i], slots);
+            if (targetTypes[i] != parameterTypes[i]) {
+                int type = writer.classRef(internalName(targetTypes[i]));
+                code.write(CHECKCAST);
+                code.write(type >> 8);
+                code.write(type);
+            }
+            slots += size(parameterTypes[i]);
+        }
+        Class<?> returnType = method.getReturnType();
+        int target = writer.methodRef(owner, false, method.getName(), descriptor(targetTypes, returnType));
+        code.write(INVOKEVIRTUAL);
+        code.write(target >> 8);
+        code.write(target);
+        code.write(returnOpcode(returnType));
+        writer.addMethod(access, method.getName(), descriptor, internalNames(overridden.getExceptionTypes()),
+                code.toByteArray(), Math.max(slots, size(returnType)), slots);
+    }
+
+    /**
+     * Returns instruction returning value of <tt>%type%</tt>.
+     *
+     * @param type return type
+     * @return opcode of return instruction
+     * @since 0.2.0
+     */
+    private static int returnOpcode(Class<?> type) {
+        if (type == void.class) return RETURN;
+        if (type == long.class) return LRETURN;
+        if (type == float.class) return FRETURN;
+        if (type == double.class) return DRETURN;
+        return type.isPrimitive() ? IRETURN : ARETURN;
+    }
+
+    /**
+     * Writes instruction loading local variable of <tt>%type%</tt> from <tt>%slot%</tt>.
+     *
+     * @param code code of method
+     * @param type type of variable
+     * @param slot index of local variable
+     * @since 0.2.0
+     */
+    private static void load(ByteArrayOutputStream code, Class<?> type, int slot) {
+        int opcode = ALOAD;
+        if (type == long.class) opcode = LLOAD;
+        else if (type == float.class) opcode = FLOAD;
+        else if (type == double.class) opcode = DLOAD;
+        else if (type.isPrimitive()) opcode = ILOAD;
+        if (slot > 0xff) {
+            code.write(WIDE);
+            code.write(opcode);
+            code.write(slot >> 8);
+        } else {
+            code.write(opcode);
+        }
+        code.write(slot);
+    }
+
+    /**
+     * Returns count of stack or local variable slots taken by value of <tt>%type%</tt>.
+     *
+     * @param type value type
+     * @return 2 for <code>long</code> and <code>double</code>, 0 for <code>void</code>, 1 otherwise
+     * @since 0.2.0
+     */
+    private static int size(Class<?> type) {
+        if (type == long.class || type == double.class) return 2;
+        return type == void.class ? 0 : 1;
+    }
+
+    /**
+     * Returns internal names of all <tt>%types%</tt>.
+     *
+     * @param types classes
+     * @return array of internal names
+     * @since 0.2.0
+     */
+    private static String[] internalNames(Class<?>[] types) {
+        List<String> names = new ArrayList<>(types.length);
+        for (Class<?> type : types) {
+            names.add(internalName(type));
+        }
+        return names.toArray(new String[0]);
+    }
+}
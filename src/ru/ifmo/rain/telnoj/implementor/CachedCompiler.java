@@ -0,0 +1,173 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * System Java compiler with {@link StandardJavaFileManager} reused between compilations. Standard file manager keeps
+ * opened archives and indexes of class path entries, so reusing it saves reading of the same jars over and over.
+ * File managers are not thread safe, so every thread has one of its own. Class path of file manager is replaced only
+ * when it differs from class path of previous compilation made by the same thread, and opened archives are dropped
+ * when any of class path entries was modified since file manager last saw it, even under another class path, as
+ * file manager keeps archives opened for all class paths it was configured with.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#implementJar(java.util.Collection, java.nio.file.Path)
+ */
+final class CachedCompiler {
+    /**
+     * Options passed to every compilation: annotation processors are not searched for and run.
+     *
+     * @since 0.2.0
+     */
+    private static final List<String> options = Collections.singletonList("-proc:none");
+
+    /**
+     * File manager of current thread together with class path it is configured with.
+     *
+     * @since 0.2.0
+     */
+    private static final ThreadLocal<CachedCompiler> instances = new ThreadLocal<>();
+
+    /**
+     * System Java compiler.
+     *
+     * @since 0.2.0
+     */
+    private final JavaCompiler compiler;
+
+    /**
+     * File manager reused by all compilations of thread.
+     *
+     * @since 0.2.0
+     */
+    private final StandardJavaFileManager fileManager;
+
+    /**
+     * Class path file manager is configured with, <tt>null</tt> before first compilation.
+     *
+     * @since 0.2.0
+     */
+    private List<File> classPath;
+
+    /**
+     * Modification times and sizes of every class path entry file manager has seen since it was last closed.
+     *
+     * @since 0.2.0
+     */
+    private final Map<File, List<Long>> stamps = new HashMap<>();
+
+    /**
+     * Creates compiler with new file manager.
+     *
+     * @param compiler system Java compiler
+     * @throws IOException when unable to configure file manager
+     * @since 0.2.0
+     */
+    private CachedCompiler(JavaCompiler compiler) throws IOException {
+        this.compiler = compiler;
+        fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        // without source path compiler would look for sources in class path too
+        fileManager.setLocation(StandardLocation.SOURCE_PATH, Collections.emptyList());
+    }
+
+    /**
+     * Compiles <tt>%sources%</tt> in memory against <tt>%classPath%</tt> by file manager of current thread.
+     *
+     * @param sources map from binary class name to source code of class
+     * @param classPath class path entries
+     * @param diagnostics collector of errors and warnings reported by compiler
+     * @return map from binary class name to class file bytes, <tt>null</tt> if compilation failed
+     * @throws IOException when compiler is not available or unable to read class path
+     * @since 0.2.0
+     */
+    static Map<String, byte[]> compile(Map<String, String> sources, List<File> classPath,
+                                       DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+        CachedCompiler instance = instances.get();
+        if (instance == null) {
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            if (compiler == null) throw new IOException("Java compiler is not available");
+            instance = new CachedCompiler(compiler);
+            instances.set(instance);
+        }
+        try {
+            return instance.run(sources, classPath, diagnostics);
+        } catch (IOException | RuntimeException e) {
+            // state of file manager is unknown, next compilation starts from scratch
+            instances.remove();
+            throw e;
+        }
+    }
+
+    /**
+     * Compiles <tt>%sources%</tt> by file manager of this instance.
+     *
+     * @param sources map from binary class name to source code of class
+     * @param classPath class path entries
+     * @param diagnostics collector of errors and warnings reported by compiler
+     * @return map from binary class name to class file bytes, <tt>null</tt> if compilation failed
+     * @throws IOException when unable to read class path
+     * @since 0.2.0
+     */
+    private Map<String, byte[]> run(Map<String, String> sources, List<File> classPath,
+                                    DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+        Map<File, List<Long>> newStamps = new HashMap<>();
+        boolean modified = false;
+        for (File entry : classPath) {
+            List<Long> stamp = Arrays.asList(entry.lastModified(), entry.length());
+            List<Long> previous = stamps.get(entry);
+            modified |= previous != null && !previous.equals(stamp);
+            newStamps.put(entry, stamp);
+        }
+        if (modified) {
+            // drops archives opened for every previous class path, so their stamps are forgotten as well
+            fileManager.close();
+            stamps.clear();
+        }
+        stamps.putAll(newStamps);
+        if (modified || !classPath.equals(this.classPath)) {
+            fileManager.setLocation(StandardLocation.CLASS_PATH, classPath);
+            this.classPath = new ArrayList<>(classPath);
+        }
+        List<JavaFileObject> files = new ArrayList<>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            files.add(MemoryFileManager.source(source.getKey(), source.getValue()));
+        }
+        try (MemoryFileManager memoryFileManager = new MemoryFileManager(fileManager)) {
+            if (!compiler.getTask(new StringWriter(), memoryFileManager, diagnostics, options, null, files).call()) {
+                return null;
+            }
+            return memoryFileManager.getClasses();
+        }
+    }
+
+    /**
+     * Splits class path String into list of entries.
+     *
+     * @param classPath entries separated by {@link File#pathSeparator}
+     * @return list of non-empty entries
+     * @since 0.2.0
+     */
+    static List<File> split(String classPath) {
+        List<File> result = new ArrayList<>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) result.add(new File(entry));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,635 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metadata of type read directly from bytes of its <tt>.class</tt> file, without loading it: modifiers, supertypes,
+ * fields, methods, constructors, thrown exceptions and nested classes. Types are referred to by binary names
+ * (<tt>java.util.Map$Entry</tt>), types of members are kept as descriptors (<tt>[Ljava/lang/String;</tt>).
+ * <p>
+ * Only constant pool, member tables and attributes <tt>Exceptions</tt>, <tt>InnerClasses</tt>,
+ * <tt>EnclosingMethod</tt> and <tt>Signature</tt> are read, bytecode and other attributes are skipped. Generic
+ * signatures are kept as strings and taken apart by static methods of this class on demand.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see ClassPathIndex
+ * @see "<a href='https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html'>The class File Format</a>"
+ */
+final class ClassFileModel {
+    /**
+     * Magic number every <tt>.class</tt> file starts with.
+     *
+     * @since 0.2.0
+     */
+    private static final int magic = 0xcafebabe;
+
+    /**
+     * Access flags of classes and members which have no equivalent in {@link java.lang.reflect.Modifier}.
+     *
+     * @since 0.2.0
+     */
+    static final int ACC_SUPER = 0x20, ACC_BRIDGE = 0x40, ACC_ANNOTATION = 0x2000, ACC_ENUM = 0x4000;
+
+    /**
+     * Constant pool tags which have to be told apart while parsing.
+     *
+     * @since 0.2.0
+     */
+    private static final int CONSTANT_UTF8 = 1, CONSTANT_LONG = 5, CONSTANT_DOUBLE = 6, CONSTANT_CLASS = 7;
+
+    /**
+     * Field, method or constructor of type.
+     *
+     * @since 0.2.0
+     */
+    static final class Member {
+        /**
+         * Binary name of type declaring member.
+         *
+         * @since 0.2.0
+         */
+        final String owner;
+
+        /**
+         * Name of member, <tt>&lt;init&gt;</tt> for constructors.
+         *
+         * @since 0.2.0
+         */
+        final String name;
+
+        /**
+         * Descriptor of field type or method signature.
+         *
+         * @since 0.2.0
+         */
+        final String descriptor;
+
+        /**
+         * Generic signature of member, <tt>null</tt> if member has no <tt>Signature</tt> attribute.
+         *
+         * @since 0.2.0
+         */
+        final String signature;
+
+        /**
+         * Access flags of member.
+         *
+         * @since 0.2.0
+         */
+        final int access;
+
+        /**
+         * Binary names of exceptions declared by method, empty for fields.
+         *
+         * @since 0.2.0
+         */
+        final List<String> exceptions;
+
+        /**
+         * Creates member.
+         *
+         * @param owner binary name of declaring type
+         * @param name name of member
+         * @param descriptor descriptor of member
+         * @param signature generic signature of member, <tt>null</tt> if absent
+         * @param access access flags of member
+         * @param exceptions binary names of declared exceptions
+         * @since 0.2.0
+         */
+        Member(String owner, String name, String descriptor, String signature, int access, List<String> exceptions) {
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.signature = signature;
+            this.access = access;
+            this.exceptions = exceptions;
+        }
+
+        /**
+         * Returns whether member is constructor.
+         *
+         * @return true for constructors, false for methods and fields
+         * @since 0.2.0
+         */
+        boolean isConstructor() {
+            return name.equals("<init>");
+        }
+
+        /**
+         * Returns descriptor of return type of method.
+         *
+         * @return return type descriptor, <tt>V</tt> for <code>void</code>
+         * @since 0.2.0
+         */
+        String getReturnType() {
+            return descriptor.substring(descriptor.indexOf(')') + 1);
+        }
+
+        /**
+         * Returns descriptors of parameter types of method.
+         *
+         * @return list of parameter type descriptors
+         * @since 0.2.0
+         */
+        List<String> getParameterTypes() {
+            List<String> result = new ArrayList<>();
+            int i = 1;
+            while (descriptor.charAt(i) != ')') {
+                int end = i;
+                while (descriptor.charAt(end) == '[') end++;
+                end = descriptor.charAt(end) == 'L' ? descriptor.indexOf(';', end) + 1 : end + 1;
+                result.add(descriptor.substring(i, end));
+                i = end;
+            }
+            return result;
+        }
+
+        /**
+         * Returns part of descriptor describing parameters, which identifies method together with its name the same
+         * way {@link MethodIdentity} does.
+         *
+         * @return descriptor of parameters in parentheses
+         * @since 0.2.0
+         */
+        String getParametersDescriptor() {
+            return descriptor.substring(0, descriptor.indexOf(')') + 1);
+        }
+
+        /**
+         * Returns generic signatures of parameter types of method, taken from its {@link #signature signature}.
+         *
+         * @return list of parameter type signatures, <tt>null</tt> if method has no signature
+         * @since 0.2.0
+         */
+        List<String> getGenericParameterTypes() {
+            if (signature == null) return null;
+            List<String> result = new ArrayList<>();
+            for (int i = signature.indexOf('(') + 1; signature.charAt(i) != ')'; ) {
+                int end = skipType(signature, i);
+                result.add(signature.substring(i, end));
+                i = end;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Binary name of type.
+     *
+     * @since 0.2.0
+     */
+    final String name;
+
+    /**
+     * Access flags of type, taken from <tt>InnerClasses</tt> for member types as reflection does.
+     *
+     * @since 0.2.0
+     */
+    final int access;
+
+    /**
+     * Binary name of superclass, <tt>null</tt> for interfaces and {@link Object}.
+     *
+     * @since 0.2.0
+     */
+    final String superName;
+
+    /**
+     * Binary names of direct superinterfaces in declaration order.
+     *
+     * @since 0.2.0
+     */
+    final List<String> interfaces;
+
+    /**
+     * Declared fields in declaration order.
+     *
+     * @since 0.2.0
+     */
+    final List<Member> fields;
+
+    /**
+     * Declared methods and constructors in declaration order, without static initializer.
+     *
+     * @since 0.2.0
+     */
+    final List<Member> methods;
+
+    /**
+     * Binary names of member types declared by this type.
+     *
+     * @since 0.2.0
+     */
+    final List<String> memberClasses;
+
+    /**
+     * Binary name of type this type is member of, <tt>null</tt> for top-level, local and anonymous types.
+     *
+     * @since 0.2.0
+     */
+    final String declaringClass;
+
+    /**
+     * Whether type is local or anonymous.
+     *
+     * @since 0.2.0
+     */
+    final boolean local;
+
+    /**
+     * Simple name of type, as {@link Class#getSimpleName()} returns for non-local types.
+     *
+     * @since 0.2.0
+     */
+    final String simpleName;
+
+    /**
+     * Generic signature of type, <tt>null</tt> if type has no <tt>Signature</tt> attribute.
+     *
+     * @since 0.2.0
+     */
+    final String signature;
+
+    /**
+     * Reads model from <tt>%bytes%</tt> starting from their position.
+     *
+     * @param bytes content of <tt>.class</tt> file
+     * @throws IllegalArgumentException when <tt>%bytes%</tt> do not contain valid <tt>.class</tt> file
+     * @since 0.2.0
+     */
+    ClassFileModel(ByteBuffer bytes) {
+        ByteBuffer in = bytes.slice();
+        try {
+            if (in.getInt() != magic) throw new IllegalArgumentException("Not a class file");
+            in.getInt();
+            int[] offsets = new int[in.getShort() & 0xffff];
+            String[] strings = new String[offsets.length];
+            for (int i = 1; i < offsets.length; i++) {
+                offsets[i] = in.position();
+                int tag = in.get();
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        int length = in.getShort() & 0xffff;
+                        strings[i] = decode(in, length);
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        in.position(in.position() + 8);
+                        i++;
+                        break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                        in.position(in.position() + 4);
+                        break;
+                    case CONSTANT_CLASS: case 8: case 16: case 19: case 20:
+                        in.position(in.position() + 2);
+                        break;
+                    case 15:
+                        in.position(in.position() + 3);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+                }
+            }
+            int classAccess = in.getShort() & 0xffff;
+            name = className(in, offsets, strings, in.getShort());
+            String superClass = className(in, offsets, strings, in.getShort());
+            superName = (classAccess & java.lang.reflect.Modifier.INTERFACE) != 0 ? null : superClass;
+            List<String> superInterfaces = new ArrayList<>();
+            for (int count = in.getShort() & 0xffff; count > 0; count--) {
+                superInterfaces.add(className(in, offsets, strings, in.getShort()));
+            }
+            interfaces = Collections.unmodifiableList(superInterfaces);
+            fields = Collections.unmodifiableList(readMembers(in, offsets, strings, name));
+            List<Member> declaredMethods = readMembers(in, offsets, strings, name);
+            declaredMethods.removeIf(method -> method.name.equals("<clinit>"));
+            methods = Collections.unmodifiableList(declaredMethods);
+
+            int memberAccess = classAccess;
+            String outer = null;
+            boolean enclosed = false;
+            String innerName = null;
+            String classSignature = null;
+            List<String> members = new ArrayList<>();
+            for (int count = in.getShort() & 0xffff; count > 0; count--) {
+                String attribute = strings[in.getShort() & 0xffff];
+                int length = in.getInt();
+                int end = in.position() + length;
+                if ("InnerClasses".equals(attribute)) {
+                    for (int classes = in.getShort() & 0xffff; classes > 0; classes--) {
+                        String inner = className(in, offsets, strings, in.getShort());
+                        String outerClass = className(in, offsets, strings, in.getShort());
+                        String simple = strings[in.getShort() & 0xffff];
+                        int innerAccess = in.getShort() & 0xffff;
+                        if (inner.equals(name)) {
+                            memberAccess = innerAccess;
+                            outer = outerClass;
+                            innerName = simple;
+                            enclosed |= outerClass == null;
+                        } else if (name.equals(outerClass) && simple != null) {
+                            members.add(inner);
+                        }
+                    }
+                } else if ("EnclosingMethod".equals(attribute)) {
+                    enclosed = true;
+                } else if ("Signature".equals(attribute)) {
+                    classSignature = strings[in.getShort() & 0xffff];
+                }
+                in.position(end);
+            }
+            access = memberAccess;
+            declaringClass = outer;
+            local = enclosed;
+            memberClasses = Collections.unmodifiableList(members);
+            simpleName = innerName != null ? innerName : name.substring(name.lastIndexOf('.') + 1);
+            signature = classSignature;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated class file", e);
+        }
+    }
+
+    /**
+     * Reads table of fields or methods.
+     *
+     * @param in buffer positioned at count of members
+     * @param offsets positions of constant pool entries
+     * @param strings decoded <tt>CONSTANT_Utf8</tt> entries
+     * @param owner binary name of type declaring members
+     * @return members in declaration order
+     * @since 0.2.0
+     */
+    private static List<Member> readMembers(ByteBuffer in, int[] offsets, String[] strings, String owner) {
+        List<Member> result = new ArrayList<>();
+        for (int count = in.getShort() & 0xffff; count > 0; count--) {
+            int memberAccess = in.getShort() & 0xffff;
+            String memberName = strings[in.getShort() & 0xffff];
+            String descriptor = strings[in.getShort() & 0xffff];
+            List<String> exceptions = new ArrayList<>();
+            String memberSignature = null;
+            for (int attributes = in.getShort() & 0xffff; attributes > 0; attributes--) {
+                String attribute = strings[in.getShort() & 0xffff];
+                int length = in.getInt();
+                int end = in.position() + length;
+                if ("Exceptions".equals(attribute)) {
+                    for (int exception = in.getShort() & 0xffff; exception > 0; exception--) {
+                        exceptions.add(className(in, offsets, strings, in.getShort()));
+                    }
+                } else if ("Signature".equals(attribute)) {
+                    memberSignature = strings[in.getShort() & 0xffff];
+                }
+                in.position(end);
+            }
+            result.add(new Member(owner, memberName, descriptor, memberSignature, memberAccess,
+                    Collections.unmodifiableList(exceptions)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns binary name of class referred to by <tt>CONSTANT_Class</tt> entry.
+     *
+     * @param in buffer containing constant pool
+     * @param offsets positions of constant pool entries
+     * @param strings decoded <tt>CONSTANT_Utf8</tt> entries
+     * @param index index of entry, zero for absent class
+     * @return binary name of class, <tt>null</tt> for index zero
+     * @since 0.2.0
+     */
+    private static String className(ByteBuffer in, int[] offsets, String[] strings, short index) {
+        int entry = index & 0xffff;
+        if (entry == 0) return null;
+        if (in.get(offsets[entry]) != CONSTANT_CLASS) throw new IllegalArgumentException("Class expected");
+        return strings[in.getShort(offsets[entry] + 1) & 0xffff].replace('/', '.');
+    }
+
+    /**
+     * Decodes <tt>%length%</tt> bytes of modified UTF-8 used by <tt>.class</tt> files.
+     *
+     * @param in buffer positioned at encoded bytes
+     * @param length count of encoded bytes
+     * @return decoded String
+     * @since 0.2.0
+     */
+    private static String decode(ByteBuffer in, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        int end = in.position() + length;
+        while (in.position() < end) {
+            int b = in.get() & 0xff;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if (b < 0xe0) {
+                chars[count++] = (char) (((b & 0x1f) << 6) | (in.get() & 0x3f));
+            } else {
+                chars[count++] = (char) (((b & 0x0f) << 12) | ((in.get() & 0x3f) << 6) | (in.get() & 0x3f));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Returns whether this type is interface.
+     *
+     * @return true for interfaces and annotation types
+     * @since 0.2.0
+     */
+    boolean isInterface() {
+        return (access & java.lang.reflect.Modifier.INTERFACE) != 0;
+    }
+
+    /**
+     * Returns package name of this type.
+     *
+     * @return package name, empty for default package
+     * @since 0.2.0
+     */
+    String getPackageName() {
+        return packageOf(name);
+    }
+
+    /**
+     * Returns package name of type with binary name <tt>%binaryName%</tt>.
+     *
+     * @param binaryName binary name of type
+     * @return package name, empty for default package
+     * @since 0.2.0
+     */
+    static String packageOf(String binaryName) {
+        int dot = binaryName.lastIndexOf('.');
+        return dot < 0 ? "" : binaryName.substring(0, dot);
+    }
+
+    /**
+     * Returns type parameters declared by class or method <tt>%signature%</tt>.
+     *
+     * @param signature generic signature of class or method, may be <tt>null</tt>
+     * @return names of type parameters mapped to signatures of their first bounds, in declaration order
+     * @since 0.2.0
+     */
+    static Map<String, String> getTypeParameters(String signature) {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (signature == null || signature.charAt(0) != '<') return result;
+        int i = 1;
+        while (signature.charAt(i) != '>') {
+            int colon = signature.indexOf(':', i);
+            String parameter = signature.substring(i, colon);
+            i = colon;
+            String bound = null;
+            // class bound may be empty, interface bounds follow it after further colons
+            while (signature.charAt(i) == ':') {
+                i++;
+                if (signature.charAt(i) == ':') continue;
+                int end = skipType(signature, i);
+                if (bound == null) bound = signature.substring(i, end);
+                i = end;
+            }
+            result.put(parameter, bound);
+        }
+        return result;
+    }
+
+    /**
+     * Returns signatures of direct supertypes given by class <tt>%signature%</tt>: superclass followed by
+     * superinterfaces.
+     *
+     * @param signature generic signature of class
+     * @return list of class type signatures
+     * @since 0.2.0
+     */
+    static List<String> getGenericSupertypes(String signature) {
+        List<String> result = new ArrayList<>();
+        int i = 0;
+        if (signature.charAt(0) == '<') {
+            int depth = 0;
+            do {
+                char c = signature.charAt(i++);
+                if (c == '<') depth++;
+                if (c == '>') depth--;
+            } while (depth > 0);
+        }
+        while (i < signature.length()) {
+            int end = skipType(signature, i);
+            result.add(signature.substring(i, end));
+            i = end;
+        }
+        return result;
+    }
+
+    /**
+     * Returns type arguments of the innermost class of class type <tt>%signature%</tt>.
+     *
+     * @param signature class type signature
+     * @return list of type argument signatures, <tt>*</tt> for unbounded wildcard; empty for raw types
+     * @since 0.2.0
+     */
+    static List<String> getTypeArguments(String signature) {
+        List<String> result = new ArrayList<>();
+        // arguments of innermost class are the ones following the last dot outside of arguments
+        int i = -1;
+        for (int j = 1, depth = 0; j < signature.length(); j++) {
+            char c = signature.charAt(j);
+            if (c == '<' && depth++ == 0) i = j;
+            if (c == '>') depth--;
+            if (c == '.' && depth == 0) i = -1;
+        }
+        if (i < 0) return result;
+        for (i++; signature.charAt(i) != '>'; ) {
+            int end = signature.charAt(i) == '*' ? i + 1 : skipType(signature,
+                    signature.charAt(i) == '+' || signature.charAt(i) == '-' ? i + 1 : i);
+            result.add(signature.substring(i, end));
+            i = end;
+        }
+        return result;
+    }
+
+    /**
+     * Returns descriptor of erasure of class, array or primitive type <tt>%signature%</tt>. Type variables have to be
+     * resolved by caller.
+     *
+     * @param signature type signature which is not type variable
+     * @return field descriptor of erased type
+     * @since 0.2.0
+     */
+    static String erase(String signature) {
+        if (signature.charAt(0) == '[') return "[" + erase(signature.substring(1));
+        if (signature.charAt(0) != 'L') return signature;
+        StringBuilder result = new StringBuilder("L");
+        for (int i = 1, depth = 0; i < signature.length(); i++) {
+            char c = signature.charAt(i);
+            if (c == '<') {
+                depth++;
+            } else if (c == '>') {
+                depth--;
+            } else if (depth == 0) {
+                // nested classes are separated by dots in signatures and by dollars in binary names
+                result.append(c == '.' ? '$' : c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns position just after type signature starting at <tt>%start%</tt> of <tt>%signature%</tt>.
+     *
+     * @param signature signature containing type
+     * @param start position of the first character of type
+     * @return position of the first character following type
+     * @since 0.2.0
+     */
+    static int skipType(String signature, int start) {
+        switch (signature.charAt(start)) {
+            case '[':
+                return skipType(signature, start + 1);
+            case 'T':
+                return signature.indexOf(';', start) + 1;
+            case 'L':
+                int i = start + 1;
+                for (int depth = 0; depth > 0 || signature.charAt(i) != ';'; i++) {
+                    if (signature.charAt(i) == '<') depth++;
+                    if (signature.charAt(i) == '>') depth--;
+                }
+                return i + 1;
+            default:
+                return start + 1;
+        }
+    }
+
+    /**
+     * Returns keyword of primitive type with descriptor <tt>%kind%</tt>.
+     *
+     * @param kind descriptor of primitive type
+     * @return name of primitive type
+     * @since 0.2.0
+     */
+    static String primitiveName(char kind) {
+        switch (kind) {
+            case 'Z': return "boolean";
+            case 'B': return "byte";
+            case 'C': return "char";
+            case 'S': return "short";
+            case 'I': return "int";
+            case 'J': return "long";
+            case 'F': return "float";
+            case 'D': return "double";
+            case 'V': return "void";
+            default: throw new IllegalArgumentException("Invalid descriptor " + kind);
+        }
+    }
+
+    /**
+     * Returns binary name of this type.
+     *
+     * @return binary name
+     * @since 0.2.0
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,387 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal writer of <tt>.class</tt> files. Supports exactly what {@link BytecodeGenerator} needs: fields without
+ * initialisers and methods with straight-line code, so no stack map frames are required. Produced classes have
+ * version 52 (Java 8).
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see "<a href='https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html'>The class File Format</a>"
+ */
+final class ClassFileWriter {
+    /**
+     * Major version of produced class files.
+     *
+     * @since 0.2.0
+     */
+    private static final int majorVersion = 52;
+
+    /**
+     * Constant pool tags.
+     *
+     * @since 0.2.0
+     */
+    private static final int CONSTANT_UTF8 = 1, CONSTANT_CLASS = 7, CONSTANT_METHOD_REF = 10,
+            CONSTANT_INTERFACE_METHOD_REF = 11, CONSTANT_NAME_AND_TYPE = 12;
+
+    /**
+     * Opcodes used by {@link BytecodeGenerator}.
+     *
+     * @since 0.2.0
+     */
+    static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, LCONST_0 = 0x09, FCONST_0 = 0x0b, DCONST_0 = 0x0e,
+            ILOAD = 0x15, LLOAD = 0x16, FLOAD = 0x17, DLOAD = 0x18, ALOAD = 0x19,
+            IRETURN = 0xac, LRETURN = 0xad, FRETURN = 0xae, DRETURN = 0xaf, ARETURN = 0xb0, RETURN = 0xb1,
+            INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, CHECKCAST = 0xc0, WIDE = 0xc4;
+
+    /**
+     * Access flag which must be set for every class, see JVMS 4.1.
+     *
+     * @since 0.2.0
+     */
+    static final int ACC_SUPER = 0x20;
+
+    /**
+     * Access flags of bridge methods generated by compiler, see JVMS 4.6.
+     *
+     * @since 0.2.0
+     */
+    static final int ACC_BRIDGE = 0x40, ACC_SYNTHETIC = 0x1000;
+
+    /**
+     * Constant pool content, without leading count.
+     *
+     * @since 0.2.0
+     */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    /**
+     * Output of {@link #pool pool}.
+     *
+     * @since 0.2.0
+     */
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+
+    /**
+     * Indices of already added constants keyed by tag and value.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, Integer> constants = new HashMap<>();
+
+    /**
+     * Index which will be assigned to next constant.
+     *
+     * @since 0.2.0
+     */
+    private int poolSize = 1;
+
+    /**
+     * Serialised fields, without leading count.
+     *
+     * @since 0.2.0
+     */
+    private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+
+    /**
+     * Count of added fields.
+     *
+     * @since 0.2.0
+     */
+    private int fieldCount;
+
+    /**
+     * Serialised methods, without leading count.
+     *
+     * @since 0.2.0
+     */
+    private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+
+    /**
+     * Count of added methods.
+     *
+     * @since 0.2.0
+     */
+    private int methodCount;
+
+    /**
+     * Access flags of class.
+     *
+     * @since 0.2.0
+     */
+    private final int access;
+
+    /**
+     * Constant pool indices of this class and its superclass.
+     *
+     * @since 0.2.0
+     */
+    private final int thisClass, superClass;
+
+    /**
+     * Constant pool indices of implemented interfaces.
+     *
+     * @since 0.2.0
+     */
+    private final int[] interfaces;
+
+    /**
+     * Creates writer of class <tt>%name%</tt>.
+     *
+     * @param access access flags of class, {@link #ACC_SUPER ACC_SUPER} is added automatically
+     * @param name internal name of class
+     * @param superName internal name of superclass
+     * @param interfaceNames internal names of implemented interfaces
+     * @since 0.2.0
+     */
+    ClassFileWriter(int access, String name, String superName, String... interfaceNames) {
+        this.access = access | ACC_SUPER;
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    /**
+     * Adds <tt>CONSTANT_Utf8</tt> to constant pool.
+     *
+     * @param value string value
+     * @return index of constant
+     * @since 0.2.0
+     */
+    int utf8(String value) {
+        String key = CONSTANT_UTF8 + "'" + value;
+        Integer index = constants.get(key);
+        if (index != null) return index;
+        try {
+            poolOut.writeByte(CONSTANT_UTF8);
+            poolOut.writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return register(key);
+    }
+
+    /**
+     * Adds <tt>CONSTANT_Class</tt> to constant pool.
+     *
+     * @param internalName internal name of class
+     * @return index of constant
+     * @since 0.2.0
+     */
+    int classRef(String internalName) {
+        return reference(CONSTANT_CLASS, utf8(internalName), -1);
+    }
+
+    /**
+     * Adds <tt>CONSTANT_Methodref</tt> (or <tt>CONSTANT_InterfaceMethodref</tt>) to constant pool.
+     *
+     * @param owner internal name of class declaring method
+     * @param isInterface whether <tt>%owner%</tt> is interface
+     * @param name method name
+     * @param descriptor method descriptor
+     * @return index of constant
+     * @since 0.2.0
+     */
+    int methodRef(String owner, boolean isInterface, String name, String descriptor) {
+        int nameAndType = reference(CONSTANT_NAME_AND_TYPE, utf8(name), utf8(descriptor));
+        return reference(isInterface ? CONSTANT_INTERFACE_METHOD_REF : CONSTANT_METHOD_REF, classRef(owner),
+                nameAndType);
+    }
+
+    /**
+     * Adds constant consisting of one or two references to other constants.
+     *
+     * @param tag constant tag
+     * @param first first reference
+     * @param second second reference or <tt>-1</tt> if constant has only one
+     * @return index of constant
+     * @since 0.2.0
+     */
+    private int reference(int tag, int first, int second) {
+        String key = tag + ":" + first + ":" + second;
+        Integer index = constants.get(key);
+        if (index != null) return index;
+        try {
+            poolOut.writeByte(tag);
+            poolOut.writeShort(first);
+            if (second >= 0) poolOut.writeShort(second);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return register(key);
+    }
+
+    /**
+     * Assigns next constant pool index to constant with <tt>%key%</tt>.
+     *
+     * @param key key of constant
+     * @return assigned index
+     * @since 0.2.0
+     */
+    private int register(String key) {
+        constants.put(key, poolSize);
+        return poolSize++;
+    }
+
+    /**
+     * Adds field without initialiser.
+     *
+     * @param access access flags of field
+     * @param name field name
+     * @param descriptor field descriptor
+     * @since 0.2.0
+     */
+    void addField(int access, String name, String descriptor) {
+        DataOutputStream out = new DataOutputStream(fields);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fieldCount++;
+    }
+
+    /**
+     * Adds method with <tt>Code</tt> and <tt>Exceptions</tt> attributes.
+     *
+     * @param access access flags of method
+     * @param name method name
+     * @param descriptor method descriptor
+     * @param exceptions internal names of thrown exceptions
+     * @param code bytecode of method, must not contain branches
+     * @param maxStack maximum depth of operand stack
+     * @param maxLocals count of local variable slots
+     * @since 0.2.0
+     */
+    void addMethod(int access, String name, String descriptor, String[] exceptions,
+                   byte[] code, int maxStack, int maxLocals) {
+        DataOutputStream out = new DataOutputStream(methods);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(exceptions.length > 0 ? 2 : 1);
+
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            if (exceptions.length > 0) {
+                int[] indices = new int[exceptions.length];
+                for (int i = 0; i < exceptions.length; i++) {
+                    indices[i] = classRef(exceptions[i]);
+                }
+                out.writeShort(utf8("Exceptions"));
+                out.writeInt(2 + 2 * indices.length);
+                out.writeShort(indices.length);
+                for (int index : indices) {
+                    out.writeShort(index);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methodCount++;
+    }
+
+    /**
+     * Returns content of <tt>.class</tt> file.
+     *
+     * @return class file bytes
+     * @since 0.2.0
+     */
+    byte[] toByteArray() {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(
+                32 + pool.size() + fields.size() + methods.size() + 2 * interfaces.length);
+        DataOutputStream out = new DataOutputStream(result);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(majorVersion);
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int index : interfaces) {
+                out.writeShort(index);
+            }
+            out.writeShort(fieldCount);
+            fields.writeTo(out);
+            out.writeShort(methodCount);
+            methods.writeTo(out);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Returns internal name of <tt>%type%</tt>.
+     *
+     * @param type class or interface
+     * @return name with <tt>/</tt> as package separator
+     * @since 0.2.0
+     */
+    static String internalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    /**
+     * Returns field descriptor of <tt>%type%</tt>.
+     *
+     * @param type any type including primitives and arrays
+     * @return type descriptor
+     * @since 0.2.0
+     */
+    static String descriptor(Class<?> type) {
+        if (type.isArray()) return type.getName().replace('.', '/');
+        if (!type.isPrimitive()) return "L" + internalName(type) + ";";
+        if (type == void.class) return "V";
+        if (type == boolean.class) return "Z";
+        if (type == byte.class) return "B";
+        if (type == char.class) return "C";
+        if (type == short.class) return "S";
+        if (type == int.class) return "I";
+        if (type == long.class) return "J";
+        if (type == float.class) return "F";
+        return "D";
+    }
+
+    /**
+     * Returns method descriptor.
+     *
+     * @param parameterTypes types of parameters
+     * @param returnType return type
+     * @return method descriptor
+     * @since 0.2.0
+     */
+    static String descriptor(Class<?>[] parameterTypes, Class<?> returnType) {
+        StringBuilder result = new StringBuilder("(");
+        for (Class<?> type : parameterTypes) {
+            result.append(descriptor(type));
+        }
+        return result.append(')').append(descriptor(returnType)).toString();
+    }
+}
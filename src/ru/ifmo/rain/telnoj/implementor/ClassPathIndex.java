@@ -0,0 +1,571 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Source of {@link ClassFileModel models} of types of <tt>.jar</tt> file or class path directory, which never loads
+ * them. <tt>.jar</tt> file is mapped into memory once and its central directory is indexed, so content of stored
+ * entries is parsed straight from the mapping and only compressed entries are copied while inflated. Files of
+ * directory are mapped one by one. Types missing in source, like platform types, are read as resources of system
+ * class loader, which does not define them either.
+ * <p>
+ * Parsed models and method tables are cached, so instance may be shared by threads generating implementations of
+ * types of the same source.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#implementClassFiles(Path, Path)
+ */
+final class ClassPathIndex implements Closeable {
+    /**
+     * Scanned <tt>.jar</tt> file or directory.
+     *
+     * @since 0.2.0
+     */
+    private final Path source;
+
+    /**
+     * Mapping of whole <tt>.jar</tt> file, <tt>null</tt> for directory.
+     *
+     * @since 0.2.0
+     */
+    private final MappedByteBuffer mapping;
+
+    /**
+     * Entries of <tt>.jar</tt> file ending with <tt>.class</tt> mapped by binary names of classes, ordered by name.
+     * Empty for directory.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, JarWriter.Entry> entries = new TreeMap<>();
+
+    /**
+     * Parsed models mapped by binary names, empty optionals for types which cannot be found.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, Optional<ClassFileModel>> models = new ConcurrentHashMap<>();
+
+    /**
+     * Public member methods of types as {@link Class#getMethods()} returns, mapped by binary names of types and
+     * identified by name and parameters descriptor.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, Map<String, ClassFileModel.Member>> publicMethods = new ConcurrentHashMap<>();
+
+    /**
+     * Values of type variables of all supertypes of types, mapped by binary names of types. Type variables are
+     * identified by binary name of declaring type and name of variable separated by colon.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, Map<String, TypeArgument>> typeArguments = new ConcurrentHashMap<>();
+
+    /**
+     * Value of type variable given by generic supertype.
+     *
+     * @since 0.2.0
+     */
+    private static final class TypeArgument {
+        /**
+         * Signature of value, may refer to type variables of {@link #owner owner}.
+         *
+         * @since 0.2.0
+         */
+        final String signature;
+
+        /**
+         * Binary name of type whose signature gives value.
+         *
+         * @since 0.2.0
+         */
+        final String owner;
+
+        /**
+         * Creates value of type variable.
+         *
+         * @param signature signature of value
+         * @param owner binary name of type whose signature gives value
+         * @since 0.2.0
+         */
+        TypeArgument(String signature, String owner) {
+            this.signature = signature;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Opens <tt>%source%</tt>: maps and indexes it if it is <tt>.jar</tt> file.
+     *
+     * @param source <tt>.jar</tt> file or class path directory
+     * @throws IOException when unable to read <tt>%source%</tt> or it is not valid <tt>.jar</tt> file
+     * @since 0.2.0
+     */
+    ClassPathIndex(Path source) throws IOException {
+        this.source = source;
+        if (Files.isDirectory(source)) {
+            mapping = null;
+            return;
+        }
+        mapping = JarWriter.map(source);
+        for (JarWriter.Entry entry : JarWriter.readEntries(mapping)) {
+            if (entry.name.endsWith(".class") && !entry.name.startsWith("META-INF/")) {
+                entries.put(toClassName(entry.name), entry);
+            }
+        }
+    }
+
+    /**
+     * Converts path of <tt>.class</tt> file relative to class path root into binary name of class.
+     *
+     * @param path path using <tt>/</tt> as separator
+     * @return binary name of class
+     * @since 0.2.0
+     */
+    private static String toClassName(String path) {
+        return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+    }
+
+    /**
+     * Returns binary names of top-level types of source, ordered by name for <tt>.jar</tt> files. Nested classes,
+     * <tt>module-info</tt> and <tt>package-info</tt> are skipped. Stream has to be closed.
+     *
+     * @return stream of binary names
+     * @throws IOException when unable to list directory
+     * @since 0.2.0
+     */
+    Stream<String> getClassNames() throws IOException {
+        Stream<String> names;
+        if (mapping != null) {
+            names = entries.keySet().stream();
+        } else {
+            names = Files.walk(source).filter(Files::isRegularFile)
+                    .map(file -> source.relativize(file).toString().replace(File.separatorChar, '/'))
+                    .filter(path -> path.endsWith(".class") && !path.startsWith("META-INF/"))
+                    .map(ClassPathIndex::toClassName);
+        }
+        return names.filter(name -> name.indexOf('$') < 0 && name.indexOf('-') < 0);
+    }
+
+    /**
+     * Returns model of type with binary name <tt>%name%</tt>, looked up in source first and then in resources of
+     * system class loader.
+     *
+     * @param name binary name of type
+     * @return model of type, <tt>null</tt> if its <tt>.class</tt> file cannot be found
+     * @throws IOException when unable to read <tt>.class</tt> file or it is malformed
+     * @since 0.2.0
+     */
+    ClassFileModel find(String name) throws IOException {
+        Optional<ClassFileModel> model = models.get(name);
+        if (model == null) {
+            ByteBuffer bytes = read(name);
+            try {
+                model = Optional.ofNullable(bytes == null ? null : new ClassFileModel(bytes));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed class file of " + name + ": " + e.getMessage());
+            }
+            models.putIfAbsent(name, model);
+        }
+        return model.orElse(null);
+    }
+
+    /**
+     * Returns model of type with binary name <tt>%name%</tt>, which has to exist.
+     *
+     * @param name binary name of type
+     * @return model of type
+     * @throws IOException when <tt>.class</tt> file cannot be found, read or parsed
+     * @since 0.2.0
+     * @see #find(String)
+     */
+    ClassFileModel get(String name) throws IOException {
+        ClassFileModel model = find(name);
+        if (model == null) throw new IOException("Class file of " + name + " is not found");
+        return model;
+    }
+
+    /**
+     * Reads bytes of <tt>.class</tt> file of type with binary name <tt>%name%</tt>.
+     *
+     * @param name binary name of type
+     * @return content of <tt>.class</tt> file, <tt>null</tt> if it cannot be found
+     * @throws IOException when unable to read <tt>.class</tt> file
+     * @since 0.2.0
+     */
+    private ByteBuffer read(String name) throws IOException {
+        String path = name.replace('.', '/') + ".class";
+        if (mapping != null) {
+            JarWriter.Entry entry = entries.get(name);
+            if (entry != null) return JarWriter.getContent(entry);
+        } else {
+            Path file = source.resolve(path.replace('/', File.separatorChar));
+            if (Files.isRegularFile(file)) return JarWriter.map(file);
+        }
+        try (InputStream in = ClassLoader.getSystemResourceAsStream(path)) {
+            if (in == null) return null;
+            byte[] buffer = new byte[4096];
+            int length = 0;
+            for (int read; (read = in.read(buffer, length, buffer.length - length)) >= 0; ) {
+                length += read;
+                if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            return ByteBuffer.wrap(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Returns public member methods of <tt>%type%</tt>, the same set as {@link Class#getMethods()} returns. Inherited
+     * methods are identified after substitution of type arguments of <tt>%type%</tt>, like {@link MethodTables} does.
+     *
+     * @param type model of type
+     * @return methods identified by name and parameters descriptor
+     * @throws IOException when some supertype cannot be found or read
+     * @since 0.2.0
+     */
+    private Map<String, ClassFileModel.Member> getPublicMethods(ClassFileModel type) throws IOException {
+        Map<String, ClassFileModel.Member> cached = publicMethods.get(type.name);
+        if (cached != null) return cached;
+        Map<String, ClassFileModel.Member> table = new LinkedHashMap<>();
+        for (ClassFileModel.Member method : type.methods) {
+            if (Modifier.isPublic(method.access) && !method.isConstructor() && !isBridge(method)) {
+                merge(table, method.name + method.getParametersDescriptor(), method);
+            }
+        }
+        Map<String, TypeArgument> arguments = getTypeArguments(type);
+        if (type.superName != null) {
+            for (ClassFileModel.Member method : getPublicMethods(get(type.superName)).values()) {
+                merge(table, method.name + getParametersDescriptor(method, arguments), method);
+            }
+        }
+        for (String superInterface : type.interfaces) {
+            for (ClassFileModel.Member method : getPublicMethods(get(superInterface)).values()) {
+                // static methods of interfaces are not inherited
+                if (!Modifier.isStatic(method.access)) {
+                    merge(table, method.name + getParametersDescriptor(method, arguments), method);
+                }
+            }
+        }
+        table = Collections.unmodifiableMap(table);
+        Map<String, ClassFileModel.Member> previous = publicMethods.putIfAbsent(type.name, table);
+        return previous == null ? table : previous;
+    }
+
+    /**
+     * Returns methods of <tt>%type%</tt> which should be considered when generating its implementation: declared
+     * methods followed by public member methods, like {@link MethodTables#get(Class)} does for loaded types. Bridge
+     * methods are skipped, compiler generates them itself.
+     *
+     * @param type model of type
+     * @return distinct methods
+     * @throws IOException when some supertype cannot be found or read
+     * @since 0.2.0
+     */
+    Collection<ClassFileModel.Member> getMethods(ClassFileModel type) throws IOException {
+        Map<String, ClassFileModel.Member> table = new LinkedHashMap<>();
+        for (ClassFileModel.Member method : type.methods) {
+            if (!method.isConstructor() && !isBridge(method)) {
+                merge(table, method.name + method.getParametersDescriptor(), method);
+            }
+        }
+        for (Map.Entry<String, ClassFileModel.Member> entry : getPublicMethods(type).entrySet()) {
+            merge(table, entry.getKey(), entry.getValue());
+        }
+        return table.values();
+    }
+
+    /**
+     * Returns whether <tt>%method%</tt> is bridge method generated by compiler.
+     *
+     * @param method model of method
+     * @return true if method has <tt>ACC_BRIDGE</tt> flag
+     * @since 0.2.0
+     */
+    private static boolean isBridge(ClassFileModel.Member method) {
+        return (method.access & ClassFileModel.ACC_BRIDGE) != 0;
+    }
+
+    /**
+     * Puts <tt>%candidate%</tt> to <tt>%table%</tt> unless method with the same identity, which is more suitable
+     * for implementation, is already there. Chooses the same method as {@link MethodIdentity#select(
+     * java.lang.reflect.Method, java.lang.reflect.Method) MethodIdentity.select} does.
+     *
+     * @param table methods identified by name and parameters descriptor
+     * @param identity name and parameters descriptor of <tt>%candidate%</tt> as member of type whose table is built
+     * @param candidate method to add
+     * @throws IOException when return types cannot be compared
+     * @since 0.2.0
+     */
+    private void merge(Map<String, ClassFileModel.Member> table, String identity, ClassFileModel.Member candidate)
+            throws IOException {
+        ClassFileModel.Member current = table.get(identity);
+        if (current == null) {
+            table.put(identity, candidate);
+            return;
+        }
+        boolean currentExact = identity.equals(current.name + current.getParametersDescriptor());
+        if (currentExact != identity.equals(candidate.name + candidate.getParametersDescriptor())) {
+            if (!currentExact) table.put(identity, candidate);
+            return;
+        }
+        String currentType = current.getReturnType();
+        String candidateType = candidate.getReturnType();
+        if (!currentType.equals(candidateType) && isAssignable(currentType, candidateType)) {
+            table.put(identity, candidate);
+        }
+    }
+
+    /**
+     * Returns values of type variables of all supertypes of <tt>%type%</tt>, read from <tt>Signature</tt> attributes
+     * of it and its supertypes.
+     *
+     * @param type model of type
+     * @return type variables identified by binary name of declaring type and name, mapped to their values
+     * @throws IOException when some supertype cannot be found or read
+     * @since 0.2.0
+     */
+    private Map<String, TypeArgument> getTypeArguments(ClassFileModel type) throws IOException {
+        Map<String, TypeArgument> cached = typeArguments.get(type.name);
+        if (cached != null) return cached;
+        Map<String, TypeArgument> arguments = new HashMap<>();
+        if (type.signature == null) {
+            if (type.superName != null) arguments.putAll(getTypeArguments(get(type.superName)));
+            for (String superInterface : type.interfaces) {
+                arguments.putAll(getTypeArguments(get(superInterface)));
+            }
+        } else {
+            for (String supertype : ClassFileModel.getGenericSupertypes(type.signature)) {
+                String erasure = ClassFileModel.erase(supertype);
+                ClassFileModel model = get(erasure.substring(1, erasure.length() - 1).replace('/', '.'));
+                arguments.putAll(getTypeArguments(model));
+                List<String> values = ClassFileModel.getTypeArguments(supertype);
+                List<String> variables = new ArrayList<>(ClassFileModel.getTypeParameters(model.signature).keySet());
+                for (int i = 0; i < values.size() && i < variables.size(); i++) {
+                    arguments.put(model.name + ":" + variables.get(i), new TypeArgument(values.get(i), type.name));
+                }
+            }
+        }
+        arguments = Collections.unmodifiableMap(arguments);
+        Map<String, TypeArgument> previous = typeArguments.putIfAbsent(type.name, arguments);
+        return previous == null ? arguments : previous;
+    }
+
+    /**
+     * Returns parameters descriptor of inherited <tt>%method%</tt> as member of subtype whose type arguments are
+     * <tt>%arguments%</tt>: its generic parameter types with type arguments substituted and then erased.
+     *
+     * @param method inherited method
+     * @param arguments values of type variables of all supertypes of subtype
+     * @return descriptor of parameters in parentheses
+     * @throws IOException when declaring types of type variables cannot be read
+     * @since 0.2.0
+     */
+    private String getParametersDescriptor(ClassFileModel.Member method, Map<String, TypeArgument> arguments)
+            throws IOException {
+        List<String> parameterTypes = method.getGenericParameterTypes();
+        if (parameterTypes == null) return method.getParametersDescriptor();
+        Map<String, String> variables = ClassFileModel.getTypeParameters(method.signature);
+        StringBuilder result = new StringBuilder("(");
+        for (String parameterType : parameterTypes) {
+            result.append(erase(parameterType, method.owner, variables, arguments));
+        }
+        return result.append(')').toString();
+    }
+
+    /**
+     * Returns descriptor of erasure of type <tt>%signature%</tt> after substitution of <tt>%arguments%</tt>. Type
+     * variables without value are erased to erasure of their first bound.
+     *
+     * @param signature type signature
+     * @param owner binary name of type <tt>%signature%</tt> is written in
+     * @param variables type parameters of method <tt>%signature%</tt> is written in mapped to their first bounds
+     * @param arguments values of type variables
+     * @return field descriptor of erased type
+     * @throws IOException when declaring types of type variables cannot be read
+     * @since 0.2.0
+     */
+    private String erase(String signature, String owner, Map<String, String> variables,
+                         Map<String, TypeArgument> arguments) throws IOException {
+        if (signature.charAt(0) == '[') return "[" + erase(signature.substring(1), owner, variables, arguments);
+        if (signature.charAt(0) != 'T') return ClassFileModel.erase(signature);
+        String variable = signature.substring(1, signature.length() - 1);
+        if (variables.containsKey(variable)) {
+            String bound = variables.get(variable);
+            return bound == null ? "Ljava/lang/Object;" : erase(bound, owner, variables, arguments);
+        }
+        // variable may be declared by enclosing class of owner
+        for (String current = owner; current != null; ) {
+            TypeArgument argument = arguments.get(current + ":" + variable);
+            if (argument != null) {
+                return erase(argument.signature, argument.owner, Collections.emptyMap(), arguments);
+            }
+            ClassFileModel model = get(current);
+            String bound = ClassFileModel.getTypeParameters(model.signature).get(variable);
+            if (bound != null) return erase(bound, current, Collections.emptyMap(), arguments);
+            current = model.declaringClass;
+        }
+        return "Ljava/lang/Object;";
+    }
+
+    /**
+     * Returns whether value of type <tt>%from%</tt> may be assigned to variable of type <tt>%to%</tt> without
+     * conversion, like {@link Class#isAssignableFrom(Class)} does.
+     *
+     * @param to descriptor of target type
+     * @param from descriptor of source type
+     * @return true if <tt>%from%</tt> is the same type as <tt>%to%</tt> or its subtype
+     * @throws IOException when supertypes of <tt>%from%</tt> cannot be read
+     * @since 0.2.0
+     */
+    private boolean isAssignable(String to, String from) throws IOException {
+        if (to.equals(from)) return true;
+        if (to.equals("Ljava/lang/Object;")) return isReference(from);
+        if (to.charAt(0) == '[' && from.charAt(0) == '[') {
+            // arrays of different primitive types are never assignable
+            return isReference(to.substring(1)) && isReference(from.substring(1))
+                    && isAssignable(to.substring(1), from.substring(1));
+        }
+        if (to.charAt(0) != 'L' || from.charAt(0) != 'L') return false;
+        ClassFileModel type = find(from.substring(1, from.length() - 1).replace('/', '.'));
+        if (type == null) return false;
+        if (type.superName != null && isAssignable(to, "L" + type.superName.replace('.', '/') + ";")) return true;
+        for (String superInterface : type.interfaces) {
+            if (isAssignable(to, "L" + superInterface.replace('.', '/') + ";")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether <tt>%descriptor%</tt> describes class, interface or array type.
+     *
+     * @param descriptor field descriptor of type
+     * @return false for primitive types, true otherwise
+     * @since 0.2.0
+     */
+    private static boolean isReference(String descriptor) {
+        return descriptor.charAt(0) == 'L' || descriptor.charAt(0) == '[';
+    }
+
+    /**
+     * Returns public fields of <tt>%type%</tt> in order of {@link Class#getFields()}: declared fields, then fields
+     * of superinterfaces and then fields of superclass.
+     *
+     * @param type model of type
+     * @return public fields including inherited ones
+     * @throws IOException when some supertype cannot be found or read
+     * @since 0.2.0
+     */
+    List<ClassFileModel.Member> getFields(ClassFileModel type) throws IOException {
+        List<ClassFileModel.Member> result = new ArrayList<>();
+        for (ClassFileModel.Member field : type.fields) {
+            if (Modifier.isPublic(field.access)) result.add(field);
+        }
+        for (String superInterface : type.interfaces) {
+            result.addAll(getFields(get(superInterface)));
+        }
+        if (type.superName != null) result.addAll(getFields(get(type.superName)));
+        return result;
+    }
+
+    /**
+     * Returns public member types of <tt>%type%</tt> and its superclasses, like {@link Class#getClasses()} does.
+     *
+     * @param type model of type
+     * @return models of member types
+     * @throws IOException when some member type or superclass cannot be found or read
+     * @since 0.2.0
+     */
+    List<ClassFileModel> getClasses(ClassFileModel type) throws IOException {
+        List<ClassFileModel> result = new ArrayList<>();
+        for (ClassFileModel current = type; current != null;
+             current = current.superName == null ? null : get(current.superName)) {
+            for (String member : current.memberClasses) {
+                ClassFileModel model = get(member);
+                if (Modifier.isPublic(model.access)) result.add(model);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns name type described by <tt>%descriptor%</tt> has in source code placed in <tt>%packageName%</tt>:
+     * name relative to package for types of that package, canonical name otherwise. Nested types are resolved
+     * through their models; types which cannot be found are named by binary name.
+     *
+     * @param descriptor field descriptor of type
+     * @param packageName package of source code, empty for default package
+     * @return source name, with <tt>[]</tt> for every array dimension
+     * @since 0.2.0
+     */
+    String getSourceName(String descriptor, String packageName) {
+        int dimensions = 0;
+        while (descriptor.charAt(dimensions) == '[') dimensions++;
+        StringBuilder result = new StringBuilder();
+        char kind = descriptor.charAt(dimensions);
+        if (kind == 'L') {
+            String binaryName = descriptor.substring(dimensions + 1, descriptor.length() - 1).replace('/', '.');
+            String canonical = getCanonicalName(binaryName);
+            String typePackage = ClassFileModel.packageOf(binaryName);
+            result.append(!typePackage.isEmpty() && typePackage.equals(packageName)
+                    ? canonical.substring(typePackage.length() + 1) : canonical);
+        } else {
+            result.append(ClassFileModel.primitiveName(kind));
+        }
+        for (int i = 0; i < dimensions; i++) {
+            result.append("[]");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns canonical name of type with binary name <tt>%binaryName%</tt>.
+     *
+     * @param binaryName binary name of type
+     * @return canonical name, or binary name if type has no canonical name or cannot be read
+     * @since 0.2.0
+     */
+    private String getCanonicalName(String binaryName) {
+        if (binaryName.indexOf('$') < 0) return binaryName;
+        try {
+            ClassFileModel model = find(binaryName);
+            if (model == null || model.declaringClass == null) return binaryName;
+            return getCanonicalName(model.declaringClass) + "." + model.simpleName;
+        } catch (IOException e) {
+            return binaryName;
+        }
+    }
+
+    /**
+     * Releases index. Mapping is released by garbage collector once no buffers parsed from it remain.
+     *
+     * @since 0.2.0
+     */
+    @Override
+    public void close() {
+        entries.clear();
+        models.clear();
+        publicMethods.clear();
+        typeArguments.clear();
+    }
+}
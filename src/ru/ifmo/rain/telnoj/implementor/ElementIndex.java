@@ -0,0 +1,339 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Source of members of types compiled by running Java compiler, read through {@link javax.lang.model} elements of
+ * annotation processing environment. Answers the same questions {@link ClassPathIndex} answers for class files, so
+ * implementations generated inside compiler are the same as ones generated for loaded types.
+ * <p>
+ * Types are erased, like reflection and class files see them. Inherited methods are identified by their parameter
+ * types as members of the type whose table is built, so method overriding generic one after substitution of type
+ * arguments is merged with it. Method tables are cached, so instance should be used by single processing round only.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see ImplementProcessor
+ */
+final class ElementIndex {
+    /**
+     * Modifiers of {@link javax.lang.model} paired with corresponding bits of {@link java.lang.reflect.Modifier}.
+     *
+     * @since 0.2.0
+     */
+    private static final Map<Modifier, Integer> modifierBits = new HashMap<>();
+
+    static {
+        modifierBits.put(Modifier.PUBLIC, java.lang.reflect.Modifier.PUBLIC);
+        modifierBits.put(Modifier.PROTECTED, java.lang.reflect.Modifier.PROTECTED);
+        modifierBits.put(Modifier.PRIVATE, java.lang.reflect.Modifier.PRIVATE);
+        modifierBits.put(Modifier.ABSTRACT, java.lang.reflect.Modifier.ABSTRACT);
+        modifierBits.put(Modifier.STATIC, java.lang.reflect.Modifier.STATIC);
+        modifierBits.put(Modifier.FINAL, java.lang.reflect.Modifier.FINAL);
+        modifierBits.put(Modifier.TRANSIENT, java.lang.reflect.Modifier.TRANSIENT);
+        modifierBits.put(Modifier.VOLATILE, java.lang.reflect.Modifier.VOLATILE);
+        modifierBits.put(Modifier.SYNCHRONIZED, java.lang.reflect.Modifier.SYNCHRONIZED);
+        modifierBits.put(Modifier.NATIVE, java.lang.reflect.Modifier.NATIVE);
+        modifierBits.put(Modifier.STRICTFP, java.lang.reflect.Modifier.STRICT);
+    }
+
+    /**
+     * Utilities for operating on elements.
+     *
+     * @since 0.2.0
+     */
+    private final Elements elements;
+
+    /**
+     * Utilities for operating on types.
+     *
+     * @since 0.2.0
+     */
+    private final Types types;
+
+    /**
+     * Public member methods of types as {@link Class#getMethods()} returns, identified by name and erased parameter
+     * types as members of the type.
+     *
+     * @since 0.2.0
+     */
+    private final Map<TypeElement, Map<String, ExecutableElement>> publicMethods = new HashMap<>();
+
+    /**
+     * Creates index of types seen by compiler running <tt>%environment%</tt>.
+     *
+     * @param environment annotation processing environment
+     * @since 0.2.0
+     */
+    ElementIndex(ProcessingEnvironment environment) {
+        elements = environment.getElementUtils();
+        types = environment.getTypeUtils();
+    }
+
+    /**
+     * Returns modifiers of <tt>%element%</tt> as bits of {@link java.lang.reflect.Modifier}, the same as
+     * {@link Class#getModifiers()} returns for loaded type.
+     *
+     * @param element element to get modifiers of
+     * @return modifiers, including {@link java.lang.reflect.Modifier#INTERFACE} for interfaces
+     * @since 0.2.0
+     */
+    int getModifiers(Element element) {
+        int modifiers = element.getKind().isInterface() ? java.lang.reflect.Modifier.INTERFACE : 0;
+        for (Modifier modifier : element.getModifiers()) {
+            modifiers |= modifierBits.getOrDefault(modifier, 0);
+        }
+        return modifiers;
+    }
+
+    /**
+     * Returns name of package of <tt>%type%</tt>.
+     *
+     * @param type type element
+     * @return qualified name of package, empty for default package
+     * @since 0.2.0
+     */
+    String getPackageName(TypeElement type) {
+        PackageElement packageElement = elements.getPackageOf(type);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    /**
+     * Returns element of superclass of <tt>%type%</tt>.
+     *
+     * @param type type element
+     * @return superclass, <tt>null</tt> for interfaces and {@link Object}
+     * @since 0.2.0
+     */
+    private TypeElement getSuperclass(TypeElement type) {
+        return type.getSuperclass().getKind() == TypeKind.DECLARED ? asElement(type.getSuperclass()) : null;
+    }
+
+    /**
+     * Returns element of declared type <tt>%type%</tt>.
+     *
+     * @param type declared type
+     * @return type element
+     * @since 0.2.0
+     */
+    private TypeElement asElement(TypeMirror type) {
+        return (TypeElement) types.asElement(type);
+    }
+
+    /**
+     * Returns public member methods of <tt>%type%</tt>: declared public methods, then ones of superclass and then
+     * non-static ones of superinterfaces, like {@link MethodTables} collects them for loaded types.
+     *
+     * @param type type element
+     * @return unmodifiable map from method identity to method
+     * @since 0.2.0
+     */
+    private Map<String, ExecutableElement> getPublicMethods(TypeElement type) {
+        Map<String, ExecutableElement> table = publicMethods.get(type);
+        if (table != null) return table;
+        table = new LinkedHashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.PUBLIC)) merge(table, getIdentity(method), method);
+        }
+        DeclaredType member = (DeclaredType) type.asType();
+        TypeElement superclass = getSuperclass(type);
+        if (superclass != null) {
+            for (ExecutableElement method : getPublicMethods(superclass).values()) {
+                merge(table, getIdentity(member, method), method);
+            }
+        }
+        for (TypeMirror superInterface : type.getInterfaces()) {
+            for (ExecutableElement method : getPublicMethods(asElement(superInterface)).values()) {
+                // static methods of interfaces are not inherited
+                if (!method.getModifiers().contains(Modifier.STATIC)) merge(table, getIdentity(member, method), method);
+            }
+        }
+        table = Collections.unmodifiableMap(table);
+        publicMethods.put(type, table);
+        return table;
+    }
+
+    /**
+     * Returns methods of <tt>%type%</tt> which should be considered when generating its implementation: declared
+     * methods followed by public member methods, like {@link MethodTables#get(Class)} does for loaded types.
+     *
+     * @param type type element
+     * @return distinct methods
+     * @since 0.2.0
+     */
+    Collection<ExecutableElement> getMethods(TypeElement type) {
+        Map<String, ExecutableElement> table = new LinkedHashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            merge(table, getIdentity(method), method);
+        }
+        for (Map.Entry<String, ExecutableElement> entry : getPublicMethods(type).entrySet()) {
+            merge(table, entry.getKey(), entry.getValue());
+        }
+        return table.values();
+    }
+
+    /**
+     * Returns identity of <tt>%method%</tt> as declared: its name and erased parameter types.
+     *
+     * @param method method element
+     * @return method identity
+     * @since 0.2.0
+     */
+    private String getIdentity(ExecutableElement method) {
+        List<TypeMirror> parameterTypes = new ArrayList<>();
+        for (VariableElement parameter : method.getParameters()) {
+            parameterTypes.add(parameter.asType());
+        }
+        return getIdentity(method, parameterTypes);
+    }
+
+    /**
+     * Returns identity of inherited <tt>%method%</tt> as member of <tt>%type%</tt>: its name and parameter types
+     * with type arguments of <tt>%type%</tt> substituted, erased.
+     *
+     * @param type type inheriting method
+     * @param method method element
+     * @return method identity
+     * @since 0.2.0
+     */
+    private String getIdentity(DeclaredType type, ExecutableElement method) {
+        return getIdentity(method, ((ExecutableType) types.asMemberOf(type, method)).getParameterTypes());
+    }
+
+    /**
+     * Returns name of <tt>%method%</tt> followed by erasures of <tt>%parameterTypes%</tt>.
+     *
+     * @param method method element
+     * @param parameterTypes parameter types of method
+     * @return method identity
+     * @since 0.2.0
+     */
+    private String getIdentity(ExecutableElement method, List<? extends TypeMirror> parameterTypes) {
+        StringBuilder identity = new StringBuilder(method.getSimpleName()).append('(');
+        for (TypeMirror parameterType : parameterTypes) {
+            identity.append(types.erasure(parameterType)).append(';');
+        }
+        return identity.toString();
+    }
+
+    /**
+     * Puts <tt>%candidate%</tt> to <tt>%table%</tt> unless method with the same identity, which is more suitable
+     * for implementation, is already there. Compiler never shows bridge methods, so chooses the same method as
+     * {@link MethodIdentity#select(java.lang.reflect.Method, java.lang.reflect.Method) MethodIdentity.select} does
+     * without its bridge rule.
+     *
+     * @param table methods identified by name and erased parameter types
+     * @param identity identity of <tt>%candidate%</tt> as member of type whose table is built
+     * @param candidate method to add
+     * @since 0.2.0
+     */
+    private void merge(Map<String, ExecutableElement> table, String identity, ExecutableElement candidate) {
+        ExecutableElement current = table.get(identity);
+        if (current == null) {
+            table.put(identity, candidate);
+            return;
+        }
+        boolean currentExact = identity.equals(getIdentity(current));
+        if (currentExact != identity.equals(getIdentity(candidate))) {
+            if (!currentExact) table.put(identity, candidate);
+            return;
+        }
+        TypeMirror currentType = types.erasure(current.getReturnType());
+        TypeMirror candidateType = types.erasure(candidate.getReturnType());
+        if (!types.isSameType(currentType, candidateType) && types.isSubtype(candidateType, currentType)) {
+            table.put(identity, candidate);
+        }
+    }
+
+    /**
+     * Returns constructors declared by <tt>%type%</tt>.
+     *
+     * @param type type element
+     * @return declared constructors, including default one
+     * @since 0.2.0
+     */
+    List<ExecutableElement> getConstructors(TypeElement type) {
+        return ElementFilter.constructorsIn(type.getEnclosedElements());
+    }
+
+    /**
+     * Returns public fields of <tt>%type%</tt> in order of {@link Class#getFields()}: declared fields, then fields
+     * of superinterfaces and then fields of superclass.
+     *
+     * @param type type element
+     * @return public fields including inherited ones
+     * @since 0.2.0
+     */
+    List<VariableElement> getFields(TypeElement type) {
+        List<VariableElement> result = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.PUBLIC)) result.add(field);
+        }
+        for (TypeMirror superInterface : type.getInterfaces()) {
+            result.addAll(getFields(asElement(superInterface)));
+        }
+        TypeElement superclass = getSuperclass(type);
+        if (superclass != null) result.addAll(getFields(superclass));
+        return result;
+    }
+
+    /**
+     * Returns public member types of <tt>%type%</tt> and its superclasses, like {@link Class#getClasses()} does.
+     *
+     * @param type type element
+     * @return member type elements
+     * @since 0.2.0
+     */
+    List<TypeElement> getClasses(TypeElement type) {
+        List<TypeElement> result = new ArrayList<>();
+        for (TypeElement current = type; current != null; current = getSuperclass(current)) {
+            for (TypeElement member : ElementFilter.typesIn(current.getEnclosedElements())) {
+                if (member.getModifiers().contains(Modifier.PUBLIC)) result.add(member);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns name which erasure of <tt>%type%</tt> has in source code placed in <tt>%packageName%</tt>: name relative to
+     * package for types of that package, canonical name otherwise.
+     *
+     * @param type type as compiler sees it
+     * @param packageName package of source code, empty for default package
+     * @return source name, with <tt>[]</tt> for every array dimension
+     * @since 0.2.0
+     */
+    String getSourceName(TypeMirror type, String packageName) {
+        type = types.erasure(type);
+        if (type.getKind() == TypeKind.ARRAY) {
+            return getSourceName(((ArrayType) type).getComponentType(), packageName) + "[]";
+        }
+        if (type.getKind() != TypeKind.DECLARED) return type.toString();
+        TypeElement element = asElement(type);
+        String canonical = element.getQualifiedName().toString();
+        String typePackage = getPackageName(element);
+        return !typePackage.isEmpty() && typePackage.equals(packageName)
+                ? canonical.substring(typePackage.length() + 1) : canonical;
+    }
+}
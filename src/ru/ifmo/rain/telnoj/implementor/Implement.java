@@ -0,0 +1,24 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks interface or abstract class whose implementation should be generated while it is compiled. Implementation
+ * is generated by {@link ImplementProcessor} as <tt>.java</tt> file next to annotated type, named with suffix
+ * <tt>Impl</tt>, and compiled by the same compiler run.
+ * <p>
+ * Annotation is discarded by compiler, so annotated types do not depend on {@link Implementor} at run time.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see ImplementProcessor
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Implement {
+}
@@ -0,0 +1,84 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import info.kgeorgiy.java.advanced.implementor.ImplerException;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * Annotation processor generating implementations of types marked by {@link Implement} inside Java compiler. Types
+ * are read through {@link javax.lang.model} elements by {@link ElementIndex}, so they are neither compiled nor
+ * loaded beforehand, and sources are printed by the same code {@link Implementor} uses. Generated sources are created
+ * by {@link javax.annotation.processing.Filer}, so compiler compiles them in the next round of the same run, without
+ * temporary files and separate compiler invocation.
+ * <p>
+ * Processor is registered as service, so it is found by compiler when <tt>.jar</tt> file of implementor is on class
+ * path or processor path. Types which cannot be implemented are reported as compilation errors pointing at them.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implement
+ */
+@SupportedAnnotationTypes("ru.ifmo.rain.telnoj.implementor.Implement")
+public class ImplementProcessor extends AbstractProcessor {
+    /**
+     * Implementor printing sources.
+     *
+     * @since 0.2.0
+     */
+    private final Implementor implementor = new Implementor();
+
+    /**
+     * Returns latest source version supported by compiler, since elements are read through version independent
+     * API.
+     *
+     * @return latest supported source version
+     * @since 0.2.0
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Generates implementation of every type annotated by {@link Implement} in current round.
+     *
+     * @param annotations annotation types requested to be processed
+     * @param roundEnv environment of current round
+     * @return <tt>true</tt>, as {@link Implement} is claimed by this processor
+     * @since 0.2.0
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        ElementIndex index = new ElementIndex(processingEnv);
+        for (Element element : roundEnv.getElementsAnnotatedWith(Implement.class)) {
+            if (!(element instanceof TypeElement)) continue;
+            TypeElement token = (TypeElement) element;
+            String packageName = index.getPackageName(token);
+            String className = token.getSimpleName() + "Impl";
+            try {
+                JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                        packageName.isEmpty() ? className : packageName + "." + className, token);
+                try (Writer writer = file.openWriter()) {
+                    implementor.printSource(writer, token, index);
+                }
+            } catch (ImplerException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Cannot implement " + token.getQualifiedName() + ": " + e.getMessage(), token);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to create " + className + ": " + e.getMessage(), token);
+            }
+        }
+        return true;
+    }
+}
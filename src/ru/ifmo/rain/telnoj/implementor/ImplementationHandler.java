@@ -0,0 +1,235 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+/**
+ * Receiver of calls of implementations generated in {@link Implementor.GenerationMode#HANDLER HANDLER} mode.
+ * Every generated method pushes its arguments one by one to overload of <tt>argument</tt> matching type of parameter
+ * and then calls <tt>invoke</tt> method matching its return type, so primitive values are passed without boxing and
+ * no arrays are allocated, unlike {@link java.lang.reflect.Proxy}.
+ * <p>
+ * Methods are identified by their index in <code>HANDLER_METHODS</code> array declared by every generated class,
+ * which contains signatures like <tt>add(long,java.lang.String[])</tt> with canonical names of parameter types.
+ * Arguments and invocation of single call are delivered by the thread making the call, without interleaving with
+ * other calls of that thread, so handler shared between threads has to keep pending arguments per thread, for example
+ * in {@link ThreadLocal}. Such handler still allocates nothing per call, but looks its state up once per argument
+ * and once per invocation, which makes call slower than call of handler used by single thread, and may make it
+ * slower than {@link java.lang.reflect.Proxy} call for methods with several arguments; <code>HandlerBenchmark</code>
+ * measures both handlers.
+ * <p>
+ * All methods do nothing and return default values of their types by default, so generated implementation with
+ * such handler behaves like the one generated in {@link Implementor.GenerationMode#STUB STUB} mode. Exceptions
+ * thrown by handler are propagated to caller, checked ones cannot be thrown.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#Implementor(Implementor.GenerationMode)
+ */
+public interface ImplementationHandler {
+    /**
+     * Receives <code>boolean</code> argument of pending call.
+     *
+     * @param method index of called method
+     * @param index index of parameter
+     * @param value argument
+     * @since 0.2.0
+     */
+    default void argument(int method, int index, boolean value) {
+    }
+
+    /**
+     * Receives <code>byte</code> argument of pending call.
+     *
+     * @param method index of called method
+     * @param index index of parameter
+     * @param value argument
+     * @since 0.2.0
+     */
+    default void argument(int method, int index, byte value) {
+    }
+
+    /**
+     * Receives <code>char</code> argument of pending call.
+     *
+     * @param method index of called method
+     * @param index index of parameter
+     * @param value argument
+     * @since 0.2.0
+     */
+    default void argument(int method, int index, char value) {
+    }
+
+    /**
+     * Receives <code>short</code> argument of pending call.
+     *
+     * @param method index of called method
+     * @param index index of parameter
+     * @param value argument
+     * @since 0.2.0
+     */
+    default void argument(int method, int index, short value) {
+    }
+
+    /**
+     * Receives <code>int</code> argument of pending call.
+     *
+     * @param method index of called method
+     * @param index index of parameter
+     * @param value argument
+     * @since 0.2.0
+     */
+    default void argument(int method, int index, int value) {
+    }
+
+    /**
+     * Receives <code>long</code> argument of pending call.
+     *
+     * @param method index of called method
+     * @param index index of parameter
+     * @param value argument
+     * @since 0.2.0
+     */
+    default void argument(int method, int index, long value) {
+    }
+
+    /**
+     * Receives <code>float</code> argument of pending call.
+     *
+     * @param method index of called method
+     * @param index index of parameter
+     * @param value argument
+     * @since 0.2.0
+     */
+    default void argument(int method, int index, float value) {
+    }
+
+    /**
+     * Receives <code>double</code> argument of pending call.
+     *
+     * @param method index of called method
+     * @param index index of parameter
+     * @param value argument
+     * @since 0.2.0
+     */
+    default void argument(int method, int index, double value) {
+    }
+
+    /**
+     * Receives argument of reference type, including arrays, of pending call.
+     *
+     * @param method index of called method
+     * @param index index of parameter
+     * @param value argument
+     * @since 0.2.0
+     */
+    default void argument(int method, int index, Object value) {
+    }
+
+    /**
+     * Completes call of method returning <code>void</code>.
+     *
+     * @param method index of called method
+     * @since 0.2.0
+     */
+    default void invokeVoid(int method) {
+    }
+
+    /**
+     * Completes call of method returning <code>boolean</code>.
+     *
+     * @param method index of called method
+     * @return result of call
+     * @since 0.2.0
+     */
+    default boolean invokeBoolean(int method) {
+        return false;
+    }
+
+    /**
+     * Completes call of method returning <code>byte</code>.
+     *
+     * @param method index of called method
+     * @return result of call
+     * @since 0.2.0
+     */
+    default byte invokeByte(int method) {
+        return 0;
+    }
+
+    /**
+     * Completes call of method returning <code>char</code>.
+     *
+     * @param method index of called method
+     * @return result of call
+     * @since 0.2.0
+     */
+    default char invokeChar(int method) {
+        return '\u0000';
+    }
+
+    /**
+     * Completes call of method returning <code>short</code>.
+     *
+     * @param method index of called method
+     * @return result of call
+     * @since 0.2.0
+     */
+    default short invokeShort(int method) {
+        return 0;
+    }
+
+    /**
+     * Completes call of method returning <code>int</code>.
+     *
+     * @param method index of called method
+     * @return result of call
+     * @since 0.2.0
+     */
+    default int invokeInt(int method) {
+        return 0;
+    }
+
+    /**
+     * Completes call of method returning <code>long</code>.
+     *
+     * @param method index of called method
+     * @return result of call
+     * @since 0.2.0
+     */
+    default long invokeLong(int method) {
+        return 0L;
+    }
+
+    /**
+     * Completes call of method returning <code>float</code>.
+     *
+     * @param method index of called method
+     * @return result of call
+     * @since 0.2.0
+     */
+    default float invokeFloat(int method) {
+        return 0.0f;
+    }
+
+    /**
+     * Completes call of method returning <code>double</code>.
+     *
+     * @param method index of called method
+     * @return result of call
+     * @since 0.2.0
+     */
+    default double invokeDouble(int method) {
+        return 0.0d;
+    }
+
+    /**
+     * Completes call of method returning reference type. Type of result is inferred from return type of method at
+     * call site, so result which is not instance of erasure of that type causes {@link ClassCastException} there.
+     *
+     * @param method index of called method
+     * @param <T> return type of called method
+     * @return result of call
+     * @since 0.2.0
+     */
+    default <T> T invokeObject(int method) {
+        return null;
+    }
+}
@@ -0,0 +1,193 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import info.kgeorgiy.java.advanced.implementor.ImplerException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class loader which defines implementations generated by {@link BytecodeGenerator}, or by other {@link Generator},
+ * in the running JVM, without writing <tt>.jar</tt> files or touching file system. Implementations are cached per token, so repeated requests
+ * return the same class. All defined classes are owned by this loader and can be unloaded together with it once it
+ * is not referenced anymore.
+ * <p>
+ * Implementations live in a runtime package different from the package of their token, so only public tokens with
+ * public or protected constructors are supported. Implementations are named after their tokens, and JVM prohibits
+ * defining classes in <tt>java.*</tt> packages, so tokens of these packages are not supported either.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#implementClass(Class)
+ */
+public class ImplementationLoader extends ClassLoader {
+    static {
+        registerAsParallelCapable();
+    }
+
+    /**
+     * Producer of class files of implementation.
+     *
+     * @since 0.2.0
+     */
+    interface Generator {
+        /**
+         * Generates class files of implementation of <tt>%token%</tt> and its nested implementations.
+         *
+         * @param token type token to create implementation for
+         * @param binaryName binary name of implementation class
+         * @return map from binary class name to class file bytes
+         * @throws ImplerException when implementation cannot be generated
+         * @since 0.2.0
+         */
+        Map<String, byte[]> generate(Class<?> token, String binaryName) throws ImplerException;
+    }
+
+    /**
+     * Producer of class files of implementations.
+     *
+     * @since 0.2.0
+     */
+    private final Generator generator;
+
+    /**
+     * Defined implementations mapped by their tokens.
+     *
+     * @since 0.2.0
+     */
+    private final Map<Class<?>, Class<?>> implementations = new ConcurrentHashMap<>();
+
+    /**
+     * Generated but not yet defined class files mapped by binary class names. Nested implementations are defined
+     * lazily, when they are requested for the first time.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, byte[]> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Creates loader delegating to <tt>%parent%</tt>, which must see all tokens passed to
+     * {@link #implement(Class) implement}.
+     *
+     * @param parent parent class loader, <tt>null</tt> for bootstrap loader
+     * @since 0.2.0
+     */
+    public ImplementationLoader(ClassLoader parent) {
+        this(parent, BytecodeGenerator::generate);
+    }
+
+    /**
+     * Creates loader delegating to <tt>%parent%</tt> which defines implementations produced by <tt>%generator%</tt>.
+     * Implementations may refer to {@link ImplementationHandler} and {@link InvocationCounter} even if
+     * <tt>%parent%</tt> does not see them.
+     *
+     * @param parent parent class loader, <tt>null</tt> for bootstrap loader
+     * @param generator producer of class files of implementations
+     * @since 0.2.0
+     */
+    ImplementationLoader(ClassLoader parent, Generator generator) {
+        super(parent);
+        this.generator = generator;
+    }
+
+    /**
+     * Returns implementation of <tt>%token%</tt>, generating and defining it on first request.
+     *
+     * @param token type token to create implementation for.
+     * @return loaded implementation class
+     * @throws ImplerException when implementation cannot be generated or defined
+     * @since 0.2.0
+     */
+    public Class<?> implement(Class<?> token) throws ImplerException {
+        Class<?> implementation = implementations.get(token);
+        if (implementation != null) return implementation;
+        synchronized (getClassLoadingLock(token.getName())) {
+            implementation = implementations.get(token);
+            if (implementation != null) return implementation;
+            if (!Modifier.isPublic(token.getModifiers())) {
+                throw new ImplerException("Only public types can be implemented in separate class loader");
+            }
+            if (token.getName().startsWith("java.")) {
+                throw new ImplerException("Types of java.* packages cannot be implemented in separate class loader");
+            }
+            if (!token.isInterface() && !hasInheritableConstructor(token)) {
+                throw new ImplerException("Class has no public or protected constructors");
+            }
+            try {
+                if (Class.forName(token.getName(), false, this) != token) {
+                    throw new ImplerException("Token is not visible from class loader");
+                }
+            } catch (ClassNotFoundException e) {
+                throw new ImplerException("Token is not visible from class loader");
+            }
+            String name = token.getName() + "Impl";
+            Map<String, byte[]> classes = generator.generate(token, name);
+            pending.putAll(classes);
+            try {
+                implementation = findClass(name);
+            } catch (ClassNotFoundException | LinkageError | SecurityException e) {
+                pending.keySet().removeAll(classes.keySet());
+                throw new ImplerException("Unable to define implementation: " + e.getMessage());
+            }
+            implementations.put(token, implementation);
+            return implementation;
+        }
+    }
+
+    /**
+     * Checks whether <tt>%token%</tt> has constructor accessible from subclass in another runtime package.
+     *
+     * @param token class to check
+     * @return true if <tt>%token%</tt> has public or protected constructor
+     * @since 0.2.0
+     */
+    private static boolean hasInheritableConstructor(Class<?> token) {
+        for (Constructor<?> constructor : token.getDeclaredConstructors()) {
+            if (Modifier.isPublic(constructor.getModifiers()) || Modifier.isProtected(constructor.getModifiers())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates instance of implementation of <tt>%token%</tt> by its constructor without parameters.
+     *
+     * @param token type token to create implementation for.
+     * @param <T> type of token
+     * @return new instance of implementation
+     * @throws ImplerException when implementation cannot be generated or has no accessible constructor without
+     * parameters
+     * @since 0.2.0
+     */
+    public <T> T newInstance(Class<T> token) throws ImplerException {
+        try {
+            Constructor<?> constructor = implement(token).getConstructor();
+            return token.cast(constructor.newInstance());
+        } catch (NoSuchMethodException | IllegalAccessException | InstantiationException e) {
+            throw new ImplerException("Implementation has no public constructor without parameters");
+        } catch (InvocationTargetException e) {
+            throw new ImplerException("Constructor of implementation failed: " + e.getCause());
+        }
+    }
+
+    /**
+     * Defines generated class named <tt>%name%</tt>. {@link ImplementationHandler} and {@link InvocationCounter} not
+     * seen by parent are the ones this loader is loaded with.
+     *
+     * @param name binary name of class
+     * @return defined class
+     * @throws ClassNotFoundException when class named <tt>%name%</tt> was not generated by this loader
+     * @since 0.2.0
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = pending.remove(name);
+        if (bytes == null && name.equals(ImplementationHandler.class.getName())) return ImplementationHandler.class;
+        if (bytes == null && name.equals(InvocationCounter.class.getName())) return InvocationCounter.class;
+        if (bytes == null) throw new ClassNotFoundException(name);
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
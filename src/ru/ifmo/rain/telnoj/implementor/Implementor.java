@@ -2,37 +2,52 @@ package ru.ifmo.rain.telnoj.implementor;
 
 import info.kgeorgiy.java.advanced.implementor.ImplerException;
 import info.kgeorgiy.java.advanced.implementor.JarImpler;
-import javafx.util.Pair;
 
-import javax.tools.JavaCompiler;
-import javax.tools.ToolProvider;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
 import java.io.*;
 import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * Creates implementation of input interface. Implements {@link JarImpler JarImpler interface}. Generates class with
- * same name as interface plus suffix <tt>Impl</tt>. Each {@link Implementor#printFunction(BufferedWriter, Executable, Class, Class, String)}
- * implemented method} returns default value {@link Implementor#getDefaultTypeValueString(Class) corresponding to it's type}.
- * Final variables are also set with default values of {@link Implementor#getDefaultTypeValueString(Class) corresponding type}.
+ * same name as interface plus suffix <tt>Impl</tt>. Each
+ * {@link Implementor#printFunction(SourceEmitter, TypeModel.Member, String, List) implemented method} returns default
+ * value {@link Implementor#getDefaultTypeValueString(String) corresponding to it's type}. Final variables are also set
+ * with default values of {@link Implementor#getDefaultTypeValueString(String) corresponding type}. Loaded types, class
+ * files and elements of compiler are printed by the same code, each adapted to {@link TypeModel}.
+ * In {@link GenerationMode#HANDLER HANDLER} mode methods forward their calls to {@link ImplementationHandler} instead,
+ * in {@link GenerationMode#COUNTING COUNTING} mode they also count their calls by {@link InvocationCounter}.
  * <p>
- * Supports two formats of arguments passed to main: <code>/ %interface% /</code> - creates <tt>.java</tt> implementation of
- * <tt>%interface%</tt> and <code>/ -jar %interface% %jar-file% /</code> - creates <tt>.java</tt> implementation of
- * <tt>%interface%</tt>, compiles it and archives it in <tt>%jar-file%</tt>
+ * Can be run from command line: {@link #main(String[]) main} creates <tt>.java</tt> implementations, compiles them and
+ * archives them in <tt>.jar</tt> files, updates existing archives, scans jars or directories for eligible types,
+ * writes results to standard output or serves all of these from {@link ImplementorDaemon}. Full list of supported
+ * formats is given by {@link #usageMessage usage message}.
  *
- * @version 0.1.0
+ * @version 0.2.0
  * @author Kirill Telnoy
  * @since 0.1.0
  * @see info.kgeorgiy.java.advanced.implementor.JarImpler
@@ -45,212 +60,1689 @@ public class Implementor implements JarImpler {
      * @since 0.1.0
      */
     private static final String usageMessage =
-            "Usage: java -jar %implementor% %class%\njava -jar %implementor% -jar %class% %jar-file%";
+            "Usage: java -jar %implementor% %class%\njava -jar %implementor% -jar %class% %jar-file%\n" +
+            "java -jar %implementor% -batch %class-list% %jar-file%\n" +
+            "java -jar %implementor% -update %class-list% %jar-file%\n" +
+            "java -jar %implementor% -scan %jar-or-directory% %jar-file%\n" +
+            "java -jar %implementor% -classfiles %jar-or-directory% %root-dir%\n" +
+            "java -jar %implementor% -daemon %port%\n" +
+            "java -jar %implementor% -client %port% %arguments%\n" +
+            "java -jar %implementor% -stdout [-jar] %class%\n" +
+            "java -jar %implementor% -stdout -batch|-sources %class-list%\n" +
+            "Any of them except -client and -stdout may be prefixed with -cache %cache-dir%";
+
+    /**
+     * Size bound in bytes of {@link OutputCache} created by {@link #main(String[]) main} for <tt>-cache</tt> option.
+     *
+     * @since 0.2.0
+     */
+    private static final long defaultCacheSize = 256L << 20;
+
+    /**
+     * Reason of failures of classes which cannot be loaded by {@link #implementScan(Path, Path, Backend)
+     * implementScan}.
+     *
+     * @since 0.2.0
+     */
+    private static final String loadFailure = "load";
 
     /**
      * Space string used to indent code in generated <tt>.java</tt> files
      *
-     * @since 0.1.0
+     * @since 0.1.0
+     */
+    private static final String spaceIndent = "    ";
+
+    /**
+     * Name of handler type implementations generated in {@link GenerationMode#HANDLER HANDLER} mode refer to.
+     *
+     * @since 0.2.0
+     */
+    private static final String handlerType = ImplementationHandler.class.getName();
+
+    /**
+     * Name of counter type implementations generated in {@link GenerationMode#COUNTING COUNTING} mode refer to.
+     *
+     * @since 0.2.0
+     */
+    private static final String counterType = InvocationCounter.class.getName();
+
+    /**
+     * Enum containing types required to make general {@link #maskModifiers(int, modType) maskModifiers function}
+     * appropriate for interfaces, fields, constructors and methods.
+     *
+     * @since 0.1.0
+     */
+    private enum modType {
+        INTERFACE, FIELD, CONSTRUCTOR, METHOD, CLASS
+    }
+
+    /**
+     * Backends which can produce compiled implementation for {@link #implementJar(Class, Path, Backend) implementJar}.
+     *
+     * @since 0.2.0
+     */
+    public enum Backend {
+        /**
+         * Generates source code and compiles it by system Java compiler.
+         *
+         * @since 0.2.0
+         */
+        JAVAC,
+        /**
+         * Writes class files directly by {@link BytecodeGenerator}, without running compiler.
+         *
+         * @since 0.2.0
+         */
+        BYTECODE
+    }
+
+    /**
+     * Kinds of code generated for bodies of implemented methods.
+     *
+     * @since 0.2.0
+     * @see #Implementor(GenerationMode)
+     */
+    public enum GenerationMode {
+        /**
+         * Methods return default values of their return types.
+         *
+         * @since 0.2.0
+         */
+        STUB,
+        /**
+         * Methods pass their arguments and results through {@link ImplementationHandler} given to constructor of
+         * implementation, which has it as additional first parameter. Only {@link Backend#JAVAC} backend supports
+         * this mode.
+         *
+         * @since 0.2.0
+         */
+        HANDLER,
+        /**
+         * Methods return default values of their return types, like in {@link #STUB} mode, and count their calls by
+         * {@link InvocationCounter} declared by implementation in <code>INVOCATIONS</code> field. Only
+         * {@link Backend#JAVAC} backend supports this mode.
+         *
+         * @since 0.2.0
+         */
+        COUNTING
+    }
+
+    /**
+     * State of single implementation request. Created for every token, so one {@link Implementor} instance may be
+     * used by several threads simultaneously.
+     *
+     * @since 0.2.0
+     * @see #generate(Class)
+     */
+    private static final class Implementation {
+        /**
+         * Class to generate implementation for, <tt>null</tt> if it is read from class file.
+         *
+         * @since 0.2.0
+         */
+        private final Class<?> token;
+
+        /**
+         * Binary name of class to generate implementation for.
+         *
+         * @since 0.2.0
+         */
+        private final String tokenName;
+
+        /**
+         * Package name of input interface, <tt>null</tt> for default package.
+         *
+         * @since 0.2.0
+         */
+        private final String packageName;
+
+        /**
+         * String name of implementation of input interface. Basically it is <code>%classSimpleName% + "Impl"</code>.
+         *
+         * @since 0.2.0
+         */
+        private final String className;
+
+        /**
+         * Generated source code of implementation.
+         *
+         * @since 0.2.0
+         */
+        private String source;
+
+        /**
+         * Constructor initialising names of implementation of <tt>%token%</tt>.
+         *
+         * @param token class to generate implementation for
+         * @since 0.2.0
+         */
+        Implementation(Class<?> token) {
+            this.token = token;
+            tokenName = token.getName();
+            Package tokenPackage = token.getPackage();
+            packageName = tokenPackage == null || tokenPackage.getName().isEmpty() ? null : tokenPackage.getName();
+            className = getImplName(token);
+        }
+
+        /**
+         * Constructor initialising names of implementation of type described by <tt>%model%</tt>, which is not
+         * loaded.
+         *
+         * @param model model of class to generate implementation for
+         * @since 0.2.0
+         */
+        Implementation(ClassFileModel model) {
+            token = null;
+            tokenName = model.name;
+            packageName = model.getPackageName().isEmpty() ? null : model.getPackageName();
+            className = model.simpleName + "Impl";
+        }
+
+        /**
+         * Returns binary name of implementation class.
+         *
+         * @return fully qualified name of implementation
+         * @since 0.2.0
+         */
+        String getBinaryName() {
+            return packageName == null ? className : packageName + "." + className;
+        }
+
+        /**
+         * Returns path of <tt>.java</tt> file of implementation inside <tt>%root%</tt>.
+         *
+         * @param root source root directory
+         * @return path to <tt>.java</tt> file
+         * @since 0.2.0
+         */
+        Path getSourcePath(Path root) {
+            Path dirPath = root;
+            if (packageName != null) dirPath = dirPath.resolve(packageName.replace(".", File.separator));
+            return dirPath.resolve(className + ".java");
+        }
+    }
+
+    /**
+     * Loaders used by {@link #implementClass(Class) implementClass} mapped by class loaders of tokens
+     * (<tt>null</tt> key stands for bootstrap loader). Both are held weakly: every loader refers to its parent, and
+     * is kept alive by classes it defined, so neither loaders of tokens nor implementations are retained by this
+     * map once they are not used anymore.
+     *
+     * @since 0.2.0
+     */
+    private final Map<ClassLoader, WeakReference<ImplementationLoader>> loaders = new WeakHashMap<>();
+
+    /**
+     * Cache of generated files, <tt>null</tt> if outputs are not cached.
+     *
+     * @since 0.2.0
+     */
+    private final OutputCache outputCache;
+
+    /**
+     * Writer of <tt>.jar</tt> files, <tt>null</tt> until default one is created by {@link #getJarWriter()}.
+     *
+     * @since 0.2.0
+     */
+    private volatile JarWriter jarWriter;
+
+    /**
+     * Compiler of generated sources, <tt>null</tt> until default one is created by {@link #getCompiler()}.
+     *
+     * @since 0.2.0
+     */
+    private volatile ShardedCompiler compiler;
+
+    /**
+     * Kind of generated method bodies.
+     *
+     * @since 0.2.0
+     */
+    private final GenerationMode mode;
+
+    /**
+     * Counters and timings of work done by this instance.
+     *
+     * @since 0.2.0
+     */
+    private final ImplementorMetrics metrics = new ImplementorMetrics();
+
+    /**
+     * Constructor of Implementor. Accepts no parameters. Instance keeps no per-call state, so it can be shared between
+     * threads.
+     *
+     * @since 0.1.0
+     */
+    public Implementor() {
+        this((OutputCache) null);
+    }
+
+    /**
+     * Constructor of Implementor which reuses files stored in <tt>%outputCache%</tt> by
+     * {@link #implement(Class, Path) implement} and {@link #implementJar(Collection, Path, Backend) implementJar}
+     * when signatures of tokens have not changed.
+     *
+     * @param outputCache cache of generated files, <tt>null</tt> to disable caching
+     * @since 0.2.0
+     */
+    public Implementor(OutputCache outputCache) {
+        this(outputCache, null);
+    }
+
+    /**
+     * Constructor of Implementor which reuses files stored in <tt>%outputCache%</tt> and writes <tt>.jar</tt> files
+     * by <tt>%jarWriter%</tt>.
+     *
+     * @param outputCache cache of generated files, <tt>null</tt> to disable caching
+     * @param jarWriter writer of <tt>.jar</tt> files which defines their compression, <tt>null</tt> for default one
+     * @since 0.2.0
+     */
+    public Implementor(OutputCache outputCache, JarWriter jarWriter) {
+        this(outputCache, jarWriter, null);
+    }
+
+    /**
+     * Constructor of Implementor which reuses files stored in <tt>%outputCache%</tt>, writes <tt>.jar</tt> files by
+     * <tt>%jarWriter%</tt> and compiles batches of implementations by <tt>%compiler%</tt>.
+     *
+     * @param outputCache cache of generated files, <tt>null</tt> to disable caching
+     * @param jarWriter writer of <tt>.jar</tt> files which defines their compression, <tt>null</tt> for default one
+     * @param compiler compiler which defines how large batches are split and compiled concurrently, <tt>null</tt> for
+     * default one
+     * @since 0.2.0
+     */
+    public Implementor(OutputCache outputCache, JarWriter jarWriter, ShardedCompiler compiler) {
+        this(outputCache, jarWriter, compiler, GenerationMode.STUB);
+    }
+
+    /**
+     * Constructor of Implementor which generates method bodies of kind <tt>%mode%</tt>. Outputs are not cached.
+     *
+     * @param mode kind of generated method bodies
+     * @since 0.2.0
+     */
+    public Implementor(GenerationMode mode) {
+        this(null, null, null, mode);
+    }
+
+    /**
+     * Constructor of Implementor which reuses files stored in <tt>%outputCache%</tt>, writes <tt>.jar</tt> files by
+     * <tt>%jarWriter%</tt>, compiles batches of implementations by <tt>%compiler%</tt> and generates method bodies of
+     * kind <tt>%mode%</tt>. Default writer and compiler are created when they are first needed, so commands which
+     * neither compile nor write <tt>.jar</tt> files do not load them.
+     *
+     * @param outputCache cache of generated files, <tt>null</tt> to disable caching
+     * @param jarWriter writer of <tt>.jar</tt> files which defines their compression, <tt>null</tt> for default one
+     * @param compiler compiler which defines how large batches are split and compiled concurrently, <tt>null</tt> for
+     * default one
+     * @param mode kind of generated method bodies
+     * @since 0.2.0
+     */
+    public Implementor(OutputCache outputCache, JarWriter jarWriter, ShardedCompiler compiler, GenerationMode mode) {
+        this.outputCache = outputCache;
+        this.jarWriter = jarWriter;
+        this.compiler = compiler;
+        this.mode = mode;
+    }
+
+    /**
+     * Returns writer of <tt>.jar</tt> files, creating default one on first call if none was given to constructor.
+     *
+     * @return writer of <tt>.jar</tt> files
+     * @since 0.2.0
+     */
+    private JarWriter getJarWriter() {
+        JarWriter writer = jarWriter;
+        if (writer == null) {
+            synchronized (this) {
+                if (jarWriter == null) jarWriter = new JarWriter();
+                writer = jarWriter;
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Returns compiler of generated sources, creating default one on first call if none was given to constructor.
+     *
+     * @return compiler of generated sources
+     * @since 0.2.0
+     */
+    private ShardedCompiler getCompiler() {
+        ShardedCompiler sharded = compiler;
+        if (sharded == null) {
+            synchronized (this) {
+                if (compiler == null) compiler = new ShardedCompiler();
+                sharded = compiler;
+            }
+        }
+        return sharded;
+    }
+
+    /**
+     * Main function of {@link Implementor Implementor}. Supports formats of passed arguments listed in
+     * {@link #usageMessage usage message}, which is printed when none of them matches:
+     * <code>/ %interface% /</code> - creates <tt>.java</tt> implementation of <tt>%interface%</tt> by using
+     * {@link #implement(Class, Path) implement}, <code>/ -jar %interface% %jar-file% /</code> - creates
+     * <tt>.java</tt> implementation of <tt>%interface%</tt>, compiles it and archives it in <tt>%jar-file%</tt>
+     * by using {@link #implementJar(Class, Path) implementJar}, <code>/ -batch %class-list% %jar-file% /</code> -
+     * implements every class named in <tt>%class-list%</tt> file (one name per line) and archives all of them in
+     * <tt>%jar-file%</tt> by using {@link #implementJar(Collection, Path) implementJar}, and
+     * <code>/ -update %class-list% %jar-file% /</code> replaces only changed implementations in existing
+     * <tt>%jar-file%</tt> by using {@link #updateJar(Collection, Path) updateJar}.
+     * <code>/ -scan %jar-or-directory% %jar-file% /</code> implements every eligible type found in
+     * <tt>%jar-or-directory%</tt> by using {@link #implementScan(Path, Path) implementScan} and prints types which
+     * were skipped. <code>/ -classfiles %jar-or-directory% %root-dir% /</code> does the same, but creates <tt>.java</tt>
+     * files in <tt>%root-dir%</tt> by using {@link #implementClassFiles(Path, Path) implementClassFiles}, which never
+     * loads types. Each format may be prefixed
+     * with <code>-cache %cache-dir%</code> to reuse outputs stored in {@link OutputCache} located in
+     * <tt>%cache-dir%</tt>.
+     * <p>
+     * <code>/ -stdout %class% /</code> writes source of implementation to standard output by using
+     * {@link #implement(Class, OutputStream) implement}, <code>/ -stdout -jar %class% /</code> and
+     * <code>/ -stdout -batch %class-list% /</code> write <tt>.jar</tt> file with compiled implementations to it by
+     * using {@link #implementJar(Collection, WritableByteChannel, Backend) implementJar}, and
+     * <code>/ -stdout -sources %class-list% /</code> writes <tt>.jar</tt> file with sources by using
+     * {@link #implementSources(Collection, WritableByteChannel) implementSources}. Output is streamed as it is
+     * produced, so it can be piped to other tools without temporary files; messages are printed to standard error
+     * and process exits with status <tt>1</tt> on failure.
+     * <p>
+     * <code>/ -daemon %port% /</code> starts {@link ImplementorDaemon} listening on loopback <tt>%port%</tt>, and
+     * <code>/ -client %port% %arguments% /</code> sends <tt>%arguments%</tt> in any of formats above to it, so
+     * commands are executed by already warm JVM. Client authenticates by token which daemon writes to
+     * {@link ImplementorDaemon#getTokenFile(int) file} readable by user who started it only.
+     *
+     * @param args String array in one of formats listed in {@link #usageMessage usage message}
+     * @see Implementor
+     * @since 0.1.0
+     * @see #implement(Class, Path)
+     * @see #implementJar(Class, Path)
+     * @see #implementJar(Collection, Path)
+     */
+    public static void main(String[] args) {
+        if (args.length > 2 && args[0].equals("-client")) {
+            try {
+                String message = ImplementorDaemon.send(Integer.parseInt(args[1]), Paths.get(""),
+                        Arrays.copyOfRange(args, 2, args.length));
+                if (message != null) System.out.println(message);
+            } catch (NumberFormatException e) {
+                System.out.println(usageMessage);
+            } catch (IOException e) {
+                System.out.println("Unable to connect to daemon: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 1 && args[0].equals("-stdout")) {
+            String message = executeStdout(new Implementor(), Arrays.copyOfRange(args, 1, args.length));
+            if (message != null) {
+                System.err.println(message);
+                // output may be already consumed by pipe, so failure is reported by exit status as well
+                System.exit(1);
+            }
+            return;
+        }
+        Implementor imp = new Implementor();
+        if (args.length > 2 && args[0].equals("-cache")) {
+            try {
+                imp = new Implementor(new OutputCache(Paths.get(args[1]), defaultCacheSize));
+            } catch (IOException e) {
+                System.out.println("Unable to create cache directory");
+                return;
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args.length == 2 && args[0].equals("-daemon")) {
+            try (ImplementorDaemon daemon = new ImplementorDaemon(imp, Integer.parseInt(args[1]),
+                    Runtime.getRuntime().availableProcessors())) {
+                System.out.println("Listening on port " + daemon.getPort());
+                daemon.serve();
+                daemon.awaitTermination();
+            } catch (NumberFormatException e) {
+                System.out.println(usageMessage);
+            } catch (IOException e) {
+                System.out.println("Daemon failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        String message = execute(imp, args, Paths.get(System.getProperty("user.dir")));
+        if (message != null) System.out.println(message);
+    }
+
+    /**
+     * Executes <tt>-stdout</tt> command of {@link #main(String[]) main} with arguments <tt>%args%</tt> following
+     * <tt>-stdout</tt>, writing its output to {@link FileDescriptor#out standard output}.
+     *
+     * @param imp implementor executing command
+     * @param args arguments of command
+     * @return <tt>null</tt> if command succeeded, message describing failure otherwise
+     * @since 0.2.0
+     */
+    private static String executeStdout(Implementor imp, String[] args) {
+        // unlike System.out, stream of descriptor reports write errors, for example of full device or closed pipe
+        OutputStream out = new FileOutputStream(FileDescriptor.out);
+        try {
+            if (args.length == 1 && !args[0].startsWith("-")) {
+                imp.implement(Class.forName(args[0]), out);
+            } else if (args.length == 2 && args[0].equals("-jar")) {
+                imp.implementJar(Collections.singletonList(Class.forName(args[1])), Channels.newChannel(out),
+                        Backend.JAVAC);
+            } else if (args.length == 2 && args[0].equals("-batch")) {
+                imp.implementJar(readClasses(Paths.get(args[1])), Channels.newChannel(out), Backend.JAVAC);
+            } else if (args.length == 2 && args[0].equals("-sources")) {
+                imp.implementSources(readClasses(Paths.get(args[1])), Channels.newChannel(out));
+            } else {
+                return usageMessage;
+            }
+        } catch (ClassNotFoundException e) {
+            return "Invalid classname";
+        } catch (ImplerException e) {
+            return "ImplerException: " + e.getMessage();
+        } catch (IOException e) {
+            return "Unable to read class list";
+        }
+        return null;
+    }
+
+    /**
+     * Executes command line <tt>%args%</tt> in one of formats supported by {@link #main(String[]) main}, except
+     * <tt>-cache</tt>, <tt>-daemon</tt>, <tt>-client</tt> and <tt>-stdout</tt>, by <tt>%imp%</tt>.
+     *
+     * @param imp implementor executing command
+     * @param args arguments of command
+     * @param workingDirectory directory relative paths of <tt>%args%</tt> are resolved against and where
+     * <tt>.java</tt> files are created
+     * @return <tt>null</tt> if command succeeded, message describing failure otherwise
+     * @since 0.2.0
+     * @see ImplementorDaemon
+     */
+    static String execute(Implementor imp, String[] args, Path workingDirectory) {
+        if (args.length != 1 && args.length != 3) return usageMessage;
+        try {
+            if (args[0].equals("-jar") && (args.length == 3)) {
+                imp.implementJar(Class.forName(args[1]), workingDirectory.resolve(args[2]));
+            } else if (args[0].equals("-batch") && (args.length == 3)) {
+                imp.implementJar(readClasses(workingDirectory.resolve(args[1])), workingDirectory.resolve(args[2]));
+            } else if (args[0].equals("-update") && (args.length == 3)) {
+                imp.updateJar(readClasses(workingDirectory.resolve(args[1])), workingDirectory.resolve(args[2]));
+            } else if ((args[0].equals("-scan") || args[0].equals("-classfiles")) && (args.length == 3)) {
+                Path source = workingDirectory.resolve(args[1]);
+                Path target = workingDirectory.resolve(args[2]);
+                Map<String, ImplerException> failures = args[0].equals("-scan")
+                        ? imp.implementScan(source, target) : imp.implementClassFiles(source, target);
+                if (failures.isEmpty()) return null;
+                StringBuilder message = new StringBuilder();
+                for (Map.Entry<String, ImplerException> failure : failures.entrySet()) {
+                    if (message.length() > 0) message.append('\n');
+                    message.append("Skipped ").append(failure.getKey()).append(": ")
+                            .append(failure.getValue().getMessage());
+                }
+                return message.toString();
+            } else if (args.length == 1) imp.implement(Class.forName(args[0]), workingDirectory);
+            else return usageMessage;
+        } catch (ClassNotFoundException e) {
+            return "Invalid classname";
+        } catch (ImplerException e) {
+            return "ImplerException: " + e.getMessage();
+        } catch (IOException e) {
+            return "Unable to read class list";
+        }
+        return null;
+    }
+
+    /**
+     * Returns metrics of this instance: counts of processed tokens, emitted methods and written bytes, time spent in
+     * every phase and counts of failures by reason.
+     *
+     * @return live metrics of this instance
+     * @since 0.2.0
+     * @see ImplementorMetrics#snapshot()
+     * @see ImplementorMetrics#register()
+     */
+    public ImplementorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns count of method table requests served by cache shared by all instances of {@link Implementor}.
+     *
+     * @return count of cache hits
+     * @since 0.2.0
+     * @see MethodTables
+     */
+    public static long getMethodCacheHits() {
+        return MethodTables.getHits();
+    }
+
+    /**
+     * Returns count of method tables built by reflection since start of JVM.
+     *
+     * @return count of cache misses
+     * @since 0.2.0
+     * @see MethodTables
+     */
+    public static long getMethodCacheMisses() {
+        return MethodTables.getMisses();
+    }
+
+    /**
+     * Reads class names from <tt>%file%</tt> (one name per line, blank lines are skipped) and loads them.
+     *
+     * @param file file containing class names
+     * @return list of loaded classes in order of their appearance in <tt>%file%</tt>
+     * @throws IOException when unable to read <tt>%file%</tt>
+     * @throws ClassNotFoundException when one of classes cannot be found
+     * @since 0.2.0
+     * @see #main(String[])
+     */
+    private static List<Class<?>> readClasses(Path file) throws IOException, ClassNotFoundException {
+        List<Class<?>> classes = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (!line.isEmpty()) classes.add(Class.forName(line));
+        }
+        return classes;
+    }
+
+    /**
+     * Creates <tt>.jar</tt> file (<tt>%jarFile%</tt>) containing the implementation of <tt>%token%</tt> interface. The
+     * name of result class stored in <tt>.jar</tt> file is the same as <tt>%token%</tt> name plus suffix <tt>Impl</tt>.
+     * Throws ImplerException in case of fail. Generated source is compiled in memory by {@link MemoryFileManager} and
+     * resulting classes (including nested ones) are written straight to <tt>.jar</tt> file, so no temporary files are
+     * created.
+     *
+     * @param token type token to create implementation for.
+     * @param jarFile target <tt>.jar</tt> file.
+     * @throws ImplerException when implementation cannot be generated.
+     * @since 0.1.0
+     * @see #implement(Class, Path)
+     * @see #main(String[])
+     */
+    @Override
+    public void implementJar(Class<?> token, Path jarFile) throws ImplerException {
+        implementJar(Collections.singletonList(token), jarFile);
+    }
+
+    /**
+     * Creates <tt>.jar</tt> file (<tt>%jarFile%</tt>) containing the implementation of <tt>%token%</tt> interface
+     * produced by <tt>%backend%</tt>.
+     *
+     * @param token type token to create implementation for.
+     * @param jarFile target <tt>.jar</tt> file.
+     * @param backend backend which produces class files
+     * @throws ImplerException when implementation cannot be generated.
+     * @since 0.2.0
+     * @see #implementJar(Class, Path)
+     */
+    public void implementJar(Class<?> token, Path jarFile, Backend backend) throws ImplerException {
+        implementJar(Collections.singletonList(token), jarFile, backend);
+    }
+
+    /**
+     * Creates <tt>.jar</tt> file (<tt>%jarFile%</tt>) containing implementations of all <tt>%tokens%</tt>. Sources of
+     * all implementations are generated first and then compiled by single compiler invocation, so the cost of
+     * starting compiler is paid once for the whole batch. Every produced class, including nested <tt>Impl</tt>
+     * classes, is stored in the same <tt>.jar</tt> file.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param jarFile target <tt>.jar</tt> file.
+     * @throws ImplerException when implementation of any token cannot be generated.
+     * @since 0.2.0
+     * @see #implementJar(Class, Path)
+     * @see #main(String[])
+     */
+    public void implementJar(Collection<? extends Class<?>> tokens, Path jarFile) throws ImplerException {
+        implementJar(tokens, jarFile, Backend.JAVAC);
+    }
+
+    /**
+     * Creates <tt>.jar</tt> file (<tt>%jarFile%</tt>) containing implementations of all <tt>%tokens%</tt> produced by
+     * <tt>%backend%</tt>.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param jarFile target <tt>.jar</tt> file.
+     * @param backend backend which produces class files
+     * @throws ImplerException when implementation of any token cannot be generated.
+     * @since 0.2.0
+     * @see #implementJar(Collection, Path)
+     */
+    public void implementJar(Collection<? extends Class<?>> tokens, Path jarFile, Backend backend)
+            throws ImplerException {
+        String key = null;
+        if (outputCache != null) {
+            key = OutputCache.key("jar " + backend + " " + mode + " " + getJarWriter(), tokens);
+            if (outputCache.fetch(key, jarFile)) {
+                metrics.addTokens(tokens.size());
+                return;
+            }
+        }
+        Map<String, byte[]> classes = compile(tokens, backend);
+        metrics.measure(ImplementorMetrics.Phase.JAR, tokens, () -> {
+            writeJar(classes, jarFile);
+            return null;
+        });
+        metrics.addTokens(tokens.size());
+        addFileSize(jarFile);
+        if (key != null) outputCache.store(key, jarFile);
+    }
+
+    /**
+     * Creates <tt>.jar</tt> file (<tt>%jarFile%</tt>) containing implementations of all <tt>%tokens%</tt> produced by
+     * <tt>%backend%</tt>, running reflection, emission, compilation and writing as overlapping stages of
+     * <tt>%pipeline%</tt>. Implementations are compiled in batches of tokens which were emitted while the previous
+     * batch was compiled, and class files are written as soon as they are compiled, in order of <tt>%tokens%</tt>.
+     * File is written next to <tt>%jarFile%</tt> and moved in place when complete, so failure leaves previous
+     * <tt>%jarFile%</tt> untouched. {@link OutputCache} is not used.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param jarFile target <tt>.jar</tt> file.
+     * @param backend backend which produces class files
+     * @param pipeline pipeline running stages
+     * @return statistics of stages
+     * @throws ImplerException when implementation of any token cannot be generated.
+     * @since 0.2.0
+     * @see #implementJar(Collection, Path, Backend)
+     */
+    public ImplementorPipeline.Statistics implementJar(Collection<? extends Class<?>> tokens, Path jarFile,
+                                                      Backend backend, ImplementorPipeline pipeline)
+            throws ImplerException {
+        ImplementorPipeline.Statistics statistics;
+        Path temp;
+        try {
+            temp = Files.createTempFile(jarFile.toAbsolutePath().getParent(), jarFile.getFileName().toString(),
+                    ".tmp");
+        } catch (IOException e) {
+            throw new ImplerException("Cannot create jar file");
+        }
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                statistics = implementJar(tokens, channel, backend, pipeline);
+            }
+            JarWriter.replace(temp, jarFile);
+        } catch (IOException e) {
+            throw new ImplerException("Cannot create jar file");
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                // temporary file is left behind, target is intact anyway
+            }
+        }
+        addFileSize(jarFile);
+        return statistics;
+    }
+
+    /**
+     * Writes <tt>.jar</tt> file containing implementations of all <tt>%tokens%</tt> produced by <tt>%backend%</tt>
+     * to <tt>%channel%</tt>, which is left open. Class files are written by {@link ImplementorPipeline default
+     * pipeline} as soon as they are compiled, so memory used does not depend on count of tokens. Output stream may be
+     * written to through {@link java.nio.channels.Channels#newChannel(OutputStream) channel} wrapping it.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param channel channel to write <tt>.jar</tt> file to.
+     * @param backend backend which produces class files
+     * @throws ImplerException when implementation of any token cannot be generated or file cannot be written.
+     * @since 0.2.0
+     * @see #implementJar(Collection, WritableByteChannel, Backend, ImplementorPipeline)
+     */
+    public void implementJar(Collection<? extends Class<?>> tokens, WritableByteChannel channel, Backend backend)
+            throws ImplerException {
+        implementJar(tokens, channel, backend, new ImplementorPipeline());
+    }
+
+    /**
+     * Writes <tt>.jar</tt> file containing implementations of all <tt>%tokens%</tt> produced by <tt>%backend%</tt>
+     * to <tt>%channel%</tt>, which is left open, by stages of <tt>%pipeline%</tt>, like
+     * {@link #implementJar(Collection, Path, Backend, ImplementorPipeline)} writes it to file. Entries are written as
+     * they are produced and only records of central directory are kept until the end, so memory used is bounded by
+     * capacities of queues of <tt>%pipeline%</tt>. Repeated tokens are implemented once.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param channel channel to write <tt>.jar</tt> file to.
+     * @param backend backend which produces class files
+     * @param pipeline pipeline running stages
+     * @return statistics of stages
+     * @throws ImplerException when implementation of any token cannot be generated or file cannot be written.
+     * @since 0.2.0
+     */
+    public ImplementorPipeline.Statistics implementJar(Collection<? extends Class<?>> tokens,
+                                                      WritableByteChannel channel, Backend backend,
+                                                      ImplementorPipeline pipeline) throws ImplerException {
+        checkBackend(backend);
+        // entries of repeated token would be written once per batch it falls into
+        Set<Class<?>> distinct = new LinkedHashSet<>(tokens);
+        Map<ImplementorPipeline.Stage, ImplementorPipeline.Step<?, ?>> steps =
+                new EnumMap<>(ImplementorPipeline.Stage.class);
+        ImplementorPipeline.Step<Class<?>, Class<?>> resolve = batch -> {
+            for (Class<?> token : batch) {
+                try {
+                    checkToken(token);
+                } catch (ImplerException e) {
+                    throw new ImplerException(token.getName() + ": " + e.getMessage());
+                }
+                MethodTables.get(token);
+            }
+            return batch;
+        };
+        steps.put(ImplementorPipeline.Stage.RESOLVE, resolve);
+        if (backend == Backend.BYTECODE) {
+            ImplementorPipeline.Step<Class<?>, Map<String, byte[]>> emit = batch -> {
+                List<Map<String, byte[]>> result = new ArrayList<>();
+                for (Class<?> token : batch) {
+                    try {
+                        result.add(metrics.measure(ImplementorMetrics.Phase.GENERATE,
+                                Collections.singletonList(token),
+                                () -> BytecodeGenerator.generate(token, new Implementation(token).getBinaryName())));
+                    } catch (ImplerException e) {
+                        throw new ImplerException(token.getName() + ": " + e.getMessage());
+                    }
+                }
+                return result;
+            };
+            steps.put(ImplementorPipeline.Stage.EMIT, emit);
+            steps.put(ImplementorPipeline.Stage.COMPILE, batch -> batch);
+        } else {
+            ImplementorPipeline.Step<Class<?>, Implementation> emit = batch -> {
+                List<Implementation> result = new ArrayList<>();
+                for (Class<?> token : batch) {
+                    try {
+                        result.add(generate(token));
+                    } catch (ImplerException e) {
+                        throw new ImplerException(token.getName() + ": " + e.getMessage());
+                    }
+                }
+                return result;
+            };
+            ImplementorPipeline.Step<Implementation, Map<String, byte[]>> compile = batch -> {
+                Map<String, String> sources = new LinkedHashMap<>();
+                List<Class<?>> batchTokens = new ArrayList<>();
+                for (Implementation implementation : batch) {
+                    sources.put(implementation.getBinaryName(), implementation.source);
+                    batchTokens.add(implementation.token);
+                }
+                Map<String, byte[]> classes = metrics.measure(ImplementorMetrics.Phase.COMPILE, batchTokens,
+                        () -> compile(sources, batchTokens));
+                return splitClasses(classes, batch);
+            };
+            steps.put(ImplementorPipeline.Stage.EMIT, emit);
+            steps.put(ImplementorPipeline.Stage.COMPILE, compile);
+        }
+        ImplementorPipeline.Statistics statistics;
+        try {
+            JarWriter.Output output = getJarWriter().open(channel);
+            ImplementorPipeline.Step<Map<String, byte[]>, Void> write = batch -> {
+                // classes of every token are written in order of tokens, ordered by name within token, however
+                // the batches were formed
+                Map<String, byte[]> entries = new LinkedHashMap<>();
+                for (Map<String, byte[]> compiled : batch) {
+                    entries.putAll(new TreeMap<>(toEntries(compiled)));
+                }
+                return metrics.measure(ImplementorMetrics.Phase.JAR, entries.keySet(), () -> {
+                    try {
+                        for (JarWriter.Entry entry : getJarWriter().prepareInOrder(entries)) {
+                            output.add(entry);
+                        }
+                    } catch (IOException e) {
+                        throw new ImplerException("Cannot create jar file");
+                    }
+                    return Collections.emptyList();
+                });
+            };
+            steps.put(ImplementorPipeline.Stage.JAR, write);
+            statistics = pipeline.run(distinct, steps);
+            output.finish();
+        } catch (IOException e) {
+            throw new ImplerException("Cannot create jar file");
+        }
+        metrics.addTokens(distinct.size());
+        return statistics;
+    }
+
+    /**
+     * Writes <tt>.jar</tt> file containing sources of implementations of all <tt>%tokens%</tt> to
+     * <tt>%channel%</tt>, which is left open. Every source is written as soon as it is generated, in order of
+     * <tt>%tokens%</tt>, under the same path {@link #implement(Class, Path) implement} would create it at, so memory
+     * used does not depend on count of tokens.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param channel channel to write <tt>.jar</tt> file to.
+     * @throws ImplerException when implementation of any token cannot be generated or file cannot be written.
+     * @since 0.2.0
+     * @see #implement(Class, OutputStream)
+     */
+    public void implementSources(Collection<? extends Class<?>> tokens, WritableByteChannel channel)
+            throws ImplerException {
+        try {
+            JarWriter.Output output = getJarWriter().open(channel);
+            for (Class<?> token : new LinkedHashSet<>(tokens)) {
+                Implementation implementation;
+                try {
+                    implementation = generate(token);
+                } catch (ImplerException e) {
+                    throw new ImplerException(token.getName() + ": " + e.getMessage());
+                }
+                String name = implementation.getBinaryName().replace('.', '/') + ".java";
+                byte[] source = implementation.source.getBytes(StandardCharsets.UTF_8);
+                metrics.measure(ImplementorMetrics.Phase.JAR, Collections.singletonList(token), () -> {
+                    try {
+                        for (JarWriter.Entry entry : getJarWriter().prepare(Collections.singletonMap(name, source))) {
+                            output.add(entry);
+                        }
+                    } catch (IOException e) {
+                        throw new ImplerException("Cannot write source jar");
+                    }
+                    return null;
+                });
+                metrics.addTokens(1);
+                metrics.addBytes(source.length);
+            }
+            output.finish();
+        } catch (IOException e) {
+            throw new ImplerException("Cannot write source jar");
+        }
+    }
+
+    /**
+     * Updates existing <tt>.jar</tt> file (<tt>%jarFile%</tt>) with implementations of <tt>%tokens%</tt> by using
+     * {@link JarWriter#update(Map, Predicate, Path) update}: changed classes are added or replaced, nested classes
+     * of these implementations which are no longer produced are removed, and all other entries are copied raw, so
+     * the cost depends on count of changed classes rather than on size of file. Creates the file if it does not
+     * exist.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param jarFile <tt>.jar</tt> file to update.
+     * @return count of classes which were added or changed
+     * @throws ImplerException when implementation of any token cannot be generated or file cannot be updated.
+     * @since 0.2.0
+     * @see #updateJar(Collection, Path, Backend)
+     */
+    public int updateJar(Collection<? extends Class<?>> tokens, Path jarFile) throws ImplerException {
+        return updateJar(tokens, jarFile, Backend.JAVAC);
+    }
+
+    /**
+     * Updates existing <tt>.jar</tt> file (<tt>%jarFile%</tt>) with implementations of <tt>%tokens%</tt> produced by
+     * <tt>%backend%</tt>. {@link OutputCache} is not used, as result depends on old content of file.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param jarFile <tt>.jar</tt> file to update.
+     * @param backend backend which produces class files
+     * @return count of classes which were added or changed
+     * @throws ImplerException when implementation of any token cannot be generated or file cannot be updated.
+     * @since 0.2.0
+     * @see #updateJar(Collection, Path)
+     */
+    public int updateJar(Collection<? extends Class<?>> tokens, Path jarFile, Backend backend)
+            throws ImplerException {
+        Map<String, byte[]> classes = compile(tokens, backend);
+        Set<String> implementations = new HashSet<>();
+        for (Class<?> token : tokens) {
+            implementations.add(new Implementation(token).getBinaryName().replace('.', '/'));
+        }
+        Predicate<String> removed = name -> {
+            if (!name.endsWith(".class")) return false;
+            int nested = name.indexOf('$', name.lastIndexOf('/') + 1);
+            return implementations.contains(nested < 0
+                    ? name.substring(0, name.length() - ".class".length()) : name.substring(0, nested));
+        };
+        int changed = metrics.measure(ImplementorMetrics.Phase.JAR, tokens, () -> {
+            try {
+                return getJarWriter().update(toEntries(classes), removed, jarFile);
+            } catch (IOException e) {
+                throw new ImplerException("Cannot update jar file");
+            }
+        });
+        metrics.addTokens(tokens.size());
+        addFileSize(jarFile);
+        return changed;
+    }
+
+    /**
+     * Produces class files of implementations of all <tt>%tokens%</tt> by <tt>%backend%</tt>.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param backend backend which produces class files
+     * @return map from binary class name to class file bytes
+     * @throws ImplerException when implementation of any token cannot be generated.
+     * @since 0.2.0
+     * @see #implementJar(Collection, Path, Backend)
+     */
+    Map<String, byte[]> compile(Collection<? extends Class<?>> tokens, Backend backend)
+            throws ImplerException {
+        checkBackend(backend);
+        if (backend == Backend.BYTECODE) {
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (Class<?> token : tokens) {
+                checkToken(token);
+                try {
+                    classes.putAll(metrics.measure(ImplementorMetrics.Phase.GENERATE, Collections.singletonList(token),
+                            () -> BytecodeGenerator.generate(token, new Implementation(token).getBinaryName())));
+                } catch (ImplerException e) {
+                    throw new ImplerException(token.getName() + ": " + e.getMessage());
+                }
+            }
+            return classes;
+        }
+        Map<Class<?>, ImplerException> failures = new ConcurrentHashMap<>();
+        List<Implementation> implementations = generateAll(tokens, failures);
+        for (Class<?> token : tokens) {
+            ImplerException failure = failures.get(token);
+            if (failure != null) throw new ImplerException(token.getName() + ": " + failure.getMessage());
+        }
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (Implementation implementation : implementations) {
+            sources.put(implementation.getBinaryName(), implementation.source);
+        }
+        return metrics.measure(ImplementorMetrics.Phase.COMPILE, tokens, () -> compile(sources, tokens));
+    }
+
+    /**
+     * Creates <tt>.java</tt> files containing implementations of all <tt>%tokens%</tt> in <tt>%root%</tt>. Tokens are
+     * processed concurrently in {@link ForkJoinPool#commonPool() common pool}. Failure of one token does not stop
+     * generation of others.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param root path where to create implementations
+     * @return map from every token which failed to exception describing the failure, empty if all succeeded
+     * @since 0.2.0
+     * @see #implementParallel(Collection, Path, ForkJoinPool)
+     */
+    public Map<Class<?>, ImplerException> implementParallel(Collection<? extends Class<?>> tokens, Path root) {
+        return implementParallel(tokens, root, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates <tt>.java</tt> files containing implementations of all <tt>%tokens%</tt> in <tt>%root%</tt>. Tokens are
+     * processed concurrently in <tt>%pool%</tt>. Failure of one token does not stop generation of others.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param root path where to create implementations
+     * @param pool pool which runs generation
+     * @return map from every token which failed to exception describing the failure, empty if all succeeded
+     * @since 0.2.0
+     * @see #implement(Class, Path)
+     */
+    public Map<Class<?>, ImplerException> implementParallel(Collection<? extends Class<?>> tokens, Path root,
+                                                            ForkJoinPool pool) {
+        Map<Class<?>, ImplerException> failures = new ConcurrentHashMap<>();
+        runInPool(pool, () -> tokens.parallelStream().forEach(token -> {
+            try {
+                implement(token, root);
+            } catch (ImplerException e) {
+                failures.put(token, e);
+            }
+        }));
+        return failures;
+    }
+
+    /**
+     * Generates sources of implementations of <tt>%tokens%</tt> concurrently in
+     * {@link ForkJoinPool#commonPool() common pool}.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param failures map where failed tokens are put together with exception describing the failure
+     * @return successfully generated implementations in order of <tt>%tokens%</tt>
+     * @since 0.2.0
+     * @see #implementJar(Collection, Path)
+     */
+    private List<Implementation> generateAll(Collection<? extends Class<?>> tokens,
+                                             Map<Class<?>, ImplerException> failures) {
+        return tokens.parallelStream().map(token -> {
+            try {
+                return generate(token);
+            } catch (ImplerException e) {
+                failures.put(token, e);
+                return null;
+            }
+        }).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * Runs <tt>%task%</tt> inside <tt>%pool%</tt> and waits for its completion, so parallel streams used by
+     * <tt>%task%</tt> are executed by threads of <tt>%pool%</tt>.
+     *
+     * @param pool pool to run task in
+     * @param task task to run
+     * @since 0.2.0
+     */
+    private static void runInPool(ForkJoinPool pool, Runnable task) {
+        if (pool == ForkJoinPool.commonPool()) {
+            task.run();
+        } else {
+            pool.submit(task).join();
+        }
+    }
+
+    /**
+     * Compiles <tt>%sources%</tt> in memory by single compiler task. Sources are compiled against
+     * {@link #getMinimalClassPath(Collection) locations of referenced types} first, and against
+     * {@link #getClassPath(Collection) full class path} if that fails because some types are not found.
+     *
+     * @param sources map from binary class name to source code of class
+     * @param tokens classes implementations are generated for, their locations are added to class path
+     * @return map from binary class name to class file bytes for every class produced by compiler
+     * @throws ImplerException when compiler is not available or compilation fails
+     * @since 0.2.0
+     * @see #implementJar(Collection, Path)
+     */
+    Map<String, byte[]> compile(Map<String, String> sources, Collection<? extends Class<?>> tokens)
+            throws ImplerException {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, byte[]> classes = tryCompile(sources, tokens, diagnostics);
+        if (classes == null) {
+            throw new ImplerException("Unable to compile generated class" + getErrors(diagnostics, null));
+        }
+        return classes;
+    }
+
+    /**
+     * Compiles <tt>%sources%</tt> like {@link #compile(Map, Collection) compile}, but reports compilation errors to
+     * <tt>%diagnostics%</tt> instead of throwing exception.
+     *
+     * @param sources map from binary class name to source code of class
+     * @param tokens classes implementations are generated for, their locations are added to class path
+     * @param diagnostics collector of diagnostics of the last compilation
+     * @return map from binary class name to class file bytes, <tt>null</tt> if compilation failed
+     * @throws ImplerException when compiler is not available
+     * @since 0.2.0
+     */
+    private Map<String, byte[]> tryCompile(Map<String, String> sources, Collection<? extends Class<?>> tokens,
+                                           DiagnosticCollector<JavaFileObject> diagnostics) throws ImplerException {
+        try {
+            List<File> minimalClassPath = getMinimalClassPath(tokens);
+            if (minimalClassPath != null) {
+                DiagnosticCollector<JavaFileObject> minimalDiagnostics = new DiagnosticCollector<>();
+                Map<String, byte[]> classes = getCompiler().compile(sources, withRuntime(minimalClassPath),
+                        minimalDiagnostics);
+                if (classes != null) return classes;
+                if (!isMissingType(minimalDiagnostics)) {
+                    // full class path would fail the same way
+                    minimalDiagnostics.getDiagnostics().forEach(diagnostics::report);
+                    return null;
+                }
+            }
+            return getCompiler().compile(sources, withRuntime(getClassPath(tokens)), diagnostics);
+        } catch (IOException e) {
+            throw new ImplerException("Unable to compile generated class: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns whether compiler reported error caused by type or package not found on class path.
+     *
+     * @param diagnostics diagnostics collected during compilation
+     * @return true if some error refers to unresolved symbol or missing class file, false otherwise
+     * @since 0.2.0
+     */
+    private static boolean isMissingType(DiagnosticCollector<JavaFileObject> diagnostics) {
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            String code = diagnostic.getCode();
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR && code != null
+                    && (code.startsWith("compiler.err.cant.resolve") || code.equals("compiler.err.cant.access")
+                    || code.equals("compiler.err.doesnt.exist"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns errors reported by compiler, each on separate line.
+     *
+     * @param diagnostics diagnostics collected during compilation
+     * @param className binary name of class which source errors are returned for, <tt>null</tt> for all errors
+     * @return String containing errors preceded by colon, empty if there are none
+     * @since 0.2.0
+     */
+    private static String getErrors(DiagnosticCollector<JavaFileObject> diagnostics, String className) {
+        StringBuilder errors = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR && (className == null
+                    || diagnostic.getSource() != null
+                    && className.equals(MemoryFileManager.getClassName(diagnostic.getSource())))) {
+                errors.append(errors.length() == 0 ? ":" : "").append('\n');
+                if (diagnostic.getSource() != null) {
+                    errors.append(diagnostic.getSource().getName()).append(':')
+                            .append(diagnostic.getLineNumber()).append(": ");
+                }
+                errors.append(diagnostic.getMessage(Locale.ROOT));
+            }
+        }
+        return errors.toString();
+    }
+
+    /**
+     * Writes compiled <tt>%classes%</tt> to <tt>%jarFile%</tt> with default manifest.
+     *
+     * @param classes map from binary class name to class file bytes
+     * @param jarFile target <tt>.jar</tt> file.
+     * @throws ImplerException when unable to write <tt>.jar</tt> file
+     * @since 0.2.0
+     * @see #implementJar(Collection, Path)
+     */
+    void writeJar(Map<String, byte[]> classes, Path jarFile) throws ImplerException {
+        try {
+            getJarWriter().write(toEntries(classes), jarFile);
+        } catch (IOException e) {
+            throw new ImplerException("Cannot create jar file");
+        }
+    }
+
+    /**
+     * Splits <tt>%classes%</tt> compiled from <tt>%implementations%</tt> into classes of every implementation, that is
+     * implementation class itself and classes nested in it, in order of <tt>%implementations%</tt>. Classes not
+     * belonging to any implementation follow them.
+     *
+     * @param classes map from binary class name to class file bytes
+     * @param implementations implementations classes were compiled from
+     * @return classes of every implementation
+     * @since 0.2.0
+     */
+    private static List<Map<String, byte[]>> splitClasses(Map<String, byte[]> classes,
+                                                          List<Implementation> implementations) {
+        Map<String, Map<String, byte[]>> groups = new LinkedHashMap<>();
+        for (Implementation implementation : implementations) {
+            groups.put(implementation.getBinaryName(), new HashMap<>());
+        }
+        Map<String, byte[]> other = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            String name = entry.getKey();
+            Map<String, byte[]> group = groups.get(name);
+            for (int i = name.lastIndexOf('$'); group == null && i > name.lastIndexOf('.');
+                 i = name.lastIndexOf('$', i - 1)) {
+                group = groups.get(name.substring(0, i));
+            }
+            (group == null ? other : group).put(name, entry.getValue());
+        }
+        List<Map<String, byte[]>> result = new ArrayList<>(groups.values());
+        if (!other.isEmpty()) result.add(other);
+        return result;
+    }
+
+    /**
+     * Converts compiled <tt>%classes%</tt> into <tt>.jar</tt> entries.
+     *
+     * @param classes map from binary class name to class file bytes
+     * @return map from entry name of class file to its bytes
+     * @since 0.2.0
+     */
+    private static Map<String, byte[]> toEntries(Map<String, byte[]> classes) {
+        Map<String, byte[]> entries = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            entries.put(entry.getKey().replace('.', '/') + ".class", entry.getValue());
+        }
+        return entries;
+    }
+
+    /**
+     * Creates <tt>.jar</tt> file (<tt>%jarFile%</tt>) containing implementations of every interface and abstract class
+     * found in <tt>%source%</tt> which passes the same checks as {@link #implement(Class, Path) implement} does.
+     * Implementations are compiled by system Java compiler.
+     *
+     * @param source <tt>.jar</tt> file or class path directory to scan
+     * @param jarFile target <tt>.jar</tt> file.
+     * @return map from name of every type which was skipped because of failure to exception describing the failure
+     * @throws ImplerException when unable to read <tt>%source%</tt> or write <tt>%jarFile%</tt>
+     * @since 0.2.0
+     * @see #implementScan(Path, Path, Backend)
+     */
+    public Map<String, ImplerException> implementScan(Path source, Path jarFile) throws ImplerException {
+        return implementScan(source, jarFile, Backend.JAVAC);
+    }
+
+    /**
+     * Creates <tt>.jar</tt> file (<tt>%jarFile%</tt>) containing implementations of every interface and abstract class
+     * found in <tt>%source%</tt> which passes the same checks as {@link #implement(Class, Path) implement} does,
+     * produced by <tt>%backend%</tt>. Eligible types are generated in parallel. {@link Backend#JAVAC JAVAC} backend
+     * reads types from their <tt>.class</tt> files as {@link #implementClassFiles(Path, Path) implementClassFiles}
+     * does and compiles implementations against <tt>%source%</tt>, so no type of <tt>%source%</tt> is loaded.
+     * {@link Backend#BYTECODE BYTECODE} backend loads types without initialization. Types which cannot be loaded,
+     * generated or compiled are skipped and reported, other types are still implemented.
+     *
+     * @param source <tt>.jar</tt> file or class path directory to scan
+     * @param jarFile target <tt>.jar</tt> file.
+     * @param backend backend which produces class files
+     * @return map from name of every type which was skipped because of failure to exception describing the failure,
+     * ordered by name
+     * @throws ImplerException when unable to read <tt>%source%</tt> or write <tt>%jarFile%</tt>
+     * @since 0.2.0
+     */
+    public Map<String, ImplerException> implementScan(Path source, Path jarFile, Backend backend)
+            throws ImplerException {
+        checkBackend(backend);
+        Map<String, ImplerException> failures = new ConcurrentHashMap<>();
+        Map<String, byte[]> classes;
+        try (ClassPathIndex index = new ClassPathIndex(source)) {
+            if (backend == Backend.BYTECODE) {
+                try (URLClassLoader loader = new URLClassLoader(new URL[]{source.toUri().toURL()},
+                        Implementor.class.getClassLoader());
+                     Stream<String> names = index.getClassNames()) {
+                    List<Class<?>> tokens = names.parallel()
+                            .map(name -> loadEligible(name, loader, failures))
+                            .filter(Objects::nonNull)
+                            .sorted(Comparator.comparing(Class::getName))
+                            .collect(Collectors.toList());
+                    classes = generateClasses(tokens, failures);
+                }
+            } else {
+                List<File> classPath = new ArrayList<>();
+                classPath.add(source.toFile());
+                classPath.addAll(CachedCompiler.split(System.getProperty("java.class.path")));
+                classes = compileIsolated(generateAll(index, failures), withRuntime(classPath), failures);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            throw new ImplerException("Unable to read " + source);
+        }
+        Set<String> implemented = new TreeSet<>();
+        for (String name : classes.keySet()) {
+            // nested implementations belong to top-level ones
+            if (name.indexOf('$') < 0) implemented.add(name);
+        }
+        metrics.measure(ImplementorMetrics.Phase.JAR, implemented, () -> {
+            writeJar(classes, jarFile);
+            return null;
+        });
+        metrics.addTokens(implemented.size());
+        addFileSize(jarFile);
+        return new TreeMap<>(failures);
+    }
+
+    /**
+     * Creates <tt>.java</tt> files containing implementations of every interface and abstract class found in
+     * <tt>%source%</tt> in <tt>%root%</tt>, like {@link #implement(Class, Path) implement} does for each of them.
+     * Types are never loaded: their <tt>.class</tt> files are parsed into {@link ClassFileModel models}, so static
+     * initializers are not run and classes are not kept in memory after generation. <tt>.jar</tt> file is
+     * memory-mapped and read by {@link ClassPathIndex}; supertypes missing in <tt>%source%</tt> are read from class
+     * path of current JVM. Types are processed concurrently and failure of one type does not stop generation of others.
+     *
+     * @param source <tt>.jar</tt> file or class path directory to scan
+     * @param root path where to create implementations
+     * @return map from name of every type which was skipped because of failure to exception describing the failure,
+     * ordered by name
+     * @throws ImplerException when unable to read <tt>%source%</tt>
+     * @since 0.2.0
+     */
+    public Map<String, ImplerException> implementClassFiles(Path source, Path root) throws ImplerException {
+        Map<String, ImplerException> failures = new ConcurrentHashMap<>();
+        try (ClassPathIndex index = new ClassPathIndex(source)) {
+            generateAll(index, failures).parallelStream().forEach(implementation -> {
+                Path filePath = implementation.getSourcePath(root);
+                try {
+                    Files.createDirectories(filePath.getParent());
+                    Files.write(filePath, implementation.source.getBytes(StandardCharsets.UTF_8));
+                    metrics.addTokens(1);
+                    addFileSize(filePath);
+                } catch (IOException e) {
+                    failures.put(implementation.tokenName, new ImplerException("Unable to create java file"));
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            throw new ImplerException("Unable to read " + source);
+        }
+        return new TreeMap<>(failures);
+    }
+
+    /**
+     * Generates sources of implementations of every eligible type of <tt>%index%</tt> concurrently in
+     * {@link ForkJoinPool#commonPool() common pool}, without loading types.
+     *
+     * @param index source of types
+     * @param failures map where names of types which failed are put together with exception describing the failure
+     * @return successfully generated implementations ordered by name of type
+     * @throws IOException when unable to list types of <tt>%index%</tt>
+     * @since 0.2.0
+     */
+    private List<Implementation> generateAll(ClassPathIndex index, Map<String, ImplerException> failures)
+            throws IOException {
+        try (Stream<String> names = index.getClassNames()) {
+            return names.parallel().map(name -> {
+                try {
+                    ClassFileModel token = index.get(name);
+                    boolean isAbstract = token.isInterface()
+                            || Modifier.isAbstract(token.access) && (token.access & ClassFileModel.ACC_ENUM) == 0;
+                    return isAbstract && isSupported(token) ? generate(token, index) : null;
+                } catch (IOException e) {
+                    metrics.fail(loadFailure);
+                    failures.put(name, new ImplerException("Unable to read class file: " + e.getMessage()));
+                } catch (ImplerException e) {
+                    failures.put(name, e);
+                }
+                return null;
+            }).filter(Objects::nonNull).sorted(Comparator.comparing(i -> i.tokenName)).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Loads class <tt>%name%</tt> without initializing it and checks whether it should be implemented.
+     *
+     * @param name binary name of class
+     * @param loader class loader to load class by
+     * @param failures map where names of classes which cannot be loaded are put together with failure
+     * @return loaded class if it is interface or abstract class which can be implemented, <tt>null</tt> otherwise
+     * @since 0.2.0
+     * @see #isSupported(Class)
+     */
+    private Class<?> loadEligible(String name, ClassLoader loader, Map<String, ImplerException> failures) {
+        try {
+            Class<?> token = Class.forName(name, false, loader);
+            boolean isAbstract = token.isInterface() || Modifier.isAbstract(token.getModifiers()) && !token.isEnum();
+            return isAbstract && isSupported(token) ? token : null;
+        } catch (ClassNotFoundException | LinkageError e) {
+            metrics.fail(loadFailure);
+            failures.put(name, new ImplerException("Unable to load class: " + e));
+            return null;
+        }
+    }
+
+    /**
+     * Generates class files of implementations of <tt>%tokens%</tt> by {@link BytecodeGenerator}, skipping tokens
+     * which cannot be implemented.
+     *
+     * @param tokens type tokens to create implementations for.
+     * @param failures map where names of skipped tokens are put together with failure
+     * @return map from binary class name to class file bytes
+     * @since 0.2.0
+     */
+    private Map<String, byte[]> generateClasses(List<Class<?>> tokens, Map<String, ImplerException> failures) {
+        Map<String, byte[]> classes = new ConcurrentHashMap<>();
+        tokens.parallelStream().forEach(token -> {
+            try {
+                classes.putAll(metrics.measure(ImplementorMetrics.Phase.GENERATE, Collections.singletonList(token),
+                        () -> BytecodeGenerator.generate(token, new Implementation(token).getBinaryName())));
+            } catch (ImplerException e) {
+                failures.put(token.getName(), e);
+            }
+        });
+        return classes;
+    }
+
+    /**
+     * Compiles <tt>%implementations%</tt> against <tt>%classPath%</tt>, skipping implementations which cannot be
+     * compiled. Sources which compiler reports errors in are removed and the rest is compiled again.
+     *
+     * @param implementations generated implementations
+     * @param classPath class path entries
+     * @param failures map where names of skipped tokens are put together with failure
+     * @return map from binary class name to class file bytes
+     * @throws ImplerException when compiler is not available
+     * @since 0.2.0
+     */
+    private Map<String, byte[]> compileIsolated(List<Implementation> implementations, List<File> classPath,
+                                                Map<String, ImplerException> failures) throws ImplerException {
+        Map<String, String> sources = new LinkedHashMap<>();
+        Map<String, String> owners = new HashMap<>();
+        for (Implementation implementation : implementations) {
+            sources.put(implementation.getBinaryName(), implementation.source);
+            owners.put(implementation.getBinaryName(), implementation.tokenName);
+        }
+        while (!sources.isEmpty()) {
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            Map<String, byte[]> classes = metrics.measure(ImplementorMetrics.Phase.COMPILE,
+                    new ArrayList<>(owners.values()), () -> {
+                        try {
+                            return getCompiler().compile(sources, classPath, diagnostics);
+                        } catch (IOException e) {
+                            throw new ImplerException("Unable to compile generated class: " + e.getMessage());
+                        }
+                    });
+            if (classes != null) return classes;
+            Set<String> broken = new HashSet<>();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR && diagnostic.getSource() != null) {
+                    broken.add(MemoryFileManager.getClassName(diagnostic.getSource()));
+                }
+            }
+            broken.retainAll(sources.keySet());
+            if (broken.isEmpty()) broken.addAll(sources.keySet());
+            for (String name : broken) {
+                metrics.fail(ImplementorMetrics.Phase.COMPILE.reason);
+                failures.put(owners.get(name), new ImplerException("Unable to compile generated class"
+                        + getErrors(diagnostics, sources.size() == broken.size() ? null : name)));
+                sources.remove(name);
+                owners.remove(name);
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Returns implementation of <tt>%token%</tt> defined in the running JVM. No <tt>.jar</tt> file is created and file
+     * system is not touched. Implementation is defined by {@link ImplementationLoader} owned by this instance, so
+     * repeated requests for the same token return the same class while it is in use.
+     *
+     * @param token type token to create implementation for.
+     * @return loaded implementation class
+     * @throws ImplerException when implementation cannot be generated or defined
+     * @since 0.2.0
+     * @see #releaseClasses()
      */
-    private static final String spaceIndent = "    ";
+    public Class<?> implementClass(Class<?> token) throws ImplerException {
+        checkToken(token);
+        if (mode == GenerationMode.STUB) {
+            return getLoader(token.getClassLoader(), ImplementationLoader::new).implement(token);
+        }
+        return getLoader(token.getClassLoader(), parent -> new ImplementationLoader(parent,
+                (type, name) -> {
+                    Implementation implementation = generate(type);
+                    return metrics.measure(ImplementorMetrics.Phase.COMPILE, Collections.singletonList(type),
+                            () -> compile(Collections.singletonMap(name, implementation.source),
+                                    Collections.singletonList(type)));
+                })).implement(token);
+    }
 
     /**
-     * Path which contains the directory where will be created the implementation of input interface. Will be initialised in
-     * {@link #implement(Class, Path) implement} or {@link #implementJar(Class, Path) implementJar}.
+     * Returns loader of {@link #loaders} delegating to <tt>%parent%</tt>, creating it by <tt>%factory%</tt> if there
+     * is no such loader or it was collected.
      *
-     * @since 0.1.0
+     * @param parent class loader of token, <tt>null</tt> for bootstrap loader
+     * @param factory constructor of loader delegating to given parent
+     * @return loader defining implementations of tokens of <tt>%parent%</tt>
+     * @since 0.2.0
      */
-    private Path dirPath;
+    private ImplementationLoader getLoader(ClassLoader parent, Function<ClassLoader, ImplementationLoader> factory) {
+        synchronized (loaders) {
+            WeakReference<ImplementationLoader> reference = loaders.get(parent);
+            ImplementationLoader loader = reference == null ? null : reference.get();
+            if (loader == null) {
+                loader = factory.apply(parent);
+                loaders.put(parent, new WeakReference<>(loader));
+            }
+            return loader;
+        }
+    }
 
     /**
-     * String name of implementation of input interface. Basically it is <code>%classSimpleName% + "Impl"</code>. Will be
-     * initialised in {@link #implement(Class, Path) implement} or {@link #implementJar(Class, Path) implementJar}.
+     * Forgets all implementations defined by {@link #implementClass(Class) implementClass}, so they can be unloaded
+     * once no instances of them remain.
      *
-     * @since 0.1.0
+     * @since 0.2.0
      */
-    private String className;
+    public void releaseClasses() {
+        synchronized (loaders) {
+            loaders.clear();
+        }
+    }
 
     /**
-     * Package of input interface. Will be initialised in {@link #implement(Class, Path) implement} or
-     * {@link #implementJar(Class, Path) implementJar}.
+     * Returns class path which is enough to compile implementations of <tt>%tokens%</tt> in most cases: locations
+     * <tt>%tokens%</tt> were loaded from followed by class path of current JVM.
      *
-     * @since 0.1.0
+     * @param tokens classes to generate implementations for
+     * @return class path entries
+     * @since 0.2.0
+     * @see #compile(Map, Collection)
      */
-    private Package classPackage;
+    private static List<File> getClassPath(Collection<? extends Class<?>> tokens) {
+        Set<File> classPath = new LinkedHashSet<>();
+        for (Class<?> token : tokens) {
+            addLocation(token, classPath);
+        }
+        classPath.addAll(CachedCompiler.split(System.getProperty("java.class.path")));
+        return new ArrayList<>(classPath);
+    }
 
     /**
-     * Enum containing types required to make general {@link #getModifiersString(int, modType) getModifiersString function}
-     * appropriate for interfaces, fields, constructors and methods.
+     * Returns locations of all types generated implementations of <tt>%tokens%</tt> refer to: tokens with their
+     * supertypes, types of fields, parameters, return values and exceptions, type arguments and annotations, together
+     * with supertypes of all of them. Platform types are not included, compiler finds them itself.
      *
-     * @since 0.1.0
+     * @param tokens classes to generate implementations for
+     * @return class path entries, <tt>null</tt> if some referenced type cannot be resolved
+     * @since 0.2.0
+     * @see #compile(Map, Collection)
      */
-    private enum modType {
-        INTERFACE, FIELD, CONSTRUCTOR, METHOD, CLASS
+    private static List<File> getMinimalClassPath(Collection<? extends Class<?>> tokens) {
+        Set<Object> visited = new HashSet<>();
+        Set<File> classPath = new LinkedHashSet<>();
+        try {
+            for (Class<?> token : tokens) {
+                addReferencedTypes(token, visited, classPath);
+            }
+        } catch (TypeNotPresentException | MalformedParameterizedTypeException | LinkageError e) {
+            return null;
+        }
+        return new ArrayList<>(classPath);
     }
 
     /**
-     * Constructor of Implementor. Initialises {@link #dirPath dirPath}, {@link #className className} and
-     * {@link #classPackage} with default values. Accepts no parameters.
+     * Adds locations of types referred to by implementation of <tt>%token%</tt> and its nested classes to
+     * <tt>%classPath%</tt>.
      *
-     * @since 0.1.0
+     * @param token class to generate implementation for
+     * @param visited types already processed
+     * @param classPath class path entries to add locations to
+     * @since 0.2.0
      */
-    public Implementor() {
-        dirPath = null;
-        className = "";
-        classPackage = null;
+    private static void addReferencedTypes(Class<?> token, Set<Object> visited, Set<File> classPath) {
+        addType(token, visited, classPath);
+        for (Field field : token.getFields()) {
+            addType(field.getGenericType(), visited, classPath);
+        }
+        for (Constructor<?> constructor : token.getDeclaredConstructors()) {
+            addTypes(constructor.getGenericParameterTypes(), visited, classPath);
+            addTypes(constructor.getGenericExceptionTypes(), visited, classPath);
+        }
+        for (Method method : MethodTables.get(token)) {
+            addType(method.getGenericReturnType(), visited, classPath);
+            addTypes(method.getGenericParameterTypes(), visited, classPath);
+            addTypes(method.getGenericExceptionTypes(), visited, classPath);
+        }
+        for (Class<?> innerClass : token.getClasses()) {
+            addReferencedTypes(innerClass, visited, classPath);
+        }
     }
 
     /**
-     * Main function of {@link Implementor Implementor}. Supports two formats of passed arguments:
-     * <code>/ %interface% /</code> - creates <tt>.java</tt> implementation of <tt>%interface%</tt> by using
-     * {@link #implement(Class, Path) implement} and <code>/ -jar %interface% %jar-file% /</code> - creates
-     * <tt>.java</tt> implementation of <tt>%interface%</tt>, compiles it and archives it in <tt>%jar-file%</tt>
-     * by using {@link #implementJar(Class, Path) implementJar}.
+     * Adds locations of all <tt>%types%</tt> to <tt>%classPath%</tt>.
      *
-     * @param args String array supporting two formats
-     * @see Implementor
-     * @since 0.1.0
-     * @see #implement(Class, Path)
-     * @see #implementJar(Class, Path)
+     * @param types types to add
+     * @param visited types already processed
+     * @param classPath class path entries to add locations to
+     * @since 0.2.0
+     * @see #addType(Type, Set, Set)
      */
-    public static void main(String[] args) {
-        if (args.length != 1 && args.length != 3) System.out.println(usageMessage);
-        else {
-            Implementor imp = new Implementor();
-            try {
-                if (args[0].equals("-jar") && (args.length == 3)) {
-                    imp.implementJar(Class.forName(args[1]), Paths.get(args[2]) );
-                } else if (args.length == 1) imp.implement(Class.forName(args[0]), Paths.get(System.getProperty("user.dir")));
-                else System.out.println(usageMessage);
-            } catch (ClassNotFoundException e) {
-                System.out.println("Invalid classname");
-            } catch (ImplerException e) {
-                System.out.println("ImplerException: " + e.getMessage());
-            }
+    private static void addTypes(Type[] types, Set<Object> visited, Set<File> classPath) {
+        for (Type type : types) {
+            addType(type, visited, classPath);
         }
     }
 
     /**
-     * Creates <tt>.jar</tt> file (<tt>%jarFile%</tt>) containing the implementation of <tt>%token%</tt> interface. The
-     * name of result class stored in <tt>.jar</tt> file is the same as <tt>%token%</tt> name plus suffix <tt>Impl</tt>.
-     * Throws ImplerException in case of fail. Initialises {@link #classPackage classPackage}, {@link #dirPath dirPath}
-     * and {@link #className className}
+     * Adds location of <tt>%type%</tt> to <tt>%classPath%</tt> together with locations of its supertypes, enclosing
+     * classes, annotations and type arguments.
      *
-     * @param token type token to create implementation for.
-     * @param jarFile target <tt>.jar</tt> file.
-     * @throws ImplerException when implementation cannot be generated.
-     * @since 0.1.0
-     * @see #implement(Class, Path)
-     * @see #main(String[])
+     * @param type type to add
+     * @param visited types already processed
+     * @param classPath class path entries to add locations to
+     * @since 0.2.0
      */
-    @Override
-    public void implementJar(Class<?> token, Path jarFile) throws ImplerException {
-        Path filePath = Paths.get("");
-        classPackage = token.getPackage();
-        String packageName = "";
-        int[] arr = new int[256];
-        int j = 0;
-        if (classPackage != null) {
-            packageName = classPackage.getName().replace(".", File.separator) + File.separator;
-            int i = packageName.indexOf(File.separator), m = 0;
-            while (m < packageName.length()) {
-                filePath = filePath.resolve(packageName.substring(m, i));
-                m = i + 1;
-                if (!Files.exists(filePath)) {
-                    arr[j++] = m - 1;
-                    try {
-                        Files.createDirectory(filePath);
-                    } catch (IOException e) {
-                        throw new ImplerException("Cannot create directory");
-                    }
-                }
-                i = packageName.indexOf(File.separator, m);
-                if (i == -1) i = packageName.length();
+    private static void addType(Type type, Set<Object> visited, Set<File> classPath) {
+        if (type == null || !visited.add(type)) return;
+        if (type instanceof Class) {
+            Class<?> token = (Class<?>) type;
+            if (token.isArray()) {
+                addType(token.getComponentType(), visited, classPath);
+                return;
             }
+            if (token.isPrimitive() || token.getClassLoader() == null) return;
+            addLocation(token, classPath);
+            addType(token.getGenericSuperclass(), visited, classPath);
+            addTypes(token.getGenericInterfaces(), visited, classPath);
+            addType(token.getDeclaringClass(), visited, classPath);
+            for (Annotation annotation : token.getDeclaredAnnotations()) {
+                addType(annotation.annotationType(), visited, classPath);
+            }
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            addType(parameterized.getRawType(), visited, classPath);
+            addType(parameterized.getOwnerType(), visited, classPath);
+            addTypes(parameterized.getActualTypeArguments(), visited, classPath);
+        } else if (type instanceof GenericArrayType) {
+            addType(((GenericArrayType) type).getGenericComponentType(), visited, classPath);
+        } else if (type instanceof WildcardType) {
+            addTypes(((WildcardType) type).getUpperBounds(), visited, classPath);
+            addTypes(((WildcardType) type).getLowerBounds(), visited, classPath);
+        } else if (type instanceof TypeVariable) {
+            addTypes(((TypeVariable<?>) type).getBounds(), visited, classPath);
         }
+    }
 
-        dirPath = filePath;
-        implement(token, Paths.get(""));
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-
-        String fileName = className + ".java";
-        filePath = filePath.resolve(fileName);
-        compiler.run(null,null,null, filePath.toString());
-        safeFileRemove(filePath);
-        filePath = filePath.resolveSibling(fileName.replace(".java", ".class"));
-        Manifest manifest = new Manifest();
-        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
-        try (JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(jarFile.toFile()), manifest)) {
-            addFileToJar(filePath.toFile(), outputStream);
-        } catch (IOException e) {
-            throw new ImplerException("Cannot create jar file");
-        }
-        safeFileRemove(filePath);
-
-        for (int k = j - 1; k >= 0; k--) {
-            safeFileRemove(Paths.get(packageName.substring(0, arr[k])));
-            // TODO: (far future) find some use for filePath here
-        }
-        dirPath = null;
+    /**
+     * Returns <tt>%classPath%</tt> extended by location of {@link ImplementationHandler} and {@link InvocationCounter},
+     * which implementations generated in {@link GenerationMode#HANDLER HANDLER} and
+     * {@link GenerationMode#COUNTING COUNTING} modes refer to.
+     *
+     * @param classPath class path entries enough to compile implementations in {@link GenerationMode#STUB STUB} mode
+     * @return class path entries enough to compile implementations in mode of this instance
+     * @since 0.2.0
+     */
+    private List<File> withRuntime(List<File> classPath) {
+        if (mode == GenerationMode.STUB) return classPath;
+        Set<File> result = new LinkedHashSet<>(classPath);
+        addLocation(ImplementationHandler.class, result);
+        addLocation(InvocationCounter.class, result);
+        return new ArrayList<>(result);
     }
 
     /**
-     * Adds <tt>%source%</tt> file to <tt>%target%</tt> stream and all directories which required. Also fixes few
-     * undocumented issues about creating <tt>.jar</tt>(or <tt>.zip</tt>) files.
+     * Adds location <tt>%token%</tt> was loaded from to <tt>%classPath%</tt>, if it is known file or directory.
      *
-     * @param source file to put in target <tt>.jar</tt> file
-     * @param target stream where to put <tt>%source%</tt>
-     * @throws IOException when unable to write in target <tt>.jar</tt> file
-     * @since 0.1.0
-     * @see #implementJar(Class, Path)
+     * @param token class to add location of
+     * @param classPath class path entries to add location to
+     * @since 0.2.0
      */
-    private void addFileToJar(File source, JarOutputStream target) throws IOException {
-        if (source == null) return;
-        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(source))) {
-            String name = source.getPath().replace("\\", "/");
-            boolean isDir = source.isDirectory();
-            if (!name.isEmpty()) {
-                if (!name.endsWith("/") && isDir) name += "/";
-                JarEntry entry = new JarEntry(name);
-                entry.setTime(source.lastModified());
-                target.putNextEntry(entry);
-                if (!isDir) {
-                    byte[] buffer = new byte[1024];
-                    while (true) {
-                        int count = in.read(buffer);
-                        if (count == -1) break;
-                        target.write(buffer, 0, count);
-                    }
-                }
-                target.closeEntry();
-            }
-            if (isDir) {
-                for (File nestedFile: Objects.requireNonNull(source.listFiles())) {
-                    addFileToJar(nestedFile, target);
-                }
+    private static void addLocation(Class<?> token, Set<File> classPath) {
+        try {
+            CodeSource source = token.getProtectionDomain().getCodeSource();
+            // platform classes have jrt locations, compiler finds them itself
+            if (source != null && source.getLocation() != null && "file".equals(source.getLocation().getProtocol())) {
+                classPath.add(Paths.get(source.getLocation().toURI()).toFile());
             }
+        } catch (SecurityException | URISyntaxException | IllegalArgumentException e) {
+            // token's location is unknown, rely on class path of current JVM
         }
     }
 
     /**
-     * Remove <tt>%file%</tt> ignoring IOException. Because it is not mandatory to remove temporary files.
+     * Adds size of <tt>%file%</tt> to count of written bytes.
      *
-     * @param file file to delete
-     * @since 0.1.0
-     * @see #implementJar(Class, Path)
+     * @param file written file
+     * @since 0.2.0
      */
-    private void safeFileRemove(Path file) {
+    private void addFileSize(Path file) {
         try {
-            Files.deleteIfExists(file);
+            metrics.addBytes(Files.size(file));
         } catch (IOException e) {
-            //throw new ImplerException("Cannot remove temp file");
+            // file is written already, only its size is unknown
         }
     }
 
     /**
      * Creates <tt>.java</tt> file containing the implementation of <tt>%token%</tt> interface. The name of result class
      * is the same as <tt>%token%</tt> name plus <tt>Impl</tt> suffix. Throws ImplerException in case of fail.
-     * Initialises {@link #classPackage classPackage}, {@link #dirPath dirPath} and {@link #className className}
      *
      * @param token type token to create implementation for.
      * @param root path where to create implementation of <tt>%token%</tt>
@@ -261,299 +1753,568 @@ public class Implementor implements JarImpler {
      */
     @Override
     public void implement(Class<?> token, Path root) throws ImplerException {
-        if (token.isLocalClass() || token.isAnonymousClass() || token.isMemberClass() ||
-                token.isPrimitive() || Modifier.isFinal(token.getModifiers()) || token.equals(Enum.class)
-                || (token.getDeclaredConstructors().length == 0 && !token.isInterface())) {
-            throw new ImplerException("Not supported");
+        checkToken(token);
+        Path filePath = new Implementation(token).getSourcePath(root);
+        try {
+            Files.createDirectories(filePath.getParent());
+        } catch (IOException e) {
+            throw new ImplerException("Unable to create directory");
+        }
+        String key = null;
+        if (outputCache != null) {
+            key = OutputCache.key("java " + mode, Collections.singletonList(token));
+            if (outputCache.fetch(key, filePath)) {
+                metrics.addTokens(1);
+                return;
+            }
         }
-        String packageName = "";
-        if (classPackage == null) classPackage = token.getPackage();
-        if (classPackage != null) packageName = classPackage.getName();
-        if (dirPath == null) {
-            dirPath = root;
-            if (classPackage != null) {
-                dirPath = dirPath.resolve(packageName.replace(".", File.separator) + File.separator);
+        metrics.measure(ImplementorMetrics.Phase.GENERATE, Collections.singletonList(token), () -> {
+            try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8)) {
+                printSource(writer, new Implementation(token));
+            } catch (IOException e) {
+                throw new ImplerException("Unable to create java file");
             }
+            return null;
+        });
+        metrics.addTokens(1);
+        addFileSize(filePath);
+        if (key != null) outputCache.store(key, filePath);
+    }
+
+    /**
+     * Writes source of implementation of <tt>%token%</tt> to <tt>%out%</tt> in UTF-8, the same as
+     * {@link #implement(Class, Path) implement} writes to <tt>.java</tt> file. Source is printed through small
+     * buffer as it is generated, and <tt>%out%</tt> is flushed but left open, so it may be {@link System#out}.
+     * {@link OutputCache} is not used.
+     *
+     * @param token type token to create implementation for.
+     * @param out stream to write source to
+     * @throws ImplerException when implementation cannot be generated or source cannot be written.
+     * @since 0.2.0
+     */
+    public void implement(Class<?> token, OutputStream out) throws ImplerException {
+        checkToken(token);
+        metrics.measure(ImplementorMetrics.Phase.GENERATE, Collections.singletonList(token), () -> {
             try {
-                Files.createDirectories(dirPath);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                printSource(writer, new Implementation(token));
+                writer.flush();
             } catch (IOException e) {
-                throw new ImplerException("Unable to create directory");
+                throw new ImplerException("Unable to write source");
             }
+            return null;
+        });
+        metrics.addTokens(1);
+    }
+
+    /**
+     * Checks whether <tt>%backend%</tt> supports {@link GenerationMode} of this instance.
+     *
+     * @param backend backend which produces class files
+     * @throws ImplerException when <tt>%backend%</tt> cannot produce method bodies of this kind
+     * @since 0.2.0
+     */
+    private void checkBackend(Backend backend) throws ImplerException {
+        if (backend == Backend.BYTECODE && mode != GenerationMode.STUB) {
+            throw new ImplerException(backend + " backend does not support " + mode + " mode");
         }
-        //System.out.println(dirPath.toString() + File.separator + token.getSimpleName());
-        className = token.getSimpleName() + "Impl";
-        try (BufferedWriter writer = Files.newBufferedWriter(dirPath.resolve(className + ".java"),
-                StandardCharsets.UTF_8)) {
-            if (classPackage != null) writer.write("package " + packageName + ";\n\n");
-            //writer.write("import java.lang.annotation.*;\n" + getAnnotationsString(token.getAnnotations(), "\n"));
-            printClass(writer, token, className);
-        } catch (IOException e) {
-            throw new ImplerException("Unable to create java file");
-        }
-        classPackage = null;
     }
 
     /**
-     * Class made to implement true version of {@link Method#equals(Object) Method.equals()} corresponding to
-     * Java syntax
+     * Checks whether implementation of <tt>%token%</tt> can be generated.
      *
-     * @since 0.1.0
-     * @see #printClass(BufferedWriter, Class, String)
-     * @see MethodIdentity#equals(Object)
-     * @see MethodIdentity#hashCode()
+     * @param token type token to create implementation for.
+     * @throws ImplerException when <tt>%token%</tt> is local, anonymous, member, primitive or final class,
+     * {@link Enum} or class without constructors
+     * @since 0.2.0
+     * @see #generate(Class)
      */
-    private class MethodIdentity {
-        /**
-         * Pair containing method name and parameters count. Used to get {@link MethodIdentity#hashCode() hashcode}
-         *
-         * @since 0.1.0
-         */
-        private Pair<String, Integer> methodHashObject;
+    private void checkToken(Class<?> token) throws ImplerException {
+        if (!isSupported(token)) {
+            metrics.fail(ImplementorMetrics.unsupported);
+            throw new ImplerException("Not supported");
+        }
+    }
 
-        /**
-         * Array containing types of all parameters which should be passed to current method.
-         *
-         * @since 0.1.0
-         */
-        private Class<?> parameterTypes[];
+    /**
+     * Returns whether implementation of <tt>%token%</tt> can be generated.
+     *
+     * @param token type token to create implementation for.
+     * @return false if <tt>%token%</tt> is local, anonymous, member, primitive or final class, {@link Enum} or class
+     * without constructors, true otherwise
+     * @since 0.2.0
+     * @see #checkToken(Class)
+     */
+    private static boolean isSupported(Class<?> token) {
+        return !(token.isLocalClass() || token.isAnonymousClass() || token.isMemberClass() ||
+                token.isPrimitive() || Modifier.isFinal(token.getModifiers()) || token.equals(Enum.class)
+                || (token.getDeclaredConstructors().length == 0 && !token.isInterface()));
+    }
 
-        /**
-         * Constructor sets {@link MethodIdentity#methodHashObject methodHashObject} and
-         * {@link MethodIdentity#parameterTypes} to values got from method passed as parameter
-         *
-         * @param method current method which information is stored
-         */
-        MethodIdentity(Method method) {
-            methodHashObject = new Pair<>(method.getName(), method.getParameterCount());
-            parameterTypes = method.getParameterTypes();
+    /**
+     * Returns whether implementation of type described by <tt>%token%</tt> can be generated, checking the same
+     * conditions as {@link #isSupported(Class)} does.
+     *
+     * @param token model of type to create implementation for.
+     * @return false if <tt>%token%</tt> is local, anonymous, member or final class, {@link Enum} or class without
+     * constructors, true otherwise
+     * @since 0.2.0
+     */
+    private static boolean isSupported(ClassFileModel token) {
+        boolean hasConstructors = false;
+        for (ClassFileModel.Member method : token.methods) {
+            hasConstructors |= method.isConstructor();
         }
+        return !(token.local || token.declaringClass != null || Modifier.isFinal(token.access)
+                || token.name.equals(Enum.class.getName()) || (!hasConstructors && !token.isInterface()));
+    }
 
-        /**
-         * True version of {@link Method#equals(Object) Method.equals()} made corresponding to Java syntax
-         *
-         * @param obj method to check equality with
-         * @return true if methods are counted as equal by Java compiler, false otherwise
-         */
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof MethodIdentity) {
-                MethodIdentity methodIdentity = (MethodIdentity) obj;
-                if (methodIdentity.methodHashObject.getKey().equals(methodHashObject.getKey()) &&
-                        methodIdentity.methodHashObject.getValue().equals(methodHashObject.getValue())) {
-                    boolean f = true;
-                    for (int i = 0; i < methodHashObject.getValue(); i++) {
-                        if (!parameterTypes[i].isAssignableFrom(methodIdentity.parameterTypes[i])) {
-                            f = false;
-                            break;
-                        }
-                    }
-                    if (f) return true;
-                    for (int i = 0; i < methodHashObject.getValue(); i++) {
-                        if (!parameterTypes[i].isInstance(methodIdentity.parameterTypes[i]))
-                            return false;
-                    }
-                    return true;
+    /**
+     * Returns whether implementation of type described by <tt>%token%</tt> element can be generated, checking the
+     * same conditions as {@link #isSupported(Class)} does. Classes compiled from source always have constructors.
+     *
+     * @param token element of type to create implementation for.
+     * @param index source of modifiers of <tt>%token%</tt>
+     * @return false if <tt>%token%</tt> is local, anonymous, member or final class or {@link Enum}, true otherwise
+     * @since 0.2.0
+     */
+    private static boolean isSupported(TypeElement token, ElementIndex index) {
+        return !(token.getNestingKind() != NestingKind.TOP_LEVEL || Modifier.isFinal(index.getModifiers(token))
+                || token.getQualifiedName().contentEquals(Enum.class.getName()));
+    }
+
+    /**
+     * Generates source code of the implementation of type described by <tt>%token%</tt>, resolving its supertypes
+     * and member types by <tt>%index%</tt>.
+     *
+     * @param token model of type to create implementation for.
+     * @param index source of models of types referred to by <tt>%token%</tt>
+     * @return {@link Implementation} containing names and <tt>.java</tt> file content of implementation
+     * @throws ImplerException when implementation cannot be generated.
+     * @since 0.2.0
+     * @see #implementClassFiles(Path, Path)
+     */
+    private Implementation generate(ClassFileModel token, ClassPathIndex index) throws ImplerException {
+        if (!isSupported(token)) {
+            metrics.fail(ImplementorMetrics.unsupported);
+            throw new ImplerException("Not supported");
+        }
+        Implementation implementation = new Implementation(token);
+        StringWriter source = new StringWriter();
+        metrics.measure(ImplementorMetrics.Phase.GENERATE, Collections.singletonList(token.name), () -> {
+            SourceEmitter emitter = new SourceEmitter(source);
+            try {
+                if (implementation.packageName != null) {
+                    emitter.append("package ").appendEscaped(implementation.packageName).append(";\n\n");
                 }
+                printClass(emitter, TypeModel.of(token, index), implementation.className);
+            } catch (IOException e) {
+                throw new ImplerException("Unable to resolve types of " + token.name + ": " + e.getMessage());
             }
-            return false;
+            return null;
+        });
+        implementation.source = source.toString();
+        return implementation;
+    }
+
+    /**
+     * Generates source code of the implementation of <tt>%token%</tt> interface.
+     *
+     * @param token type token to create implementation for.
+     * @return {@link Implementation} containing names and <tt>.java</tt> file content of implementation
+     * @throws ImplerException when implementation cannot be generated.
+     * @since 0.2.0
+     * @see #implement(Class, Path)
+     * @see #implementJar(Class, Path)
+     */
+    private Implementation generate(Class<?> token) throws ImplerException {
+        checkToken(token);
+        Implementation implementation = new Implementation(token);
+        StringWriter source = new StringWriter();
+        metrics.measure(ImplementorMetrics.Phase.GENERATE, Collections.singletonList(token), () -> {
+            printSource(source, implementation);
+            return null;
+        });
+        implementation.source = source.toString();
+        return implementation;
+    }
+
+    /**
+     * Prints <tt>.java</tt> file content of implementation of <tt>%token%</tt> to <tt>%writer%</tt>, without touching
+     * file system.
+     *
+     * @param writer writer to print source code to
+     * @param token type token to create implementation for.
+     * @throws ImplerException when implementation cannot be generated or written.
+     * @since 0.2.0
+     * @see #implement(Class, Path)
+     */
+    void printSource(Writer writer, Class<?> token) throws ImplerException {
+        checkToken(token);
+        printSource(writer, new Implementation(token));
+    }
+
+    /**
+     * Prints <tt>.java</tt> file content of implementation of type described by <tt>%token%</tt> element to
+     * <tt>%writer%</tt>, resolving its members by <tt>%index%</tt>. Implementation is named and placed the same way
+     * as {@link #implement(Class, Path) implement} does for loaded type.
+     *
+     * @param writer writer to print source code to
+     * @param token element of type to create implementation for.
+     * @param index source of members of types referred to by <tt>%token%</tt>
+     * @throws ImplerException when implementation cannot be generated or written.
+     * @since 0.2.0
+     * @see ImplementProcessor
+     */
+    void printSource(Writer writer, TypeElement token, ElementIndex index) throws ImplerException {
+        if (!isSupported(token, index)) {
+            metrics.fail(ImplementorMetrics.unsupported);
+            throw new ImplerException("Not supported");
         }
+        String packageName = index.getPackageName(token);
+        metrics.measure(ImplementorMetrics.Phase.GENERATE,
+                Collections.singletonList(token.getQualifiedName().toString()), () -> {
+            SourceEmitter emitter = new SourceEmitter(writer);
+            try {
+                if (!packageName.isEmpty()) {
+                    emitter.append("package ").appendEscaped(packageName).append(";\n\n");
+                }
+                printClass(emitter, TypeModel.of(token, index), token.getSimpleName() + "Impl");
+                writer.flush();
+            } catch (IOException e) {
+                throw new ImplerException("Unable to generate java file");
+            }
+            return null;
+        });
+    }
 
-        /**
-         * Hashcode function returning {@link MethodIdentity#methodHashObject methodHashObject's} hash
-         *
-         * @return method's hashcode
-         */
-        @Override
-        public int hashCode() {
-            return methodHashObject.hashCode();
+    /**
+     * Prints <tt>.java</tt> file content of <tt>%implementation%</tt> to <tt>%writer%</tt>.
+     *
+     * @param writer writer to print source code to
+     * @param implementation implementation to generate source code of
+     * @throws ImplerException when implementation cannot be generated or written.
+     * @since 0.2.0
+     * @see #printClass(SourceEmitter, TypeModel, String)
+     */
+    private void printSource(Writer writer, Implementation implementation) throws ImplerException {
+        SourceEmitter emitter = new SourceEmitter(writer);
+        try {
+            if (implementation.packageName != null) {
+                emitter.append("package ").appendEscaped(implementation.packageName).append(";\n\n");
+            }
+            printClass(emitter, TypeModel.of(implementation.token), implementation.className);
+            writer.flush();
+        } catch (IOException e) {
+            throw new ImplerException("Unable to generate java file");
         }
     }
 
     /**
-     * Prints by using <tt>writer</tt> the code of class extending(implementing) <tt>token</tt> with name
-     * passed as <tt>localClassName</tt>
+     * Prints by using <tt>emitter</tt> the code of class extending(implementing) type described by <tt>token</tt>
+     * with name passed as <tt>localClassName</tt>. The same code is printed whether <tt>%token%</tt> adapts loaded
+     * type, class file or element of compiler.
      *
-     * @param writer BufferedWriter which used to write result implementation to
-     * @param token class to generate implementation for
+     * @param emitter SourceEmitter which used to write result implementation to
+     * @param token model of class to generate implementation for
      * @param localClassName string containing the name of class to generate code for
-     * @throws IOException in case of inability to write using writer
+     * @throws IOException in case of inability to write using emitter or to read referred types
      * @throws ImplerException when implementation cannot be generated.
+     * @since 0.2.0
      */
-    private void printClass(BufferedWriter writer, Class<?> token, String localClassName) throws IOException, ImplerException {
+    private void printClass(SourceEmitter emitter, TypeModel token, String localClassName)
+            throws IOException, ImplerException {
         modType tokenType = modType.CLASS;
         String tokenString = " extends ";
         if (token.isInterface()) {
             tokenType = modType.INTERFACE;
             tokenString = " implements ";
         }
-        writer.write(getModifiersString(token.getModifiers(), tokenType) + "class ");
-        writer.write(escapeNonAscii(localClassName + tokenString + token.getSimpleName()));
-        writer.write(" {\n");
+        emitter.appendModifiers(maskModifiers(token.getModifiers(), tokenType)).append("class ")
+                .appendEscaped(localClassName).append(tokenString).appendEscaped(token.getSimpleName())
+                .append(" {\n");
 
-        Field[] fields = token.getFields();
-        for (int i = 0; i < fields.length; i++) {
-            writer.write(spaceIndent + getModifiersString(fields[i].getModifiers(), modType.FIELD) +
-                    getAnnotatedTypeString(fields[i].getType(), token) + " a" + i);
-            if (Modifier.isFinal(fields[i].getModifiers())) {
-                writer.write(" = " + getDefaultTypeValueString(fields[i].getType()));
+        List<TypeModel.Member> fields = token.getFields();
+        for (int i = 0; i < fields.size(); i++) {
+            TypeModel.Member field = fields.get(i);
+            emitter.append(spaceIndent).appendModifiers(maskModifiers(field.getModifiers(), modType.FIELD))
+                    .appendEscaped(field.getType()).append(" a").append(i);
+            if (Modifier.isFinal(field.getModifiers())) {
+                emitter.append(" = ").append(getDefaultTypeValueString(field.getPrimitiveType()));
             }
-            writer.write(";\n");
+            emitter.append(";\n");
         }
-        writer.newLine();
+        emitter.append('\n');
 
-        Constructor<?> constructors[] = token.getConstructors();
-        for (Constructor constructor : constructors) {
-            if (!Modifier.isPrivate(constructor.getModifiers())) {
-                printFunction(writer, constructor, null, token, localClassName);
-            }
+        List<String> signatures = mode != GenerationMode.STUB ? new ArrayList<>() : null;
+        if (mode == GenerationMode.HANDLER && token.isInterface()) printHandlerConstructor(emitter, localClassName);
+        int emitted = 0;
+        List<TypeModel.Member> constructors = new ArrayList<>();
+        for (TypeModel.Member constructor : token.getConstructors()) {
+            if (Modifier.isPublic(constructor.getModifiers())) constructors.add(constructor);
         }
-        if (constructors.length == 0 && !token.isInterface()) {
-            boolean f = false;
-            for (Constructor constructor : token.getDeclaredConstructors()) {
-                if (!Modifier.isPrivate(constructor.getModifiers())) {
-                    printFunction(writer, constructor, null, token, localClassName);
-                    f = true;
-                }
+        if (constructors.isEmpty() && !token.isInterface()) {
+            for (TypeModel.Member constructor : token.getConstructors()) {
+                if (!Modifier.isPrivate(constructor.getModifiers())) constructors.add(constructor);
             }
-            if (!f) throw new ImplerException("Cannot extend class with private constructors");
+            if (constructors.isEmpty()) throw new ImplerException("Cannot extend class with private constructors");
+        }
+        for (TypeModel.Member constructor : constructors) {
+            printFunction(emitter, constructor, localClassName, signatures);
+            emitted++;
         }
 
-        Iterator<Method> iterator = Stream.concat(
-                Arrays.stream(token.getDeclaredMethods()),
-                Arrays.stream(token.getMethods())).collect(Collectors.toMap(
-                        MethodIdentity::new, Function.identity(), (a, b) -> a))
-                .entrySet().stream().map(Map.Entry::getValue).distinct().iterator();
-        while (iterator.hasNext()) {
-            Method method = iterator.next();
+        for (TypeModel.Member method : token.getMethods()) {
             if (!Modifier.isFinal(method.getModifiers()) && !Modifier.isNative(method.getModifiers())) {
-                printFunction(writer, method, method.getReturnType(), token, method.getName());
+                printFunction(emitter, method, method.getName(), signatures);
+                emitted++;
             }
         }
+        metrics.addMethods(emitted);
+        if (signatures != null) printMethodTable(emitter, signatures);
 
-        for (Class<?> innerClass : token.getClasses()) {
+        for (TypeModel innerClass : token.getClasses()) {
             if (!Modifier.isFinal(innerClass.getModifiers()) && !Modifier.isPrivate(innerClass.getModifiers())) {
-                printClass(writer, innerClass, getImplName(innerClass));
+                printClass(emitter, innerClass, innerClass.getSimpleName() + "Impl");
             }
         }
 
-        writer.write("\n}");
+        emitter.append("\n}");
     }
 
     /**
-     * Returns String containing name of extending(implementing) class
+     * Prints constructor of implementation of interface named <tt>%localClassName%</tt> which stores handler its
+     * methods are dispatched to.
      *
-     * @param token class(interface) to extend(implement)
-     * @return String containing name of extending(implementing) class(interface)
+     * @param emitter SourceEmitter which used to write result implementation to
+     * @param localClassName name of implementation class
+     * @throws IOException when unable to write to <tt>%emitter%</tt>
+     * @since 0.2.0
      */
-    private String getImplName(Class<?> token) {
-        return token.getSimpleName() + "Impl";
+    private static void printHandlerConstructor(SourceEmitter emitter, String localClassName) throws IOException {
+        emitter.append(spaceIndent).append("public ").appendEscaped(localClassName).append('(');
+        printHandlerParameter(emitter, 0);
+        emitter.append(") { \n").append(spaceIndent).append(spaceIndent).append("super()");
+        printHandlerAssignment(emitter);
+        emitter.append(";\n").append(spaceIndent).append("}\n\n");
     }
 
     /**
-     * Returns String with few issues with non-ASCII symbols fixed.
+     * Prints handler parameter of constructor, which precedes <tt>%parameters%</tt> parameters of constructor of
+     * superclass.
      *
-     * @param str String which might contain non-ASCII symbols
-     * @return fixed String
-     * @since 0.1.0
-     * @see #implement(Class, Path)
+     * @param emitter SourceEmitter which used to write result implementation to
+     * @param parameters count of following parameters
+     * @throws IOException when unable to write to <tt>%emitter%</tt>
+     * @since 0.2.0
      */
-    private String escapeNonAscii(String str) {
-        StringBuilder retStr = new StringBuilder();
-        for(int i = 0; i < str.length(); i++) {
-            int cp = Character.codePointAt(str, i);
-            int charCount = Character.charCount(cp);
-            if (charCount > 1) {
-                i += charCount - 1;
-                if (i >= str.length()) {
-                    throw new IllegalArgumentException("truncated unexpectedly");
-                }
-            }
-            if (cp < 128) {
-                retStr.appendCodePoint(cp);
-            } else {
-                retStr.append(String.format("\\u%04x", cp));
-            }
+    private static void printHandlerParameter(SourceEmitter emitter, int parameters) throws IOException {
+        emitter.append(handlerType).append(" handler");
+        if (parameters > 0) emitter.append(", ");
+    }
+
+    /**
+     * Prints statement storing handler parameter to field of implementation, preceded by end of previous statement.
+     *
+     * @param emitter SourceEmitter which used to write result implementation to
+     * @throws IOException when unable to write to <tt>%emitter%</tt>
+     * @since 0.2.0
+     */
+    private static void printHandlerAssignment(SourceEmitter emitter) throws IOException {
+        emitter.append(";\n").append(spaceIndent).append(spaceIndent).append("this.handler = handler");
+    }
+
+    /**
+     * Prints body of method with index <tt>%method%</tt> which pushes its arguments to handler and returns result of
+     * invocation of handler, without final semicolon.
+     *
+     * @param emitter SourceEmitter which used to write result implementation to
+     * @param method index of method in <code>HANDLER_METHODS</code>
+     * @param parameters count of parameters of method
+     * @param returnType name of primitive return type or <code>void</code>, <tt>null</tt> for reference types
+     * @throws IOException when unable to write to <tt>%emitter%</tt>
+     * @since 0.2.0
+     * @see ImplementationHandler
+     */
+    private static void printDispatch(SourceEmitter emitter, int method, int parameters, String returnType)
+            throws IOException {
+        for (int i = 0; i < parameters; i++) {
+            emitter.append(spaceIndent).append(spaceIndent).append("handler.argument(").append(method).append(", ")
+                    .append(i).append(", variable").append(i).append(");\n");
+        }
+        emitter.append(spaceIndent).append(spaceIndent);
+        if (returnType == null) {
+            emitter.append("return handler.invokeObject(");
+        } else if (returnType.equals("void")) {
+            emitter.append("handler.invokeVoid(");
+        } else {
+            emitter.append("return handler.invoke").append(Character.toUpperCase(returnType.charAt(0)))
+                    .append(returnType.substring(1)).append('(');
+        }
+        emitter.append(method).append(')');
+    }
+
+    /**
+     * Prints statement counting call of method with index <tt>%method%</tt>, followed by indentation of the next
+     * statement.
+     *
+     * @param emitter SourceEmitter which used to write result implementation to
+     * @param method index of method in list of methods of counter
+     * @throws IOException when unable to write to <tt>%emitter%</tt>
+     * @since 0.2.0
+     * @see InvocationCounter
+     */
+    private static void printCount(SourceEmitter emitter, int method) throws IOException {
+        emitter.append(spaceIndent).append(spaceIndent).append(InvocationCounter.fieldName).append(".exit(")
+                .append(method).append(", ").append(InvocationCounter.fieldName).append(".enter(").append(method)
+                .append("));\n").append(spaceIndent).append(spaceIndent);
+    }
+
+    /**
+     * Prints table of signatures of methods dispatched to handler and field holding handler, or counter of
+     * methods in {@link GenerationMode#COUNTING COUNTING} mode.
+     *
+     * @param emitter SourceEmitter which used to write result implementation to
+     * @param signatures signatures of methods in order of their indices
+     * @throws IOException when unable to write to <tt>%emitter%</tt>
+     * @since 0.2.0
+     */
+    private void printMethodTable(SourceEmitter emitter, List<String> signatures) throws IOException {
+        emitter.append(spaceIndent);
+        if (mode == GenerationMode.COUNTING) {
+            emitter.append("public static final ").append(counterType).append(' ')
+                    .append(InvocationCounter.fieldName).append(" = new ").append(counterType)
+                    .append("(new java.lang.String[]{");
+        } else {
+            emitter.append("public static final java.lang.String[] HANDLER_METHODS = {");
+        }
+        for (int i = 0; i < signatures.size(); i++) {
+            if (i > 0) emitter.append(", ");
+            emitter.append('"').appendEscaped(signatures.get(i)).append('"');
         }
-        return retStr.toString();
+        if (mode == GenerationMode.COUNTING) {
+            emitter.append("});\n");
+        } else {
+            emitter.append("};\n\n").append(spaceIndent).append("private final ").append(handlerType)
+                    .append(" handler;\n");
+        }
+    }
+
+    /**
+     * Returns signature of method as it is listed in <code>HANDLER_METHODS</code> or by {@link InvocationCounter}.
+     *
+     * @param name name of method
+     * @param parameterTypes canonical names of types of parameters
+     * @return name followed by types of parameters in parentheses, separated by commas
+     * @since 0.2.0
+     */
+    private static String getSignature(String name, List<String> parameterTypes) {
+        return name + "(" + String.join(",", parameterTypes) + ")";
+    }
+
+    /**
+     * Returns String containing name of extending(implementing) class
+     *
+     * @param token class(interface) to extend(implement)
+     * @return String containing name of extending(implementing) class(interface)
+     */
+    private static String getImplName(Class<?> token) {
+        return token.getSimpleName() + "Impl";
     }
 
     /**
-     * Prints implementation of method or constructor (<tt>%func</tt>) in <tt>%writer%</tt>. (If <tt>%returnType%</tt>
-     * is not null then it prints function implementation, constructor implementation otherwise.)
+     * Prints implementation of method or constructor (<tt>%func</tt>) by using <tt>%emitter%</tt>. (If
+     * <tt>%func%</tt> has type then it prints function implementation, constructor implementation otherwise.)
      *
-     * @param writer BufferedWriter which used to write result implementation to
+     * @param emitter SourceEmitter which used to write result implementation to
      * @param func method or constructor which implementation is generated
-     * @param returnType return type of <tt>%func%</tt> if it is method, otherwise <tt>null</tt>
-     * @param token class to generate implementation for
      * @param funcName function string name
-     * @throws IOException when unable to write to <tt>%writer%</tt>
+     * @param signatures signatures of methods dispatched to handler or counted, which signature of <tt>%func%</tt>
+     * is added to unless it is static, <tt>null</tt> in {@link GenerationMode#STUB STUB} mode
+     * @throws IOException when unable to write to <tt>%emitter%</tt>
      * @since 0.1.0
      * @see #implement(Class, Path)
      */
-    private void printFunction(BufferedWriter writer, Executable func, Class<?> returnType, Class<?> token, String funcName) throws IOException {
-        writer.write(spaceIndent);
-        if (returnType == null) writer.write(getModifiersString(func.getModifiers(), modType.CONSTRUCTOR));
-        else writer.write(getModifiersString(func.getModifiers(), modType.METHOD) +
-                getAnnotatedTypeString(returnType, token) + " ");
-        writer.write(funcName);
-        Class<?> parameterTypes[] = func.getParameterTypes();
-        writer.write("(" + getTypesStringWithDelimiter(parameterTypes, token, true) + ") ");
-        writer.write(getTypesStringWithDelimiter(func.getExceptionTypes(), token, false) + "{ \n");
-        if (returnType != null) {
-            writer.write(spaceIndent + spaceIndent + "return");
-            writer.write(getDefaultTypeValueString(returnType));
+    private void printFunction(SourceEmitter emitter, TypeModel.Member func, String funcName,
+                               List<String> signatures) throws IOException {
+        String returnType = func.getType();
+        emitter.append(spaceIndent);
+        if (returnType == null) {
+            emitter.appendModifiers(maskModifiers(func.getModifiers(), modType.CONSTRUCTOR));
         } else {
-            writer.write(spaceIndent + spaceIndent + "super(");
-            for (int i = 0; i < parameterTypes.length - 1; i++) {
-                writer.write("variable" + i + ", ");
+            emitter.appendModifiers(maskModifiers(func.getModifiers(), modType.METHOD))
+                    .appendEscaped(returnType).append(' ');
+        }
+        emitter.appendEscaped(funcName).append('(');
+        int parameters = func.getParameterCount();
+        if (returnType == null && mode == GenerationMode.HANDLER) printHandlerParameter(emitter, parameters);
+        printTypes(emitter, func, true);
+        emitter.append(") ");
+        printTypes(emitter, func, false);
+        emitter.append("{ \n");
+        if (returnType != null && signatures != null && !Modifier.isStatic(func.getModifiers())) {
+            if (mode == GenerationMode.HANDLER) {
+                printDispatch(emitter, signatures.size(), parameters, func.getPrimitiveType());
+            } else {
+                printCount(emitter, signatures.size());
+                emitter.append("return").append(getDefaultTypeValueString(func.getPrimitiveType()));
+            }
+            List<String> parameterNames = new ArrayList<>();
+            for (int i = 0; i < parameters; i++) {
+                parameterNames.add(func.getSignatureType(i));
             }
-            if (parameterTypes.length > 0) {
-                writer.write("variable" + (parameterTypes.length - 1));
+            signatures.add(getSignature(funcName, parameterNames));
+        } else if (returnType != null) {
+            emitter.append(spaceIndent).append(spaceIndent).append("return")
+                    .append(getDefaultTypeValueString(func.getPrimitiveType()));
+        } else {
+            emitter.append(spaceIndent).append(spaceIndent).append("super(");
+            for (int i = 0; i < parameters; i++) {
+                if (i > 0) emitter.append(", ");
+                emitter.append("variable").append(i);
             }
-            writer.write(")");
+            emitter.append(')');
+            if (mode == GenerationMode.HANDLER) printHandlerAssignment(emitter);
         }
-        writer.write(";\n" + spaceIndent + "}\n\n");
+        emitter.append(";\n").append(spaceIndent).append("}\n\n");
     }
 
     /**
-     * Returns String containing list of exceptions (with <code>throws</code> in beginning) or parameters in function.
-     * String is created iteratively with {@link StringBuilder StringBuilder}. Variable names are generated automatically
-     * by adding number to <tt>variable</tt>.
+     * Prints list of exceptions (with <code>throws</code> in beginning) or parameters of <tt>%func%</tt>. Variable
+     * names are generated automatically by adding number to <tt>variable</tt>.
      *
-     * @param classes classes which names with certain delimiters will form result String
-     * @param token class to generate implementation for
-     * @param variable determines whether String should be generated for exceptions(<tt>false</tt>) or parameters (<tt>true</tt>)
-     * @return result String containing list of exceptions or parameters.
-     * @since 0.1.0
-     * @see #printFunction(BufferedWriter, Executable, Class, Class, String)
+     * @param emitter SourceEmitter which used to write result implementation to
+     * @param func method or constructor which types are printed
+     * @param variable determines whether list should be printed for exceptions(<tt>false</tt>) or parameters (<tt>true</tt>)
+     * @throws IOException when unable to write to <tt>%emitter%</tt>
+     * @since 0.2.0
+     * @see #printFunction(SourceEmitter, TypeModel.Member, String, List)
      */
-    private String getTypesStringWithDelimiter(Class<?>[] classes, Class<?> token, boolean variable) {
-        if (classes.length == 0) return "";
-        StringBuilder s = new StringBuilder();
-        if (!variable) s.append("throws ");
-        for (int i = 0; i < classes.length - 1; i++) {
-            s.append(escapeNonAscii(getAnnotatedTypeString(classes[i], token)));
-            if (variable) s.append(" variable").append(i);
-            s.append(", ");
+    private void printTypes(SourceEmitter emitter, TypeModel.Member func, boolean variable) throws IOException {
+        int count = variable ? func.getParameterCount() : func.getExceptionCount();
+        if (count == 0) return;
+        if (!variable) emitter.append("throws ");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) emitter.append(", ");
+            emitter.appendEscaped(variable ? func.getParameterType(i) : func.getExceptionType(i));
+            if (variable) emitter.append(" variable").append(i);
         }
-        s.append(escapeNonAscii(getAnnotatedTypeString(classes[classes.length - 1], token))).append(" ");
-        if (variable) s.append("variable").append(classes.length - 1);
-        return s.toString();
+        if (!variable) emitter.append(' ');
     }
 
     /**
-     * Returns modifiers String according to <tt>%type%</tt> of target.
-     * Uses {@link java.lang.reflect.Modifier#toString(int) Modifier.toString(int)}
+     * Returns modifiers allowed for target of <tt>%type%</tt>, without <code>abstract</code> and
+     * <code>interface</code>.
      *
      * @param modifiers int value of target's modifiers
      * @param type target's type
-     * @return String containing correct modifiers
-     * @since 0.1.0
+     * @return correct modifiers
+     * @since 0.2.0
      * @see modType
-     * @see #implement(Class, Path)
-     * @see #printFunction(BufferedWriter, Executable, Class, Class, String)
+     * @see SourceEmitter#appendModifiers(int)
+     * @see #printFunction(SourceEmitter, TypeModel.Member, String, List)
      */
-    private String getModifiersString(int modifiers, modType type) {
+    private static int maskModifiers(int modifiers, modType type) {
         modifiers &= ~Modifier.ABSTRACT & ~Modifier.INTERFACE;
         switch (type) {
             case INTERFACE: {
@@ -577,69 +2338,29 @@ public class Implementor implements JarImpler {
                 break;
             }
         }
-        String s = Modifier.toString(modifiers);
-        if (s.length() > 0) s += " ";
-        return s;
+        return modifiers;
     }
 
     /**
-     * Constructs String with default value for <tt>%type%</tt>.
+     * Constructs String with default value for type with keyword <tt>%primitiveType%</tt>.
      *
-     * @param type input type
+     * @param primitiveType name of primitive type or <code>void</code>, <tt>null</tt> for reference types
      * @return String with default value
      * @since 0.1.0
      * @see #implement(Class, Path)
      * @see "<a href = 'https://docs.oracle.com/javase/tutorial/java/nutsandbolts/datatypes.html'>Primitive Data Types</a>"
      */
-    private String getDefaultTypeValueString(Class<?> type) {
-        if (type.isPrimitive()) {
-            if (type.equals(Void.TYPE)) return "";
-            if (type.equals(Boolean.TYPE)) return " false";
-            if (type.equals(Character.TYPE)) return " '\\u0000'";
-            if (type.equals(Long.TYPE)) return " 0L";
-            if (type.equals(Integer.TYPE) || type.equals(Byte.TYPE) || type.equals(Short.TYPE)) return " 0";
-            if (type.equals(Float.TYPE)) return " 0.0f";
-            if (type.equals(Double.TYPE)) return " 0.0d";
-        }
-        return " null";
-    }
-
-    /**
-     * Constructs String with all Annotation from <tt>%annotations%</tt> array delimited by <tt>%delimiter%</tt>.
-     * Currently FunctionalInterface annotation is not supported.
-     *
-     * @param annotations input annotations array
-     * @param delimiter delimiter which is put between them
-     * @return String containing annotations from <tt>%annotations%</tt>
-     * @since 0.1.0
-     * @see #getAnnotatedTypeString(Class, Class)
-     * @see #implement(Class, Path)
-     */
-    private String getAnnotationsString(Annotation[] annotations, String delimiter) {
-        StringBuilder result = new StringBuilder();
-        for (Annotation annotation : annotations) {
-            if (!annotation.annotationType().equals(FunctionalInterface.class))
-                result.append(annotation.toString()).append(delimiter);
+    private String getDefaultTypeValueString(String primitiveType) {
+        if (primitiveType == null) return " null";
+        switch (primitiveType) {
+            case "void": return "";
+            case "boolean": return " false";
+            case "char": return " '\\u0000'";
+            case "long": return " 0L";
+            case "int": case "byte": case "short": return " 0";
+            case "float": return " 0.0f";
+            case "double": return " 0.0d";
+            default: return " null";
         }
-        return result.toString();
-    }
-
-    /**
-     * Generates String containing type annotations and name. Uses {@link #getAnnotationsString(Annotation[], String) getAnnotationsString}
-     * to get annotations String
-     *
-     * @param type input type which to create String for
-     * @param tokenType class to generate implementation for
-     * @return String containing type annotations plus <tt>" "</tt> plus type name
-     * @since 0.1.0
-     * @see #printFunction(BufferedWriter, Executable, Class, Class, String)
-     * @see #getTypesStringWithDelimiter(Class[], Class, boolean)
-     * @see #implement(Class, Path)
-     */
-    private String getAnnotatedTypeString(Class<?> type, Class<?> tokenType) {
-        String s = getAnnotationsString(type.getDeclaredAnnotations(), " ");
-        if (tokenType.getPackage().equals(type.getPackage())) s += type.getSimpleName();
-        else s += type.getCanonicalName();
-        return s;
     }
 }
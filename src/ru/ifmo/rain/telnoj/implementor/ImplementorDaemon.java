@@ -0,0 +1,308 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running server which executes command lines of {@link Implementor#main(String[]) main} sent by
+ * {@link #send(int, Path, String[]) clients}. All requests share one {@link Implementor}, so compiler classes and
+ * reflection caches stay warm between requests, and the cost of starting JVM is paid once. Requests from different
+ * connections are executed concurrently by fixed pool of threads.
+ * <p>
+ * Server listens on loopback interface only. Request consists of token of server, working directory of client, count
+ * of arguments and arguments themselves, all written by {@link DataOutputStream}. Response is single string: empty if
+ * command succeeded, message printed by {@link Implementor#main(String[]) main} otherwise. Arguments
+ * <code>/ -shutdown /</code> stop the server.
+ * <p>
+ * Loopback port is reachable by every local user, so server generates random token on start and writes it to
+ * {@link #getTokenFile(int) token file} readable by its owner only. Requests without that token are dropped before
+ * anything else is read, so only users able to read the file can run commands with rights of server. Connections
+ * which do not send token in {@link #tokenTimeout time} are dropped too, so they cannot hold all workers. On file
+ * systems without POSIX permissions the file gets default permissions of its directory, and server is safe on
+ * single-user hosts only.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#main(String[])
+ */
+public class ImplementorDaemon implements Closeable {
+    /**
+     * Arguments of request which stops server.
+     *
+     * @since 0.2.0
+     */
+    private static final String shutdownCommand = "-shutdown";
+
+    /**
+     * Maximum count of arguments in request, requests with more arguments are malformed.
+     *
+     * @since 0.2.0
+     */
+    private static final int maxArguments = 16;
+
+    /**
+     * Count of random bytes in token of server.
+     *
+     * @since 0.2.0
+     */
+    private static final int tokenBytes = 32;
+
+    /**
+     * Time in milliseconds client is given to send token, so connections which send nothing do not hold workers.
+     *
+     * @since 0.2.0
+     */
+    private static final int tokenTimeout = 5000;
+
+    /**
+     * Implementor executing all requests.
+     *
+     * @since 0.2.0
+     */
+    private final Implementor implementor;
+
+    /**
+     * Socket accepting connections.
+     *
+     * @since 0.2.0
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * Threads handling connections.
+     *
+     * @since 0.2.0
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Token which every request starts with, as written to {@link #tokenFile}.
+     *
+     * @since 0.2.0
+     */
+    private final byte[] token;
+
+    /**
+     * File containing {@link #token}, deleted when server is {@link #close() closed}.
+     *
+     * @since 0.2.0
+     */
+    private final Path tokenFile;
+
+    /**
+     * Creates server listening on loopback <tt>%port%</tt> and writes its token to
+     * {@link #getTokenFile(int) token file} of port it listens on.
+     *
+     * @param implementor implementor executing requests
+     * @param port port to listen on, <tt>0</tt> for any free port
+     * @param threads count of requests which are executed concurrently
+     * @throws IOException when unable to bind to <tt>%port%</tt> or to write token file
+     * @since 0.2.0
+     */
+    public ImplementorDaemon(Implementor implementor, int port, int threads) throws IOException {
+        this.implementor = implementor;
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        byte[] random = new byte[tokenBytes];
+        new SecureRandom().nextBytes(random);
+        token = Base64.getUrlEncoder().withoutPadding().encodeToString(random).getBytes(StandardCharsets.UTF_8);
+        tokenFile = getTokenFile(getPort());
+        try {
+            writeToken(tokenFile, token);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        workers = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Returns file where server listening on loopback <tt>%port%</tt> keeps its token:
+     * <tt>.implementor/daemon-%port%.token</tt> in home directory of user.
+     *
+     * @param port port server listens on
+     * @return path of token file
+     * @since 0.2.0
+     */
+    public static Path getTokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".implementor", "daemon-" + port + ".token");
+    }
+
+    /**
+     * Replaces <tt>%file%</tt> with new file readable and writable by its owner only, containing <tt>%token%</tt>.
+     * File is created with these permissions, so its content is never visible to other users.
+     *
+     * @param file token file
+     * @param token token to write
+     * @throws IOException when unable to create file
+     * @since 0.2.0
+     */
+    private static void writeToken(Path file, byte[] token) throws IOException {
+        boolean posix = file.getFileSystem().supportedFileAttributeViews().contains("posix");
+        Path directory = file.getParent();
+        if (!Files.isDirectory(directory)) {
+            try {
+                if (posix) {
+                    Files.createDirectories(directory,
+                            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } else {
+                    Files.createDirectories(directory);
+                }
+            } catch (FileAlreadyExistsException e) {
+                // created concurrently
+            }
+        }
+        // file left by server which was not closed may be readable by others, it is never reused
+        Files.deleteIfExists(file);
+        if (posix) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+        }
+        Files.write(file, token);
+    }
+
+    /**
+     * Returns port server listens on.
+     *
+     * @return local port
+     * @since 0.2.0
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until server is {@link #close() closed}.
+     *
+     * @throws IOException when unable to accept connection
+     * @since 0.2.0
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) return;
+                throw e;
+            }
+            try {
+                workers.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Reads request from <tt>%socket%</tt>, executes it and writes response.
+     *
+     * @param socket connection with client
+     * @since 0.2.0
+     */
+    private void handle(Socket socket) {
+        try (Socket client = socket) {
+            client.setSoTimeout(tokenTimeout);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            if (!MessageDigest.isEqual(token, in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+                throw new IOException("Invalid token");
+            }
+            client.setSoTimeout(0);
+            Path workingDirectory = Paths.get(in.readUTF());
+            int count = in.readInt();
+            if (count < 0 || count > maxArguments) throw new IOException("Malformed request");
+            String[] args = new String[count];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+            String message;
+            if (args.length == 1 && args[0].equals(shutdownCommand)) {
+                close();
+                message = null;
+            } else {
+                message = Implementor.execute(implementor, args, workingDirectory);
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+            out.writeUTF(message == null ? "" : message);
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            // connection is broken or request is malformed, client gets no response
+        }
+    }
+
+    /**
+     * Sends command line <tt>%args%</tt> to server listening on loopback <tt>%port%</tt> and waits for its
+     * completion. Token of server is read from its {@link #getTokenFile(int) token file}.
+     *
+     * @param port port server listens on
+     * @param workingDirectory directory relative paths of <tt>%args%</tt> are resolved against
+     * @param args arguments as they are passed to {@link Implementor#main(String[]) main}
+     * @return <tt>null</tt> if command succeeded, message describing failure otherwise
+     * @throws IOException when unable to read token file or to communicate with server
+     * @since 0.2.0
+     */
+    public static String send(int port, Path workingDirectory, String[] args) throws IOException {
+        String token = new String(Files.readAllBytes(getTokenFile(port)), StandardCharsets.UTF_8);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(token);
+            out.writeUTF(workingDirectory.toAbsolutePath().toString());
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            String message = new DataInputStream(new BufferedInputStream(socket.getInputStream())).readUTF();
+            return message.isEmpty() ? null : message;
+        }
+    }
+
+    /**
+     * Stops accepting connections and deletes token file. Requests being executed are completed in background.
+     *
+     * @throws IOException when unable to close server socket or to delete token file
+     * @since 0.2.0
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            serverSocket.close();
+            workers.shutdown();
+        } finally {
+            Files.deleteIfExists(tokenFile);
+        }
+    }
+
+    /**
+     * Waits until all requests accepted before {@link #close() close} are completed.
+     *
+     * @throws InterruptedException when interrupted while waiting
+     * @since 0.2.0
+     */
+    public void awaitTermination() throws InterruptedException {
+        while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+            // keep waiting for long requests
+        }
+    }
+}
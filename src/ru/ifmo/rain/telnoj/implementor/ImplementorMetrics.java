@@ -0,0 +1,523 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import info.kgeorgiy.java.advanced.implementor.ImplerException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timings of single {@link Implementor}. Every phase is measured per token (or per batch of tokens for
+ * compilation and jar writing) and, when flight recorder is running, reported as <code>PhaseEvent</code>. Values can be
+ * read directly, {@link #snapshot() copied} at once or {@link #register() exposed} over JMX.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#getMetrics()
+ */
+public class ImplementorMetrics implements ImplementorMetricsMXBean {
+    /**
+     * Reason of failures of tokens which cannot be implemented.
+     *
+     * @since 0.2.0
+     */
+    static final String unsupported = "unsupported";
+
+    /**
+     * Name of class of {@link PhaseRecorder} reporting phases as flight recorder events. It is compiled from separate
+     * source root for JDK 11, so it may be missing.
+     *
+     * @since 0.2.0
+     */
+    private static final String recorderClass = "ru.ifmo.rain.telnoj.implementor.PhaseEvent$Recorder";
+
+    /**
+     * Recorder of flight recorder events, <tt>null</tt> if flight recorder or class of events is not available.
+     *
+     * @since 0.2.0
+     */
+    private static final PhaseRecorder recorder = loadRecorder();
+
+    /**
+     * Number used to give unique JMX names to registered instances.
+     *
+     * @since 0.2.0
+     */
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    /**
+     * Measured phases of implementor.
+     *
+     * @since 0.2.0
+     */
+    enum Phase {
+        /**
+         * Reflection and generation of source code or class files.
+         *
+         * @since 0.2.0
+         */
+        GENERATE,
+        /**
+         * Compilation of generated source code.
+         *
+         * @since 0.2.0
+         */
+        COMPILE,
+        /**
+         * Writing of <tt>.jar</tt> file.
+         *
+         * @since 0.2.0
+         */
+        JAR;
+
+        /**
+         * Name of phase used as reason of failures and in flight recorder events.
+         *
+         * @since 0.2.0
+         */
+        final String reason = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reporter of measured phases to flight recorder.
+     *
+     * @since 0.2.0
+     */
+    interface PhaseRecorder {
+        /**
+         * Checks whether flight recorder was started, by command line option or later. Until then events are not
+         * created, so short runs do not load and instrument event classes.
+         *
+         * @return true if flight recorder is initialized
+         * @since 0.2.0
+         */
+        boolean isRunning();
+
+        /**
+         * Creates and begins event.
+         *
+         * @return started event
+         * @since 0.2.0
+         */
+        Object start();
+
+        /**
+         * Ends <tt>%event%</tt> started by {@link #start()} and commits it if it is recorded.
+         *
+         * @param event started event
+         * @param phase name of phase
+         * @param tokens tokens or names of types phase was run for
+         * @param succeeded whether phase completed without failure
+         * @since 0.2.0
+         */
+        void finish(Object event, String phase, Collection<?> tokens, boolean succeeded);
+    }
+
+    /**
+     * Measured action.
+     *
+     * @param <T> type of result
+     * @since 0.2.0
+     */
+    interface Task<T> {
+        /**
+         * Runs action.
+         *
+         * @return result of action
+         * @throws ImplerException when action fails
+         * @since 0.2.0
+         */
+        T run() throws ImplerException;
+    }
+
+    /**
+     * Count of processed tokens.
+     *
+     * @since 0.2.0
+     */
+    private final LongAdder tokens = new LongAdder();
+
+    /**
+     * Count of emitted methods and constructors.
+     *
+     * @since 0.2.0
+     */
+    private final LongAdder methods = new LongAdder();
+
+    /**
+     * Count of written bytes.
+     *
+     * @since 0.2.0
+     */
+    private final LongAdder bytes = new LongAdder();
+
+    /**
+     * Total time of every phase in nanoseconds, indexed by ordinal of phase.
+     *
+     * @since 0.2.0
+     */
+    private final LongAdder[] times = new LongAdder[Phase.values().length];
+
+    /**
+     * Counts of failures mapped by reason.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+    /**
+     * Creates metrics with all values set to zero.
+     *
+     * @since 0.2.0
+     */
+    public ImplementorMetrics() {
+        for (int i = 0; i < times.length; i++) {
+            times[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Runs <tt>%task%</tt> as <tt>%phase%</tt> run for <tt>%tokens%</tt>, adding its time to the phase and counting
+     * its failure.
+     *
+     * @param phase phase task belongs to
+     * @param tokens tokens or names of types task is run for
+     * @param task action to measure
+     * @param <T> type of result
+     * @return result of <tt>%task%</tt>
+     * @throws ImplerException when <tt>%task%</tt> fails
+     * @since 0.2.0
+     */
+    <T> T measure(Phase phase, Collection<?> tokens, Task<T> task) throws ImplerException {
+        Object event = recorder != null && recorder.isRunning() ? recorder.start() : null;
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            T result = task.run();
+            succeeded = true;
+            return result;
+        } finally {
+            times[phase.ordinal()].add(System.nanoTime() - start);
+            if (!succeeded) fail(phase.reason);
+            if (event != null) recorder.finish(event, phase.reason, tokens, succeeded);
+        }
+    }
+
+    /**
+     * Counts failure caused by <tt>%reason%</tt>.
+     *
+     * @param reason reason of failure
+     * @since 0.2.0
+     */
+    void fail(String reason) {
+        failures.computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    /**
+     * Adds <tt>%count%</tt> to count of processed tokens.
+     *
+     * @param count count of tokens
+     * @since 0.2.0
+     */
+    void addTokens(int count) {
+        tokens.add(count);
+    }
+
+    /**
+     * Adds <tt>%count%</tt> to count of emitted methods.
+     *
+     * @param count count of methods and constructors
+     * @since 0.2.0
+     */
+    void addMethods(int count) {
+        methods.add(count);
+    }
+
+    /**
+     * Adds <tt>%count%</tt> to count of written bytes.
+     *
+     * @param count count of bytes
+     * @since 0.2.0
+     */
+    void addBytes(long count) {
+        bytes.add(count);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.2.0
+     */
+    @Override
+    public long getTokensProcessed() {
+        return tokens.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.2.0
+     */
+    @Override
+    public long getMethodsEmitted() {
+        return methods.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.2.0
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytes.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.2.0
+     */
+    @Override
+    public long getGenerateTimeNanos() {
+        return times[Phase.GENERATE.ordinal()].sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.2.0
+     */
+    @Override
+    public long getCompileTimeNanos() {
+        return times[Phase.COMPILE.ordinal()].sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.2.0
+     */
+    @Override
+    public long getJarTimeNanos() {
+        return times[Phase.JAR.ordinal()].sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.2.0
+     */
+    @Override
+    public Map<String, Long> getFailures() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : failures.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    /**
+     * Returns copy of all current values, which does not change afterwards.
+     *
+     * @return snapshot of metrics
+     * @since 0.2.0
+     */
+    public ImplementorMetricsMXBean snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Registers these metrics in platform MBean server under unique name in domain
+     * <tt>ru.ifmo.rain.telnoj.implementor</tt>.
+     *
+     * @return name metrics are registered under
+     * @throws JMException when unable to register metrics
+     * @since 0.2.0
+     */
+    public ObjectName register() throws JMException {
+        ObjectName name = new ObjectName("ru.ifmo.rain.telnoj.implementor:type=Implementor,id="
+                + instances.incrementAndGet());
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        return name;
+    }
+
+    /**
+     * Creates recorder of flight recorder events, if its class and flight recorder classes can be loaded.
+     *
+     * @return recorder, <tt>null</tt> if flight recorder is not available
+     * @since 0.2.0
+     */
+    private static PhaseRecorder loadRecorder() {
+        try {
+            return Class.forName(recorderClass, true, ImplementorMetrics.class.getClassLoader())
+                    .asSubclass(PhaseRecorder.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Immutable copy of metrics.
+     *
+     * @since 0.2.0
+     * @see #snapshot()
+     */
+    private static final class Snapshot implements ImplementorMetricsMXBean {
+        /**
+         * Copied count of processed tokens.
+         *
+         * @since 0.2.0
+         */
+        private final long tokensProcessed;
+
+        /**
+         * Copied count of emitted methods.
+         *
+         * @since 0.2.0
+         */
+        private final long methodsEmitted;
+
+        /**
+         * Copied count of written bytes.
+         *
+         * @since 0.2.0
+         */
+        private final long bytesWritten;
+
+        /**
+         * Copied generation time.
+         *
+         * @since 0.2.0
+         */
+        private final long generateTimeNanos;
+
+        /**
+         * Copied compilation time.
+         *
+         * @since 0.2.0
+         */
+        private final long compileTimeNanos;
+
+        /**
+         * Copied jar writing time.
+         *
+         * @since 0.2.0
+         */
+        private final long jarTimeNanos;
+
+        /**
+         * Copied counts of failures.
+         *
+         * @since 0.2.0
+         */
+        private final Map<String, Long> failures;
+
+        /**
+         * Copies current values of <tt>%metrics%</tt>.
+         *
+         * @param metrics metrics to copy
+         * @since 0.2.0
+         */
+        Snapshot(ImplementorMetrics metrics) {
+            tokensProcessed = metrics.getTokensProcessed();
+            methodsEmitted = metrics.getMethodsEmitted();
+            bytesWritten = metrics.getBytesWritten();
+            generateTimeNanos = metrics.getGenerateTimeNanos();
+            compileTimeNanos = metrics.getCompileTimeNanos();
+            jarTimeNanos = metrics.getJarTimeNanos();
+            failures = Collections.unmodifiableMap(metrics.getFailures());
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public long getTokensProcessed() {
+            return tokensProcessed;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public long getMethodsEmitted() {
+            return methodsEmitted;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public long getGenerateTimeNanos() {
+            return generateTimeNanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public long getCompileTimeNanos() {
+            return compileTimeNanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public long getJarTimeNanos() {
+            return jarTimeNanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public Map<String, Long> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Returns all values in form <code>/ %name%=%value% /</code> separated by spaces.
+         *
+         * @return description of snapshot
+         * @since 0.2.0
+         */
+        @Override
+        public String toString() {
+            return "tokens=" + tokensProcessed + " methods=" + methodsEmitted + " bytes=" + bytesWritten
+                    + " generateNanos=" + generateTimeNanos + " compileNanos=" + compileTimeNanos
+                    + " jarNanos=" + jarTimeNanos + " failures=" + failures;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ImplementorMetrics}. Allows to watch work of {@link Implementor} over JMX without
+ * attaching a profiler.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see ImplementorMetrics#register()
+ */
+public interface ImplementorMetricsMXBean {
+    /**
+     * Returns count of tokens implementations were successfully created for.
+     *
+     * @return count of processed tokens
+     * @since 0.2.0
+     */
+    long getTokensProcessed();
+
+    /**
+     * Returns count of methods and constructors written to generated source code.
+     *
+     * @return count of emitted methods
+     * @since 0.2.0
+     */
+    long getMethodsEmitted();
+
+    /**
+     * Returns total size of <tt>.java</tt> and <tt>.jar</tt> files written.
+     *
+     * @return count of written bytes
+     * @since 0.2.0
+     */
+    long getBytesWritten();
+
+    /**
+     * Returns total time spent on reflection and generation of source code or class files.
+     *
+     * @return generation time in nanoseconds
+     * @since 0.2.0
+     */
+    long getGenerateTimeNanos();
+
+    /**
+     * Returns total time spent by Java compiler.
+     *
+     * @return compilation time in nanoseconds
+     * @since 0.2.0
+     */
+    long getCompileTimeNanos();
+
+    /**
+     * Returns total time spent on writing <tt>.jar</tt> files.
+     *
+     * @return jar writing time in nanoseconds
+     * @since 0.2.0
+     */
+    long getJarTimeNanos();
+
+    /**
+     * Returns counts of failed requests mapped by reason of failure: <tt>unsupported</tt> for tokens which cannot be
+     * implemented or name of phase which failed.
+     *
+     * @return map from reason to count of failures
+     * @since 0.2.0
+     */
+    Map<String, Long> getFailures();
+}
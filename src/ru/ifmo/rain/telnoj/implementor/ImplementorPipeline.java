@@ -0,0 +1,430 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import info.kgeorgiy.java.advanced.implementor.ImplerException;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pipeline running {@link Stage stages} of producing <tt>.jar</tt> file concurrently, each stage by its own thread.
+ * Stages are connected by bounded queues: stage waits when its output queue is full, so fast stages are held back by
+ * slow ones instead of accumulating results in memory. While implementation of one token is emitted, previous ones
+ * are compiled and written, so reflection, emission, compilation and writing overlap.
+ * <p>
+ * Every stage takes items of its queue in order and passes results in the same order, so output does not depend on
+ * timing. Stages may take several waiting items at once: compilation takes up to <tt>compileBatch</tt> of them, so
+ * the cost of starting compiler task is shared by implementations which piled up while it was busy, and writing
+ * takes all waiting ones. Capacity of every queue is set independently.
+ * <p>
+ * Each run returns {@link Statistics} telling how long every stage was busy, starved of input or blocked by full
+ * output queue, so capacities can be tuned for particular machine. Failure of any stage stops processing of further
+ * items, remaining items are drained without processing.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#implementJar(Collection, Path, Implementor.Backend, ImplementorPipeline)
+ */
+public class ImplementorPipeline {
+    /**
+     * Default capacity of queue of every stage.
+     *
+     * @since 0.2.0
+     */
+    private static final int defaultCapacity = 16;
+
+    /**
+     * Default maximum count of implementations compiled by single compiler task.
+     *
+     * @since 0.2.0
+     */
+    private static final int defaultCompileBatch = 32;
+
+    /**
+     * Marker following the last item of queue.
+     *
+     * @since 0.2.0
+     */
+    private static final Object end = new Object();
+
+    /**
+     * Stages of pipeline, in order items pass them.
+     *
+     * @since 0.2.0
+     */
+    public enum Stage {
+        /**
+         * Checks of tokens and reflection of their methods.
+         *
+         * @since 0.2.0
+         */
+        RESOLVE,
+        /**
+         * Emission of source code or class files.
+         *
+         * @since 0.2.0
+         */
+        EMIT,
+        /**
+         * Compilation of emitted source code.
+         *
+         * @since 0.2.0
+         */
+        COMPILE,
+        /**
+         * Compression of class files and writing them to <tt>.jar</tt> file.
+         *
+         * @since 0.2.0
+         */
+        JAR
+    }
+
+    /**
+     * Work of stage on items taken from its queue at once.
+     *
+     * @param <I> type of input items
+     * @param <O> type of results
+     * @since 0.2.0
+     */
+    interface Step<I, O> {
+        /**
+         * Processes <tt>%items%</tt>.
+         *
+         * @param items items taken from queue, at least one
+         * @return results passed to the next stage in order
+         * @throws ImplerException when items cannot be processed
+         * @since 0.2.0
+         */
+        List<O> process(List<I> items) throws ImplerException;
+    }
+
+    /**
+     * Statistics of single run of pipeline. Times are in nanoseconds.
+     *
+     * @since 0.2.0
+     */
+    public static final class Statistics {
+        /**
+         * Count of items processed by every stage, indexed by ordinal of stage.
+         *
+         * @since 0.2.0
+         */
+        private final long[] items = new long[Stage.values().length];
+
+        /**
+         * Count of batches processed by every stage.
+         *
+         * @since 0.2.0
+         */
+        private final long[] batches = new long[Stage.values().length];
+
+        /**
+         * Time every stage spent processing items.
+         *
+         * @since 0.2.0
+         */
+        private final long[] busy = new long[Stage.values().length];
+
+        /**
+         * Time every stage spent waiting for items.
+         *
+         * @since 0.2.0
+         */
+        private final long[] starved = new long[Stage.values().length];
+
+        /**
+         * Time every stage spent waiting for space in queue of the next stage.
+         *
+         * @since 0.2.0
+         */
+        private final long[] blocked = new long[Stage.values().length];
+
+        /**
+         * Maximum count of items found in queue of every stage.
+         *
+         * @since 0.2.0
+         */
+        private final int[] peak = new int[Stage.values().length];
+
+        /**
+         * Time of the whole run.
+         *
+         * @since 0.2.0
+         */
+        private long elapsed;
+
+        /**
+         * Returns count of items processed by <tt>%stage%</tt>.
+         *
+         * @param stage stage of pipeline
+         * @return count of items
+         * @since 0.2.0
+         */
+        public long getItems(Stage stage) {
+            return items[stage.ordinal()];
+        }
+
+        /**
+         * Returns count of batches processed by <tt>%stage%</tt>.
+         *
+         * @param stage stage of pipeline
+         * @return count of batches
+         * @since 0.2.0
+         */
+        public long getBatches(Stage stage) {
+            return batches[stage.ordinal()];
+        }
+
+        /**
+         * Returns time <tt>%stage%</tt> spent processing items.
+         *
+         * @param stage stage of pipeline
+         * @return busy time in nanoseconds
+         * @since 0.2.0
+         */
+        public long getBusyTime(Stage stage) {
+            return busy[stage.ordinal()];
+        }
+
+        /**
+         * Returns time <tt>%stage%</tt> spent waiting for items of previous stage.
+         *
+         * @param stage stage of pipeline
+         * @return starved time in nanoseconds
+         * @since 0.2.0
+         */
+        public long getStarvedTime(Stage stage) {
+            return starved[stage.ordinal()];
+        }
+
+        /**
+         * Returns time <tt>%stage%</tt> spent waiting for space in full queue of the next stage.
+         *
+         * @param stage stage of pipeline
+         * @return blocked time in nanoseconds
+         * @since 0.2.0
+         */
+        public long getBlockedTime(Stage stage) {
+            return blocked[stage.ordinal()];
+        }
+
+        /**
+         * Returns maximum count of items waiting in queue of <tt>%stage%</tt>.
+         *
+         * @param stage stage of pipeline
+         * @return peak length of queue
+         * @since 0.2.0
+         */
+        public int getPeakQueue(Stage stage) {
+            return peak[stage.ordinal()];
+        }
+
+        /**
+         * Returns share of run time <tt>%stage%</tt> was busy.
+         *
+         * @param stage stage of pipeline
+         * @return occupancy from <tt>0</tt> to <tt>1</tt>
+         * @since 0.2.0
+         */
+        public double getOccupancy(Stage stage) {
+            return elapsed == 0 ? 0 : (double) busy[stage.ordinal()] / elapsed;
+        }
+
+        /**
+         * Returns time of the whole run.
+         *
+         * @return elapsed time in nanoseconds
+         * @since 0.2.0
+         */
+        public long getElapsedTime() {
+            return elapsed;
+        }
+
+        /**
+         * Returns statistics as tab separated table with row for every stage. Times are in milliseconds.
+         *
+         * @return table of statistics
+         * @since 0.2.0
+         */
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder("stage\titems\tbatches\toccupancy\tbusy\tstarved\tblocked\tpeak\n");
+            for (Stage stage : Stage.values()) {
+                int i = stage.ordinal();
+                result.append(String.format(Locale.ROOT, "%s\t%d\t%d\t%.2f\t%d\t%d\t%d\t%d%n",
+                        stage.name().toLowerCase(Locale.ROOT), items[i], batches[i], getOccupancy(stage),
+                        busy[i] / 1_000_000, starved[i] / 1_000_000, blocked[i] / 1_000_000, peak[i]));
+            }
+            return result.append("elapsed\t").append(elapsed / 1_000_000).toString();
+        }
+    }
+
+    /**
+     * Capacity of queue of every stage.
+     *
+     * @since 0.2.0
+     */
+    private final Map<Stage, Integer> capacities = new EnumMap<>(Stage.class);
+
+    /**
+     * Maximum count of implementations compiled by single compiler task.
+     *
+     * @since 0.2.0
+     */
+    private final int compileBatch;
+
+    /**
+     * Creates pipeline with default capacities of queues and size of compiled batches.
+     *
+     * @since 0.2.0
+     */
+    public ImplementorPipeline() {
+        this(new EnumMap<>(Stage.class), defaultCompileBatch);
+    }
+
+    /**
+     * Creates pipeline with given capacities of queues and size of compiled batches.
+     *
+     * @param capacities capacities of queues of stages, default one is used for stages which are absent
+     * @param compileBatch maximum count of implementations compiled by single compiler task
+     * @since 0.2.0
+     */
+    public ImplementorPipeline(Map<Stage, Integer> capacities, int compileBatch) {
+        if (compileBatch < 1) throw new IllegalArgumentException("Invalid compile batch " + compileBatch);
+        for (Stage stage : Stage.values()) {
+            int capacity = capacities.getOrDefault(stage, defaultCapacity);
+            if (capacity < 1) throw new IllegalArgumentException("Invalid capacity of " + stage + ": " + capacity);
+            this.capacities.put(stage, capacity);
+        }
+        this.compileBatch = compileBatch;
+    }
+
+    /**
+     * Passes <tt>%items%</tt> through stages doing <tt>%steps%</tt>, waiting until the last stage finishes.
+     *
+     * @param items input items of the first stage
+     * @param steps work of every stage
+     * @return statistics of run
+     * @throws ImplerException when any stage fails, with the first failure
+     * @since 0.2.0
+     */
+    Statistics run(Collection<?> items, Map<Stage, Step<?, ?>> steps) throws ImplerException {
+        Stage[] stages = Stage.values();
+        List<BlockingQueue<Object>> queues = new ArrayList<>();
+        for (Stage stage : stages) {
+            queues.add(new ArrayBlockingQueue<>(capacities.get(stage)));
+        }
+        Statistics statistics = new Statistics();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (Stage stage : stages) {
+            int i = stage.ordinal();
+            BlockingQueue<Object> output = i + 1 < stages.length ? queues.get(i + 1) : null;
+            int batch = stage == Stage.COMPILE ? compileBatch : stage == Stage.JAR ? capacities.get(stage) : 1;
+            Thread thread = new Thread(() -> runStage(stage, steps.get(stage), batch, queues.get(i), output,
+                    statistics, failure), "implementor-pipeline-" + stage.name().toLowerCase(Locale.ROOT));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (Object item : items) {
+                if (failure.get() != null) break;
+                queues.get(0).put(item);
+            }
+            queues.get(0).put(end);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new ImplerException("Pipeline was interrupted");
+        }
+        statistics.elapsed = System.nanoTime() - start;
+        Throwable cause = failure.get();
+        if (cause instanceof ImplerException) throw (ImplerException) cause;
+        if (cause != null) throw new ImplerException("Pipeline failed: " + cause, cause);
+        return statistics;
+    }
+
+    /**
+     * Body of thread of <tt>%stage%</tt>: takes items of <tt>%input%</tt> until end marker, processes them by
+     * <tt>%step%</tt> and puts results to <tt>%output%</tt>. After failure of any stage items are taken and dropped,
+     * so other stages never wait forever.
+     *
+     * @param stage stage run by current thread
+     * @param step work of stage
+     * @param batch maximum count of items processed at once
+     * @param input queue of stage
+     * @param output queue of the next stage, <tt>null</tt> for the last stage
+     * @param statistics statistics to update
+     * @param failure holder of the first failure of any stage
+     * @since 0.2.0
+     */
+    @SuppressWarnings("unchecked")
+    private static void runStage(Stage stage, Step<?, ?> step, int batch, BlockingQueue<Object> input,
+                                 BlockingQueue<Object> output, Statistics statistics,
+                                 AtomicReference<Throwable> failure) {
+        Step<Object, Object> work = (Step<Object, Object>) step;
+        int index = stage.ordinal();
+        List<Object> items = new ArrayList<>();
+        boolean finished = false;
+        try {
+            while (!finished) {
+                long waiting = System.nanoTime();
+                Object item = input.take();
+                statistics.starved[index] += System.nanoTime() - waiting;
+                statistics.peak[index] = Math.max(statistics.peak[index], input.size() + 1);
+                items.clear();
+                if (item == end) {
+                    finished = true;
+                } else {
+                    items.add(item);
+                    while (items.size() < batch) {
+                        Object next = input.poll();
+                        if (next == null) break;
+                        if (next == end) {
+                            finished = true;
+                            break;
+                        }
+                        items.add(next);
+                    }
+                }
+                if (items.isEmpty() || failure.get() != null) continue;
+                long started = System.nanoTime();
+                List<Object> results;
+                try {
+                    results = work.process(items);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                    continue;
+                } finally {
+                    statistics.busy[index] += System.nanoTime() - started;
+                }
+                statistics.items[index] += items.size();
+                statistics.batches[index]++;
+                if (output != null) {
+                    long blocking = System.nanoTime();
+                    for (Object result : results) {
+                        output.put(result);
+                    }
+                    statistics.blocked[index] += System.nanoTime() - blocking;
+                }
+            }
+            if (output != null) output.put(end);
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter of calls of implementations generated in {@link Implementor.GenerationMode#COUNTING COUNTING} mode. Every
+ * generated class declares counter in its <code>INVOCATIONS</code> field, shared by all its instances, and every
+ * implemented method reports its calls to it by index in {@link #getMethods() list of methods}. Methods are listed by
+ * signatures like <tt>add(long,java.lang.String[])</tt> with canonical names of parameter types.
+ * <p>
+ * Counts are kept in {@link #stripes stripes}, one per processor, and every thread increments the stripe chosen by
+ * its id, so threads calling the same method at once mostly update different cache lines. Counting a call costs
+ * one uncontended atomic increment, unlike {@link LongAdder}, which also checks its cells first. Latency is recorded
+ * only for sampled calls, chosen randomly with probability set by {@link #setSamplingInterval(int)}, so sampling
+ * costs nothing but one volatile read while it is disabled, which is the default.
+ * <p>
+ * Counts are read by {@link #snapshot()}. Snapshot is taken while calls go on, so it is not atomic: calls finished
+ * while it is taken may be counted in some methods and not in others.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#Implementor(Implementor.GenerationMode)
+ */
+public final class InvocationCounter {
+    /**
+     * Name of field holding counter in every generated class.
+     *
+     * @since 0.2.0
+     */
+    static final String fieldName = "INVOCATIONS";
+
+    /**
+     * Value returned by {@link #enter(int)} for calls which are not sampled.
+     *
+     * @since 0.2.0
+     */
+    private static final long notSampled = Long.MIN_VALUE;
+
+    /**
+     * Count of counts placed between stripes, so that neighbouring stripes never share cache line.
+     *
+     * @since 0.2.0
+     */
+    private static final int padding = 8;
+
+    /**
+     * Count of stripes, the least power of two not less than count of processors.
+     *
+     * @since 0.2.0
+     */
+    private static final int stripes = Integer.highestOneBit(Math.max(1,
+            Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    /**
+     * Signatures of counted methods in order of their indices.
+     *
+     * @since 0.2.0
+     */
+    private final String[] methods;
+
+    /**
+     * Count of calls of every method in every stripe. Stripe <tt>s</tt> holds count of method <tt>m</tt> at index
+     * <code>s * {@link #stride} + m</code>.
+     *
+     * @since 0.2.0
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * Distance between stripes in {@link #counts counts}: count of methods and padding.
+     *
+     * @since 0.2.0
+     */
+    private final int stride;
+
+    /**
+     * Count of sampled calls of every method.
+     *
+     * @since 0.2.0
+     */
+    private final LongAdder[] samples;
+
+    /**
+     * Total latency of sampled calls of every method in nanoseconds.
+     *
+     * @since 0.2.0
+     */
+    private final LongAdder[] latencies;
+
+    /**
+     * Maximum latency of sampled calls of every method in nanoseconds.
+     *
+     * @since 0.2.0
+     */
+    private final LongAccumulator[] maxLatencies;
+
+    /**
+     * Mean count of calls per sampled call, <tt>0</tt> when sampling is disabled.
+     *
+     * @since 0.2.0
+     */
+    private volatile int samplingInterval;
+
+    /**
+     * Snapshot of counts and sampled latencies of all methods. Latencies are in nanoseconds.
+     *
+     * @since 0.2.0
+     */
+    public static final class Snapshot {
+        /**
+         * Signatures of methods in order of their indices.
+         *
+         * @since 0.2.0
+         */
+        private final List<String> methods;
+
+        /**
+         * Count of calls of every method.
+         *
+         * @since 0.2.0
+         */
+        private final long[] counts;
+
+        /**
+         * Count of sampled calls of every method.
+         *
+         * @since 0.2.0
+         */
+        private final long[] samples;
+
+        /**
+         * Total latency of sampled calls of every method.
+         *
+         * @since 0.2.0
+         */
+        private final long[] latencies;
+
+        /**
+         * Maximum latency of sampled calls of every method.
+         *
+         * @since 0.2.0
+         */
+        private final long[] maxLatencies;
+
+        /**
+         * Creates snapshot of current values of <tt>%counter%</tt>.
+         *
+         * @param counter counter to read
+         * @since 0.2.0
+         */
+        private Snapshot(InvocationCounter counter) {
+            int size = counter.methods.length;
+            methods = Collections.unmodifiableList(Arrays.asList(counter.methods));
+            counts = new long[size];
+            samples = new long[size];
+            latencies = new long[size];
+            maxLatencies = new long[size];
+            for (int i = 0; i < size; i++) {
+                counts[i] = counter.getCount(i);
+                samples[i] = counter.samples[i].sum();
+                latencies[i] = counter.latencies[i].sum();
+                maxLatencies[i] = counter.maxLatencies[i].get();
+            }
+        }
+
+        /**
+         * Returns signatures of counted methods in order of their indices.
+         *
+         * @return unmodifiable list of signatures
+         * @since 0.2.0
+         */
+        public List<String> getMethods() {
+            return methods;
+        }
+
+        /**
+         * Returns count of calls of method with index <tt>%method%</tt>.
+         *
+         * @param method index of method
+         * @return count of calls
+         * @since 0.2.0
+         */
+        public long getCount(int method) {
+            return counts[method];
+        }
+
+        /**
+         * Returns count of calls of all methods.
+         *
+         * @return total count of calls
+         * @since 0.2.0
+         */
+        public long getTotalCount() {
+            return Arrays.stream(counts).sum();
+        }
+
+        /**
+         * Returns count of sampled calls of method with index <tt>%method%</tt>.
+         *
+         * @param method index of method
+         * @return count of sampled calls
+         * @since 0.2.0
+         */
+        public long getSamples(int method) {
+            return samples[method];
+        }
+
+        /**
+         * Returns mean latency of sampled calls of method with index <tt>%method%</tt>.
+         *
+         * @param method index of method
+         * @return mean latency in nanoseconds, <tt>0</tt> when no calls were sampled
+         * @since 0.2.0
+         */
+        public double getMeanLatency(int method) {
+            return samples[method] == 0 ? 0 : (double) latencies[method] / samples[method];
+        }
+
+        /**
+         * Returns maximum latency of sampled calls of method with index <tt>%method%</tt>.
+         *
+         * @param method index of method
+         * @return maximum latency in nanoseconds, <tt>0</tt> when no calls were sampled
+         * @since 0.2.0
+         */
+        public long getMaxLatency(int method) {
+            return maxLatencies[method];
+        }
+
+        /**
+         * Returns report of snapshot as tab separated table with row for every method.
+         *
+         * @return table of counts and latencies
+         * @since 0.2.0
+         */
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder("method\tcount\tsamples\tmean\tmax\n");
+            for (int i = 0; i < counts.length; i++) {
+                result.append(String.format(Locale.ROOT, "%s\t%d\t%d\t%.1f\t%d%n", methods.get(i), counts[i],
+                        samples[i], getMeanLatency(i), maxLatencies[i]));
+            }
+            return result.append("total\t").append(getTotalCount()).toString();
+        }
+    }
+
+    /**
+     * Creates counter of methods with given signatures, with sampling disabled.
+     *
+     * @param methods signatures of methods in order of their indices
+     * @since 0.2.0
+     */
+    public InvocationCounter(String[] methods) {
+        this.methods = methods.clone();
+        stride = methods.length + padding;
+        counts = new AtomicLongArray(stripes * stride);
+        samples = new LongAdder[methods.length];
+        latencies = new LongAdder[methods.length];
+        maxLatencies = new LongAccumulator[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            samples[i] = new LongAdder();
+            latencies[i] = new LongAdder();
+            maxLatencies[i] = new LongAccumulator(Math::max, 0);
+        }
+    }
+
+    /**
+     * Returns counter of implementation generated in {@link Implementor.GenerationMode#COUNTING COUNTING} mode.
+     *
+     * @param implementation generated class
+     * @return counter declared by <tt>%implementation%</tt>
+     * @throws IllegalArgumentException when <tt>%implementation%</tt> declares no counter
+     * @since 0.2.0
+     */
+    public static InvocationCounter of(Class<?> implementation) {
+        try {
+            Field field = implementation.getDeclaredField(fieldName);
+            if (field.getType() == InvocationCounter.class && Modifier.isStatic(field.getModifiers())) {
+                return (InvocationCounter) field.get(null);
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(implementation.getName() + " declares no invocation counter");
+    }
+
+    /**
+     * Returns signatures of counted methods in order of their indices.
+     *
+     * @return unmodifiable list of signatures
+     * @since 0.2.0
+     */
+    public List<String> getMethods() {
+        return Collections.unmodifiableList(Arrays.asList(methods));
+    }
+
+    /**
+     * Sets mean count of calls per call which latency is recorded. Calls are sampled randomly, so calls of the same
+     * method made in regular pattern do not bias samples.
+     *
+     * @param samplingInterval mean count of calls per sampled call, <tt>0</tt> disables sampling
+     * @throws IllegalArgumentException when <tt>%samplingInterval%</tt> is negative
+     * @since 0.2.0
+     */
+    public void setSamplingInterval(int samplingInterval) {
+        if (samplingInterval < 0) throw new IllegalArgumentException("Invalid sampling interval " + samplingInterval);
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * Returns mean count of calls per call which latency is recorded.
+     *
+     * @return sampling interval, <tt>0</tt> when sampling is disabled
+     * @since 0.2.0
+     */
+    public int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * Counts start of call of method with index <tt>%method%</tt>. Called by generated methods only.
+     *
+     * @param method index of method
+     * @return value to pass to {@link #exit(int, long)} when call finishes
+     * @since 0.2.0
+     */
+    public long enter(int method) {
+        // ids of threads running at once are mostly distinct, and collision costs contention only
+        counts.getAndIncrement((int) (Thread.currentThread().getId() & (stripes - 1)) * stride + method);
+        int interval = samplingInterval;
+        if (interval == 0 || interval > 1 && ThreadLocalRandom.current().nextInt(interval) != 0) return notSampled;
+        return System.nanoTime();
+    }
+
+    /**
+     * Records latency of call of method with index <tt>%method%</tt> if it was sampled. Called by generated methods
+     * only.
+     *
+     * @param method index of method
+     * @param start value returned by {@link #enter(int)} at start of call
+     * @since 0.2.0
+     */
+    public void exit(int method, long start) {
+        if (start == notSampled) return;
+        long latency = System.nanoTime() - start;
+        samples[method].increment();
+        latencies[method].add(latency);
+        maxLatencies[method].accumulate(latency);
+    }
+
+    /**
+     * Returns sum of counts of calls of method with index <tt>%method%</tt> over all stripes.
+     *
+     * @param method index of method
+     * @return count of calls
+     * @since 0.2.0
+     */
+    private long getCount(int method) {
+        long count = 0;
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            count += counts.get(stripe * stride + method);
+        }
+        return count;
+    }
+
+    /**
+     * Returns current counts and sampled latencies of all methods.
+     *
+     * @return snapshot of counter
+     * @since 0.2.0
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Resets counts and latencies of all methods. Calls made while counter is reset may be partially lost.
+     *
+     * @since 0.2.0
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        for (int i = 0; i < methods.length; i++) {
+            samples[i].reset();
+            latencies[i].reset();
+            maxLatencies[i].reset();
+        }
+    }
+}
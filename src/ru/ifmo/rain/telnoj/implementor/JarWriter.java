@@ -0,0 +1,784 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.MappedByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writer of <tt>.jar</tt> files. Entries are taken from memory or read from files through channels, compressed
+ * independently of each other (in parallel, when enabled) and written by gathering writes, so writing large batches
+ * of classes is not limited by single core. Output is reproducible: entries are ordered by name after the manifest
+ * and all of them have the same fixed timestamp. Entries {@link #open(WritableByteChannel) streamed} to output are
+ * written in order they are added, which callers keep independent of timing.
+ * <p>
+ * Compression level {@link #STORED STORED} writes entries uncompressed with precomputed CRC. Entries which do not
+ * shrink when compressed are stored too.
+ * <p>
+ * Existing file can be {@link #update(Map, Predicate, Path) updated}: only changed entries are compressed, other
+ * ones are copied as they are stored.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#Implementor(OutputCache, JarWriter)
+ */
+public class JarWriter {
+    /**
+     * Compression level which stores entries without compression.
+     *
+     * @since 0.2.0
+     */
+    public static final int STORED = 0;
+
+    /**
+     * Expected total size of entries starting from which they are compressed in parallel.
+     *
+     * @since 0.2.0
+     */
+    private static final long parallelThreshold = 64 << 10;
+
+    /**
+     * Size of entry assumed when deciding whether entries should be compressed in parallel.
+     *
+     * @since 0.2.0
+     */
+    private static final long averageEntrySize = 2 << 10;
+
+    /**
+     * Time of every entry in MS-DOS format: midnight of 1 January 1980, the earliest representable time.
+     *
+     * @since 0.2.0
+     */
+    private static final int dosTime = (1 << 21) | (1 << 16);
+
+    /**
+     * Compression method of deflated entries.
+     *
+     * @since 0.2.0
+     */
+    private static final int DEFLATED = 8;
+
+    /**
+     * Signatures of zip structures.
+     *
+     * @since 0.2.0
+     */
+    private static final int localSignature = 0x04034b50, centralSignature = 0x02014b50, endSignature = 0x06054b50;
+
+    /**
+     * Maximum length of zip file comment, bounds search of end of central directory.
+     *
+     * @since 0.2.0
+     */
+    private static final int maxCommentLength = 0xffff;
+
+    /**
+     * Maximum count of entries and size of data in format without ZIP64 extensions.
+     *
+     * @since 0.2.0
+     */
+    private static final long formatLimit = 0xffffffffL;
+
+    /**
+     * Compression level of entries, {@link #STORED STORED} or level of {@link Deflater}.
+     *
+     * @since 0.2.0
+     */
+    private final int level;
+
+    /**
+     * Whether entries may be compressed in parallel.
+     *
+     * @since 0.2.0
+     */
+    private final boolean parallel;
+
+    /**
+     * Function reading content of entry.
+     *
+     * @param <T> type of source of content
+     * @since 0.2.0
+     */
+    private interface Reader<T> {
+        /**
+         * Reads content from <tt>%source%</tt>.
+         *
+         * @param source source of content
+         * @return content
+         * @throws IOException when unable to read
+         * @since 0.2.0
+         */
+        byte[] read(T source) throws IOException;
+    }
+
+    /**
+     * Entry prepared to be written: name, compression method, CRC and sizes together with stored bytes.
+     *
+     * @since 0.2.0
+     */
+    static final class Entry {
+        /**
+         * Name of entry, using <tt>/</tt> as separator.
+         *
+         * @since 0.2.0
+         */
+        final String name;
+
+        /**
+         * Compression method, <tt>0</tt> for stored or <tt>8</tt> for deflated entries.
+         *
+         * @since 0.2.0
+         */
+        final int method;
+
+        /**
+         * CRC-32 of uncompressed content.
+         *
+         * @since 0.2.0
+         */
+        final int crc;
+
+        /**
+         * Size of uncompressed content.
+         *
+         * @since 0.2.0
+         */
+        final long size;
+
+        /**
+         * Content as it is written to file, compressed according to {@link #method method}.
+         *
+         * @since 0.2.0
+         */
+        final ByteBuffer data;
+
+        /**
+         * Creates entry of already compressed content.
+         *
+         * @param name name of entry
+         * @param method compression method
+         * @param crc CRC-32 of uncompressed content
+         * @param size size of uncompressed content
+         * @param data content compressed according to <tt>%method%</tt>
+         * @since 0.2.0
+         */
+        Entry(String name, int method, int crc, long size, ByteBuffer data) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Output <tt>.jar</tt> file written entry by entry, for producers which do not have all entries at once. Local
+     * headers and content of entries are written as soon as they are added, records of central directory are kept
+     * until {@link #finish() finish}.
+     *
+     * @since 0.2.0
+     */
+    static final class Output {
+        /**
+         * Channel file is written to.
+         *
+         * @since 0.2.0
+         */
+        private final WritableByteChannel channel;
+
+        /**
+         * Records of central directory of written entries.
+         *
+         * @since 0.2.0
+         */
+        private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+        /**
+         * Offset of the next local header.
+         *
+         * @since 0.2.0
+         */
+        private long offset;
+
+        /**
+         * Count of written entries.
+         *
+         * @since 0.2.0
+         */
+        private int count;
+
+        /**
+         * Creates output writing to <tt>%channel%</tt> from its current position.
+         *
+         * @param channel channel to write to
+         * @since 0.2.0
+         */
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Writes local header and content of prepared <tt>%entry%</tt>.
+         *
+         * @param entry entry to write
+         * @throws IOException when unable to write or entry does not fit format
+         * @since 0.2.0
+         */
+        void add(Entry entry) throws IOException {
+            if (count >= 0xffff - 1) throw new IOException("Too many entries for jar file");
+            byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            long compressedSize = entry.data.remaining();
+            if (offset > formatLimit || compressedSize > formatLimit || entry.size > formatLimit) {
+                throw new IOException("Jar file is too large");
+            }
+            ByteBuffer header = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(localSignature).putShort((short) 20).putShort((short) 0x0800)
+                    .putShort((short) entry.method).putInt(dosTime).putInt(entry.crc)
+                    .putInt((int) compressedSize).putInt((int) entry.size)
+                    .putShort((short) name.length).putShort((short) 0).put(name);
+            header.flip();
+            ByteBuffer data = entry.data.duplicate();
+            writeFully(channel, header, data);
+
+            ByteBuffer central = ByteBuffer.allocate(46 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            central.putInt(centralSignature).putShort((short) 20).putShort((short) 20).putShort((short) 0x0800)
+                    .putShort((short) entry.method).putInt(dosTime).putInt(entry.crc)
+                    .putInt((int) compressedSize).putInt((int) entry.size)
+                    .putShort((short) name.length).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) offset).put(name);
+            centralDirectory.write(central.array(), 0, central.position());
+            offset += 30 + name.length + compressedSize;
+            count++;
+        }
+
+        /**
+         * Writes central directory, completing the file. Channel is left open.
+         *
+         * @throws IOException when unable to write or file does not fit format
+         * @since 0.2.0
+         */
+        void finish() throws IOException {
+            if (offset > formatLimit) throw new IOException("Jar file is too large");
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(endSignature).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) count).putShort((short) count)
+                    .putInt(centralDirectory.size()).putInt((int) offset).putShort((short) 0);
+            end.flip();
+            writeFully(channel, ByteBuffer.wrap(centralDirectory.toByteArray()), end);
+        }
+    }
+
+    /**
+     * Creates writer compressing entries with default level, in parallel for large outputs.
+     *
+     * @since 0.2.0
+     */
+    public JarWriter() {
+        this(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    /**
+     * Creates writer with given compression.
+     *
+     * @param level {@link #STORED STORED}, {@link Deflater#DEFAULT_COMPRESSION} or level of {@link Deflater} from
+     * <tt>1</tt> to <tt>9</tt>
+     * @param parallel whether entries may be compressed by several threads of
+     * {@link java.util.concurrent.ForkJoinPool#commonPool() common pool}
+     * @since 0.2.0
+     */
+    public JarWriter(int level, boolean parallel) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+        this.level = level;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Writes <tt>.jar</tt> file with default manifest containing <tt>%entries%</tt>.
+     *
+     * @param entries map from entry name to its content
+     * @param jarFile target <tt>.jar</tt> file, replaced if it exists
+     * @throws IOException when unable to write
+     * @since 0.2.0
+     */
+    public void write(Map<String, byte[]> entries, Path jarFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(jarFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(entries, channel);
+        }
+    }
+
+    /**
+     * Writes <tt>.jar</tt> file with default manifest containing <tt>%entries%</tt> to <tt>%channel%</tt>, which is
+     * left open.
+     *
+     * @param entries map from entry name to its content
+     * @param channel channel to write to
+     * @throws IOException when unable to write
+     * @since 0.2.0
+     */
+    public void write(Map<String, byte[]> entries, WritableByteChannel channel) throws IOException {
+        writeEntries(prepareAll(entries, content -> content), channel);
+    }
+
+    /**
+     * Writes <tt>.jar</tt> file with default manifest containing content of <tt>%files%</tt> to <tt>%channel%</tt>,
+     * which is left open. Files are read through channels by threads compressing them.
+     *
+     * @param files map from entry name to file containing its content
+     * @param channel channel to write to
+     * @throws IOException when unable to read files or write
+     * @since 0.2.0
+     */
+    public void writeFiles(Map<String, Path> files, WritableByteChannel channel) throws IOException {
+        writeEntries(prepareAll(files, JarWriter::readFile), channel);
+    }
+
+    /**
+     * Updates existing <tt>.jar</tt> file (<tt>%jarFile%</tt>): adds or replaces <tt>%entries%</tt> and removes
+     * other entries matching <tt>%removed%</tt>. Entries are compared with existing ones by CRC-32 and size, and
+     * by content when these match, so only changed entries are compressed. Unchanged and untouched entries, including
+     * manifest, are copied raw from the memory-mapped old file, without being inflated and deflated again. New file
+     * is written next to old one and replaces it when complete. Creates new file if <tt>%jarFile%</tt> does not
+     * exist. File is left untouched when nothing changed.
+     *
+     * @param entries map from entry name to its new content
+     * @param removed names of existing entries to remove unless they are among <tt>%entries%</tt>
+     * @param jarFile <tt>.jar</tt> file to update
+     * @return count of entries which were added or changed
+     * @throws IOException when unable to read old file or write new one
+     * @since 0.2.0
+     */
+    public int update(Map<String, byte[]> entries, Predicate<String> removed, Path jarFile) throws IOException {
+        if (!Files.exists(jarFile)) {
+            write(entries, jarFile);
+            return entries.size();
+        }
+        Map<String, Entry> existing = new HashMap<>();
+        for (Entry entry : readEntries(map(jarFile))) {
+            existing.put(entry.name, entry);
+        }
+        Entry manifest = existing.remove(JarFile.MANIFEST_NAME);
+        Map<String, Entry> result = new TreeMap<>();
+        for (Entry entry : existing.values()) {
+            if (!removed.test(entry.name)) result.put(entry.name, entry);
+        }
+        Map<String, byte[]> changed = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            Entry old = existing.get(entry.getKey());
+            if (old != null && hasContent(old, entry.getValue())) {
+                result.put(old.name, old);
+            } else {
+                result.remove(entry.getKey());
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (changed.isEmpty() && result.size() == existing.size()) return 0;
+        List<Entry> prepared = prepareAll(changed, content -> content);
+        if (manifest != null) prepared.set(0, manifest);
+        for (Entry entry : prepared.subList(1, prepared.size())) {
+            result.put(entry.name, entry);
+        }
+        List<Entry> ordered = new ArrayList<>();
+        ordered.add(prepared.get(0));
+        ordered.addAll(result.values());
+
+        Path directory = jarFile.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, jarFile.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeEntries(ordered, channel);
+            }
+            replace(temp, jarFile);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return changed.size();
+    }
+
+    /**
+     * Moves completely written <tt>%temp%</tt> file to <tt>%jarFile%</tt>, atomically where file system supports it,
+     * so readers of <tt>%jarFile%</tt> never see partially written file.
+     *
+     * @param temp written file in the same directory as <tt>%jarFile%</tt>
+     * @param jarFile file to replace
+     * @throws IOException when unable to move file
+     * @since 0.2.0
+     */
+    static void replace(Path temp, Path jarFile) throws IOException {
+        try {
+            Files.move(temp, jarFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, jarFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Checks whether <tt>%entry%</tt> holds exactly <tt>%content%</tt>. Content of entry is inflated only when its
+     * size and CRC-32 match.
+     *
+     * @param entry existing entry
+     * @param content new content
+     * @return true if content of entry is equal to <tt>%content%</tt>
+     * @throws IOException when entry is malformed
+     * @since 0.2.0
+     */
+    private static boolean hasContent(Entry entry, byte[] content) throws IOException {
+        if (entry.size != content.length) return false;
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return entry.crc == (int) crc.getValue() && getContent(entry).equals(ByteBuffer.wrap(content));
+    }
+
+    /**
+     * Maps whole <tt>%file%</tt> into memory for reading.
+     *
+     * @param file file to map
+     * @return read-only mapping
+     * @throws IOException when unable to map file
+     * @since 0.2.0
+     */
+    static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("File is too large: " + file);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads entries listed in central directory of zip file <tt>%zip%</tt>. Data of every entry is view of
+     * <tt>%zip%</tt> containing its content as stored, so entries can be written to other file without inflating.
+     *
+     * @param zip content of zip file
+     * @return entries in order of central directory
+     * @throws IOException when file is malformed or uses ZIP64 extensions
+     * @since 0.2.0
+     */
+    static List<Entry> readEntries(ByteBuffer zip) throws IOException {
+        ByteBuffer in = zip.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int end = in.limit() - 22;
+            int min = Math.max(0, end - maxCommentLength);
+            while (end >= min && in.getInt(end) != endSignature) end--;
+            if (end < min) throw new IOException("Not a zip file");
+            int count = in.getShort(end + 10) & 0xffff;
+            int position = in.getInt(end + 16);
+            List<Entry> entries = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if (position < 0 || in.getInt(position) != centralSignature) {
+                    throw new IOException("Malformed central directory");
+                }
+                int method = in.getShort(position + 10) & 0xffff;
+                int crc = in.getInt(position + 16);
+                int compressedSize = in.getInt(position + 20);
+                int size = in.getInt(position + 24);
+                int nameLength = in.getShort(position + 28) & 0xffff;
+                int extraLength = in.getShort(position + 30) & 0xffff;
+                int commentLength = in.getShort(position + 32) & 0xffff;
+                int offset = in.getInt(position + 42);
+                if (compressedSize < 0 || size < 0 || offset < 0) throw new IOException("ZIP64 is not supported");
+                // positions are set by separate statements, as Buffer methods of Java 8 do not return ByteBuffer
+                ByteBuffer view = in.duplicate();
+                view.position(position + 46);
+                byte[] name = new byte[nameLength];
+                view.get(name);
+                if (in.getInt(offset) != localSignature) throw new IOException("Malformed local header");
+                int start = offset + 30 + (in.getShort(offset + 26) & 0xffff) + (in.getShort(offset + 28) & 0xffff);
+                view.limit(start + compressedSize);
+                view.position(start);
+                ByteBuffer data = view.slice();
+                entries.add(new Entry(new String(name, StandardCharsets.UTF_8), method, crc, size, data));
+                position += 46 + nameLength + extraLength + commentLength;
+            }
+            return entries;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed zip file");
+        }
+    }
+
+    /**
+     * Returns uncompressed content of <tt>%entry%</tt>: its data for stored entries, inflated copy for deflated ones.
+     *
+     * @param entry entry to read
+     * @return content of entry
+     * @throws IOException when entry is malformed or compressed by unsupported method
+     * @since 0.2.0
+     */
+    static ByteBuffer getContent(Entry entry) throws IOException {
+        if (entry.method == STORED) return entry.data.duplicate();
+        if (entry.method != DEFLATED) throw new IOException("Unsupported compression method " + entry.method);
+        ByteBuffer data = entry.data.duplicate();
+        byte[] compressed = new byte[data.remaining()];
+        data.get(compressed);
+        if (entry.size > Integer.MAX_VALUE) throw new IOException("Entry is too large: " + entry.name);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] content = new byte[(int) entry.size];
+            int length = 0;
+            while (length < content.length && !inflater.finished()) {
+                int inflated = inflater.inflate(content, length, content.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                length += inflated;
+            }
+            if (length != content.length) throw new IOException("Malformed entry " + entry.name);
+            return ByteBuffer.wrap(content);
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed entry " + entry.name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Prepares default manifest followed by <tt>%entries%</tt> ordered by name, reading and compressing them in
+     * parallel when this writer is parallel and there are enough of them.
+     *
+     * @param entries map from entry name to source of its content
+     * @param reader function reading content from its source
+     * @param <T> type of sources of content
+     * @return entries ready to be written
+     * @throws IOException when unable to read content
+     * @since 0.2.0
+     */
+    private <T> List<Entry> prepareAll(Map<String, T> entries, Reader<T> reader) throws IOException {
+        List<Entry> result = new ArrayList<>();
+        result.add(prepare(JarFile.MANIFEST_NAME, getDefaultManifest()));
+        result.addAll(prepare(entries, reader));
+        return result;
+    }
+
+    /**
+     * Prepares <tt>%entries%</tt> ordered by name, compressing them in parallel when this writer is parallel and
+     * there are enough of them.
+     *
+     * @param entries map from entry name to its content
+     * @return entries ready to be {@link Output#add(Entry) added} to output
+     * @throws IOException never, as content is in memory
+     * @since 0.2.0
+     */
+    List<Entry> prepare(Map<String, byte[]> entries) throws IOException {
+        return prepare(entries, content -> content);
+    }
+
+    /**
+     * Prepares <tt>%entries%</tt> in their iteration order, compressing them in parallel when this writer is parallel
+     * and there are enough of them.
+     *
+     * @param entries map from entry name to its content, iterated in order entries are written in
+     * @return entries ready to be {@link Output#add(Entry) added} to output
+     * @throws IOException never, as content is in memory
+     * @since 0.2.0
+     */
+    List<Entry> prepareInOrder(Map<String, byte[]> entries) throws IOException {
+        return prepareInOrder(entries, content -> content);
+    }
+
+    /**
+     * Prepares <tt>%entries%</tt> ordered by name, reading and compressing them in parallel when this writer is
+     * parallel and there are enough of them.
+     *
+     * @param entries map from entry name to source of its content
+     * @param reader function reading content from its source
+     * @param <T> type of sources of content
+     * @return entries ready to be written
+     * @throws IOException when unable to read content
+     * @since 0.2.0
+     */
+    private <T> List<Entry> prepare(Map<String, T> entries, Reader<T> reader) throws IOException {
+        return prepareInOrder(new TreeMap<>(entries), reader);
+    }
+
+    /**
+     * Prepares <tt>%entries%</tt> in their iteration order, reading and compressing them in parallel when this writer
+     * is parallel and there are enough of them.
+     *
+     * @param entries map from entry name to source of its content
+     * @param reader function reading content from its source
+     * @param <T> type of sources of content
+     * @return entries ready to be written
+     * @throws IOException when unable to read content
+     * @since 0.2.0
+     */
+    private <T> List<Entry> prepareInOrder(Map<String, T> entries, Reader<T> reader) throws IOException {
+        Stream<Map.Entry<String, T>> stream = entries.entrySet().stream();
+        if (parallel && entries.size() * averageEntrySize >= parallelThreshold) stream = stream.parallel();
+        try {
+            return stream.map(entry -> {
+                try {
+                    return prepare(entry.getKey(), reader.read(entry.getValue()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads whole <tt>%file%</tt> through {@link FileChannel}.
+     *
+     * @param file file to read
+     * @return content of file
+     * @throws IOException when unable to read file
+     * @since 0.2.0
+     */
+    private static byte[] readFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("File is too large: " + file);
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until buffer is full or file ends
+            }
+            if (buffer.hasRemaining()) throw new IOException("File was truncated while reading: " + file);
+            return buffer.array();
+        }
+    }
+
+    /**
+     * Compresses <tt>%content%</tt> according to level of this writer.
+     *
+     * @param name name of entry
+     * @param content uncompressed content
+     * @return entry ready to be written
+     * @since 0.2.0
+     */
+    Entry prepare(String name, byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        if (level != STORED && content.length > 0) {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(content);
+                deflater.finish();
+                byte[] buffer = new byte[content.length];
+                int length = 0;
+                while (!deflater.finished() && length < buffer.length) {
+                    length += deflater.deflate(buffer, length, buffer.length - length);
+                }
+                if (deflater.finished() && length < content.length) {
+                    return new Entry(name, DEFLATED, (int) crc.getValue(), content.length, ByteBuffer.wrap(buffer, 0, length));
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        return new Entry(name, STORED, (int) crc.getValue(), content.length, ByteBuffer.wrap(content));
+    }
+
+    /**
+     * Writes prepared <tt>%entries%</tt> in given order, followed by central directory.
+     *
+     * @param entries entries to write
+     * @param channel channel to write to
+     * @throws IOException when unable to write or entries do not fit format
+     * @since 0.2.0
+     */
+    static void writeEntries(List<Entry> entries, WritableByteChannel channel) throws IOException {
+        Output output = new Output(channel);
+        for (Entry entry : entries) {
+            output.add(entry);
+        }
+        output.finish();
+    }
+
+    /**
+     * Starts <tt>.jar</tt> file written to <tt>%channel%</tt> entry by entry, writing default manifest.
+     *
+     * @param channel channel to write to
+     * @return output to add entries to
+     * @throws IOException when unable to write
+     * @since 0.2.0
+     */
+    Output open(WritableByteChannel channel) throws IOException {
+        Output output = new Output(channel);
+        output.add(prepare(JarFile.MANIFEST_NAME, getDefaultManifest()));
+        return output;
+    }
+
+    /**
+     * Writes all remaining bytes of <tt>%buffers%</tt> to <tt>%channel%</tt>.
+     *
+     * @param channel channel to write to
+     * @param buffers buffers to write in order
+     * @throws IOException when unable to write
+     * @since 0.2.0
+     */
+    private static void writeFully(WritableByteChannel channel, ByteBuffer... buffers) throws IOException {
+        if (channel instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) channel;
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= fileChannel.write(buffers);
+            }
+            return;
+        }
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Returns content of manifest containing only manifest version.
+     *
+     * @return bytes of manifest
+     * @since 0.2.0
+     */
+    private static byte[] getDefaultManifest() {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            manifest.write(out);
+        } catch (IOException e) {
+            throw new AssertionError("Writing to memory does not fail", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns description of compression of this writer, used to distinguish outputs of differently configured
+     * writers in {@link OutputCache}.
+     *
+     * @return compression level
+     * @since 0.2.0
+     */
+    @Override
+    public String toString() {
+        return level == STORED ? "stored" : "level " + level;
+    }
+}
@@ -0,0 +1,132 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link javax.tools.JavaFileManager JavaFileManager} which keeps compiled classes in memory instead of writing them
+ * to the file system. Sources are passed to compiler as {@link #source(String, String) string file objects}, so
+ * compilation made through this manager does not touch the disk at all. Wrapped standard file manager is left open,
+ * so it can be shared by several compilations.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#implementJar(Class, java.nio.file.Path)
+ */
+class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    /**
+     * Output streams of compiled classes mapped by binary class names in order of their creation.
+     *
+     * @since 0.2.0
+     */
+    private final Map<String, ByteArrayOutputStream> classes = new LinkedHashMap<>();
+
+    /**
+     * Constructor wrapping <tt>%fileManager%</tt>, which is still used to look up classes from class path.
+     *
+     * @param fileManager standard file manager to delegate reading of existing classes to
+     * @since 0.2.0
+     */
+    MemoryFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    /**
+     * Creates in-memory <tt>.java</tt> file object with given content.
+     *
+     * @param className binary name of class declared in <tt>%code%</tt>
+     * @param code source code of class
+     * @return file object which can be passed to compiler
+     * @since 0.2.0
+     */
+    static JavaFileObject source(String className, String code) {
+        return new SimpleJavaFileObject(toUri(className, JavaFileObject.Kind.SOURCE), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    /**
+     * Returns binary name of class stored in in-memory file object created by this class.
+     *
+     * @param file in-memory file object
+     * @return binary class name
+     * @since 0.2.0
+     */
+    static String getClassName(JavaFileObject file) {
+        String path = file.toUri().getPath();
+        int extension = path.lastIndexOf('.');
+        return path.substring(1, extension < 0 ? path.length() : extension).replace('/', '.');
+    }
+
+    /**
+     * Returns URI for in-memory file object of class <tt>%className%</tt>.
+     *
+     * @param className binary name of class
+     * @param kind kind of file object
+     * @return URI with <tt>mem</tt> scheme
+     * @since 0.2.0
+     */
+    private static URI toUri(String className, JavaFileObject.Kind kind) {
+        return URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+    }
+
+    /**
+     * Returns file object which stores everything written to it in {@link #classes classes}.
+     *
+     * @param location ignored, all output goes to memory
+     * @param className binary name of class to write
+     * @param kind kind of file object
+     * @param sibling ignored
+     * @return in-memory file object
+     * @since 0.2.0
+     */
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                               FileObject sibling) {
+        return new SimpleJavaFileObject(toUri(className, kind), kind) {
+            @Override
+            public OutputStream openOutputStream() {
+                ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                classes.put(className, stream);
+                return stream;
+            }
+        };
+    }
+
+    /**
+     * Flushes underlying file manager without closing it, so it can be reused by further compilations.
+     *
+     * @throws IOException when unable to flush
+     * @since 0.2.0
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Returns bytes of all classes produced by compiler.
+     *
+     * @return map from binary class name to class file bytes
+     * @since 0.2.0
+     */
+    Map<String, byte[]> getClasses() {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        for (Map.Entry<String, ByteArrayOutputStream> entry : classes.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toByteArray());
+        }
+        return result;
+    }
+}
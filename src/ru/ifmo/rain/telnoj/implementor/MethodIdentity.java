@@ -0,0 +1,160 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Signature of method as seen by Java compiler when it checks overriding: method name and erased parameter types.
+ * Two methods with equal identities override (or hide) each other, so implementation must contain only one of them.
+ * Used as key of method tables built by {@link MethodTables}.
+ * <p>
+ * Inherited methods are identified by parameter types of their member in the subtype, that is, their generic
+ * parameter types with type arguments of the subtype substituted and then erased. So <tt>put(T)</tt> of
+ * <tt>Sink&lt;T&gt;</tt> and <tt>put(String)</tt> of <tt>StrSink extends Sink&lt;String&gt;</tt> have equal
+ * identities, as the compiler sees them.
+ * <p>
+ * Return type is not a part of identity. When several methods with the same identity are found, the one declared
+ * closer to the token is kept, unless another one is more suitable for implementation:
+ * <ul>
+ *     <li>method whose erased parameter types are the identity's ones replaces method which only gets them after
+ *     substitution, because only the first signature overrides both of them;</li>
+ *     <li>method is replaced by method with more specific (covariant) return type, because only such implementation
+ *     overrides all of them.</li>
+ * </ul>
+ *
+ * @author Kirill Telnoy
+ * @since 0.1.0
+ * @see MethodTables
+ * @see #select(Method, Method)
+ * @see #erase(Type, Map)
+ */
+final class MethodIdentity {
+    /**
+     * Name of method.
+     *
+     * @since 0.2.0
+     */
+    private final String name;
+
+    /**
+     * Array containing erased types of all parameters which should be passed to current method.
+     *
+     * @since 0.1.0
+     */
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * Hash code computed once from {@link #name name} and {@link #parameterTypes parameterTypes}.
+     *
+     * @since 0.2.0
+     */
+    private final int hash;
+
+    /**
+     * Constructor sets {@link MethodIdentity#name name} and {@link MethodIdentity#parameterTypes} to values got from
+     * method passed as parameter
+     *
+     * @param method current method which information is stored
+     * @since 0.1.0
+     */
+    MethodIdentity(Method method) {
+        name = method.getName();
+        parameterTypes = method.getParameterTypes();
+        hash = 31 * name.hashCode() + Arrays.hashCode(parameterTypes);
+    }
+
+    /**
+     * Constructor sets {@link MethodIdentity#name name} and {@link MethodIdentity#parameterTypes} to values of
+     * inherited method's member in subtype, whose type arguments are <tt>%typeArguments%</tt>.
+     *
+     * @param method inherited method which information is stored
+     * @param typeArguments values of type variables of all supertypes of the subtype
+     * @since 0.2.0
+     * @see MethodTables
+     */
+    MethodIdentity(Method method, Map<TypeVariable<?>, Type> typeArguments) {
+        name = method.getName();
+        Type[] genericTypes = method.getGenericParameterTypes();
+        parameterTypes = new Class<?>[genericTypes.length];
+        for (int i = 0; i < genericTypes.length; i++) {
+            parameterTypes[i] = erase(genericTypes[i], typeArguments);
+        }
+        hash = 31 * name.hashCode() + Arrays.hashCode(parameterTypes);
+    }
+
+    /**
+     * Returns erasure of <tt>%type%</tt> after substitution of <tt>%typeArguments%</tt>. Type variables without
+     * argument are erased to erasure of their leftmost bound.
+     *
+     * @param type type to erase
+     * @param typeArguments values of type variables
+     * @return erased type
+     * @since 0.2.0
+     */
+    static Class<?> erase(Type type, Map<TypeVariable<?>, Type> typeArguments) {
+        if (type instanceof Class) return (Class<?>) type;
+        if (type instanceof ParameterizedType) return (Class<?>) ((ParameterizedType) type).getRawType();
+        if (type instanceof GenericArrayType) {
+            return Array.newInstance(erase(((GenericArrayType) type).getGenericComponentType(), typeArguments), 0)
+                    .getClass();
+        }
+        if (type instanceof WildcardType) return erase(((WildcardType) type).getUpperBounds()[0], typeArguments);
+        TypeVariable<?> variable = (TypeVariable<?>) type;
+        Type argument = typeArguments.get(variable);
+        return erase(argument != null ? argument : variable.getBounds()[0], typeArguments);
+    }
+
+    /**
+     * Chooses which of two methods with current identity should be implemented.
+     *
+     * @param current method found first, declared closer to the token
+     * @param candidate method found later
+     * @return <tt>%candidate%</tt> if only its erased parameter types are equal to ones of identity, or if
+     * <tt>%candidate%</tt> has more specific return type; <tt>%current%</tt> otherwise
+     * @since 0.2.0
+     */
+    Method select(Method current, Method candidate) {
+        boolean currentExact = Arrays.equals(parameterTypes, current.getParameterTypes());
+        if (currentExact != Arrays.equals(parameterTypes, candidate.getParameterTypes())) {
+            return currentExact ? current : candidate;
+        }
+        Class<?> currentType = current.getReturnType();
+        Class<?> candidateType = candidate.getReturnType();
+        if (currentType != candidateType && currentType.isAssignableFrom(candidateType)) return candidate;
+        return current;
+    }
+
+    /**
+     * Checks whether methods have the same name and erased parameter types.
+     *
+     * @param obj method to check equality with
+     * @return true if methods are counted as equal by Java compiler, false otherwise
+     * @since 0.1.0
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof MethodIdentity)) return false;
+        MethodIdentity methodIdentity = (MethodIdentity) obj;
+        return hash == methodIdentity.hash && name.equals(methodIdentity.name)
+                && Arrays.equals(parameterTypes, methodIdentity.parameterTypes);
+    }
+
+    /**
+     * Hashcode function returning precomputed {@link MethodIdentity#hash hash}
+     *
+     * @return method's hashcode
+     * @since 0.1.0
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,256 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of resolved method tables. Table of a type is built once and attached to it by {@link ClassValue}, and tables
+ * of subtypes are built on top of tables of their supertypes, so types sharing deep hierarchy pay for reflection of
+ * each supertype only once.
+ * <p>
+ * Table of a type contains all its declared methods followed by its public member methods, the same set as
+ * {@link Class#getDeclaredMethods()} plus {@link Class#getMethods()} deduplicated by {@link MethodIdentity}. Methods
+ * with equal identities are resolved by {@link MethodIdentity#select(Method, Method)}, so building a table takes time
+ * linear in count of methods. Inherited methods are identified after substitution of type arguments of the type, so
+ * method overriding generic one is merged with it. Bridge methods are skipped, compiler generates them itself.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#getMethodCacheHits()
+ * @see Implementor#getMethodCacheMisses()
+ */
+final class MethodTables {
+    /**
+     * Count of all requests to method tables, including requests made while building tables of subtypes.
+     *
+     * @since 0.2.0
+     */
+    private static final AtomicLong lookups = new AtomicLong();
+
+    /**
+     * Count of requests which had to build method table.
+     *
+     * @since 0.2.0
+     */
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Values of type variables of all supertypes of type, as given by its generic supertypes and theirs. Values may
+     * refer to type variables of other supertypes, which are in the same map.
+     *
+     * @since 0.2.0
+     */
+    private static final ClassValue<Map<TypeVariable<?>, Type>> typeArguments =
+            new ClassValue<Map<TypeVariable<?>, Type>>() {
+                @Override
+                protected Map<TypeVariable<?>, Type> computeValue(Class<?> type) {
+                    Map<TypeVariable<?>, Type> arguments = new HashMap<>();
+                    if (type.getSuperclass() != null) addTypeArguments(arguments, type.getGenericSuperclass());
+                    for (Type superInterface : type.getGenericInterfaces()) {
+                        addTypeArguments(arguments, superInterface);
+                    }
+                    return Collections.unmodifiableMap(arguments);
+                }
+            };
+
+    /**
+     * Public member methods of type, as returned by {@link Class#getMethods()}.
+     *
+     * @since 0.2.0
+     */
+    private static final ClassValue<Map<MethodIdentity, Method>> publicMethods =
+            new ClassValue<Map<MethodIdentity, Method>>() {
+                @Override
+                protected Map<MethodIdentity, Method> computeValue(Class<?> type) {
+                    misses.incrementAndGet();
+                    Map<MethodIdentity, Method> table = new LinkedHashMap<>();
+                    for (Method method : type.getDeclaredMethods()) {
+                        if (Modifier.isPublic(method.getModifiers()) && !method.isBridge()) {
+                            merge(table, new MethodIdentity(method), method);
+                        }
+                    }
+                    Map<TypeVariable<?>, Type> arguments = typeArguments.get(type);
+                    if (type.getSuperclass() != null) {
+                        for (Method method : lookup(publicMethods, type.getSuperclass()).values()) {
+                            merge(table, new MethodIdentity(method, arguments), method);
+                        }
+                    }
+                    for (Class<?> superInterface : type.getInterfaces()) {
+                        for (Method method : lookup(publicMethods, superInterface).values()) {
+                            // static methods of interfaces are not inherited
+                            if (!Modifier.isStatic(method.getModifiers())) {
+                                merge(table, new MethodIdentity(method, arguments), method);
+                            }
+                        }
+                    }
+                    return Collections.unmodifiableMap(table);
+                }
+            };
+
+    /**
+     * Declared methods of type followed by its public member methods.
+     *
+     * @since 0.2.0
+     */
+    private static final ClassValue<Collection<Method>> allMethods = new ClassValue<Collection<Method>>() {
+        @Override
+        protected Collection<Method> computeValue(Class<?> type) {
+            misses.incrementAndGet();
+            Map<MethodIdentity, Method> table = new LinkedHashMap<>();
+            for (Method method : type.getDeclaredMethods()) {
+                if (!method.isBridge()) merge(table, new MethodIdentity(method), method);
+            }
+            for (Map.Entry<MethodIdentity, Method> entry : lookup(publicMethods, type).entrySet()) {
+                merge(table, entry.getKey(), entry.getValue());
+            }
+            return Collections.unmodifiableList(new ArrayList<>(table.values()));
+        }
+    };
+
+    /**
+     * Utility class, not instantiable.
+     *
+     * @since 0.2.0
+     */
+    private MethodTables() {
+    }
+
+    /**
+     * Adds values of type variables given by <tt>%supertype%</tt> and by supertypes of its class to
+     * <tt>%arguments%</tt>.
+     *
+     * @param arguments map to add values to
+     * @param supertype generic supertype of type whose map is built
+     * @since 0.2.0
+     */
+    private static void addTypeArguments(Map<TypeVariable<?>, Type> arguments, Type supertype) {
+        Class<?> rawType = MethodIdentity.erase(supertype, Collections.emptyMap());
+        arguments.putAll(typeArguments.get(rawType));
+        if (supertype instanceof ParameterizedType) {
+            TypeVariable<?>[] variables = rawType.getTypeParameters();
+            Type[] values = ((ParameterizedType) supertype).getActualTypeArguments();
+            for (int i = 0; i < variables.length; i++) {
+                arguments.put(variables[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds <tt>%method%</tt> to <tt>%table%</tt>, resolving collision with method of equal identity by
+     * {@link MethodIdentity#select(Method, Method)}.
+     *
+     * @param table table to add method to
+     * @param identity identity of method in type whose table is built
+     * @param method method to add
+     * @since 0.2.0
+     */
+    private static void merge(Map<MethodIdentity, Method> table, MethodIdentity identity, Method method) {
+        table.merge(identity, method, identity::select);
+    }
+
+    /**
+     * Returns methods of <tt>%type%</tt> and its supertypes overridden by methods of its {@link #get(Class) table}
+     * whose erased parameter or return types differ from ones of overriding methods, mapped by overriding methods.
+     * Compiler generates bridge method for every such erased signature in implementation of <tt>%type%</tt>, which
+     * overrides all methods of table. Hierarchy is walked once, so time is linear in count of its methods.
+     *
+     * @param type type whose table is implemented
+     * @return overridden methods with different erasure, mapped by methods of table
+     * @since 0.2.0
+     */
+    static Map<Method, List<Method>> getBridged(Class<?> type) {
+        Map<TypeVariable<?>, Type> arguments = typeArguments.get(type);
+        Map<MethodIdentity, Method> overriding = new HashMap<>();
+        for (Method method : get(type)) {
+            if (!Modifier.isStatic(method.getModifiers()) && !Modifier.isPrivate(method.getModifiers())) {
+                overriding.put(new MethodIdentity(method, arguments), method);
+            }
+        }
+        String packageName = ClassFileModel.packageOf(type.getName());
+        Map<Method, List<Method>> result = new LinkedHashMap<>();
+        Set<Class<?>> visited = new HashSet<>();
+        Deque<Class<?>> queue = new ArrayDeque<>(Collections.singletonList(type));
+        while (!queue.isEmpty()) {
+            Class<?> supertype = queue.poll();
+            if (!visited.add(supertype)) continue;
+            for (Method method : supertype.getDeclaredMethods()) {
+                int modifiers = method.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isPrivate(modifiers)) continue;
+                // package-private methods of other packages are not overridden
+                if (!Modifier.isPublic(modifiers) && !Modifier.isProtected(modifiers)
+                        && !ClassFileModel.packageOf(supertype.getName()).equals(packageName)) {
+                    continue;
+                }
+                Method implemented = overriding.get(new MethodIdentity(method, arguments));
+                if (implemented != null && (implemented.getReturnType() != method.getReturnType()
+                        || !Arrays.equals(implemented.getParameterTypes(), method.getParameterTypes()))) {
+                    result.computeIfAbsent(implemented, key -> new ArrayList<>()).add(method);
+                }
+            }
+            if (supertype.getSuperclass() != null) queue.add(supertype.getSuperclass());
+            queue.addAll(Arrays.asList(supertype.getInterfaces()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns value of <tt>%cache%</tt> for <tt>%type%</tt> counting the request.
+     *
+     * @param cache cache to look up
+     * @param type type to look up
+     * @param <T> type of cached value
+     * @return cached value
+     * @since 0.2.0
+     */
+    private static <T> T lookup(ClassValue<T> cache, Class<?> type) {
+        lookups.incrementAndGet();
+        return cache.get(type);
+    }
+
+    /**
+     * Returns methods of <tt>%type%</tt> which should be considered when generating its implementation.
+     *
+     * @param type class to generate implementation for
+     * @return unmodifiable collection of distinct methods
+     * @since 0.2.0
+     */
+    static Collection<Method> get(Class<?> type) {
+        return lookup(allMethods, type);
+    }
+
+    /**
+     * Returns count of requests served from cache.
+     *
+     * @return count of cache hits
+     * @since 0.2.0
+     */
+    static long getHits() {
+        return lookups.get() - misses.get();
+    }
+
+    /**
+     * Returns count of requests which had to build method table.
+     *
+     * @return count of cache misses
+     * @since 0.2.0
+     */
+    static long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,308 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent content-addressed cache of files produced by {@link Implementor}. Files are keyed by
+ * {@link #key(String, Collection) hash} of reflected signatures of tokens, so unchanged tokens reuse previously
+ * generated <tt>.java</tt> or <tt>.jar</tt> files and skip generation and compilation. Cache directory is bounded by
+ * size, least recently used files are evicted first.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#Implementor(OutputCache)
+ */
+public class OutputCache {
+    /**
+     * Version of generated output. Has to be changed whenever generator output changes, and whenever output starts
+     * to depend on anything {@link #appendSignature(StringBuilder, Class) signature} does not describe, so stale
+     * files are never reused.
+     *
+     * @since 0.2.0
+     */
+    private static final String formatVersion = "7";
+
+    /**
+     * Suffix of temporary files created while storing new files in cache.
+     *
+     * @since 0.2.0
+     */
+    private static final String tempSuffix = ".tmp";
+
+    /**
+     * Directory containing cached files.
+     *
+     * @since 0.2.0
+     */
+    private final Path directory;
+
+    /**
+     * Maximum total size of cached files in bytes.
+     *
+     * @since 0.2.0
+     */
+    private final long maxBytes;
+
+    /**
+     * Count of requests served from cache.
+     *
+     * @since 0.2.0
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Count of requests not found in cache.
+     *
+     * @since 0.2.0
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Count of files removed from cache to fit its size bound.
+     *
+     * @since 0.2.0
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates cache stored in <tt>%directory%</tt>, creating the directory if required.
+     *
+     * @param directory directory to keep cached files in
+     * @param maxBytes maximum total size of cached files in bytes
+     * @throws IOException when unable to create <tt>%directory%</tt>
+     * @since 0.2.0
+     */
+    public OutputCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns stable key of output of kind <tt>%kind%</tt> generated for <tt>%tokens%</tt>. Key is SHA-256 hash of
+     * everything generator uses: modifiers, supertypes, fields, constructors, methods with their parameter, return
+     * and exception types, methods bridged to them and nested classes, together with version of JDK whose compiler
+     * produces class files. Types are described by names generator emits, so renaming type without changing its
+     * binary name changes key too.
+     *
+     * @param kind kind of output, for example <tt>java</tt> or <tt>jar</tt>
+     * @param tokens classes output is generated for
+     * @return hexadecimal hash string
+     * @since 0.2.0
+     */
+    public static String key(String kind, Collection<? extends Class<?>> tokens) {
+        // compiled classes depend on compiler, which comes with the running JDK
+        StringBuilder signature = new StringBuilder(formatVersion).append(' ')
+                .append(System.getProperty("java.version")).append(' ').append(kind).append('\n');
+        for (Class<?> token : tokens) {
+            appendSignature(signature, token);
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(signature.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder();
+            for (byte b : hash) {
+                result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is always supported", e);
+        }
+    }
+
+    /**
+     * Appends description of everything generator uses from <tt>%token%</tt> to <tt>%signature%</tt>.
+     *
+     * @param signature builder to append to
+     * @param token class to describe
+     * @since 0.2.0
+     */
+    private static void appendSignature(StringBuilder signature, Class<?> token) {
+        appendType(signature.append("class "), token).append(' ').append(token.getSimpleName()).append(' ')
+                .append(token.getModifiers());
+        if (token.getSuperclass() != null) appendType(signature.append(" extends "), token.getSuperclass());
+        for (Class<?> superInterface : token.getInterfaces()) {
+            appendType(signature.append(" implements "), superInterface);
+        }
+        signature.append('\n');
+        for (Field field : token.getFields()) {
+            appendType(signature.append("field ").append(field.getModifiers()).append(' '), field.getType())
+                    .append('\n');
+        }
+        for (Constructor<?> constructor : token.getDeclaredConstructors()) {
+            appendExecutable(signature.append("constructor "), constructor);
+        }
+        Map<Method, List<Method>> bridged = MethodTables.getBridged(token);
+        for (Method method : MethodTables.get(token)) {
+            appendExecutable(appendType(signature.append("method ").append(method.getName()).append(' '),
+                    method.getReturnType()).append(' '), method);
+            for (Method overridden : bridged.getOrDefault(method, Collections.emptyList())) {
+                appendExecutable(appendType(signature.append("bridge "), overridden.getReturnType()).append(' '),
+                        overridden);
+            }
+        }
+        for (Class<?> innerClass : token.getClasses()) {
+            if (!Modifier.isFinal(innerClass.getModifiers()) && !Modifier.isPrivate(innerClass.getModifiers())) {
+                appendSignature(signature, innerClass);
+            }
+        }
+        signature.append("end\n");
+    }
+
+    /**
+     * Appends modifiers, parameter and exception types of <tt>%executable%</tt> to <tt>%signature%</tt>.
+     *
+     * @param signature builder to append to
+     * @param executable method or constructor to describe
+     * @since 0.2.0
+     */
+    private static void appendExecutable(StringBuilder signature, Executable executable) {
+        signature.append(executable.getModifiers()).append(" (");
+        for (Class<?> type : executable.getParameterTypes()) {
+            appendType(signature, type).append(',');
+        }
+        signature.append(") throws");
+        for (Class<?> type : executable.getExceptionTypes()) {
+            appendType(signature.append(' '), type);
+        }
+        signature.append('\n');
+    }
+
+    /**
+     * Appends binary name of <tt>%type%</tt> and its canonical name, which generator emits, to
+     * <tt>%signature%</tt>.
+     *
+     * @param signature builder to append to
+     * @param type type to describe
+     * @return <tt>%signature%</tt>
+     * @since 0.2.0
+     */
+    private static StringBuilder appendType(StringBuilder signature, Class<?> type) {
+        return signature.append(type.getName()).append('/').append(type.getCanonicalName());
+    }
+
+    /**
+     * Copies file cached under <tt>%key%</tt> to <tt>%target%</tt>, if there is one.
+     *
+     * @param key key of file
+     * @param target path to copy file to
+     * @return true if file was found and copied, false otherwise
+     * @since 0.2.0
+     */
+    public boolean fetch(String key, Path target) {
+        Path file = directory.resolve(key);
+        try {
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Stores copy of <tt>%source%</tt> under <tt>%key%</tt> and evicts least recently used files if cache grows over
+     * its bound. Failures are ignored, because cache is not mandatory.
+     *
+     * @param key key of file
+     * @param source file to store
+     * @since 0.2.0
+     */
+    public void store(String key, Path source) {
+        try {
+            Path temp = Files.createTempFile(directory, key, tempSuffix);
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            evict();
+        } catch (IOException e) {
+            // cache stays as it was
+        }
+    }
+
+    /**
+     * Removes least recently used files until total size of cache fits {@link #maxBytes maxBytes}.
+     *
+     * @throws IOException when unable to list cache directory
+     * @since 0.2.0
+     */
+    private synchronized void evict() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(file -> !file.getFileName().toString().endsWith(tempSuffix))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+        long total = 0;
+        for (Path file : files) {
+            total += Files.size(file);
+        }
+        if (total <= maxBytes) return;
+        files.sort(Comparator.comparing(file -> {
+            try {
+                return Files.getLastModifiedTime(file);
+            } catch (IOException e) {
+                return FileTime.fromMillis(0);
+            }
+        }));
+        for (Path file : files) {
+            if (total <= maxBytes) break;
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                total -= size;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns count of requests served from cache.
+     *
+     * @return count of cache hits
+     * @since 0.2.0
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns count of requests not found in cache.
+     *
+     * @return count of cache misses
+     * @since 0.2.0
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns count of files evicted from cache.
+     *
+     * @return count of evictions
+     * @since 0.2.0
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
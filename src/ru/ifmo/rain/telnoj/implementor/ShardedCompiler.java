@@ -0,0 +1,212 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compiler of large batches of generated sources. Single compiler task runs mostly in one thread and keeps whole
+ * batch in memory, so batch is split into shards which are compiled concurrently by separate compiler tasks and whose
+ * results are merged. Generated implementations refer only to implemented types and never to each other, so shards
+ * are independent.
+ * <p>
+ * Sources are grouped by package, so classes sharing dependencies are compiled by the same task, and packages are
+ * packed into shards bounded by total length of their sources. Length of sources bounds memory compiler task holds,
+ * so the bound serves as heap budget of shard. Packages larger than the bound are split. Batches fitting into single
+ * shard are compiled by calling thread without any overhead.
+ * <p>
+ * Shards are compiled by fixed pool of daemon threads owned by compiler. Threads live as long as compiler does, so
+ * each of them keeps its {@link CachedCompiler} with warm file manager between batches.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor#Implementor(OutputCache, JarWriter, ShardedCompiler)
+ */
+public class ShardedCompiler {
+    /**
+     * Default bound of total length of sources of shard, in characters.
+     *
+     * @since 0.2.0
+     */
+    private static final long defaultShardSize = 4L << 20;
+
+    /**
+     * Maximum count of shards compiled simultaneously.
+     *
+     * @since 0.2.0
+     */
+    private final int parallelism;
+
+    /**
+     * Bound of total length of sources of shard, in characters.
+     *
+     * @since 0.2.0
+     */
+    private final long shardSize;
+
+    /**
+     * Threads compiling shards, created on first sharded compilation.
+     *
+     * @since 0.2.0
+     */
+    private ExecutorService workers;
+
+    /**
+     * Creates compiler running as many tasks as there are available processors, with default shard size.
+     *
+     * @since 0.2.0
+     */
+    public ShardedCompiler() {
+        this(Runtime.getRuntime().availableProcessors(), defaultShardSize);
+    }
+
+    /**
+     * Creates compiler with given parallelism and shard size.
+     *
+     * @param parallelism maximum count of compiler tasks running simultaneously, <tt>1</tt> to compile shards one
+     * by one
+     * @param shardSize bound of total length of sources compiled by single task, in characters
+     * @since 0.2.0
+     */
+    public ShardedCompiler(int parallelism, long shardSize) {
+        if (parallelism < 1) throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        if (shardSize < 1) throw new IllegalArgumentException("Invalid shard size " + shardSize);
+        this.parallelism = parallelism;
+        this.shardSize = shardSize;
+    }
+
+    /**
+     * Compiles <tt>%sources%</tt> in memory against <tt>%classPath%</tt>, shard by shard.
+     *
+     * @param sources map from binary class name to source code of class
+     * @param classPath class path entries
+     * @param diagnostics collector of errors and warnings reported by compiler tasks of all shards
+     * @return map from binary class name to class file bytes of all shards, <tt>null</tt> if compilation of any
+     * shard failed
+     * @throws IOException when compiler is not available or unable to read class path
+     * @since 0.2.0
+     */
+    Map<String, byte[]> compile(Map<String, String> sources, List<File> classPath,
+                                DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+        List<Map<String, String>> shards = split(sources);
+        if (shards.size() <= 1 || parallelism == 1) {
+            Map<String, byte[]> classes = new HashMap<>();
+            boolean failed = false;
+            for (Map<String, String> shard : shards) {
+                // remaining shards are still compiled, so errors of all of them are reported at once
+                Map<String, byte[]> shardClasses = CachedCompiler.compile(shard, classPath, diagnostics);
+                if (shardClasses == null) {
+                    failed = true;
+                } else {
+                    classes.putAll(shardClasses);
+                }
+            }
+            return failed ? null : classes;
+        }
+        List<Future<Map<String, byte[]>>> results = new ArrayList<>();
+        ExecutorService executor = getWorkers();
+        for (Map<String, String> shard : shards) {
+            results.add(executor.submit(() -> CachedCompiler.compile(shard, classPath, diagnostics)));
+        }
+        Map<String, byte[]> classes = new HashMap<>();
+        boolean failed = false;
+        try {
+            for (Future<Map<String, byte[]>> result : results) {
+                Map<String, byte[]> shardClasses = result.get();
+                if (shardClasses == null) {
+                    failed = true;
+                } else {
+                    classes.putAll(shardClasses);
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Compilation failed: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Compilation was interrupted");
+        }
+        return failed ? null : classes;
+    }
+
+    /**
+     * Splits <tt>%sources%</tt> into shards: packages ordered by name are added to shard until its size bound is
+     * reached, packages exceeding bound are split between several shards.
+     *
+     * @param sources map from binary class name to source code of class
+     * @return list of shards, each mapping binary class name to source code
+     * @since 0.2.0
+     */
+    List<Map<String, String>> split(Map<String, String> sources) {
+        Map<String, List<String>> packages = new TreeMap<>();
+        for (String name : sources.keySet()) {
+            packages.computeIfAbsent(ClassFileModel.packageOf(name), p -> new ArrayList<>()).add(name);
+        }
+        List<Map<String, String>> shards = new ArrayList<>();
+        Map<String, String> shard = new LinkedHashMap<>();
+        long size = 0;
+        for (List<String> names : packages.values()) {
+            long packageSize = 0;
+            for (String name : names) {
+                packageSize += sources.get(name).length();
+            }
+            // whole package goes to next shard unless it does not fit into any shard
+            if (size > 0 && size + packageSize > shardSize && packageSize <= shardSize) {
+                shards.add(shard);
+                shard = new LinkedHashMap<>();
+                size = 0;
+            }
+            for (String name : names) {
+                String source = sources.get(name);
+                if (size > 0 && size + source.length() > shardSize) {
+                    shards.add(shard);
+                    shard = new LinkedHashMap<>();
+                    size = 0;
+                }
+                shard.put(name, source);
+                size += source.length();
+            }
+        }
+        if (!shard.isEmpty()) shards.add(shard);
+        return shards;
+    }
+
+    /**
+     * Returns threads compiling shards, creating them if needed.
+     *
+     * @return pool of {@link #parallelism parallelism} daemon threads
+     * @since 0.2.0
+     */
+    private synchronized ExecutorService getWorkers() {
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(parallelism, task -> {
+                Thread thread = new Thread(task, "implementor-compiler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return workers;
+    }
+
+    /**
+     * Returns description of sharding. Sharding does not change compiled classes, so it is not a part of cache keys.
+     *
+     * @return parallelism and shard size
+     * @since 0.2.0
+     */
+    @Override
+    public String toString() {
+        return "parallelism " + parallelism + ", shard " + shardSize;
+    }
+}
@@ -0,0 +1,244 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Writer of generated source code. Appends directly to underlying {@link Writer}, so generation does not build
+ * intermediate strings. Identifiers are {@link #appendEscaped(String) escaped} without copying when they are ASCII
+ * only, and names of types and modifier strings are computed once and cached.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ * @see Implementor
+ */
+final class SourceEmitter {
+    /**
+     * Hexadecimal digits used in unicode escapes.
+     *
+     * @since 0.2.0
+     */
+    private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+    /**
+     * Cached results of {@link Modifier#toString(int)} followed by space, indexed by modifiers.
+     *
+     * @since 0.2.0
+     */
+    private static final AtomicReferenceArray<String> modifierStrings = new AtomicReferenceArray<>(0x1000);
+
+    /**
+     * Names of types, computed once per type.
+     *
+     * @since 0.2.0
+     */
+    private static final ClassValue<TypeName> typeNames = new ClassValue<TypeName>() {
+        @Override
+        protected TypeName computeValue(Class<?> type) {
+            return new TypeName(type);
+        }
+    };
+
+    /**
+     * Escaped names of type, used depending on package of class implementation is generated for.
+     *
+     * @since 0.2.0
+     */
+    private static final class TypeName {
+        /**
+         * Name of package of type (of element type for arrays), empty for primitives and default package.
+         *
+         * @since 0.2.0
+         */
+        private final String packageName;
+
+        /**
+         * Simple name of type, used inside the same package.
+         *
+         * @since 0.2.0
+         */
+        private final String simpleName;
+
+        /**
+         * Canonical name of type, used outside of its package.
+         *
+         * @since 0.2.0
+         */
+        private final String canonicalName;
+
+        /**
+         * Computes names of <tt>%type%</tt>.
+         *
+         * @param type type to compute names for
+         * @since 0.2.0
+         */
+        TypeName(Class<?> type) {
+            Class<?> element = type;
+            while (element.isArray()) element = element.getComponentType();
+            Package typePackage = element.getPackage();
+            packageName = typePackage == null || element.isPrimitive() ? "" : typePackage.getName();
+            String canonical = type.getCanonicalName();
+            simpleName = escape(type.getSimpleName());
+            canonicalName = escape(canonical == null ? type.getName() : canonical);
+        }
+    }
+
+    /**
+     * Writer all output goes to.
+     *
+     * @since 0.2.0
+     */
+    private final Writer out;
+
+    /**
+     * Creates emitter writing to <tt>%out%</tt>.
+     *
+     * @param out writer to append generated code to
+     * @since 0.2.0
+     */
+    SourceEmitter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Appends <tt>%str%</tt> as is.
+     *
+     * @param str string to append
+     * @return this emitter
+     * @throws IOException when unable to write
+     * @since 0.2.0
+     */
+    SourceEmitter append(String str) throws IOException {
+        out.write(str);
+        return this;
+    }
+
+    /**
+     * Appends single character.
+     *
+     * @param c character to append
+     * @return this emitter
+     * @throws IOException when unable to write
+     * @since 0.2.0
+     */
+    SourceEmitter append(char c) throws IOException {
+        out.write(c);
+        return this;
+    }
+
+    /**
+     * Appends decimal representation of <tt>%value%</tt>.
+     *
+     * @param value non-negative number to append
+     * @return this emitter
+     * @throws IOException when unable to write
+     * @since 0.2.0
+     */
+    SourceEmitter append(int value) throws IOException {
+        if (value >= 10) append(value / 10);
+        out.write('0' + value % 10);
+        return this;
+    }
+
+    /**
+     * Appends <tt>%str%</tt> replacing every non-ASCII character by unicode escape. ASCII-only strings are written
+     * without copying.
+     *
+     * @param str string which might contain non-ASCII symbols
+     * @return this emitter
+     * @throws IOException when unable to write
+     * @since 0.2.0
+     */
+    SourceEmitter appendEscaped(String str) throws IOException {
+        int start = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c >= 128) {
+                out.write(str, start, i - start);
+                writeEscape(out, c);
+                start = i + 1;
+            }
+        }
+        out.write(str, start, str.length() - start);
+        return this;
+    }
+
+    /**
+     * Appends modifiers string (as returned by {@link Modifier#toString(int)}) followed by space if it is not empty.
+     *
+     * @param modifiers modifiers to append
+     * @return this emitter
+     * @throws IOException when unable to write
+     * @since 0.2.0
+     */
+    SourceEmitter appendModifiers(int modifiers) throws IOException {
+        String s = modifierStrings.get(modifiers & 0xfff);
+        if (s == null) {
+            s = Modifier.toString(modifiers & 0xfff);
+            if (s.length() > 0) s += " ";
+            modifierStrings.set(modifiers & 0xfff, s);
+        }
+        out.write(s);
+        return this;
+    }
+
+    /**
+     * Returns name of <tt>%type%</tt> in source code of implementation of <tt>%token%</tt>: simple name if it is in the
+     * same package as <tt>%token%</tt>, canonical name otherwise. Names are cached and already escaped. Annotations
+     * of declaration of type are not copied, as they are not valid at every use site.
+     *
+     * @param type type to name
+     * @param token class to generate implementation for
+     * @return escaped name of type
+     * @since 0.2.0
+     */
+    static String getSourceName(Class<?> type, Class<?> token) {
+        TypeName name = typeNames.get(type);
+        return name.packageName.equals(typeNames.get(token).packageName) ? name.simpleName : name.canonicalName;
+    }
+
+    /**
+     * Returns String with every non-ASCII character replaced by unicode escape. Returns <tt>%str%</tt> itself if it
+     * is ASCII only.
+     *
+     * @param str String which might contain non-ASCII symbols
+     * @return fixed String
+     * @since 0.2.0
+     */
+    static String escape(String str) {
+        int i = 0;
+        while (i < str.length() && str.charAt(i) < 128) i++;
+        if (i == str.length()) return str;
+        StringBuilder result = new StringBuilder(str.length() + 16).append(str, 0, i);
+        for (; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < 128) {
+                result.append(c);
+            } else {
+                result.append("\\u").append(hexDigits[c >> 12]).append(hexDigits[(c >> 8) & 0xf])
+                        .append(hexDigits[(c >> 4) & 0xf]).append(hexDigits[c & 0xf]);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Writes unicode escape of <tt>%c%</tt>. Characters outside of basic plane are written as escapes of both
+     * surrogates, as Java requires.
+     *
+     * @param out writer to write to
+     * @param c UTF-16 code unit
+     * @throws IOException when unable to write
+     * @since 0.2.0
+     */
+    private static void writeEscape(Writer out, char c) throws IOException {
+        out.write('\\');
+        out.write('u');
+        out.write(hexDigits[c >> 12]);
+        out.write(hexDigits[(c >> 8) & 0xf]);
+        out.write(hexDigits[(c >> 4) & 0xf]);
+        out.write(hexDigits[c & 0xf]);
+    }
+}
@@ -0,0 +1,1056 @@
+package ru.ifmo.rain.telnoj.implementor;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Type to implement as source printer of {@link Implementor} sees it, whichever front end it is read by: loaded
+ * {@link Class}, {@link ClassFileModel} resolved by {@link ClassPathIndex} or {@link TypeElement} of compiler resolved
+ * by {@link ElementIndex}. Every front end is adapted by one of <tt>of</tt> methods, so the same code is printed for
+ * the same type regardless of where it comes from.
+ * <p>
+ * Types of members are given by names they have in source code of implementation placed in package of the type, as
+ * each front end names them, and by keywords of primitive types, which choose default values and handler methods.
+ * Modifiers are the ones {@link Class#getModifiers()} returns.
+ *
+ * @author Kirill Telnoy
+ * @since 0.2.0
+ */
+abstract class TypeModel {
+    /**
+     * Field, method or constructor of type, with types named for source code of implementation.
+     *
+     * @since 0.2.0
+     */
+    interface Member {
+        /**
+         * Returns modifiers of member.
+         *
+         * @return modifiers, as {@link java.lang.reflect.Member#getModifiers()} returns them
+         * @since 0.2.0
+         */
+        int getModifiers();
+
+        /**
+         * Returns name of member.
+         *
+         * @return name of field or method, unspecified for constructors
+         * @since 0.2.0
+         */
+        String getName();
+
+        /**
+         * Returns source name of type of field or return type of method.
+         *
+         * @return name of type, <tt>null</tt> for constructors
+         * @since 0.2.0
+         */
+        String getType();
+
+        /**
+         * Returns keyword of {@link #getType() type} if it is primitive.
+         *
+         * @return name of primitive type or <code>void</code>, <tt>null</tt> for reference types and constructors
+         * @since 0.2.0
+         */
+        String getPrimitiveType();
+
+        /**
+         * Returns count of parameters of method or constructor.
+         *
+         * @return count of parameters, <tt>0</tt> for fields
+         * @since 0.2.0
+         */
+        int getParameterCount();
+
+        /**
+         * Returns source name of type of parameter with index <tt>%i%</tt>.
+         *
+         * @param i index of parameter
+         * @return name of type
+         * @since 0.2.0
+         */
+        String getParameterType(int i);
+
+        /**
+         * Returns name of type of parameter with index <tt>%i%</tt> as it is listed in signatures of methods
+         * dispatched to handler or counted, which do not depend on package.
+         *
+         * @param i index of parameter
+         * @return canonical name of type, or binary name if type has no canonical name
+         * @since 0.2.0
+         */
+        String getSignatureType(int i);
+
+        /**
+         * Returns count of exceptions declared by method or constructor.
+         *
+         * @return count of declared exceptions, <tt>0</tt> for fields
+         * @since 0.2.0
+         */
+        int getExceptionCount();
+
+        /**
+         * Returns source name of declared exception with index <tt>%i%</tt>.
+         *
+         * @param i index of exception
+         * @return name of type
+         * @since 0.2.0
+         */
+        String getExceptionType(int i);
+    }
+
+    /**
+     * Returns modifiers of type.
+     *
+     * @return modifiers, as {@link Class#getModifiers()} returns them
+     * @since 0.2.0
+     */
+    abstract int getModifiers();
+
+    /**
+     * Returns whether type is interface.
+     *
+     * @return true for interfaces, false for classes
+     * @since 0.2.0
+     */
+    abstract boolean isInterface();
+
+    /**
+     * Returns simple name of type.
+     *
+     * @return simple name
+     * @since 0.2.0
+     */
+    abstract String getSimpleName();
+
+    /**
+     * Returns public fields of type in order of {@link Class#getFields()}.
+     *
+     * @return public fields including inherited ones
+     * @throws IOException when some supertype cannot be read
+     * @since 0.2.0
+     */
+    abstract List<Member> getFields() throws IOException;
+
+    /**
+     * Returns constructors declared by type.
+     *
+     * @return declared constructors of any access
+     * @throws IOException when type cannot be read
+     * @since 0.2.0
+     */
+    abstract List<Member> getConstructors() throws IOException;
+
+    /**
+     * Returns public member methods of type, the same set as {@link Class#getMethods()} returns with overridden
+     * methods merged.
+     *
+     * @return methods to implement
+     * @throws IOException when some supertype cannot be read
+     * @since 0.2.0
+     * @see MethodTables
+     */
+    abstract List<Member> getMethods() throws IOException;
+
+    /**
+     * Returns public member types of type and its superclasses, like {@link Class#getClasses()} does.
+     *
+     * @return models of member types
+     * @throws IOException when some member type or superclass cannot be read
+     * @since 0.2.0
+     */
+    abstract List<TypeModel> getClasses() throws IOException;
+
+    /**
+     * Adapts loaded <tt>%token%</tt>.
+     *
+     * @param token type token
+     * @return model of <tt>%token%</tt>
+     * @since 0.2.0
+     */
+    static TypeModel of(Class<?> token) {
+        return new LoadedType(token);
+    }
+
+    /**
+     * Adapts <tt>%token%</tt> read from class file, resolving types it refers to by <tt>%index%</tt>.
+     *
+     * @param token model of type read from class file
+     * @param index source of models of types referred to by <tt>%token%</tt>
+     * @return model of <tt>%token%</tt>
+     * @since 0.2.0
+     */
+    static TypeModel of(ClassFileModel token, ClassPathIndex index) {
+        return new ClassFileType(token, index);
+    }
+
+    /**
+     * Adapts <tt>%token%</tt> element of compiler, resolving types it refers to by <tt>%index%</tt>.
+     *
+     * @param token element of type
+     * @param index source of members of types referred to by <tt>%token%</tt>
+     * @return model of <tt>%token%</tt>
+     * @since 0.2.0
+     */
+    static TypeModel of(TypeElement token, ElementIndex index) {
+        return new ElementType(token, index);
+    }
+
+    /**
+     * Model of loaded type, read by reflection.
+     *
+     * @since 0.2.0
+     */
+    private static final class LoadedType extends TypeModel {
+        /**
+         * Type token.
+         *
+         * @since 0.2.0
+         */
+        private final Class<?> token;
+
+        /**
+         * Creates model of <tt>%token%</tt>.
+         *
+         * @param token type token
+         * @since 0.2.0
+         */
+        LoadedType(Class<?> token) {
+            this.token = token;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        int getModifiers() {
+            return token.getModifiers();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        boolean isInterface() {
+            return token.isInterface();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        String getSimpleName() {
+            return token.getSimpleName();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<Member> getFields() {
+            Field[] fields = token.getFields();
+            List<Member> result = new ArrayList<>(fields.length);
+            for (Field field : fields) {
+                result.add(new LoadedMember(token, field.getModifiers(), field.getName(), field.getType(),
+                        new Class<?>[0], new Class<?>[0]));
+            }
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<Member> getConstructors() {
+            Constructor<?>[] constructors = token.getDeclaredConstructors();
+            List<Member> result = new ArrayList<>(constructors.length);
+            for (Constructor<?> constructor : constructors) {
+                result.add(new LoadedMember(token, constructor, null));
+            }
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<Member> getMethods() {
+            Collection<Method> methods = MethodTables.get(token);
+            List<Member> result = new ArrayList<>(methods.size());
+            for (Method method : methods) {
+                result.add(new LoadedMember(token, method, method.getReturnType()));
+            }
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<TypeModel> getClasses() {
+            List<TypeModel> result = new ArrayList<>();
+            for (Class<?> member : token.getClasses()) {
+                result.add(new LoadedType(member));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Member of loaded type, which types are named by {@link SourceEmitter#getSourceName(Class, Class)}.
+     *
+     * @since 0.2.0
+     */
+    private static final class LoadedMember implements Member {
+        /**
+         * Type implementation of which refers to member.
+         *
+         * @since 0.2.0
+         */
+        private final Class<?> token;
+        /**
+         * Modifiers of member.
+         *
+         * @since 0.2.0
+         */
+        private final int modifiers;
+        /**
+         * Name of member.
+         *
+         * @since 0.2.0
+         */
+        private final String name;
+        /**
+         * Type of field or return type of method, <tt>null</tt> for constructors.
+         *
+         * @since 0.2.0
+         */
+        private final Class<?> type;
+        /**
+         * Types of parameters.
+         *
+         * @since 0.2.0
+         */
+        private final Class<?>[] parameterTypes;
+        /**
+         * Types of declared exceptions.
+         *
+         * @since 0.2.0
+         */
+        private final Class<?>[] exceptionTypes;
+
+        /**
+         * Creates member of <tt>%token%</tt>.
+         *
+         * @param token type implementation of which refers to member
+         * @param modifiers modifiers of member
+         * @param name name of member
+         * @param type type of field or return type of method, <tt>null</tt> for constructors
+         * @param parameterTypes types of parameters
+         * @param exceptionTypes types of declared exceptions
+         * @since 0.2.0
+         */
+        LoadedMember(Class<?> token, int modifiers, String name, Class<?> type, Class<?>[] parameterTypes,
+                     Class<?>[] exceptionTypes) {
+            this.token = token;
+            this.modifiers = modifiers;
+            this.name = name;
+            this.type = type;
+            this.parameterTypes = parameterTypes;
+            this.exceptionTypes = exceptionTypes;
+        }
+
+        /**
+         * Creates member of <tt>%token%</tt> from method or constructor.
+         *
+         * @param token type implementation of which refers to member
+         * @param executable method or constructor
+         * @param type return type of method, <tt>null</tt> for constructors
+         * @since 0.2.0
+         */
+        LoadedMember(Class<?> token, Executable executable, Class<?> type) {
+            this(token, executable.getModifiers(), executable.getName(), type, executable.getParameterTypes(),
+                    executable.getExceptionTypes());
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public int getModifiers() {
+            return modifiers;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getType() {
+            return type == null ? null : SourceEmitter.getSourceName(type, token);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getPrimitiveType() {
+            return type != null && type.isPrimitive() ? type.getName() : null;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public int getParameterCount() {
+            return parameterTypes.length;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getParameterType(int i) {
+            return SourceEmitter.getSourceName(parameterTypes[i], token);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getSignatureType(int i) {
+            String canonicalName = parameterTypes[i].getCanonicalName();
+            return canonicalName == null ? parameterTypes[i].getName() : canonicalName;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public int getExceptionCount() {
+            return exceptionTypes.length;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getExceptionType(int i) {
+            return SourceEmitter.getSourceName(exceptionTypes[i], token);
+        }
+    }
+
+    /**
+     * Model of type read from class file, which supertypes and member types are resolved by {@link ClassPathIndex}.
+     *
+     * @since 0.2.0
+     */
+    private static final class ClassFileType extends TypeModel {
+        /**
+         * Model of type read from class file.
+         *
+         * @since 0.2.0
+         */
+        private final ClassFileModel token;
+        /**
+         * Source of models of types referred to by {@link #token}.
+         *
+         * @since 0.2.0
+         */
+        private final ClassPathIndex index;
+
+        /**
+         * Creates model of <tt>%token%</tt> resolved by <tt>%index%</tt>.
+         *
+         * @param token model of type read from class file
+         * @param index source of models of types referred to by <tt>%token%</tt>
+         * @since 0.2.0
+         */
+        ClassFileType(ClassFileModel token, ClassPathIndex index) {
+            this.token = token;
+            this.index = index;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        int getModifiers() {
+            return token.access;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        boolean isInterface() {
+            return token.isInterface();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        String getSimpleName() {
+            return token.simpleName;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<Member> getFields() throws IOException {
+            return adapt(index.getFields(token));
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<Member> getConstructors() {
+            List<ClassFileModel.Member> constructors = new ArrayList<>();
+            for (ClassFileModel.Member method : token.methods) {
+                if (method.isConstructor()) constructors.add(method);
+            }
+            return adapt(constructors);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<Member> getMethods() throws IOException {
+            return adapt(index.getMethods(token));
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<TypeModel> getClasses() throws IOException {
+            List<TypeModel> result = new ArrayList<>();
+            for (ClassFileModel member : index.getClasses(token)) {
+                result.add(new ClassFileType(member, index));
+            }
+            return result;
+        }
+
+        /**
+         * Adapts <tt>%members%</tt> of {@link #token}.
+         *
+         * @param members fields, methods or constructors
+         * @return adapted members in the same order
+         * @since 0.2.0
+         */
+        private List<Member> adapt(Collection<ClassFileModel.Member> members) {
+            String packageName = token.getPackageName();
+            List<Member> result = new ArrayList<>(members.size());
+            for (ClassFileModel.Member member : members) {
+                result.add(new ClassFileMember(member, index, packageName));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Member read from class file, which types are named by {@link ClassPathIndex#getSourceName(String, String)}.
+     *
+     * @since 0.2.0
+     */
+    private static final class ClassFileMember implements Member {
+        /**
+         * Member read from class file.
+         *
+         * @since 0.2.0
+         */
+        private final ClassFileModel.Member member;
+        /**
+         * Source of names of types referred to by {@link #member}.
+         *
+         * @since 0.2.0
+         */
+        private final ClassPathIndex index;
+        /**
+         * Package of generated implementation.
+         *
+         * @since 0.2.0
+         */
+        private final String packageName;
+        /**
+         * Descriptor of type of field or return type of method, <tt>null</tt> for constructors.
+         *
+         * @since 0.2.0
+         */
+        private final String type;
+        /**
+         * Descriptors of types of parameters.
+         *
+         * @since 0.2.0
+         */
+        private final List<String> parameterTypes;
+
+        /**
+         * Creates member adapting <tt>%member%</tt>.
+         *
+         * @param member member read from class file
+         * @param index source of names of types referred to by <tt>%member%</tt>
+         * @param packageName package of generated implementation
+         * @since 0.2.0
+         */
+        ClassFileMember(ClassFileModel.Member member, ClassPathIndex index, String packageName) {
+            this.member = member;
+            this.index = index;
+            this.packageName = packageName;
+            if (member.descriptor.charAt(0) != '(') {
+                type = member.descriptor;
+                parameterTypes = Collections.emptyList();
+            } else {
+                type = member.isConstructor() ? null : member.getReturnType();
+                parameterTypes = member.getParameterTypes();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public int getModifiers() {
+            return member.access;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getName() {
+            return member.name;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getType() {
+            return type == null ? null : index.getSourceName(type, packageName);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getPrimitiveType() {
+            return type != null && type.length() == 1 ? ClassFileModel.primitiveName(type.charAt(0)) : null;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public int getParameterCount() {
+            return parameterTypes.size();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getParameterType(int i) {
+            return index.getSourceName(parameterTypes.get(i), packageName);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getSignatureType(int i) {
+            return index.getSourceName(parameterTypes.get(i), "");
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public int getExceptionCount() {
+            return member.exceptions.size();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getExceptionType(int i) {
+            return index.getSourceName("L" + member.exceptions.get(i).replace('.', '/') + ";", packageName);
+        }
+    }
+
+    /**
+     * Model of type element of compiler, which members are resolved by {@link ElementIndex}.
+     *
+     * @since 0.2.0
+     */
+    private static final class ElementType extends TypeModel {
+        /**
+         * Element of type.
+         *
+         * @since 0.2.0
+         */
+        private final TypeElement token;
+        /**
+         * Source of members of types referred to by {@link #token}.
+         *
+         * @since 0.2.0
+         */
+        private final ElementIndex index;
+
+        /**
+         * Creates model of <tt>%token%</tt> resolved by <tt>%index%</tt>.
+         *
+         * @param token element of type
+         * @param index source of members of types referred to by <tt>%token%</tt>
+         * @since 0.2.0
+         */
+        ElementType(TypeElement token, ElementIndex index) {
+            this.token = token;
+            this.index = index;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        int getModifiers() {
+            return index.getModifiers(token);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        boolean isInterface() {
+            return token.getKind().isInterface();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        String getSimpleName() {
+            return token.getSimpleName().toString();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<Member> getFields() {
+            return adapt(index.getFields(token));
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<Member> getConstructors() {
+            return adapt(index.getConstructors(token));
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<Member> getMethods() {
+            return adapt(index.getMethods(token));
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        List<TypeModel> getClasses() {
+            List<TypeModel> result = new ArrayList<>();
+            for (TypeElement member : index.getClasses(token)) {
+                result.add(new ElementType(member, index));
+            }
+            return result;
+        }
+
+        /**
+         * Adapts <tt>%members%</tt> of {@link #token}.
+         *
+         * @param members fields, methods or constructors
+         * @return adapted members in the same order
+         * @since 0.2.0
+         */
+        private List<Member> adapt(Collection<? extends Element> members) {
+            String packageName = index.getPackageName(token);
+            List<Member> result = new ArrayList<>(members.size());
+            for (Element member : members) {
+                result.add(new ElementMember(member, index, packageName));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Member element of compiler, which types are named by {@link ElementIndex#getSourceName(TypeMirror, String)}.
+     *
+     * @since 0.2.0
+     */
+    private static final class ElementMember implements Member {
+        /**
+         * Field, method or constructor element.
+         *
+         * @since 0.2.0
+         */
+        private final Element member;
+        /**
+         * Source of names of types referred to by {@link #member}.
+         *
+         * @since 0.2.0
+         */
+        private final ElementIndex index;
+        /**
+         * Package of generated implementation.
+         *
+         * @since 0.2.0
+         */
+        private final String packageName;
+        /**
+         * Type of field or return type of method, <tt>null</tt> for constructors.
+         *
+         * @since 0.2.0
+         */
+        private final TypeMirror type;
+        /**
+         * Types of parameters.
+         *
+         * @since 0.2.0
+         */
+        private final List<TypeMirror> parameterTypes = new ArrayList<>();
+        /**
+         * Types of declared exceptions.
+         *
+         * @since 0.2.0
+         */
+        private final List<? extends TypeMirror> exceptionTypes;
+
+        /**
+         * Creates member adapting <tt>%member%</tt> element.
+         *
+         * @param member field, method or constructor element
+         * @param index source of names of types referred to by <tt>%member%</tt>
+         * @param packageName package of generated implementation
+         * @since 0.2.0
+         */
+        ElementMember(Element member, ElementIndex index, String packageName) {
+            this.member = member;
+            this.index = index;
+            this.packageName = packageName;
+            if (member instanceof ExecutableElement) {
+                ExecutableElement executable = (ExecutableElement) member;
+                type = member.getKind() == ElementKind.CONSTRUCTOR
+                        ? null : executable.getReturnType();
+                for (VariableElement parameter : executable.getParameters()) {
+                    parameterTypes.add(parameter.asType());
+                }
+                exceptionTypes = executable.getThrownTypes();
+            } else {
+                type = member.asType();
+                exceptionTypes = Collections.emptyList();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public int getModifiers() {
+            return index.getModifiers(member);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getName() {
+            return member.getSimpleName().toString();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getType() {
+            return type == null ? null : index.getSourceName(type, packageName);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getPrimitiveType() {
+            if (type == null) return null;
+            TypeKind kind = type.getKind();
+            return kind.isPrimitive() || kind == TypeKind.VOID ? kind.name().toLowerCase(Locale.ROOT) : null;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public int getParameterCount() {
+            return parameterTypes.size();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getParameterType(int i) {
+            return index.getSourceName(parameterTypes.get(i), packageName);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getSignatureType(int i) {
+            return index.getSourceName(parameterTypes.get(i), "");
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public int getExceptionCount() {
+            return exceptionTypes.size();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.2.0
+         */
+        @Override
+        public String getExceptionType(int i) {
+            return index.getSourceName(exceptionTypes.get(i), packageName);
+        }
+    }
+}